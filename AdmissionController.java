@@ -0,0 +1,361 @@
+package service;
+
+import exception.*;
+import model.*;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ============================================================
+ *  CLASS   : AdmissionController
+ *  PACKAGE : service
+ *  PURPOSE : Admission control in front of a LibraryService, so a
+ *            misbehaving kiosk or script flooding searchBook()
+ *            cannot starve the circulation desk.
+ *
+ *  HOW IT WORKS:
+ *    - Rate limits: a token bucket per client (kiosk, terminal,
+ *      script) and, for borrow/return, per member. An empty
+ *      bucket rejects at once with the time until the next token.
+ *      Buckets live in access-ordered maps of at most
+ *      MAX_TRACKED_BUCKETS entries; the least recently used one is
+ *      dropped in O(1) when a new key arrives. Limits set with
+ *      setClientLimit() are kept apart and never dropped.
+ *    - Concurrency limits: expensive operations (searches, full
+ *      listings, exports) and cheap ones (borrow/return) take a
+ *      permit from separate semaphores. LibraryService runs one
+ *      call at a time, so a single expensive permit means a
+ *      borrow never waits behind more than one search.
+ *    - Load shedding: a request that cannot get its permit within
+ *      its latency budget is rejected as OVERLOADED instead of
+ *      queueing without end. Tokens are taken before waiting (so a
+ *      flooding client is turned away without queueing) and given
+ *      back when the request is shed or a later bucket rejects it.
+ *    - Every rejection is a RequestRejectedException saying why
+ *      and when to retry.
+ *
+ *  Safe to call from many threads.
+ * ============================================================
+ */
+public class AdmissionController {
+
+    // ── Defaults ───────────────────────────────────────────────────
+    public static final double CLIENT_RATE_PER_SEC = 20;
+    public static final int    CLIENT_BURST        = 40;
+    public static final double MEMBER_RATE_PER_SEC = 2;
+    public static final int    MEMBER_BURST        = 5;
+    public static final int    EXPENSIVE_PERMITS   = 1;
+    public static final int    CHEAP_PERMITS       = 32;
+    public static final long   EXPENSIVE_BUDGET_MS = 200;
+    public static final long   CHEAP_BUDGET_MS     = 1000;
+
+    /** Tokens charged for a full listing/export (a search costs 1) */
+    private static final int SCAN_COST = 5;
+
+    /** Least recently used buckets are dropped beyond this many per map */
+    private static final int MAX_TRACKED_BUCKETS = 100_000;
+
+    private final LibraryService service;
+
+    private final double clientRate;
+    private final int    clientBurst;
+    private final double memberRate;
+    private final int    memberBurst;
+    private final long   expensiveBudgetMillis;
+    private final long   cheapBudgetMillis;
+
+    private final Map<String, TokenBucket> clientLimits  = new ConcurrentHashMap<>();   // pinned
+    private final BucketTable              clientBuckets = new BucketTable();
+    private final BucketTable              memberBuckets = new BucketTable();
+    private final Semaphore                expensive;
+    private final Semaphore                cheap;
+
+    // ── Metrics ────────────────────────────────────────────────────
+    private final AtomicLong admitted    = new AtomicLong();
+    private final AtomicLong rateLimited = new AtomicLong();
+    private final AtomicLong shed        = new AtomicLong();
+
+    public AdmissionController(LibraryService service) {
+        this(service, CLIENT_RATE_PER_SEC, CLIENT_BURST, MEMBER_RATE_PER_SEC, MEMBER_BURST,
+                EXPENSIVE_PERMITS, CHEAP_PERMITS, EXPENSIVE_BUDGET_MS, CHEAP_BUDGET_MS);
+    }
+
+    public AdmissionController(LibraryService service,
+                               double clientRatePerSec, int clientBurst,
+                               double memberRatePerSec, int memberBurst,
+                               int expensivePermits, int cheapPermits,
+                               long expensiveBudgetMillis, long cheapBudgetMillis) {
+        this.service               = service;
+        this.clientRate            = clientRatePerSec;
+        this.clientBurst           = clientBurst;
+        this.memberRate            = memberRatePerSec;
+        this.memberBurst           = memberBurst;
+        this.expensive             = new Semaphore(expensivePermits, true);
+        this.cheap                 = new Semaphore(cheapPermits, true);
+        this.expensiveBudgetMillis = expensiveBudgetMillis;
+        this.cheapBudgetMillis     = cheapBudgetMillis;
+    }
+
+    /**
+     * Gives one client its own rate, e.g. a staffed desk terminal that
+     * serves a queue of patrons. Replaces any bucket it already has.
+     */
+    public void setClientLimit(String clientId, double ratePerSec, int burst) {
+        clientLimits.put(clientId, new TokenBucket(ratePerSec, burst));
+    }
+
+    // ==============================================================
+    //   EXPENSIVE OPERATIONS
+    // ==============================================================
+
+    public List<Book> searchBook(String clientId, String keyword) throws RequestRejectedException {
+        acquireExpensive(clientId, 1);
+        try {
+            return service.searchBook(keyword);
+        } finally {
+            expensive.release();
+        }
+    }
+
+    public List<Book> searchBook(String clientId, String title, String author)
+            throws RequestRejectedException {
+        acquireExpensive(clientId, 1);
+        try {
+            return service.searchBook(title, author);
+        } finally {
+            expensive.release();
+        }
+    }
+
+    public List<Book> searchBook(String clientId, String keyword, int maxEdits)
+            throws RequestRejectedException {
+        acquireExpensive(clientId, 1);
+        try {
+            return service.searchBook(keyword, maxEdits);
+        } finally {
+            expensive.release();
+        }
+    }
+
+    public void viewAllBooks(String clientId) throws RequestRejectedException {
+        acquireExpensive(clientId, SCAN_COST);
+        try {
+            service.viewAllBooks();
+        } finally {
+            expensive.release();
+        }
+    }
+
+    public void viewAllMembers(String clientId) throws RequestRejectedException {
+        acquireExpensive(clientId, SCAN_COST);
+        try {
+            service.viewAllMembers();
+        } finally {
+            expensive.release();
+        }
+    }
+
+    public void exportBookTable(String clientId, WritableByteChannel channel)
+            throws RequestRejectedException, IOException {
+        acquireExpensive(clientId, SCAN_COST);
+        try {
+            service.exportBookTable(channel);
+        } finally {
+            expensive.release();
+        }
+    }
+
+    // ==============================================================
+    //   CHEAP OPERATIONS (circulation)
+    // ==============================================================
+
+    public void borrowBook(String clientId, String memberId, String bookId)
+            throws RequestRejectedException, MemberNotFoundException, BookNotFoundException,
+                   BookNotAvailableException, BorrowLimitExceededException {
+        acquireCheap(clientId, memberId);
+        try {
+            service.borrowBook(memberId, bookId);
+        } finally {
+            cheap.release();
+        }
+    }
+
+    /** Keyed (idempotent) borrow — see LibraryService.borrowBook(String, String, String) */
+    public void borrowBook(String clientId, String memberId, String bookId, String requestKey)
+            throws RequestRejectedException, MemberNotFoundException, BookNotFoundException,
+                   BookNotAvailableException, BorrowLimitExceededException {
+        acquireCheap(clientId, memberId);
+        try {
+            service.borrowBook(memberId, bookId, requestKey);
+        } finally {
+            cheap.release();
+        }
+    }
+
+    public void returnBook(String clientId, String memberId, String bookId)
+            throws RequestRejectedException, MemberNotFoundException, BookNotFoundException {
+        acquireCheap(clientId, memberId);
+        try {
+            service.returnBook(memberId, bookId);
+        } finally {
+            cheap.release();
+        }
+    }
+
+    /** Keyed (idempotent) return — see LibraryService.returnBook(String, String, String) */
+    public void returnBook(String clientId, String memberId, String bookId, String requestKey)
+            throws RequestRejectedException, MemberNotFoundException, BookNotFoundException {
+        acquireCheap(clientId, memberId);
+        try {
+            service.returnBook(memberId, bookId, requestKey);
+        } finally {
+            cheap.release();
+        }
+    }
+
+    // ── Metrics Getters ────────────────────────────────────────────
+    public long getAdmitted()    { return admitted.get();    }
+    public long getRateLimited() { return rateLimited.get(); }
+    public long getShed()        { return shed.get();        }
+
+    @Override
+    public String toString() {
+        return "AdmissionController[admitted=" + admitted + ", rate limited=" + rateLimited
+                + ", shed=" + shed + ", searches waiting=" + expensive.getQueueLength()
+                + ", circulation waiting=" + cheap.getQueueLength() + "]";
+    }
+
+    // ==============================================================
+    //   ADMISSION
+    // ==============================================================
+
+    private void acquireExpensive(String clientId, int cost) throws RequestRejectedException {
+        TokenBucket client = clientBucket(clientId);
+        charge(client, clientId, cost);
+        try {
+            acquire(expensive, expensiveBudgetMillis, clientId);
+        } catch (RequestRejectedException e) {
+            client.refund(cost);
+            throw e;
+        }
+    }
+
+    private void acquireCheap(String clientId, String memberId) throws RequestRejectedException {
+        TokenBucket client = clientBucket(clientId);
+        TokenBucket member = memberBuckets.get(memberId.toLowerCase(), memberRate, memberBurst);
+        charge(client, clientId, 1);
+        try {
+            charge(member, clientId, 1);
+        } catch (RequestRejectedException e) {
+            client.refund(1);
+            throw e;
+        }
+        try {
+            acquire(cheap, cheapBudgetMillis, clientId);
+        } catch (RequestRejectedException e) {
+            client.refund(1);
+            member.refund(1);
+            throw e;
+        }
+    }
+
+    private TokenBucket clientBucket(String clientId) {
+        TokenBucket pinned = clientLimits.get(clientId);
+        return (pinned != null) ? pinned : clientBuckets.get(clientId, clientRate, clientBurst);
+    }
+
+    /** Takes tokens from the caller's bucket or rejects with the wait time */
+    private void charge(TokenBucket bucket, String clientId, int cost) throws RequestRejectedException {
+        long waitNanos = bucket.tryTake(cost, System.nanoTime());
+        if (waitNanos > 0) {
+            rateLimited.incrementAndGet();
+            throw new RequestRejectedException(clientId, RequestRejectedException.RATE_LIMITED,
+                    Math.max(1, TimeUnit.NANOSECONDS.toMillis(waitNanos)));
+        }
+    }
+
+    /** Waits up to the latency budget for a permit, then sheds the request */
+    private void acquire(Semaphore permits, long budgetMillis, String clientId)
+            throws RequestRejectedException {
+        boolean granted;
+        try {
+            granted = permits.tryAcquire(budgetMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            granted = false;
+        }
+        if (!granted) {
+            shed.incrementAndGet();
+            throw new RequestRejectedException(clientId, RequestRejectedException.OVERLOADED, budgetMillis);
+        }
+        admitted.incrementAndGet();
+    }
+
+    /**
+     * Buckets by key, least recently used first. Dropping a bucket
+     * that is not yet full lets that key start over with a full one,
+     * which only matters if MAX_TRACKED_BUCKETS keys are busier.
+     */
+    private static final class BucketTable {
+        private final LinkedHashMap<String, TokenBucket> buckets = new LinkedHashMap<>(1024, 0.75f, true);
+
+        synchronized TokenBucket get(String key, double rate, int burst) {
+            TokenBucket bucket = buckets.get(key);
+            if (bucket == null) {
+                if (buckets.size() >= MAX_TRACKED_BUCKETS) {
+                    Iterator<TokenBucket> eldest = buckets.values().iterator();
+                    eldest.next();
+                    eldest.remove();
+                }
+                bucket = new TokenBucket(rate, burst);
+                buckets.put(key, bucket);
+            }
+            return bucket;
+        }
+    }
+
+    /** Classic token bucket: refills at `rate` per second up to `burst` */
+    private static final class TokenBucket {
+        private final double  tokensPerNano;
+        private final double  capacity;
+        private double        tokens;
+        private long          lastRefill;
+
+        TokenBucket(double ratePerSec, int burst) {
+            this.tokensPerNano = ratePerSec / 1e9;
+            this.capacity      = burst;
+            this.tokens        = burst;
+            this.lastRefill    = System.nanoTime();
+        }
+
+        /** Takes the tokens and returns 0, or returns the nanos until enough are available */
+        synchronized long tryTake(int cost, long now) {
+            cost = (int) Math.min(cost, capacity);   // a listing must fit in a small bucket
+            refill(now);
+            if (tokens >= cost) {
+                tokens -= cost;
+                return 0;
+            }
+            return (long) Math.ceil((cost - tokens) / tokensPerNano);
+        }
+
+        /** Gives back tokens taken for a request that was not admitted */
+        synchronized void refund(int cost) {
+            tokens = Math.min(capacity, tokens + Math.min(cost, capacity));
+        }
+
+        private void refill(long now) {
+            tokens     = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+            lastRefill = now;
+        }
+    }
+}
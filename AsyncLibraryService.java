@@ -0,0 +1,303 @@
+package service;
+
+import model.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * ============================================================
+ *  CLASS   : AsyncLibraryService
+ *  PACKAGE : service
+ *  PURPOSE : Non-blocking front end for LibraryService, for async
+ *            servers (kiosks, web front ends) that must not park a
+ *            thread per call.
+ *
+ *  HOW IT WORKS:
+ *    - Every operation is submitted to an executor and returns a
+ *      CompletableFuture at once. Checked exceptions such as
+ *      BookNotAvailableException complete the future exceptionally
+ *      with the original exception as the cause.
+ *    - The default executor uses virtual threads when the JVM has
+ *      them (Java 21+) and falls back to a cached daemon pool.
+ *    - Books and members handed back are copies, so they can be
+ *      read on any thread while the desk keeps changing the real
+ *      objects.
+ *    - A Pipeline queues a session's steps — scan member, scan
+ *      book, borrow — back to back without waiting for replies.
+ *      Steps run in order; if one fails, the later ones fail with
+ *      the same cause instead of running.
+ * ============================================================
+ */
+public class AsyncLibraryService implements AutoCloseable {
+
+    private final LibraryService  service;
+    private final ExecutorService executor;
+    private final boolean         ownsExecutor;
+
+    /** Uses virtual threads when available, otherwise a cached pool */
+    public AsyncLibraryService(LibraryService service) {
+        this.service      = service;
+        this.executor     = defaultExecutor();
+        this.ownsExecutor = true;
+    }
+
+    /** Runs calls on the given executor; close() leaves it running */
+    public AsyncLibraryService(LibraryService service, ExecutorService executor) {
+        this.service      = service;
+        this.executor     = executor;
+        this.ownsExecutor = false;
+    }
+
+    @Override
+    public void close() {
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+    }
+
+    // ==============================================================
+    //   CATALOGUE AND PEOPLE
+    // ==============================================================
+
+    public CompletableFuture<Void> addBook(Book book) {
+        return run(() -> service.addBook(book));
+    }
+
+    public CompletableFuture<Void> registerMember(Member member) {
+        return run(() -> service.registerMember(member));
+    }
+
+    public CompletableFuture<Void> addLibrarian(Librarian librarian) {
+        return run(() -> service.addLibrarian(librarian));
+    }
+
+    // ==============================================================
+    //   CIRCULATION
+    // ==============================================================
+
+    public CompletableFuture<Void> borrowBook(String memberId, String bookId) {
+        return run(() -> service.borrowBook(memberId, bookId));
+    }
+
+    public CompletableFuture<Void> returnBook(String memberId, String bookId) {
+        return run(() -> service.returnBook(memberId, bookId));
+    }
+
+    /**
+     * Kiosk checkout in one submission: scan member, scan book and
+     * borrow are pipelined and the caller waits once.
+     *
+     * @return copy of the book as it is after the loan
+     */
+    public CompletableFuture<Book> checkout(String memberId, String bookId) {
+        Pipeline session = pipeline();
+        session.scanMember(memberId);
+        session.scanBook(bookId);
+        session.borrow(memberId, bookId);
+        return session.scanBook(bookId);
+    }
+
+    // ==============================================================
+    //   SEARCH AND LISTINGS (copies)
+    // ==============================================================
+
+    public CompletableFuture<List<Book>> searchBook(String keyword) {
+        return call(() -> {
+            synchronized (service) {
+                return copyBooks(service.searchBook(keyword));
+            }
+        });
+    }
+
+    public CompletableFuture<List<Book>> searchBook(String title, String author) {
+        return call(() -> {
+            synchronized (service) {
+                return copyBooks(service.searchBook(title, author));
+            }
+        });
+    }
+
+    public CompletableFuture<List<Book>> searchBook(String keyword, int maxEdits) {
+        return call(() -> {
+            synchronized (service) {
+                return copyBooks(service.searchBook(keyword, maxEdits));
+            }
+        });
+    }
+
+    public CompletableFuture<List<Book>> getBooks() {
+        return call(() -> {
+            synchronized (service) {
+                return copyBooks(service.getBooks());
+            }
+        });
+    }
+
+    public CompletableFuture<List<Member>> getMembers() {
+        return call(() -> {
+            synchronized (service) {
+                List<Member> copies = new ArrayList<>(service.getMembers().size());
+                for (Member m : service.getMembers()) {
+                    copies.add(copyOf(m));
+                }
+                return copies;
+            }
+        });
+    }
+
+    /** Copy of a member, or MemberNotFoundException */
+    public CompletableFuture<Member> findMember(String memberId) {
+        return call(() -> {
+            synchronized (service) {
+                return copyOf(service.findMemberById(memberId));
+            }
+        });
+    }
+
+    /** Copy of a book, or BookNotFoundException */
+    public CompletableFuture<Book> findBook(String bookId) {
+        return call(() -> {
+            synchronized (service) {
+                return SingleWriterLibraryService.copyOf(service.findBookById(bookId));
+            }
+        });
+    }
+
+    // ==============================================================
+    //   PIPELINING
+    // ==============================================================
+
+    /** Starts a new ordered session (one per kiosk/connection) */
+    public Pipeline pipeline() {
+        return new Pipeline();
+    }
+
+    /**
+     * Ordered queue of steps for one session. Each method returns
+     * immediately with that step's future.
+     */
+    public final class Pipeline {
+
+        private CompletableFuture<?> tail = CompletableFuture.completedFuture(null);
+
+        private Pipeline() { }
+
+        public CompletableFuture<Member> scanMember(String memberId) {
+            return then(() -> {
+                synchronized (service) {
+                    return copyOf(service.findMemberById(memberId));
+                }
+            });
+        }
+
+        public CompletableFuture<Book> scanBook(String bookId) {
+            return then(() -> {
+                synchronized (service) {
+                    return SingleWriterLibraryService.copyOf(service.findBookById(bookId));
+                }
+            });
+        }
+
+        public CompletableFuture<Void> borrow(String memberId, String bookId) {
+            return then(() -> {
+                service.borrowBook(memberId, bookId);
+                return null;
+            });
+        }
+
+        public CompletableFuture<Void> giveBack(String memberId, String bookId) {
+            return then(() -> {
+                service.returnBook(memberId, bookId);
+                return null;
+            });
+        }
+
+        /** Runs the step after the previous one; a failed step aborts the rest */
+        private synchronized <T> CompletableFuture<T> then(Call<T> step) {
+            CompletableFuture<T> next = tail.thenApplyAsync(ignored -> invoke(step), executor);
+            tail = next;
+            return next;
+        }
+    }
+
+    // ==============================================================
+    //   PRIVATE HELPERS
+    // ==============================================================
+
+    /** A LibraryService call that may throw a checked exception */
+    @FunctionalInterface
+    private interface Call<T> {
+        T call() throws Exception;
+    }
+
+    @FunctionalInterface
+    private interface Action {
+        void run() throws Exception;
+    }
+
+    private CompletableFuture<Void> run(Action action) {
+        return call(() -> {
+            action.run();
+            return null;
+        });
+    }
+
+    private <T> CompletableFuture<T> call(Call<T> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                future.complete(call.call());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    private static <T> T invoke(Call<T> step) {
+        try {
+            return step.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private static List<Book> copyBooks(List<Book> books) {
+        List<Book> copies = new ArrayList<>(books.size());
+        for (Book b : books) {
+            copies.add(SingleWriterLibraryService.copyOf(b));
+        }
+        return copies;
+    }
+
+    private static Member copyOf(Member m) {
+        Member copy = new Member(m.getPersonId(), m.getName(), m.getEmail(), m.getPhone());
+        copy.restoreLoanState(m.getBorrowedBookIds(), m.getTotalBooksBorrowed());
+        return copy;
+    }
+
+    /**
+     * Virtual-thread-per-task executor on Java 21+, looked up
+     * reflectively so the project still builds on Java 17.
+     */
+    private static ExecutorService defaultExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "library-async");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+}
@@ -0,0 +1,622 @@
+package service;
+
+import exception.BookNotFoundException;
+import exception.MemberNotFoundException;
+import model.Book;
+import model.Librarian;
+import model.Member;
+import model.Person;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * ============================================================
+ *  CLASS   : AvailabilityHistory
+ *  PACKAGE : service
+ *  PURPOSE : Remembers past availability and loans, so "was B001 on
+ *            the shelf at 10:02?", "what did M001 have out last
+ *            Tuesday?" and "which books were available at T?" can be
+ *            answered after Book/Member have been overwritten.
+ *
+ *  HOW IT WORKS:
+ *    - Registered as a MutationListener; books and members get
+ *      dense ordinals, so history is kept in primitive arrays.
+ *    - Each book that has circulated has a version chain: parallel
+ *      (time, holder) arrays, holder = member ordinal or AVAILABLE.
+ *      "Book X at T" is a binary search in X's chain.
+ *    - Each member has a chain of (time, ±book) loan events on top
+ *      of a base set of loans; "member Y at T" replays Y's few
+ *      events.
+ *    - For "all books available at T" every borrow/return is also
+ *      appended to one global log, and every so often the set of
+ *      borrowed books is saved as a bitset checkpoint. A query
+ *      copies the last checkpoint before T and replays the log up
+ *      to T. Checkpoints are taken every (books / 8) events at
+ *      least, so they cost at most ~1 byte per event.
+ *    - Retention: at each checkpoint, versions older than the
+ *      retention window are dropped — each chain keeps only the
+ *      newest version before the cut, member events before it are
+ *      folded into the base set and older checkpoints and log
+ *      entries are released. Queries before getRetainedFrom() are
+ *      refused.
+ *    - Times are the clock's milliseconds, made non-decreasing; a
+ *      query at T includes every change stamped T.
+ *
+ *  Callbacks run under the service lock; queries may come from any
+ *  thread.
+ * ============================================================
+ */
+public class AvailabilityHistory implements MutationListener, AutoCloseable {
+
+    public static final long DEFAULT_RETENTION_MILLIS = 30L * 24 * 60 * 60 * 1000;   // 30 days
+
+    private static final int   MIN_CHECKPOINT_EVENTS = 4_096;
+    private static final int   AVAILABLE             = -1;    // holder of a book nobody has
+    private static final int[] NO_LOANS              = new int[0];
+
+    private final LibraryService service;
+    private final long           retentionMillis;
+    private final LongSupplier   clock;
+
+    // ── Ordinals ───────────────────────────────────────────────────
+    private final Map<String, Integer> bookOrdinals   = new HashMap<>();   // lower-case ID
+    private final List<String>         bookIds        = new ArrayList<>();
+    private long[]                     addedAt        = new long[1024];
+    private Chain[]                    bookChains     = new Chain[1024];   // null = never changed
+    private final Map<String, Integer> memberOrdinals = new HashMap<>();
+    private final List<String>         memberIds      = new ArrayList<>();
+    private final List<Chain>          memberChains   = new ArrayList<>();
+
+    // ── Global Log and Checkpoints ─────────────────────────────────
+    private long[]                 logTimes  = new long[1024];
+    private int[]                  logEvents = new int[1024];   // +(book+1) borrowed, -(book+1) returned
+    private int                    logStart;                    // first retained index
+    private int                    logEnd;
+    private long                   logBase;                     // log position of index 0
+    private long[]                 borrowedNow = new long[16];
+    private final List<Checkpoint> checkpoints = new ArrayList<>();
+
+    private long lastTime;
+    private long retainedFrom;
+
+    public AvailabilityHistory(LibraryService service) {
+        this(service, DEFAULT_RETENTION_MILLIS, System::currentTimeMillis);
+    }
+
+    /**
+     * Starts recording from the service's current state.
+     *
+     * @param retentionMillis how long old versions are kept
+     * @param clock           source of timestamps in ms
+     */
+    public AvailabilityHistory(LibraryService service, long retentionMillis, LongSupplier clock) {
+        if (retentionMillis <= 0) {
+            throw new IllegalArgumentException("retentionMillis must be positive");
+        }
+        this.service         = service;
+        this.retentionMillis = retentionMillis;
+        this.clock           = clock;
+        synchronized (service) {
+            retainedFrom = now();
+            checkpoints.add(new Checkpoint(retainedFrom, 0, new long[0]));
+            for (Book b : service.getBooks()) {
+                bookAdded(b);
+            }
+            for (Member m : service.getMembers()) {
+                memberRegistered(m);
+            }
+            service.addMutationListener(this);
+        }
+    }
+
+    /** Stops recording; the history kept so far can still be queried */
+    @Override
+    public void close() {
+        service.removeMutationListener(this);
+    }
+
+    // ==============================================================
+    //   AS-OF QUERIES
+    // ==============================================================
+
+    /**
+     * @throws BookNotFoundException    if the book was not catalogued at that time
+     * @throws IllegalArgumentException if the time is before getRetainedFrom()
+     */
+    public synchronized boolean isAvailableAt(String bookId, long time) throws BookNotFoundException {
+        return holderAt(bookId, time) == AVAILABLE;
+    }
+
+    /**
+     * @return ID of the member holding the book at that time, or null
+     * @throws BookNotFoundException    if the book was not catalogued at that time
+     * @throws IllegalArgumentException if the time is before getRetainedFrom()
+     */
+    public synchronized String getBorrowerAt(String bookId, long time) throws BookNotFoundException {
+        int holder = holderAt(bookId, time);
+        return holder == AVAILABLE ? null : memberIds.get(holder);
+    }
+
+    /**
+     * @return IDs of the books the member had out at that time
+     * @throws MemberNotFoundException  if the member is unknown
+     * @throws IllegalArgumentException if the time is before getRetainedFrom()
+     */
+    public synchronized List<String> getLoansAt(String memberId, long time)
+            throws MemberNotFoundException {
+        checkRetained(time);
+        Integer ord = memberOrdinals.get(memberId.toLowerCase());
+        if (ord == null) {
+            throw new MemberNotFoundException(memberId);
+        }
+        Chain c = memberChains.get(ord);
+        List<String> ids = new ArrayList<>();
+        if (c != null) {
+            int[] loans = c.base;
+            for (int i = 0; i < c.size && c.times[i] <= time; i++) {
+                loans = applyLoan(loans, c.values[i]);
+            }
+            for (int book : loans) {
+                ids.add(bookIds.get(book));
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * @return IDs of every book catalogued and on the shelf at that
+     *         time, in the order the books were added
+     * @throws IllegalArgumentException if the time is before getRetainedFrom()
+     */
+    public synchronized List<String> getAvailableAt(long time) {
+        checkRetained(time);
+        long[] borrowed = borrowedAt(time);
+        int    books    = booksAddedBy(time);
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < books; i++) {
+            if ((borrowed[i >>> 6] & (1L << i)) == 0) {
+                ids.add(bookIds.get(i));
+            }
+        }
+        return ids;
+    }
+
+    /** Same as getAvailableAt(time).size(), without building the list */
+    public synchronized int countAvailableAt(long time) {
+        checkRetained(time);
+        long[] borrowed = borrowedAt(time);
+        int    books    = booksAddedBy(time);
+        int    out      = 0;
+        for (int w = 0; w < (books + 63) >>> 6; w++) {
+            out += Long.bitCount(borrowed[w]);
+        }
+        return books - out;
+    }
+
+    // ── Metrics Getters ────────────────────────────────────────────
+    public synchronized long getRetainedFrom()    { return retainedFrom;       }
+    public synchronized int  getCheckpointCount() { return checkpoints.size(); }
+    public synchronized int  getLogSize()         { return logEnd - logStart;  }
+
+    /** Versions held in all book and member chains */
+    public synchronized long getVersionCount() {
+        long n = 0;
+        for (int i = 0; i < bookIds.size(); i++) {
+            n += (bookChains[i] == null) ? 0 : bookChains[i].size;
+        }
+        for (Chain c : memberChains) {
+            n += (c == null) ? 0 : c.size;
+        }
+        return n;
+    }
+
+    /** Rough heap held by chains, log and checkpoints, in bytes (ordinal maps excluded) */
+    public synchronized long getApproxBytes() {
+        long bytes = 12L * logTimes.length + 8L * borrowedNow.length + 12L * addedAt.length;
+        for (int i = 0; i < bookIds.size(); i++) {
+            bytes += (bookChains[i] == null) ? 0 : bookChains[i].bytes();
+        }
+        for (Chain c : memberChains) {
+            bytes += (c == null) ? 0 : c.bytes();
+        }
+        for (Checkpoint cp : checkpoints) {
+            bytes += 40 + 8L * cp.borrowed.length;
+        }
+        return bytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "AvailabilityHistory[" + bookIds.size() + " books, " + memberIds.size()
+                + " members, " + getLogSize() + " log events, " + checkpoints.size()
+                + " checkpoints, from " + retainedFrom + "]";
+    }
+
+    // ==============================================================
+    //   MUTATION LISTENER (called under the service lock)
+    // ==============================================================
+
+    @Override
+    public synchronized void bookAdded(Book b) {
+        long t   = now();
+        int  ord = bookOrdinal(b.getBookId(), t);
+        int  holder = b.isAvailable() ? AVAILABLE : memberOrdinal(String.valueOf(b.getBorrowedByMemberId()));
+        if (holder != currentHolder(ord)) {   // added on loan, or re-sent by a replica reload
+            recordBook(ord, holder, t);
+        }
+    }
+
+    @Override
+    public synchronized void memberRegistered(Member m) {
+        long t   = now();
+        int  ord = memberOrdinal(m.getPersonId());
+        Chain c  = memberChains.get(ord);
+        int[] current = NO_LOANS;
+        if (c != null) {
+            current = c.base;
+            for (int i = 0; i < c.size; i++) {
+                current = applyLoan(current, c.values[i]);
+            }
+        }
+        // Bring the chain in line with the member's loans (normally none)
+        int[] target = new int[m.getBorrowedBookIds().size()];
+        for (int i = 0; i < target.length; i++) {
+            target[i] = bookOrdinal(m.getBorrowedBookIds().get(i), t);
+        }
+        for (int book : target) {
+            if (!contains(current, book)) {
+                recordLoan(ord, book + 1, t);
+            }
+        }
+        for (int book : current) {
+            if (!contains(target, book)) {
+                recordLoan(ord, -(book + 1), t);
+            }
+        }
+    }
+
+    @Override
+    public void librarianAdded(Librarian librarian) {
+        // librarians do not borrow
+    }
+
+    @Override
+    public synchronized void bookBorrowed(Member m, Book b) {
+        long t    = now();
+        int  book = bookOrdinal(b.getBookId(), t);
+        int  ord  = memberOrdinal(m.getPersonId());
+        recordBook(book, ord, t);
+        recordLoan(ord, book + 1, t);
+    }
+
+    @Override
+    public synchronized void bookReturned(Member m, Book b) {
+        long t    = now();
+        int  book = bookOrdinal(b.getBookId(), t);
+        int  ord  = memberOrdinal(m.getPersonId());
+        recordBook(book, AVAILABLE, t);
+        recordLoan(ord, -(book + 1), t);
+    }
+
+    @Override
+    public void bookEdited(Book book, String field, String oldValue) {
+        // catalogue edits do not change availability
+    }
+
+    @Override
+    public void personEdited(Person person, String field, String oldValue) {
+        // neither do contact details
+    }
+
+    // ==============================================================
+    //   RECORDING
+    // ==============================================================
+
+    /** Appends a book version, logs it and checkpoints when due */
+    private void recordBook(int book, int holder, long t) {
+        Chain c = bookChains[book];
+        if (c == null) {
+            c = bookChains[book] = new Chain(NO_LOANS);
+        }
+        c.add(t, holder);
+
+        if (logEnd == logTimes.length) {
+            compactLog();
+        }
+        logTimes[logEnd]  = t;
+        logEvents[logEnd] = (holder == AVAILABLE) ? -(book + 1) : book + 1;
+        logEnd++;
+        if (holder == AVAILABLE) {
+            borrowedNow[book >>> 6] &= ~(1L << book);
+        } else {
+            borrowedNow[book >>> 6] |= 1L << book;
+        }
+
+        Checkpoint last = checkpoints.get(checkpoints.size() - 1);
+        if (logBase + logEnd - last.logPos >= Math.max(MIN_CHECKPOINT_EVENTS, bookIds.size() / 8)) {
+            checkpoints.add(new Checkpoint(t, logBase + logEnd,
+                    Arrays.copyOf(borrowedNow, words(bookIds.size()))));
+            collectGarbage(t - retentionMillis);
+        }
+    }
+
+    private void recordLoan(int member, int event, long t) {
+        Chain c = memberChains.get(member);
+        if (c == null) {
+            c = new Chain(NO_LOANS);
+            memberChains.set(member, c);
+        }
+        c.add(t, event);
+    }
+
+    /**
+     * Drops what is not needed to answer queries at or after the
+     * horizon, which becomes getRetainedFrom().
+     */
+    private void collectGarbage(long horizon) {
+        if (horizon <= retainedFrom) {
+            return;
+        }
+        // Keep the newest checkpoint at or before the horizon as the base
+        int keep = lastCheckpointAtOrBefore(horizon);
+        checkpoints.subList(0, keep).clear();
+        logStart = (int) (checkpoints.get(0).logPos - logBase);
+
+        for (int i = 0; i < bookIds.size(); i++) {
+            Chain c = bookChains[i];
+            if (c == null) {
+                continue;
+            }
+            int base = c.lastAtOrBefore(horizon);
+            if (base == c.size - 1 && c.values[base] == AVAILABLE) {
+                bookChains[i] = null;        // on the shelf all window long
+            } else if (base > 0) {
+                c.dropFirst(base);
+            }
+        }
+        for (int i = 0; i < memberChains.size(); i++) {
+            Chain c = memberChains.get(i);
+            if (c == null) {
+                continue;
+            }
+            int n = c.lastAtOrBefore(horizon) + 1;
+            for (int k = 0; k < n; k++) {
+                c.base = applyLoan(c.base, c.values[k]);
+            }
+            c.dropFirst(n);
+            if (c.size == 0 && c.base.length == 0) {
+                memberChains.set(i, null);
+            }
+        }
+        retainedFrom = horizon;
+    }
+
+    /** Moves the retained log to the front of the arrays, growing them if still full */
+    private void compactLog() {
+        int live = logEnd - logStart;
+        int cap  = (live > logTimes.length / 2) ? logTimes.length * 2 : logTimes.length;
+        long[] times  = new long[cap];
+        int[]  events = new int[cap];
+        System.arraycopy(logTimes,  logStart, times,  0, live);
+        System.arraycopy(logEvents, logStart, events, 0, live);
+        logTimes  = times;
+        logEvents = events;
+        logBase  += logStart;
+        logEnd    = live;
+        logStart  = 0;
+    }
+
+    // ==============================================================
+    //   PRIVATE HELPERS
+    // ==============================================================
+
+    private int holderAt(String bookId, long time) throws BookNotFoundException {
+        checkRetained(time);
+        Integer ord = bookOrdinals.get(bookId.toLowerCase());
+        if (ord == null || time < addedAt[ord]) {
+            throw new BookNotFoundException(bookId);
+        }
+        Chain c = bookChains[ord];
+        int   i = (c == null) ? -1 : c.lastAtOrBefore(time);
+        return (i < 0) ? AVAILABLE : c.values[i];
+    }
+
+    /** Borrowed-book bitset at the given time: last checkpoint plus the log */
+    private long[] borrowedAt(long time) {
+        Checkpoint cp   = checkpoints.get(lastCheckpointAtOrBefore(time));
+        long[]     bits = Arrays.copyOf(cp.borrowed, words(bookIds.size()));
+        for (int i = (int) (cp.logPos - logBase); i < logEnd && logTimes[i] <= time; i++) {
+            int event = logEvents[i];
+            int book  = Math.abs(event) - 1;
+            if (event > 0) {
+                bits[book >>> 6] |= 1L << book;
+            } else {
+                bits[book >>> 6] &= ~(1L << book);
+            }
+        }
+        return bits;
+    }
+
+    private int lastCheckpointAtOrBefore(long time) {
+        int lo = 0, hi = checkpoints.size() - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (checkpoints.get(mid).time <= time) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    /** Books are added in time order, so this is a binary search */
+    private int booksAddedBy(long time) {
+        int lo = 0, hi = bookIds.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (addedAt[mid] <= time) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private int currentHolder(int book) {
+        Chain c = bookChains[book];
+        return (c == null) ? AVAILABLE : c.values[c.size - 1];
+    }
+
+    private int bookOrdinal(String bookId, long t) {
+        Integer ord = bookOrdinals.get(bookId.toLowerCase());
+        if (ord != null) {
+            return ord;
+        }
+        int n = bookIds.size();
+        if (n == addedAt.length) {
+            addedAt    = Arrays.copyOf(addedAt, n * 2);
+            bookChains = Arrays.copyOf(bookChains, n * 2);
+        }
+        if (words(n + 1) > borrowedNow.length) {
+            borrowedNow = Arrays.copyOf(borrowedNow, borrowedNow.length * 2);
+        }
+        bookOrdinals.put(bookId.toLowerCase(), n);
+        bookIds.add(bookId);
+        addedAt[n] = t;
+        return n;
+    }
+
+    private int memberOrdinal(String memberId) {
+        Integer ord = memberOrdinals.get(memberId.toLowerCase());
+        if (ord != null) {
+            return ord;
+        }
+        int n = memberIds.size();
+        memberOrdinals.put(memberId.toLowerCase(), n);
+        memberIds.add(memberId);
+        memberChains.add(null);
+        return n;
+    }
+
+    private void checkRetained(long time) {
+        if (time < retainedFrom) {
+            throw new IllegalArgumentException("No history before " + retainedFrom
+                    + " (asked for " + time + ")");
+        }
+    }
+
+    /** Timestamps never go backwards, even if the wall clock does */
+    private long now() {
+        lastTime = Math.max(lastTime, clock.getAsLong());
+        return lastTime;
+    }
+
+    private static int[] applyLoan(int[] loans, int event) {
+        int book = Math.abs(event) - 1;
+        if (event > 0) {
+            if (contains(loans, book)) {
+                return loans;
+            }
+            int[] out = Arrays.copyOf(loans, loans.length + 1);
+            out[loans.length] = book;
+            return out;
+        }
+        int[] out = new int[loans.length];
+        int   n   = 0;
+        for (int b : loans) {
+            if (b != book) {
+                out[n++] = b;
+            }
+        }
+        return (n == loans.length) ? loans : Arrays.copyOf(out, n);
+    }
+
+    private static boolean contains(int[] values, int value) {
+        for (int v : values) {
+            if (v == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int words(int bits) {
+        return (bits + 63) >>> 6;
+    }
+
+    /** Versions of one book, or loan events of one member, oldest first */
+    private static final class Chain {
+        private long[] times  = new long[2];
+        private int[]  values = new int[2];
+        private int    size;
+        private int[]  base;               // member loans before times[0]
+
+        Chain(int[] base) {
+            this.base = base;
+        }
+
+        void add(long t, int value) {
+            if (size == times.length) {
+                int cap = size + (size >> 1) + 1;
+                times  = Arrays.copyOf(times, cap);
+                values = Arrays.copyOf(values, cap);
+            }
+            times[size]  = t;
+            values[size] = value;
+            size++;
+        }
+
+        /** Index of the last entry stamped at or before t, or -1 */
+        int lastAtOrBefore(long t) {
+            int lo = 0, hi = size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (times[mid] <= t) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo - 1;
+        }
+
+        void dropFirst(int n) {
+            if (n <= 0) {
+                return;
+            }
+            size -= n;
+            int cap = Math.max(2, size + (size >> 1));
+            if (cap < times.length / 2) {
+                times  = Arrays.copyOfRange(times,  n, n + cap);
+                values = Arrays.copyOfRange(values, n, n + cap);
+            } else {
+                System.arraycopy(times,  n, times,  0, size);
+                System.arraycopy(values, n, values, 0, size);
+            }
+        }
+
+        long bytes() {
+            return 48 + 8L * times.length + 4L * values.length + 4L * base.length;
+        }
+    }
+
+    /** Borrowed-book bitset after the first logPos log events */
+    private static final class Checkpoint {
+        private final long   time;
+        private final long   logPos;
+        private final long[] borrowed;
+
+        Checkpoint(long time, long logPos, long[] borrowed) {
+            this.time     = time;
+            this.logPos   = logPos;
+            this.borrowed = borrowed;
+        }
+    }
+}
@@ -0,0 +1,1343 @@
+package main;
+
+import exception.*;
+import model.Book;
+import model.Isbn;
+import model.Member;
+import service.AvailabilityHistory;
+import service.CatalogueExporter;
+import service.FuzzyIndex;
+import service.LibraryService;
+import service.ReplicationFollower;
+import service.ReplicationLeader;
+import service.ShardedLibraryService;
+import service.StockTake;
+import service.SuggestionIndex;
+import service.TableRenderer;
+import service.TieredBookStore;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * ============================================================
+ *  CLASS   : Benchmarks
+ *  PACKAGE : main
+ *  PURPOSE : Repeatable micro-benchmarks for the indexes and hot
+ *            paths, each checking its result as well as timing it.
+ *            Run with  Main --bench <name> [size].
+ *
+ *  HOW IT WORKS:
+ *    - Each benchmark builds a synthetic, seeded data set, warms up
+ *      (WARMUP_ROUNDS passes, so the JIT has compiled the code under
+ *      test) and then times every operation on its own with
+ *      System.nanoTime().
+ *    - Results are printed as p50/p99/mean per operation, plus the
+ *      quality figures the benchmark exists for (recall, speed-up).
+ *    - There is no JMH in this build, so numbers are indicative:
+ *      run on an idle machine and compare runs on the same machine.
+ *
+ *  BENCHMARKS:
+ *    fuzzy [books]   FuzzyIndex recall against a brute-force scan of
+ *                    the vocabulary, and query latency by word length
+ *    suggest [books] SuggestionIndex heap size next to the raw text it
+ *                    indexes, lookup latency by prefix length, and the
+ *                    answers checked against a scan of every entry
+ *    checkout [books] borrow + return by scanned ISBN (hyphenated,
+ *                    bare and ISBN-10 forms) through LibraryService,
+ *                    next to finding the copy with a catalogue scan
+ *    shards [books]  ShardedLibraryService with 1, 2, 4, 8 and 16
+ *                    shards: borrow/return throughput from CLIENTS
+ *                    threads and search fan-out latency
+ *    render [rows]   book table export: TableRenderer against the
+ *                    String.format + println rows it replaced, output
+ *                    checked byte for byte
+ *    replica [books] reads/s from CLIENTS threads on a replication
+ *                    follower next to the leader, each idle and while
+ *                    the leader takes borrow/return writes
+ *    export [rows]   CatalogueExporter MB/s, allocation per row and peak
+ *                    heap for every format, plain and gzip, on a tiered
+ *                    catalogue (10M rows fit in about 3 GB of heap)
+ *    tiered [books]  heap and borrow/return latency on a TieredBookStore
+ *                    next to the in-memory catalogue, and every consumer
+ *                    of the catalogue checked against the in-memory one
+ * ============================================================
+ */
+public final class Benchmarks {
+
+    private static final long SEED          = 42L;
+    private static final int  WARMUP_ROUNDS = 2;
+    private static final int  CLIENTS       = 16;    // threads for the concurrent benchmarks
+
+    /** Syllables for synthetic words: 1-4 of them give 2-12 letters */
+    private static final String[] SYLLABLES = {
+        "ka", "lo", "mir", "an", "tes", "ru", "vel", "do", "shi", "mon",
+        "ar", "ith", "el", "ba", "quo", "ne", "sa", "tor", "li", "gen"
+    };
+
+    private Benchmarks() { }
+
+    /**
+     * Runs one benchmark by name.
+     *
+     * @param name benchmark to run (see the class comment)
+     * @param size data set size, or 0 for the benchmark's default
+     * @return exit status: 0 done, 2 unknown benchmark
+     */
+    public static int run(String name, int size) {
+        switch (name) {
+            case "fuzzy":
+                fuzzy(size > 0 ? size : 50_000);
+                return 0;
+            case "suggest":
+                suggest(size > 0 ? size : 200_000);
+                return 0;
+            case "checkout":
+                checkout(size > 0 ? size : 100_000);
+                return 0;
+            case "shards":
+                shards(size > 0 ? size : 100_000);
+                return 0;
+            case "render":
+                render(size > 0 ? size : 1_000_000);
+                return 0;
+            case "replica":
+                replica(size > 0 ? size : 100_000);
+                return 0;
+            case "tiered":
+                tiered(size > 0 ? size : 100_000);
+                return 0;
+            case "export":
+                export(size > 0 ? size : 1_000_000);
+                return 0;
+            default:
+                System.err.println("  [✘] Unknown benchmark: " + name
+                        + " (try: fuzzy, suggest, checkout, shards, render, replica, tiered, export)");
+                return 2;
+        }
+    }
+
+    // ==============================================================
+    //   FUZZY SEARCH
+    // ==============================================================
+
+    /**
+     * Single-word typo queries against FuzzyIndex. The expected
+     * answer is every book with a word within the allowed edits of
+     * the query, found by checking the whole vocabulary.
+     */
+    private static void fuzzy(int books) {
+        SplittableRandom rnd = new SplittableRandom(SEED);
+        String[] vocabulary = new String[Math.max(1000, books / 5)];
+        for (int i = 0; i < vocabulary.length; i++) {
+            vocabulary[i] = word(rnd);
+        }
+
+        FuzzyIndex index = new FuzzyIndex();
+        Map<String, Set<Book>> postings = new HashMap<>();
+        for (int i = 0; i < books; i++) {
+            StringBuilder title = new StringBuilder();
+            for (int w = 2 + rnd.nextInt(3); w > 0; w--) {
+                title.append(title.length() == 0 ? "" : " ").append(vocabulary[rnd.nextInt(vocabulary.length)]);
+            }
+            String author = vocabulary[rnd.nextInt(vocabulary.length)] + " " + vocabulary[rnd.nextInt(vocabulary.length)];
+            Book book = new Book("FB" + i, title.toString(), author, "Fiction");
+            index.add(book);
+            for (String token : (title + " " + author).split(" ")) {
+                postings.computeIfAbsent(token, t -> new HashSet<>()).add(book);
+            }
+        }
+
+        // Queries: a word of a random book with one or two typos
+        int queryCount = 2_000;
+        String[] queries = new String[queryCount];
+        for (int i = 0; i < queryCount; i++) {
+            String w = vocabulary[rnd.nextInt(vocabulary.length)];
+            queries[i] = typo(typo(w, rnd), rnd);
+        }
+
+        for (int r = 0; r < WARMUP_ROUNDS; r++) {
+            for (String q : queries) {
+                index.search(q, FuzzyIndex.MAX_EDITS);
+            }
+        }
+
+        Map<String, Stats> byLength = new LinkedHashMap<>();
+        byLength.put("≤ 5 letters",  new Stats(queryCount));
+        byLength.put("6 letters",    new Stats(queryCount));
+        byLength.put("7-8 letters",  new Stats(queryCount));
+        byLength.put("≥ 9 letters",  new Stats(queryCount));
+        Stats all = new Stats(queryCount);
+        long expected = 0, found = 0, extra = 0;
+        for (String q : queries) {
+            long start = System.nanoTime();
+            List<Book> hits = index.search(q, FuzzyIndex.MAX_EDITS);
+            long nanos = System.nanoTime() - start;
+
+            int k = q.length() <= 2 ? 0 : q.length() <= 5 ? 1 : FuzzyIndex.MAX_EDITS;
+            Set<Book> truth = new HashSet<>();
+            for (Map.Entry<String, Set<Book>> e : postings.entrySet()) {
+                if (distance(q, e.getKey()) <= k) {
+                    truth.addAll(e.getValue());
+                }
+            }
+            Set<Book> got = new HashSet<>(hits);
+            expected += truth.size();
+            for (Book b : truth) {
+                if (got.contains(b)) {
+                    found++;
+                }
+            }
+            got.removeAll(truth);
+            extra += got.size();
+
+            String bucket = q.length() <= 5 ? "≤ 5 letters" : q.length() == 6 ? "6 letters"
+                    : q.length() <= 8 ? "7-8 letters" : "≥ 9 letters";
+            byLength.get(bucket).add(nanos);
+            all.add(nanos);
+        }
+
+        System.out.printf("%n  Fuzzy search: %d books, %d distinct words, %d queries (maxEdits %d)%n",
+                books, postings.size(), queryCount, FuzzyIndex.MAX_EDITS);
+        printHeader();
+        for (Map.Entry<String, Stats> e : byLength.entrySet()) {
+            e.getValue().print(e.getKey());
+        }
+        all.print("all");
+        printFooter();
+        System.out.printf("  Recall %.4f (%d of %d expected books), %d unexpected%n",
+                expected == 0 ? 1.0 : (double) found / expected, found, expected, extra);
+    }
+
+    // ==============================================================
+    //   AUTOCOMPLETE
+    // ==============================================================
+
+    /**
+     * Builds SuggestionIndex over multi-word titles with skewed
+     * circulation counts, then types 1-6 letter prefixes of random
+     * title and author words.
+     */
+    private static void suggest(int books) {
+        SplittableRandom rnd = new SplittableRandom(SEED);
+        String[] vocabulary = new String[20_000];
+        for (int i = 0; i < vocabulary.length; i++) {
+            vocabulary[i] = capitalize(word(rnd));
+        }
+        List<Book> catalogue = new ArrayList<>(books);
+        Map<String, Long> weights = new HashMap<>();   // text → summed circulation
+        for (int i = 0; i < books; i++) {
+            StringBuilder title = new StringBuilder();
+            for (int w = 2 + rnd.nextInt(5); w > 0; w--) {
+                title.append(title.length() == 0 ? "" : " ").append(vocabulary[rnd.nextInt(vocabulary.length)]);
+            }
+            String author = vocabulary[rnd.nextInt(vocabulary.length)] + " "
+                    + vocabulary[rnd.nextInt(vocabulary.length / 4)];
+            Book book = new Book("SG" + i, title.toString(), author, "Fiction");
+            int loans = 1000 / (1 + rnd.nextInt(1000));   // a few bestsellers
+            book.restoreLoanState(true, null, loans);
+            catalogue.add(book);
+            weights.merge(book.getTitle(),  (long) loans, Long::sum);
+            weights.merge(book.getAuthor(), (long) loans, Long::sum);
+        }
+
+        // Heap held by the distinct texts alone, then by the index
+        long before = usedHeap();
+        List<String> raw = new ArrayList<>(weights.size());
+        long rawChars = 0;
+        for (String text : weights.keySet()) {
+            raw.add(new String(text.toCharArray()));
+            rawChars += text.length();
+        }
+        long rawBytes = usedHeap() - before;
+
+        before = usedHeap();
+        long buildStart = System.nanoTime();
+        SuggestionIndex index = SuggestionIndex.bulkLoad(catalogue);
+        long buildNanos = System.nanoTime() - buildStart;
+        long indexBytes = usedHeap() - before;
+
+        String[] prefixes = new String[20_000];
+        for (int i = 0; i < prefixes.length; i++) {
+            String w = vocabulary[rnd.nextInt(vocabulary.length)].toLowerCase();
+            prefixes[i] = w.substring(0, Math.min(w.length(), 1 + rnd.nextInt(6)));
+        }
+        for (int r = 0; r < WARMUP_ROUNDS; r++) {
+            for (String p : prefixes) {
+                index.suggest(p, SuggestionIndex.MAX_SUGGESTIONS);
+            }
+        }
+        Map<String, Stats> byLength = new LinkedHashMap<>();
+        for (int len = 1; len <= 6; len++) {
+            byLength.put(len + (len == 1 ? " letter" : " letters"), new Stats(prefixes.length));
+        }
+        Stats all = new Stats(prefixes.length);
+        for (String p : prefixes) {
+            long start = System.nanoTime();
+            index.suggest(p, SuggestionIndex.MAX_SUGGESTIONS);
+            long nanos = System.nanoTime() - start;
+            byLength.get(p.length() + (p.length() == 1 ? " letter" : " letters")).add(nanos);
+            all.add(nanos);
+        }
+
+        // Check a sample against a scan of every entry
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(weights.entrySet());
+        entries.sort((a, b) -> {
+            int cmp = Long.compare(b.getValue(), a.getValue());
+            return cmp != 0 ? cmp : a.getKey().compareToIgnoreCase(b.getKey());
+        });
+        int checked = 0, wrong = 0;
+        for (int i = 0; i < prefixes.length; i += 40) {
+            String p = prefixes[i];
+            List<String> expected = new ArrayList<>();
+            for (Map.Entry<String, Long> e : entries) {
+                String norm = e.getKey().toLowerCase();
+                if (norm.startsWith(p) || norm.contains(" " + p)) {
+                    expected.add(e.getKey());
+                    if (expected.size() == SuggestionIndex.MAX_SUGGESTIONS) break;
+                }
+            }
+            checked++;
+            if (!expected.equals(index.suggest(p, SuggestionIndex.MAX_SUGGESTIONS))) {
+                wrong++;
+            }
+        }
+
+        System.out.printf("%n  Autocomplete: %d books, %d distinct titles/authors (%d chars), built in %d ms%n",
+                books, weights.size(), rawChars, buildNanos / 1_000_000);
+        System.out.printf("  Heap: raw text %.1f MB, index %.1f MB (%.2fx the text)%n",
+                rawBytes / 1e6, indexBytes / 1e6, (double) indexBytes / Math.max(1, rawBytes));
+        printHeader();
+        for (Map.Entry<String, Stats> e : byLength.entrySet()) {
+            e.getValue().print(e.getKey());
+        }
+        all.print("all");
+        printFooter();
+        System.out.printf("  Checked %d prefixes against a full scan: %d wrong%n", checked, wrong);
+        if (raw.isEmpty() || index.suggest("", 1) == null) {
+            System.out.println();   // keeps both measured structures reachable until here
+        }
+    }
+
+    // ==============================================================
+    //   CHECKOUT BY ISBN
+    // ==============================================================
+
+    /**
+     * A desk scanner checking books out and back in: every scan is
+     * parsed, looked up in the ISBN index and borrowed (or returned)
+     * by LibraryService, each call timed on its own. For comparison
+     * the copy is also found by scanning the catalogue for the packed
+     * ISBN, which is what a lookup costs without the index.
+     */
+    private static void checkout(int books) {
+        SplittableRandom rnd = new SplittableRandom(SEED);
+        LibraryService service = new LibraryService();
+        service.setEcho(false);
+        long[] isbns = new long[books];
+        int memberCount = 1_000;
+        try {
+            for (int i = 0; i < books; i++) {
+                isbns[i] = isbn13(978_000_000_000L + rnd.nextLong(1_000_000_000L));
+                service.addBook(new Book("CB" + i, "Title " + i, "Author " + (i % 977), "Fiction", isbns[i]));
+            }
+            for (int i = 0; i < memberCount; i++) {
+                service.registerMember(new Member("CM" + i, "Member " + i, "c" + i + "@bench.example",
+                        "555" + (1_000_000 + i)));
+            }
+        } catch (DuplicateEntryException e) {
+            System.err.println("  [✘] Set-up failed: " + e.getMessage());
+            return;
+        }
+
+        // What the scanner sends: hyphenated, bare or ISBN-10
+        int scanCount = 100_000;
+        String[] scans = new String[scanCount];
+        for (int i = 0; i < scanCount; i++) {
+            scans[i] = scannedForm(isbns[rnd.nextInt(books)], rnd.nextInt(3));
+        }
+
+        Stats borrow = new Stats(scanCount), giveBack = new Stats(scanCount);
+        int failed = 0;
+        for (int r = 0; r <= WARMUP_ROUNDS; r++) {
+            boolean measure = (r == WARMUP_ROUNDS);
+            long start = System.nanoTime();
+            for (int i = 0; i < scanCount; i++) {
+                String member = "CM" + (i % memberCount);
+                try {
+                    long t0 = System.nanoTime();
+                    service.borrowBookByIsbn(member, scans[i]);
+                    long t1 = System.nanoTime();
+                    service.returnBookByIsbn(member, scans[i]);
+                    long t2 = System.nanoTime();
+                    if (measure) {
+                        borrow.add(t1 - t0);
+                        giveBack.add(t2 - t1);
+                    }
+                } catch (MemberNotFoundException | BookNotFoundException | BookNotAvailableException
+                         | BorrowLimitExceededException | InvalidIsbnException e) {
+                    failed++;
+                }
+            }
+            if (measure) {
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.out.printf("%n  Checkout by ISBN: %d books, %d scans, %.0f checkouts/s"
+                        + " (borrow + return), %d failed%n", books, scanCount, scanCount / seconds, failed);
+            }
+        }
+
+        // The same borrows, finding the copy by scanning the catalogue
+        int scanned = Math.min(scanCount, 2_000);
+        Stats linear = new Stats(scanned);
+        for (int i = 0; i < scanned; i++) {
+            String member = "CM" + (i % memberCount);
+            try {
+                long t0 = System.nanoTime();
+                long isbn = Isbn.parse(scans[i]);
+                String bookId = null;
+                synchronized (service) {
+                    for (Book b : service.getBooks()) {
+                        if (b.getIsbn13() == isbn && b.isAvailable()) {
+                            bookId = b.getBookId();
+                            break;
+                        }
+                    }
+                }
+                service.borrowBook(member, bookId);
+                linear.add(System.nanoTime() - t0);
+                service.returnBook(member, bookId);
+            } catch (MemberNotFoundException | BookNotFoundException | BookNotAvailableException
+                     | BorrowLimitExceededException | InvalidIsbnException e) {
+                failed++;
+            }
+        }
+
+        printHeader();
+        borrow.print("borrow (index)");
+        giveBack.print("return (index)");
+        linear.print("borrow (scan)");
+        printFooter();
+        System.out.printf("  Index lookup is %.0fx faster than a catalogue scan at p50%n",
+                (double) linear.percentile(50) / Math.max(1, borrow.percentile(50)));
+    }
+
+    /** Packs 978 + nine digits with a correct ISBN-13 check digit */
+    private static long isbn13(long first12) {
+        long v = first12;
+        int sum = 0;
+        for (int i = 11; i >= 0; i--, v /= 10) {
+            sum += (int) (v % 10) * ((i % 2 == 0) ? 1 : 3);
+        }
+        return first12 * 10 + (10 - sum % 10) % 10;
+    }
+
+    /** 0 = "978-0132350884", 1 = "9780132350884", 2 = "0-13-235088-2" */
+    private static String scannedForm(long isbn, int form) {
+        String digits = Long.toString(isbn);
+        if (form == 0) {
+            return Isbn.format(isbn);
+        }
+        if (form == 1) {
+            return digits;
+        }
+        String body = digits.substring(3, 12);
+        int sum = 0;
+        for (int i = 0; i < 9; i++) {
+            sum += (body.charAt(i) - '0') * (10 - i);
+        }
+        int check = (11 - sum % 11) % 11;
+        return body.charAt(0) + "-" + body.substring(1, 3) + "-" + body.substring(3, 9) + "-"
+                + (check == 10 ? "X" : String.valueOf(check));
+    }
+
+    // ==============================================================
+    //   SHARD SCALING
+    // ==============================================================
+
+    /**
+     * The same catalogue split over 1 to 16 shards. CLIENTS threads
+     * each borrow and return random books for their own members;
+     * a member and book on different shards make a cross-shard
+     * loan. Then a run of keyword searches is fanned out.
+     */
+    private static void shards(int books) {
+        int members  = 10_000;
+        int pairs    = 40_000;   // borrow + return, shared by all clients
+        int searches = 200;
+        System.out.printf("%n  Shard scaling: %d books, %d members, %d clients, %d CPU(s)%n",
+                books, members, CLIENTS, Runtime.getRuntime().availableProcessors());
+        System.out.println("  ┌────────┬──────────┬──────────┬──────────┬─────────┬────────────┬────────────┐");
+        System.out.println("  │ Shards │ loans/s  │  p50 µs  │  p99 µs  │ cross % │ search p50 │ search p99 │");
+        System.out.println("  ├────────┼──────────┼──────────┼──────────┼─────────┼────────────┼────────────┤");
+        for (int shardCount = 1; shardCount <= 16; shardCount *= 2) {
+            try (ShardedLibraryService service = new ShardedLibraryService(shardCount)) {
+                service.setEcho(false);
+                try {
+                    for (int i = 0; i < books; i++) {
+                        service.addBook(new Book("SB" + i, "Title " + i, "Author " + (i % 977), "Fiction"));
+                    }
+                    for (int i = 0; i < members; i++) {
+                        service.registerMember(new Member("SM" + i, "Member " + i, "s" + i + "@bench.example",
+                                "555" + (1_000_000 + i)));
+                    }
+                } catch (DuplicateEntryException e) {
+                    System.err.println("  [✘] Set-up failed: " + e.getMessage());
+                    return;
+                }
+
+                runLoans(service, books, members, pairs / 4);   // warm-up
+                Stats loans = new Stats(pairs);
+                long[] cross = new long[1];
+                long start = System.nanoTime();
+                runLoans(service, books, members, pairs, loans, cross);
+                double seconds = (System.nanoTime() - start) / 1e9;
+
+                Stats search = new Stats(searches);
+                for (int i = 0; i < searches; i++) {
+                    long t0 = System.nanoTime();
+                    service.searchBook("title " + (i * 37 % books));
+                    search.add(System.nanoTime() - t0);
+                }
+                System.out.printf("  │ %6d │ %8.0f │ %8.1f │ %8.1f │ %6.1f%% │ %7.0f µs │ %7.0f µs │%n",
+                        shardCount, pairs / seconds, loans.percentile(50) / 1000.0,
+                        loans.percentile(99) / 1000.0, 100.0 * cross[0] / pairs,
+                        search.percentile(50) / 1000.0, search.percentile(99) / 1000.0);
+            }
+        }
+        System.out.println("  └────────┴──────────┴──────────┴──────────┴─────────┴────────────┴────────────┘");
+    }
+
+    private static void runLoans(ShardedLibraryService service, int books, int members, int pairs) {
+        runLoans(service, books, members, pairs, new Stats(pairs), new long[1]);
+    }
+
+    /** CLIENTS threads share the pairs; timings go into stats, cross-shard count into cross[0] */
+    private static void runLoans(ShardedLibraryService service, int books, int members, int pairs,
+                                 Stats stats, long[] cross) {
+        CountDownLatch done = new CountDownLatch(CLIENTS);
+        Stats[] local = new Stats[CLIENTS];
+        long[]  crossed = new long[CLIENTS];
+        for (int c = 0; c < CLIENTS; c++) {
+            final int client = c;
+            local[c] = new Stats(pairs / CLIENTS + 1);
+            Thread t = new Thread(() -> {
+                SplittableRandom rnd = new SplittableRandom(SEED + client);
+                for (int i = client; i < pairs; i += CLIENTS) {
+                    String member = "SM" + (client + CLIENTS * rnd.nextInt(members / CLIENTS));
+                    String book   = "SB" + rnd.nextInt(books);
+                    if (service.shardForMember(member) != service.shardForBook(book)) {
+                        crossed[client]++;
+                    }
+                    long t0 = System.nanoTime();
+                    try {
+                        service.borrowBook(member, book);
+                        service.returnBook(member, book);
+                    } catch (MemberNotFoundException | BookNotFoundException
+                             | BookNotAvailableException | BorrowLimitExceededException e) {
+                        // another client holds the book: counted like a loan
+                    }
+                    local[client].add(System.nanoTime() - t0);
+                }
+                done.countDown();
+            }, "bench-client-" + c);
+            t.setDaemon(true);
+            t.start();
+        }
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (int c = 0; c < CLIENTS; c++) {
+            stats.addAll(local[c]);
+            cross[0] += crossed[c];
+        }
+    }
+
+    // ==============================================================
+    //   TABLE EXPORT
+    // ==============================================================
+
+    /** Row format of the book table before TableRenderer */
+    private static final String BOOK_ROW_FORMAT = "  | %-8s | %-32s | %-18s | %-13s | %-9s |";
+
+    /**
+     * Writes the same book rows three ways to a sink that discards
+     * them: String.format + println (the old listing code), the
+     * current Book.toString() + println, and TableRenderer. Buffers
+     * are the same size, so only formatting and encoding differ.
+     */
+    private static void render(int rows) {
+        SplittableRandom rnd = new SplittableRandom(SEED);
+        String[] titles = { "Dune", "The Left Hand of Darkness and Other Stories of Gethen",
+                            "Café au lait", "Ōkami: A Natural History", "Sapiens" };
+        Book[] books = new Book[rows];
+        for (int i = 0; i < rows; i++) {
+            books[i] = new Book("RB" + i, titles[rnd.nextInt(titles.length)] + " " + i,
+                    "Author Name " + rnd.nextInt(1000), "Science Fiction");
+            if (rnd.nextInt(4) == 0) {
+                books[i].markBorrowed("RM1");
+            }
+        }
+
+        // Same bytes?
+        int sample = Math.min(rows, 20_000);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        ByteArrayOutputStream actual   = new ByteArrayOutputStream();
+        try {
+            formatRows(books, sample, expected);
+            rendererRows(books, sample, actual);
+        } catch (IOException e) {
+            System.err.println("  [✘] Render failed: " + e.getMessage());
+            return;
+        }
+        boolean identical = Arrays.equals(expected.toByteArray(), actual.toByteArray());
+
+        double[] best = { Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE };
+        OutputStream sink = OutputStream.nullOutputStream();
+        try {
+            for (int r = 0; r < WARMUP_ROUNDS + 3; r++) {
+                long t0 = System.nanoTime();
+                formatRows(books, rows, sink);
+                long t1 = System.nanoTime();
+                toStringRows(books, rows, sink);
+                long t2 = System.nanoTime();
+                rendererRows(books, rows, sink);
+                long t3 = System.nanoTime();
+                if (r >= WARMUP_ROUNDS) {
+                    best[0] = Math.min(best[0], (double) (t1 - t0) / rows);
+                    best[1] = Math.min(best[1], (double) (t2 - t1) / rows);
+                    best[2] = Math.min(best[2], (double) (t3 - t2) / rows);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("  [✘] Render failed: " + e.getMessage());
+            return;
+        }
+
+        System.out.printf("%n  Book table export: %d rows, best of 3 passes after %d warm-up%n",
+                rows, WARMUP_ROUNDS);
+        System.out.println("  ┌──────────────────────────────┬──────────┬──────────┐");
+        System.out.println("  │ Path                         │  ns/row  │ speed-up │");
+        System.out.println("  ├──────────────────────────────┼──────────┼──────────┤");
+        String[] labels = { "String.format + println", "Book.toString + println", "TableRenderer" };
+        for (int i = 0; i < 3; i++) {
+            System.out.printf("  │ %-28s │ %8.0f │ %7.1fx │%n", labels[i], best[i], best[0] / best[i]);
+        }
+        System.out.println("  └──────────────────────────────┴──────────┴──────────┘");
+        System.out.println("  First " + sample + " rows byte-identical to String.format: " + identical);
+    }
+
+    private static void formatRows(Book[] books, int rows, OutputStream sink) {
+        PrintStream out = new PrintStream(new BufferedOutputStream(sink, TableRenderer.DEFAULT_BUFFER_BYTES),
+                false, StandardCharsets.UTF_8);
+        for (int i = 0; i < rows; i++) {
+            Book b = books[i];
+            out.println(String.format(BOOK_ROW_FORMAT, b.getBookId(), cut(b.getTitle(), 32),
+                    cut(b.getAuthor(), 18), cut(b.getGenre(), 13), b.isAvailable() ? "Available" : "Borrowed"));
+        }
+        out.flush();
+    }
+
+    private static void toStringRows(Book[] books, int rows, OutputStream sink) {
+        PrintStream out = new PrintStream(new BufferedOutputStream(sink, TableRenderer.DEFAULT_BUFFER_BYTES),
+                false, StandardCharsets.UTF_8);
+        for (int i = 0; i < rows; i++) {
+            out.println(books[i]);
+        }
+        out.flush();
+    }
+
+    private static void rendererRows(Book[] books, int rows, OutputStream sink) throws IOException {
+        TableRenderer out = new TableRenderer(Channels.newChannel(sink));
+        for (int i = 0; i < rows; i++) {
+            out.writeBookRow(books[i]);
+        }
+        out.flush();
+    }
+
+    private static String cut(String s, int max) {
+        return (s.length() > max) ? s.substring(0, max - 2) + ".." : s;
+    }
+
+    // ==============================================================
+    //   REPLICA READS
+    // ==============================================================
+
+    private static final int READ_MILLIS = 3_000;   // length of each replica case
+
+    /**
+     * What a read-only follower buys: CLIENTS threads read for
+     * READ_MILLIS from the leader or from a follower's replica, first
+     * with the desk idle and then while one desk thread borrows and
+     * returns on the leader as fast as it can. Reads are ISBN lookups,
+     * with every fourth an autocomplete. The follower is caught up
+     * before each case, and its largest lag during the writes is shown.
+     */
+    private static void replica(int books) {
+        int members = 1_000;
+        SplittableRandom rnd = new SplittableRandom(SEED);
+        long[] isbns = new long[books];
+        LibraryService desk = new LibraryService();
+        desk.setEcho(false);
+        try {
+            for (int i = 0; i < books; i++) {
+                isbns[i] = isbn13(978_000_000_000L + rnd.nextLong(1_000_000_000L));
+                desk.addBook(new Book("PB" + i, "Title " + i, "Author " + (i % 977), "Fiction", isbns[i]));
+            }
+            for (int i = 0; i < members; i++) {
+                desk.registerMember(new Member("PM" + i, "Member " + i, "p" + i + "@bench.example",
+                        "555" + (1_000_000 + i)));
+            }
+        } catch (DuplicateEntryException e) {
+            System.err.println("  [✘] Set-up failed: " + e.getMessage());
+            return;
+        }
+
+        try (ReplicationLeader leader = new ReplicationLeader(desk, 0)) {
+            leader.start();
+            LibraryService copy = new LibraryService();
+            try (ReplicationFollower follower = new ReplicationFollower(copy, "localhost", leader.getPort())) {
+                follower.start();
+                System.out.printf("%n  Replica reads: %d books, %d clients, %d ms per case, %d CPU(s)%n",
+                        books, CLIENTS, READ_MILLIS, Runtime.getRuntime().availableProcessors());
+                System.out.println("  ┌───────────────────┬──────────┬──────────┬──────────┬──────────┬─────────┐");
+                System.out.println("  │ Reads on          │  reads/s │  p50 µs  │  p99 µs  │ writes/s │ max lag │");
+                System.out.println("  ├───────────────────┼──────────┼──────────┼──────────┼──────────┼─────────┤");
+                for (int round = 0; round < 4; round++) {
+                    boolean onFollower = round >= 2;
+                    boolean writing    = round % 2 == 1;
+                    if (!awaitCaughtUp(leader, follower)) {
+                        System.err.println("  [✘] Follower did not catch up");
+                        return;
+                    }
+                    replicaCase((onFollower ? "follower" : "leader") + (writing ? ", writing" : ", idle"),
+                            onFollower ? copy : desk, writing ? desk : null, follower, isbns, members);
+                }
+                System.out.println("  └───────────────────┴──────────┴──────────┴──────────┴──────────┴─────────┘");
+            }
+        } catch (IOException e) {
+            System.err.println("  [✘] Could not start replication leader: " + e.getMessage());
+        }
+    }
+
+    /** One row: CLIENTS readers on reader, plus a desk writer when desk is not null */
+    private static void replicaCase(String label, LibraryService reader, LibraryService desk,
+                                    ReplicationFollower follower, long[] isbns, int members) {
+        AtomicBoolean stop = new AtomicBoolean();
+        long[] writes = new long[1];
+        long[] maxLag = new long[1];
+        Thread writer = null;
+        if (desk != null) {
+            writer = new Thread(() -> {
+                SplittableRandom rnd = new SplittableRandom(SEED);
+                while (!stop.get()) {
+                    String member = "PM" + rnd.nextInt(members);
+                    String book   = "PB" + rnd.nextInt(isbns.length);
+                    try {
+                        desk.borrowBook(member, book);
+                        desk.returnBook(member, book);
+                    } catch (MemberNotFoundException | BookNotFoundException
+                             | BookNotAvailableException | BorrowLimitExceededException e) {
+                        // the only writer: cannot happen, but counted like a loan
+                    }
+                    writes[0] += 2;
+                    if (writes[0] % 512 == 0) {
+                        maxLag[0] = Math.max(maxLag[0], follower.getLagEntries());
+                    }
+                }
+            }, "bench-desk");
+            writer.setDaemon(true);
+        }
+
+        Stats[]  local   = new Stats[CLIENTS];
+        Thread[] readers = new Thread[CLIENTS];
+        for (int c = 0; c < CLIENTS; c++) {
+            final int client = c;
+            local[c] = new Stats(1 << 16);
+            readers[c] = new Thread(() -> {
+                SplittableRandom rnd = new SplittableRandom(SEED + client);
+                while (!stop.get()) {
+                    int i = rnd.nextInt(isbns.length);
+                    long t0 = System.nanoTime();
+                    if (i % 4 == 0) {
+                        reader.suggest("title " + i / 100, 10);
+                    } else {
+                        try {
+                            reader.findBooksByIsbn(Isbn.format(isbns[i]));
+                        } catch (InvalidIsbnException e) {
+                            throw new IllegalStateException(e);   // isbn13() only makes valid ones
+                        }
+                    }
+                    local[client].add(System.nanoTime() - t0);
+                }
+            }, "bench-reader-" + c);
+            readers[c].setDaemon(true);
+        }
+
+        long start = System.nanoTime();
+        if (writer != null) {
+            writer.start();
+        }
+        for (Thread t : readers) {
+            t.start();
+        }
+        try {
+            Thread.sleep(READ_MILLIS);
+            stop.set(true);
+            for (Thread t : readers) {
+                t.join();
+            }
+            if (writer != null) {
+                writer.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        Stats reads = new Stats(1 << 20);
+        for (Stats l : local) {
+            reads.addAll(l);
+        }
+        System.out.printf("  │ %-17s │ %8.0f │ %8.1f │ %8.1f │ %8s │ %7s │%n", label,
+                reads.count / seconds, reads.percentile(50) / 1000.0, reads.percentile(99) / 1000.0,
+                desk == null ? "-" : String.format("%.0f", writes[0] / seconds),
+                desk == null ? "-" : String.valueOf(maxLag[0]));
+    }
+
+    /** Waits up to 30 s for the follower to apply everything the leader has logged */
+    private static boolean awaitCaughtUp(ReplicationLeader leader, ReplicationFollower follower) {
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (follower.getAppliedSeq() < leader.getHeadSeq() || follower.getAppliedSeq() < 0) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // ==============================================================
+    //   TIERED STORAGE
+    // ==============================================================
+
+    private static final int TIERED_OPS     = 50_000;   // desk operations per service
+    private static final int TIERED_MEMBERS = 2_000;
+
+    /**
+     * The same catalogue and desk traffic on an in-memory service and
+     * on one over a TieredBookStore holding 2% of the books hot. Books
+     * are picked Zipf-skewed, so a few are busy and most are never
+     * touched. Shows the heap each service takes, borrow/return
+     * latency and the store's hit ratio and promote latency, then
+     * checks that every consumer of the catalogue sees the same thing
+     * on both: listings, searches, recommendations, rendered rows,
+     * StockTake, AvailabilityHistory and CatalogueExporter.
+     */
+    private static void tiered(int books) {
+        Path dir;
+        try {
+            dir = Files.createTempDirectory("tiered-bench");
+        } catch (IOException e) {
+            System.err.println("  [✘] Set-up failed: " + e.getMessage());
+            return;
+        }
+        TieredBookStore store = null;
+        try {
+            long before = usedHeap();
+            LibraryService memory = tieredCatalogue(null, books);
+            long memoryBytes = usedHeap() - before;
+
+            before = usedHeap();
+            store = new TieredBookStore(dir.resolve("store"), Math.max(16, books / 50),
+                    TieredBookStore.SEGMENT_BYTES);
+            LibraryService tiered = tieredCatalogue(store, books);
+            long tieredBytes = usedHeap() - before;
+
+            // Desk traffic: the same member, book and keep-or-return choices for both
+            SplittableRandom rnd = new SplittableRandom(SEED);
+            double[] cdf = new double[books];
+            double total = 0;
+            for (int i = 0; i < books; i++) {
+                total += 1.0 / (i + 1);
+                cdf[i] = total;
+            }
+            String[]  opMember = new String[TIERED_OPS];
+            String[]  opBook   = new String[TIERED_OPS];
+            boolean[] opKeep   = new boolean[TIERED_OPS];
+            for (int i = 0; i < TIERED_OPS; i++) {
+                int rank = Arrays.binarySearch(cdf, rnd.nextDouble() * total);
+                opMember[i] = "TM" + rnd.nextInt(TIERED_MEMBERS);
+                opBook[i]   = "TB" + Math.min(books - 1, rank < 0 ? -rank - 1 : rank);
+                opKeep[i]   = rnd.nextInt(4) == 0;
+            }
+
+            long[] clock = { 0 };
+            AvailabilityHistory memoryHistory = new AvailabilityHistory(memory,
+                    AvailabilityHistory.DEFAULT_RETENTION_MILLIS, () -> clock[0]);
+            AvailabilityHistory tieredHistory = new AvailabilityHistory(tiered,
+                    AvailabilityHistory.DEFAULT_RETENTION_MILLIS, () -> clock[0]);
+
+            // First half, then a stock-take of what is on the shelf, then the rest
+            Stats[] memoryStats = { new Stats(TIERED_OPS), new Stats(TIERED_OPS) };
+            Stats[] tieredStats = { new Stats(TIERED_OPS), new Stats(TIERED_OPS) };
+            int half = TIERED_OPS / 2, differ = 0;
+            for (int i = 0; i < half; i++) {
+                clock[0] = i;
+                differ += deskOp(memory, opMember[i], opBook[i], opKeep[i], memoryStats)
+                        .equals(deskOp(tiered, opMember[i], opBook[i], opKeep[i], tieredStats)) ? 0 : 1;
+            }
+            StockTake memoryTake = new StockTake(memory);
+            StockTake tieredTake = new StockTake(tiered);
+            synchronized (memory) {
+                for (Book b : memory.getBooks()) {
+                    if (b.isAvailable() && rnd.nextInt(100) != 0) {   // 1% really are missing
+                        memoryTake.scan(b.getBookId());
+                        tieredTake.scan(b.getBookId());
+                    }
+                }
+            }
+            for (String stray : new String[] { "TB" + books, "XX-1" }) {
+                memoryTake.scan(stray);
+                tieredTake.scan(stray);
+            }
+            for (int i = half; i < TIERED_OPS; i++) {
+                clock[0] = i;
+                differ += deskOp(memory, opMember[i], opBook[i], opKeep[i], memoryStats)
+                        .equals(deskOp(tiered, opMember[i], opBook[i], opKeep[i], tieredStats)) ? 0 : 1;
+            }
+
+            System.out.printf("%n  Tiered storage: %d books, %d hot, %d desk operations (Zipf-skewed books)%n",
+                    books, Math.max(16, books / 50), TIERED_OPS);
+            System.out.println("  ┌──────────────┬──────────┬────────────┬────────────┬────────────┬────────────┐");
+            System.out.println("  │ Catalogue    │ heap MB  │ borrow p50 │ borrow p99 │ return p50 │ return p99 │");
+            System.out.println("  ├──────────────┼──────────┼────────────┼────────────┼────────────┼────────────┤");
+            tieredRow("in memory", memoryBytes, memoryStats);
+            tieredRow("tiered", tieredBytes, tieredStats);
+            System.out.println("  └──────────────┴──────────┴────────────┴────────────┴────────────┴────────────┘");
+            System.out.println("  " + store);
+
+            // Every consumer, in memory against tiered
+            List<String> failed = new ArrayList<>();
+            if (differ > 0) {
+                failed.add(differ + " desk outcomes");
+            }
+            check(failed, "listing", rowsOf(memory, memory.getBooks()), rowsOf(tiered, tiered.getBooks()));
+            for (int i = 0; i < 20; i++) {
+                String word = "Title " + rnd.nextInt(books);
+                check(failed, "search \"" + word + "\"", rowsOf(memory, memory.searchBook(word)),
+                        rowsOf(tiered, tiered.searchBook(word)));
+                String typo = "Autor " + rnd.nextInt(977);
+                check(failed, "fuzzy \"" + typo + "\"", rowsOf(memory, memory.searchBook(typo, 1)),
+                        rowsOf(tiered, tiered.searchBook(typo, 1)));
+                String isbn = Isbn.format(tieredIsbn(rnd.nextInt(books)));
+                check(failed, "ISBN " + isbn, rowsOf(memory, memory.findBooksByIsbn(isbn)),
+                        rowsOf(tiered, tiered.findBooksByIsbn(isbn)));
+            }
+            for (int i = 0; i < 200; i++) {
+                String id = opBook[rnd.nextInt(TIERED_OPS)];
+                check(failed, "recommend " + id, rowsOf(memory, memory.recommend(id, 5)),
+                        rowsOf(tiered, tiered.recommend(id, 5)));
+            }
+            // The busiest books (lowest numbers), twice: the second pass should hit the cache
+            List<String> cardsMemory = new ArrayList<>(), cardsTiered = new ArrayList<>();
+            int rendered = Math.min(books, 5_000);
+            for (int pass = 0; pass < 2; pass++) {
+                synchronized (memory) {
+                    for (Book b : memory.getBooks().subList(0, rendered)) {
+                        cardsMemory.add(memory.renderBookRow(b) + memory.renderBookDetails(b));
+                    }
+                }
+                synchronized (tiered) {
+                    for (Book b : tiered.getBooks().subList(0, rendered)) {
+                        cardsTiered.add(tiered.renderBookRow(b) + tiered.renderBookDetails(b));
+                    }
+                }
+            }
+            check(failed, "rendered rows", cardsMemory, cardsTiered);
+            StockTake.Result memoryResult = memoryTake.reconcile();
+            StockTake.Result tieredResult = tieredTake.reconcile();
+            check(failed, "stock-take", List.of(memoryResult.toString(), memoryResult.getMissing(),
+                            memoryResult.getOnShelfButBorrowed(), memoryResult.getUnknown()),
+                    List.of(tieredResult.toString(), tieredResult.getMissing(),
+                            tieredResult.getOnShelfButBorrowed(), tieredResult.getUnknown()));
+            for (long t = 0; t < TIERED_OPS; t += TIERED_OPS / 10) {
+                check(failed, "available at " + t, memoryHistory.getAvailableAt(t),
+                        tieredHistory.getAvailableAt(t));
+            }
+            memoryHistory.close();
+            tieredHistory.close();
+            check(failed, "export", exported(memory, dir.resolve("memory")), exported(tiered, dir.resolve("tiered")));
+
+            System.out.println("  Rendered rows (tiered): " + tiered.getRenderCacheStats());
+            System.out.println("  Stock-take (tiered):    " + tieredResult);
+            if (failed.isEmpty()) {
+                System.out.println("  ✔ Listings, searches, recommendations, rendered rows, stock-take,"
+                        + " history and export match the in-memory catalogue");
+            } else {
+                System.out.println("  [✘] Differs from the in-memory catalogue: " + String.join(", ", failed));
+            }
+        } catch (IOException | InvalidIsbnException e) {
+            System.err.println("  [✘] Tiered benchmark failed: " + e.getMessage());
+        } finally {
+            try {
+                if (store != null) {
+                    store.close();
+                }
+                deleteTree(dir);
+            } catch (IOException e) {
+                System.err.println("  [!] Could not remove " + dir + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /** Seeded catalogue and members; three copies share each ISBN */
+    private static LibraryService tieredCatalogue(TieredBookStore store, int books) throws IOException {
+        LibraryService service = new LibraryService(store);
+        service.setEcho(false);
+        try {
+            for (int i = 0; i < books; i++) {
+                service.addBook(new Book("TB" + i, "Title " + i, "Author " + (i % 977), "Fiction",
+                        tieredIsbn(i)));
+            }
+            for (int i = 0; i < TIERED_MEMBERS; i++) {
+                service.registerMember(new Member("TM" + i, "Member " + i, "t" + i + "@bench.example",
+                        "555" + (1_000_000 + i)));
+            }
+        } catch (DuplicateEntryException e) {
+            throw new IOException("Set-up failed: " + e.getMessage(), e);
+        }
+        return service;
+    }
+
+    private static long tieredIsbn(int book) {
+        return isbn13(978_100_000_000L + book / 3);
+    }
+
+    /** Borrows, then returns unless keep; timings go into stats[0] and stats[1] */
+    private static String deskOp(LibraryService service, String member, String book, boolean keep,
+                                 Stats[] stats) {
+        try {
+            long t0 = System.nanoTime();
+            service.borrowBook(member, book);
+            stats[0].add(System.nanoTime() - t0);
+            if (!keep) {
+                long t1 = System.nanoTime();
+                service.returnBook(member, book);
+                stats[1].add(System.nanoTime() - t1);
+            }
+            return "ok";
+        } catch (MemberNotFoundException | BookNotFoundException
+                 | BookNotAvailableException | BorrowLimitExceededException e) {
+            return e.getClass().getSimpleName();
+        }
+    }
+
+    private static void tieredRow(String label, long heapBytes, Stats[] stats) {
+        System.out.printf("  │ %-12s │ %8.1f │ %7.1f µs │ %7.1f µs │ %7.1f µs │ %7.1f µs │%n", label,
+                heapBytes / 1e6, stats[0].percentile(50) / 1000.0, stats[0].percentile(99) / 1000.0,
+                stats[1].percentile(50) / 1000.0, stats[1].percentile(99) / 1000.0);
+    }
+
+    /** What a consumer sees of each book, read under the service lock */
+    private static List<String> rowsOf(LibraryService service, List<Book> books) {
+        List<String> rows = new ArrayList<>(books.size());
+        synchronized (service) {
+            for (Book b : books) {
+                rows.add(b + " " + b.getIsbn13() + " " + b.getBorrowedByMemberId() + " " + b.getCirculationCount());
+            }
+        }
+        return rows;
+    }
+
+    private static void check(List<String> failed, String what, Object expected, Object actual) {
+        if (!expected.equals(actual)) {
+            failed.add(what);
+        }
+    }
+
+    /** CSV export of the service into dir, as file name → lines */
+    private static Map<String, List<String>> exported(LibraryService service, Path dir) throws IOException {
+        new CatalogueExporter(service, CatalogueExporter.Format.CSV, false).export(dir);
+        Map<String, List<String>> files = new HashMap<>();
+        try (Stream<Path> list = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) list::iterator) {
+                files.put(file.getFileName().toString(), Files.readAllLines(file, StandardCharsets.UTF_8));
+            }
+        }
+        return files;
+    }
+
+    private static void deleteTree(Path dir) throws IOException {
+        try (Stream<Path> walk = Files.walk(dir)) {
+            for (Path p : (Iterable<Path>) walk.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(p);
+            }
+        }
+    }
+
+    // ==============================================================
+    //   CATALOGUE EXPORT
+    // ==============================================================
+
+    private static final int EXPORT_TITLES = 50_000;   // distinct titles in the catalogue
+
+    /**
+     * CatalogueExporter on a catalogue of about the given number of
+     * rows: books, one member per 100 books and one loan per member.
+     * Books are kept in tiered mode, the only way ten million of them
+     * fit in a normal heap, so the figures include decoding cold
+     * records. Every format is exported once, plain and gzip, after
+     * WARMUP_ROUNDS exports of a small catalogue. Peak heap
+     * is the sum of the heap pools' peaks, so it includes garbage not
+     * yet collected; allocation per row is what the export itself
+     * creates.
+     */
+    private static void export(int rows) {
+        int books   = Math.max(100, (int) (rows * 100L / 102));
+        int members = books / 100;
+        Path dir;
+        try {
+            dir = Files.createTempDirectory("export-bench");
+        } catch (IOException e) {
+            System.err.println("  [✘] Set-up failed: " + e.getMessage());
+            return;
+        }
+        TieredBookStore store = null;
+        try {
+            try (TieredBookStore small = new TieredBookStore(dir.resolve("warm-up-store"))) {
+                LibraryService warmUp = exportCatalogue(small, 20_000);
+                for (int r = 0; r < WARMUP_ROUNDS; r++) {
+                    for (CatalogueExporter.Format format : CatalogueExporter.Format.values()) {
+                        new CatalogueExporter(warmUp, format, r % 2 == 1).export(dir.resolve("warm-up"));
+                    }
+                }
+                deleteTree(dir.resolve("warm-up"));
+            }
+
+            store = new TieredBookStore(dir.resolve("store"));
+            long start = System.nanoTime();
+            LibraryService service = exportCatalogue(store, books);
+            long catalogueBytes = usedHeap();
+            System.out.printf("%n  Catalogue export: %d books, %d members, %d loans (loaded in %d s),"
+                            + " heap %.0f MB before exporting%n", books, members, members,
+                    (System.nanoTime() - start) / 1_000_000_000L, catalogueBytes / 1e6);
+            System.out.println("  ┌───────────────┬────────────┬──────────┬──────────┬─────────────┬───────────┐");
+            System.out.println("  │ Format        │       rows │  MB out  │   MB/s   │ B alloc/row │ peak heap │");
+            System.out.println("  ├───────────────┼────────────┼──────────┼──────────┼─────────────┼───────────┤");
+            for (CatalogueExporter.Format format : CatalogueExporter.Format.values()) {
+                for (boolean gzip : new boolean[] { false, true }) {
+                    Path out = dir.resolve(format + (gzip ? "-gz" : ""));
+                    exportRow(new CatalogueExporter(service, format, gzip), out,
+                            format.name().toLowerCase() + (gzip ? " + gzip" : ""));
+                    deleteTree(out);
+                }
+            }
+            System.out.println("  └───────────────┴────────────┴──────────┴──────────┴─────────────┴───────────┘");
+        } catch (IOException | DuplicateEntryException | MemberNotFoundException | BookNotFoundException
+                 | BookNotAvailableException | BorrowLimitExceededException e) {
+            System.err.println("  [✘] Export benchmark failed: " + e.getMessage());
+        } finally {
+            try {
+                if (store != null) {
+                    store.close();
+                }
+                deleteTree(dir);
+            } catch (IOException e) {
+                System.err.println("  [!] Could not remove " + dir + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /** Books, one member per 100 books and one loan per member, in tiered mode */
+    private static LibraryService exportCatalogue(TieredBookStore store, int books)
+            throws DuplicateEntryException, MemberNotFoundException, BookNotFoundException,
+                   BookNotAvailableException, BorrowLimitExceededException {
+        LibraryService service = new LibraryService(store);
+        service.setEcho(false);
+        // Titles repeat every EXPORT_TITLES books, as editions do: with a
+        // distinct title per book the load is spent merging the
+        // autocomplete index, not exporting.
+        for (int i = 0; i < books; i++) {
+            service.addBook(new Book("XB" + i, "Title " + (i % EXPORT_TITLES), "Author " + (i % 977), "Fiction",
+                    isbn13(978_100_000_000L + i)));
+        }
+        for (int i = 0; i < books / 100; i++) {
+            service.registerMember(new Member("XM" + i, "Member " + i, "x" + i + "@bench.example",
+                    "555" + (1_000_000 + i)));
+            service.borrowBook("XM" + i, "XB" + (i * 100));
+        }
+        return service;
+    }
+
+    /** One export, with the heap pools' peaks reset first */
+    private static void exportRow(CatalogueExporter exporter, Path out, String label) throws IOException {
+        usedHeap();
+        List<MemoryPoolMXBean> pools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+                pools.add(pool);
+            }
+        }
+        long allocatedBefore = allocatedBytes();
+        CatalogueExporter.Result result = exporter.export(out);
+        long allocated = allocatedBytes() - allocatedBefore;
+        long peak = 0;
+        for (MemoryPoolMXBean pool : pools) {
+            peak += pool.getPeakUsage().getUsed();
+        }
+        System.out.printf("  │ %-13s │ %10d │ %8.1f │ %8.1f │ %11s │ %6.0f MB │%n", label, result.getRows(),
+                result.getBytes() / 1e6, result.getMegabytesPerSecond(),
+                allocated < 0 ? "-" : String.valueOf(allocated / Math.max(1, result.getRows())), peak / 1e6);
+    }
+
+    /** Bytes allocated by this thread so far, or -1 where the JVM does not say */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    // ==============================================================
+    //   PRIVATE HELPERS
+    // ==============================================================
+
+    /** Heap in use after a few collections have settled it */
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    private static String capitalize(String s) {
+        return Character.toUpperCase(s.charAt(0)) + s.substring(1);
+    }
+
+    private static String word(SplittableRandom rnd) {
+        StringBuilder sb = new StringBuilder();
+        for (int n = 1 + rnd.nextInt(4); n > 0; n--) {
+            sb.append(SYLLABLES[rnd.nextInt(SYLLABLES.length)]);
+        }
+        return sb.toString();
+    }
+
+    /** One random substitution, insertion or deletion */
+    private static String typo(String w, SplittableRandom rnd) {
+        int  i = rnd.nextInt(w.length());
+        char c = (char) ('a' + rnd.nextInt(26));
+        switch (rnd.nextInt(3)) {
+            case 0:  return w.substring(0, i) + c + w.substring(i + 1);
+            case 1:  return w.substring(0, i) + c + w.substring(i);
+            default: return w.length() > 1 ? w.substring(0, i) + w.substring(i + 1) : w;
+        }
+    }
+
+    /** Plain Levenshtein distance, the reference the indexes are checked against */
+    private static int distance(String a, String b) {
+        int[] prev = new int[b.length() + 1];
+        int[] curr = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            prev[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            curr[0] = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                curr[j] = Math.min(Math.min(curr[j - 1] + 1, prev[j] + 1), prev[j - 1] + cost);
+            }
+            int[] swap = prev; prev = curr; curr = swap;
+        }
+        return prev[b.length()];
+    }
+
+    private static void printHeader() {
+        System.out.println("  ┌──────────────────┬─────────┬──────────┬──────────┬──────────┐");
+        System.out.println("  │ Case             │   Count │  p50 µs  │  p99 µs  │ mean µs  │");
+        System.out.println("  ├──────────────────┼─────────┼──────────┼──────────┼──────────┤");
+    }
+
+    private static void printFooter() {
+        System.out.println("  └──────────────────┴─────────┴──────────┴──────────┴──────────┘");
+    }
+
+    /** Per-operation timings of one case */
+    private static final class Stats {
+        private long[] nanos;
+        private int    count;
+
+        Stats(int capacity) {
+            this.nanos = new long[Math.max(1, capacity)];
+        }
+
+        void add(long n) {
+            if (count == nanos.length) {
+                nanos = Arrays.copyOf(nanos, count * 2);
+            }
+            nanos[count++] = n;
+        }
+
+        void addAll(Stats other) {
+            for (int i = 0; i < other.count; i++) {
+                add(other.nanos[i]);
+            }
+        }
+
+        long percentile(double p) {
+            long[] sorted = Arrays.copyOf(nanos, count);
+            Arrays.sort(sorted);
+            return sorted[Math.min(count - 1, (int) Math.ceil(p / 100 * count) - 1)];
+        }
+
+        double mean() {
+            long sum = 0;
+            for (int i = 0; i < count; i++) {
+                sum += nanos[i];
+            }
+            return (double) sum / count;
+        }
+
+        void print(String label) {
+            if (count == 0) {
+                return;
+            }
+            System.out.printf("  │ %-16s │ %7d │ %8.1f │ %8.1f │ %8.1f │%n", label, count,
+                    percentile(50) / 1000.0, percentile(99) / 1000.0, mean() / 1000.0);
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package model;
 
+import exception.InvalidIsbnException;
+
 /**
  * ============================================================
  *  CLASS   : Book
@@ -8,8 +10,9 @@ package model;
  *
  *  OOP CONCEPTS DEMONSTRATED:
  *    - Encapsulation        : All fields are private
- *    - Constructors         : Two constructors (full & without ISBN)
- *    - Method Overloading   : Two constructors with different params
+ *    - Constructors         : Three constructors (packed ISBN, text
+ *                             ISBN & without ISBN)
+ *    - Method Overloading   : Three constructors with different params
  *    - toString() Overriding: Formatted one-line table row
  * ============================================================
  */
@@ -20,14 +23,17 @@ public class Book {
     private String title;
     private String author;
     private String genre;
-    private String isbn;
+    private long   isbn;             // packed ISBN-13, Isbn.NONE if unknown
     private boolean isAvailable;           // true = on shelf, false = borrowed
     private String  borrowedByMemberId;    // null when on shelf
+    private int     circulationCount;      // historical number of loans
+    private int     version;               // bumped on every change; keys rendered views
+    private BookChangeListener changeListener; // notified by setters, may be null
 
-    // ── Constructor 1: Full details (with ISBN) ────────────────────
-    // Method Overloading: two constructors, different parameter lists
+    // ── Constructor 1: Full details (with packed ISBN) ─────────────
+    // Method Overloading: three constructors, different parameter lists
     public Book(String bookId, String title, String author,
-                String genre, String isbn) {
+                String genre, long isbn) {
         this.bookId              = bookId;
         this.title               = title;
         this.author              = author;
@@ -37,10 +43,17 @@ public class Book {
         this.borrowedByMemberId  = null;
     }
 
-    // ── Constructor 2: Without ISBN (Method Overloading) ──────────
+    // ── Constructor 2: ISBN given as text (Method Overloading) ────
+    // Accepts ISBN-10/13 with or without hyphens; blank or "N/A" means none
+    public Book(String bookId, String title, String author,
+                String genre, String isbn) throws InvalidIsbnException {
+        this(bookId, title, author, genre, Isbn.valueOf(isbn));
+    }
+
+    // ── Constructor 3: Without ISBN (Method Overloading) ──────────
     // Delegates to the full constructor using "this(...)"
     public Book(String bookId, String title, String author, String genre) {
-        this(bookId, title, author, genre, "N/A");
+        this(bookId, title, author, genre, Isbn.NONE);
     }
 
     // ── State-Changing Methods ─────────────────────────────────────
@@ -49,37 +62,75 @@ public class Book {
     public void markBorrowed(String memberId) {
         this.isAvailable        = false;
         this.borrowedByMemberId = memberId;
+        this.circulationCount++;
+        this.version++;
     }
 
     /** Called when a member returns this book */
     public void markReturned() {
         this.isAvailable        = true;
         this.borrowedByMemberId = null;
+        this.version++;
+    }
+
+    /**
+     * Restores loan state copied from another instance of the system
+     * (e.g. a replication snapshot). Not used by normal circulation.
+     */
+    public void restoreLoanState(boolean available, String borrowedByMemberId,
+                                 int circulationCount) {
+        this.isAvailable        = available;
+        this.borrowedByMemberId = available ? null : borrowedByMemberId;
+        this.circulationCount   = circulationCount;
+        this.version++;
+    }
+
+    /**
+     * Restores the version of a stored copy (e.g. one decoded from a
+     * tiered-store record), so views cached under its ID stay valid.
+     * Never moves the version backwards.
+     */
+    public void restoreVersion(int version) {
+        this.version = Math.max(this.version, version);
+    }
+
+    // ── Display Methods ────────────────────────────────────────────
+    /** Builds the multi-line detail card shown by displayInfo() */
+    public String formatDetails() {
+        String nl = System.lineSeparator();
+        return "  ┌─────────────────────────────────────" + nl
+             + "  │  Book ID  : " + bookId             + nl
+             + "  │  Title    : " + title              + nl
+             + "  │  Author   : " + author             + nl
+             + "  │  Genre    : " + genre              + nl
+             + "  │  ISBN     : " + Isbn.format(isbn)  + nl
+             + "  │  Status   : "
+             + (isAvailable ? "✔ Available" : "✘ Borrowed by [" + borrowedByMemberId + "]") + nl
+             + "  └─────────────────────────────────────" + nl;
     }
 
-    // ── Display Method ─────────────────────────────────────────────
     public void displayInfo() {
-        System.out.println("  ┌─────────────────────────────────────");
-        System.out.println("  │  Book ID  : " + bookId);
-        System.out.println("  │  Title    : " + title);
-        System.out.println("  │  Author   : " + author);
-        System.out.println("  │  Genre    : " + genre);
-        System.out.println("  │  ISBN     : " + isbn);
-        System.out.printf ("  │  Status   : %s%n",
-                isAvailable ? "✔ Available" : "✘ Borrowed by [" + borrowedByMemberId + "]");
-        System.out.println("  └─────────────────────────────────────");
+        System.out.print(formatDetails());
     }
 
     // ── toString() Overriding – produces a formatted table row ─────
     // The 2-space leading indent matches the table headers in LibraryService
     @Override
     public String toString() {
-        return String.format("  | %-8s | %-32s | %-18s | %-13s | %-9s |",
-                bookId,
-                truncate(title,  32),
-                truncate(author, 18),
-                truncate(genre,  13),
-                isAvailable ? "Available" : "Borrowed");
+        // Same text as String.format("  | %-8s | %-32s | %-18s | %-13s | %-9s |", ...)
+        // built directly, since listings render one row per book
+        StringBuilder sb = new StringBuilder(100);
+        sb.append("  | ");
+        appendCell(sb, bookId, 8);
+        sb.append(" | ");
+        appendCell(sb, truncate(title,  32), 32);
+        sb.append(" | ");
+        appendCell(sb, truncate(author, 18), 18);
+        sb.append(" | ");
+        appendCell(sb, truncate(genre,  13), 13);
+        sb.append(" | ");
+        appendCell(sb, isAvailable ? "Available" : "Borrowed", 9);
+        return sb.append(" |").toString();
     }
 
     /** Truncate long strings to fit table columns */
@@ -87,18 +138,66 @@ public class Book {
         return (s.length() > max) ? s.substring(0, max - 2) + ".." : s;
     }
 
+    /** Left-aligned cell padded with spaces to the column width */
+    private static void appendCell(StringBuilder sb, String s, int width) {
+        sb.append(s);
+        for (int i = (s == null ? 4 : s.length()); i < width; i++) {
+            sb.append(' ');
+        }
+    }
+
     // ── Getters (Encapsulation) ────────────────────────────────────
     public String  getBookId()             { return bookId;             }
     public String  getTitle()              { return title;              }
     public String  getAuthor()             { return author;             }
     public String  getGenre()              { return genre;              }
-    public String  getIsbn()               { return isbn;               }
+    public String  getIsbn()               { return Isbn.format(isbn);  }
+    public long    getIsbn13()             { return isbn;               }
     public boolean isAvailable()           { return isAvailable;        }
     public String  getBorrowedByMemberId() { return borrowedByMemberId; }
+    public int     getCirculationCount()   { return circulationCount;   }
+    public int     getVersion()            { return version;            }
 
     // ── Setters (Encapsulation) ────────────────────────────────────
-    public void setTitle(String title)   { this.title  = title;  }
-    public void setAuthor(String author) { this.author = author; }
-    public void setGenre(String genre)   { this.genre  = genre;  }
-    public void setIsbn(String isbn)     { this.isbn   = isbn;   }
+    // Each setter notifies the change listener so service indexes follow edits
+    public void setTitle(String title) {
+        String old = this.title;
+        this.title = title;
+        fireChanged("title", old);
+    }
+
+    public void setAuthor(String author) {
+        String old = this.author;
+        this.author = author;
+        fireChanged("author", old);
+    }
+
+    public void setGenre(String genre) {
+        String old = this.genre;
+        this.genre = genre;
+        fireChanged("genre", old);
+    }
+
+    /** @throws InvalidIsbnException if the text is not blank, "N/A" or a valid ISBN */
+    public void setIsbn(String isbn) throws InvalidIsbnException {
+        setIsbn(Isbn.valueOf(isbn));
+    }
+
+    public void setIsbn(long isbn) {
+        String old = Isbn.format(this.isbn);
+        this.isbn = isbn;
+        fireChanged("isbn", old);
+    }
+
+    /** Registers the (single) listener told about edits to this book */
+    public void setChangeListener(BookChangeListener listener) {
+        this.changeListener = listener;
+    }
+
+    private void fireChanged(String field, String oldValue) {
+        version++;
+        if (changeListener != null) {
+            changeListener.bookChanged(this, field, oldValue);
+        }
+    }
 }
@@ -0,0 +1,22 @@
+package model;
+
+/**
+ * ============================================================
+ *  INTERFACE : BookChangeListener
+ *  PACKAGE   : model
+ *  PURPOSE   : Callback fired by Book setters so that indexes
+ *              kept by the service layer stay current when a
+ *              book's details are edited in place.
+ * ============================================================
+ */
+public interface BookChangeListener {
+
+    /**
+     * Called after a field of the book has been changed.
+     *
+     * @param book     the book that was edited
+     * @param field    name of the changed field, e.g. "title"
+     * @param oldValue value of the field before the change
+     */
+    void bookChanged(Book book, String field, String oldValue);
+}
@@ -0,0 +1,591 @@
+package service;
+
+import model.Book;
+import model.Librarian;
+import model.Member;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * ============================================================
+ *  CLASS   : CatalogueExporter
+ *  PACKAGE : service
+ *  PURPOSE : Dumps the full state of a LibraryService — books,
+ *            members, librarians and active loans — to files for
+ *            the data warehouse, as CSV, JSON Lines or a compact
+ *            binary format, optionally gzip-compressed.
+ *
+ *  HOW IT WORKS:
+ *    - Row counts are fixed when the export starts (the lists are
+ *      append-only), so later additions are left for the next run.
+ *    - Rows are copied CHUNK_ROWS at a time while holding the
+ *      service lock, then written with the lock released. The desk
+ *      is only ever paused for one small copy, and memory stays
+ *      bounded by one chunk plus the output buffers.
+ *    - Cells are escaped and UTF-8 encoded straight into one large
+ *      ByteBuffer per file, with no String or byte[] per row. A
+ *      full buffer goes to the FileChannel, or through the JDK's
+ *      GZIP codec if enabled.
+ *    - Each chunk is consistent on its own, but the export as a
+ *      whole is not a point-in-time snapshot: a loan opened while
+ *      the export runs may appear in one file and not another.
+ *
+ *  One export per instance at a time. exportAsync() runs it on a
+ *  background thread.
+ * ============================================================
+ */
+public class CatalogueExporter {
+
+    public enum Format {
+        CSV    (".csv"),
+        JSONL  (".jsonl"),
+        BINARY (".bin");
+
+        private final String extension;
+
+        Format(String extension) { this.extension = extension; }
+
+        public String getExtension() { return extension; }
+    }
+
+    public static final int CHUNK_ROWS = 4096;
+
+    private static final int  BUFFER_BYTES  = 256 * 1024;
+    private static final int  BINARY_MAGIC  = 0x4C4D5345;   // "LMSE"
+    private static final byte BINARY_VERSION = 1;
+
+    private static final String[] BOOK_COLUMNS = {
+            "book_id", "title", "author", "genre", "isbn", "available", "borrowed_by", "circulation_count" };
+    private static final String[] MEMBER_COLUMNS = {
+            "member_id", "name", "email", "phone", "borrowed_count", "total_borrowed" };
+    private static final String[] LIBRARIAN_COLUMNS = {
+            "person_id", "name", "email", "phone", "staff_id", "department" };
+    private static final String[] LOAN_COLUMNS = {
+            "member_id", "book_id" };
+
+    /** Columns written to JSON as bare numbers/booleans ("" becomes null) */
+    private static final Set<String> UNQUOTED_JSON = Set.of(
+            "isbn", "available", "circulation_count", "borrowed_count", "total_borrowed");
+
+    private final LibraryService service;
+    private final Format         format;
+    private final boolean        gzip;
+
+    public CatalogueExporter(LibraryService service, Format format, boolean gzip) {
+        this.service = service;
+        this.format  = format;
+        this.gzip    = gzip;
+    }
+
+    // ==============================================================
+    //   EXPORT
+    // ==============================================================
+
+    /**
+     * Writes books, members, librarians and loans into the given
+     * directory (created if missing), replacing earlier files.
+     *
+     * @return row and byte counts for the files written
+     */
+    public Result export(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        long start = System.nanoTime();
+        Result result = new Result();
+
+        int bookCount, memberCount, librarianCount;
+        synchronized (service) {
+            bookCount      = service.getBooks().size();
+            memberCount    = service.getMembers().size();
+            librarianCount = service.getLibrarians().size();
+        }
+
+        try (TableWriter out = open(directory, "books", BOOK_COLUMNS, result)) {
+            String[][] rows = newChunk(BOOK_COLUMNS.length);
+            for (int from = 0; from < bookCount; from += CHUNK_ROWS) {
+                int n = copyBooks(from, Math.min(bookCount, from + CHUNK_ROWS), rows);
+                out.writeRows(rows, n);
+            }
+        }
+        try (TableWriter out = open(directory, "members", MEMBER_COLUMNS, result)) {
+            String[][] rows = newChunk(MEMBER_COLUMNS.length);
+            for (int from = 0; from < memberCount; from += CHUNK_ROWS) {
+                int n = copyMembers(from, Math.min(memberCount, from + CHUNK_ROWS), rows);
+                out.writeRows(rows, n);
+            }
+        }
+        try (TableWriter out = open(directory, "librarians", LIBRARIAN_COLUMNS, result)) {
+            String[][] rows = newChunk(LIBRARIAN_COLUMNS.length);
+            for (int from = 0; from < librarianCount; from += CHUNK_ROWS) {
+                int n = copyLibrarians(from, Math.min(librarianCount, from + CHUNK_ROWS), rows);
+                out.writeRows(rows, n);
+            }
+        }
+        try (TableWriter out = open(directory, "loans", LOAN_COLUMNS, result)) {
+            // A member holds at most MAX_BORROW_LIMIT loans, so this chunk is bounded too
+            int maxLoans = CHUNK_ROWS * Member.getMaxBorrowLimit();
+            String[][] rows = new String[maxLoans][LOAN_COLUMNS.length];
+            for (int from = 0; from < memberCount; from += CHUNK_ROWS) {
+                int n = copyLoans(from, Math.min(memberCount, from + CHUNK_ROWS), rows);
+                out.writeRows(rows, n);
+            }
+        }
+
+        result.nanos = System.nanoTime() - start;
+        return result;
+    }
+
+    /** Runs export() on a background daemon thread */
+    public CompletableFuture<Result> exportAsync(Path directory) {
+        CompletableFuture<Result> future = new CompletableFuture<>();
+        Thread t = new Thread(() -> {
+            try {
+                future.complete(export(directory));
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        }, "catalogue-export");
+        t.setDaemon(true);
+        t.start();
+        return future;
+    }
+
+    // ==============================================================
+    //   CHUNK COPIES (the only code that holds the service lock)
+    // ==============================================================
+
+    private int copyBooks(int from, int to, String[][] rows) {
+        synchronized (service) {
+            List<Book> books = service.getBooks();
+            int n = 0;
+            for (int i = from; i < to && i < books.size(); i++) {
+                Book b = books.get(i);
+                String[] r = rows[n++];
+                r[0] = b.getBookId();
+                r[1] = b.getTitle();
+                r[2] = b.getAuthor();
+                r[3] = b.getGenre();
+                r[4] = b.getIsbn13() == 0 ? "" : Long.toString(b.getIsbn13());
+                r[5] = b.isAvailable() ? "true" : "false";
+                r[6] = b.getBorrowedByMemberId() == null ? "" : b.getBorrowedByMemberId();
+                r[7] = Integer.toString(b.getCirculationCount());
+            }
+            return n;
+        }
+    }
+
+    private int copyMembers(int from, int to, String[][] rows) {
+        synchronized (service) {
+            List<Member> members = service.getMembers();
+            int n = 0;
+            for (int i = from; i < to && i < members.size(); i++) {
+                Member m = members.get(i);
+                String[] r = rows[n++];
+                copyPerson(m.getPersonId(), m.getName(), m.getEmail(), m.getPhone(), r);
+                r[4] = Integer.toString(m.getBorrowedCount());
+                r[5] = Integer.toString(m.getTotalBooksBorrowed());
+            }
+            return n;
+        }
+    }
+
+    private int copyLibrarians(int from, int to, String[][] rows) {
+        synchronized (service) {
+            List<Librarian> librarians = service.getLibrarians();
+            int n = 0;
+            for (int i = from; i < to && i < librarians.size(); i++) {
+                Librarian l = librarians.get(i);
+                String[] r = rows[n++];
+                copyPerson(l.getPersonId(), l.getName(), l.getEmail(), l.getPhone(), r);
+                r[4] = l.getStaffId();
+                r[5] = l.getDepartment();
+            }
+            return n;
+        }
+    }
+
+    private int copyLoans(int from, int to, String[][] rows) {
+        synchronized (service) {
+            List<Member> members = service.getMembers();
+            int n = 0;
+            for (int i = from; i < to && i < members.size(); i++) {
+                Member m = members.get(i);
+                for (String bookId : m.getBorrowedBookIds()) {
+                    String[] r = rows[n++];
+                    r[0] = m.getPersonId();
+                    r[1] = bookId;
+                }
+            }
+            return n;
+        }
+    }
+
+    private static void copyPerson(String id, String name, String email, String phone, String[] r) {
+        r[0] = id;
+        r[1] = name;
+        r[2] = email;
+        r[3] = phone;
+    }
+
+    private static String[][] newChunk(int columns) {
+        return new String[CHUNK_ROWS][columns];
+    }
+
+    // ==============================================================
+    //   OUTPUT
+    // ==============================================================
+
+    private TableWriter open(Path directory, String table, String[] columns, Result result)
+            throws IOException {
+        String name = table + format.getExtension() + (gzip ? ".gz" : "");
+        Path file = directory.resolve(name);
+        FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        OutputStream compressed = gzip
+                ? new GZIPOutputStream(Channels.newOutputStream(channel), BUFFER_BYTES)
+                : null;
+        return new TableWriter(table, columns, file, channel, compressed, result);
+    }
+
+    /**
+     * Writes one table in the chosen format. Every cell is encoded
+     * straight into one reusable ByteBuffer (UTF-8 by hand, as in
+     * TableRenderer), which goes to the channel, or through the
+     * compressor, only when full — no String or byte[] per row.
+     */
+    private final class TableWriter implements AutoCloseable {
+        private final String       table;
+        private final String[]     columns;
+        private final boolean[]    unquoted;     // JSON columns written as bare values
+        private final byte[][]     jsonKeys;     // ,"column": for each column
+        private final Path         file;
+        private final FileChannel  channel;
+        private final OutputStream compressed;   // null: write the channel directly
+        private final Result       result;
+        private final ByteBuffer   buf = ByteBuffer.allocate(BUFFER_BYTES);
+        private final byte[]       bytes = buf.array();
+        private int                pos;          // write position in bytes
+        private long               encoded;      // bytes handed on so far
+        private long               rows;
+
+        TableWriter(String table, String[] columns, Path file, FileChannel channel,
+                    OutputStream compressed, Result result) throws IOException {
+            this.table      = table;
+            this.columns    = columns;
+            this.file       = file;
+            this.channel    = channel;
+            this.compressed = compressed;
+            this.result     = result;
+            this.unquoted   = new boolean[columns.length];
+            this.jsonKeys   = new byte[columns.length][];
+            for (int c = 0; c < columns.length; c++) {
+                unquoted[c] = UNQUOTED_JSON.contains(columns[c]);
+                jsonKeys[c] = ((c > 0 ? ",\"" : "{\"") + columns[c] + "\":").getBytes(StandardCharsets.UTF_8);
+            }
+            writeHeader();
+        }
+
+        private void writeHeader() throws IOException {
+            switch (format) {
+                case CSV:
+                    for (int c = 0; c < columns.length; c++) {
+                        if (c > 0) ascii(',');
+                        text(columns[c]);
+                    }
+                    ascii('\n');
+                    break;
+                case BINARY:
+                    putInt(BINARY_MAGIC);
+                    ascii(BINARY_VERSION);
+                    shortText(table);
+                    room(2);
+                    bytes[pos++] = (byte) (columns.length >> 8);
+                    bytes[pos++] = (byte) columns.length;
+                    for (String c : columns) {
+                        shortText(c);
+                    }
+                    break;
+                default:
+                    break;   // JSON Lines has no header
+            }
+        }
+
+        void writeRows(String[][] chunk, int n) throws IOException {
+            for (int i = 0; i < n; i++) {
+                String[] r = chunk[i];
+                switch (format) {
+                    case CSV:
+                        for (int c = 0; c < columns.length; c++) {
+                            if (c > 0) ascii(',');
+                            csv(r[c]);
+                        }
+                        ascii('\n');
+                        break;
+                    case JSONL:
+                        for (int c = 0; c < columns.length; c++) {
+                            raw(jsonKeys[c]);
+                            if (unquoted[c]) {
+                                text(r[c].isEmpty() ? "null" : r[c]);
+                            } else {
+                                json(r[c]);
+                            }
+                        }
+                        ascii('}');
+                        ascii('\n');
+                        break;
+                    case BINARY:
+                        ascii(1);   // row marker; 0 ends the table
+                        for (int c = 0; c < columns.length; c++) {
+                            binaryText(r[c]);
+                        }
+                        break;
+                }
+            }
+            rows += n;
+        }
+
+        // ── Cell Encoders ──────────────────────────────────────────
+
+        private void csv(String s) throws IOException {
+            if (s == null) {
+                return;
+            }
+            boolean quote = false;
+            for (int i = 0; i < s.length() && !quote; i++) {
+                char ch = s.charAt(i);
+                quote = ch == ',' || ch == '"' || ch == '\n' || ch == '\r';
+            }
+            if (!quote) {
+                text(s);
+                return;
+            }
+            ascii('"');
+            int from = 0;
+            for (int i = s.indexOf('"'); i >= 0; i = s.indexOf('"', i + 1)) {
+                text(s, from, i + 1);   // up to and including the quote ...
+                from = i;               // ... which is written again, doubled
+            }
+            text(s, from, s.length());
+            ascii('"');
+        }
+
+        private void json(String s) throws IOException {
+            if (s == null) {
+                text("null");
+                return;
+            }
+            ascii('"');
+            int from = 0;
+            for (int i = 0; i < s.length(); i++) {
+                char ch = s.charAt(i);
+                if (ch >= 0x20 && ch != '"' && ch != '\\') {
+                    continue;
+                }
+                text(s, from, i);
+                from = i + 1;
+                switch (ch) {
+                    case '"':  ascii('\\'); ascii('"');  break;
+                    case '\\': ascii('\\'); ascii('\\'); break;
+                    case '\n': ascii('\\'); ascii('n');  break;
+                    case '\r': ascii('\\'); ascii('r');  break;
+                    case '\t': ascii('\\'); ascii('t');  break;
+                    default:
+                        text(String.format("\\u%04x", (int) ch));
+                }
+            }
+            text(s, from, s.length());
+            ascii('"');
+        }
+
+        /** Length-prefixed UTF-8; -1 for null (writeUTF is limited to 64 KB) */
+        private void binaryText(String s) throws IOException {
+            if (s == null) {
+                putInt(-1);
+                return;
+            }
+            putInt(utf8Length(s));
+            text(s);
+        }
+
+        /** DataOutput.writeUTF() form; table and column names are ASCII, where it equals UTF-8 */
+        private void shortText(String s) throws IOException {
+            room(2);
+            bytes[pos++] = (byte) (s.length() >> 8);
+            bytes[pos++] = (byte) s.length();
+            text(s);
+        }
+
+        // ── Byte Primitives ────────────────────────────────────────
+
+        private void text(String s) throws IOException {
+            text(s, 0, s.length());
+        }
+
+        /**
+         * UTF-8 encodes s[from, to) into the buffer. Unpaired
+         * surrogates become '?', as with String.getBytes().
+         */
+        private void text(String s, int from, int to) throws IOException {
+            int i = from;
+            while (i < to) {
+                // Room for the rest of the run at 3 bytes per char, or for at least 4 bytes
+                room(Math.min(3 * (to - i), bytes.length / 2));
+                int limit = Math.min(to, i + (bytes.length - pos) / 3);
+                while (i < limit) {
+                    char c = s.charAt(i);
+                    if (c < 0x80) {
+                        bytes[pos++] = (byte) c;
+                        i++;
+                    } else if (c < 0x800) {
+                        bytes[pos++] = (byte) (0xC0 | (c >> 6));
+                        bytes[pos++] = (byte) (0x80 | (c & 0x3F));
+                        i++;
+                    } else if (!Character.isSurrogate(c)) {
+                        bytes[pos++] = (byte) (0xE0 | (c >> 12));
+                        bytes[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                        bytes[pos++] = (byte) (0x80 | (c & 0x3F));
+                        i++;
+                    } else if (Character.isHighSurrogate(c) && i + 1 < to
+                            && Character.isLowSurrogate(s.charAt(i + 1))) {
+                        if (bytes.length - pos < 4) {
+                            break;   // pair straddles the room checked for
+                        }
+                        int cp = Character.toCodePoint(c, s.charAt(i + 1));
+                        bytes[pos++] = (byte) (0xF0 | (cp >> 18));
+                        bytes[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                        bytes[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                        bytes[pos++] = (byte) (0x80 | (cp & 0x3F));
+                        i += 2;
+                    } else {
+                        bytes[pos++] = '?';
+                        i++;
+                    }
+                }
+            }
+        }
+
+        /** Bytes text() writes for s */
+        private int utf8Length(String s) {
+            int n = 0;
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c < 0x80) {
+                    n += 1;
+                } else if (c < 0x800) {
+                    n += 2;
+                } else if (!Character.isSurrogate(c)) {
+                    n += 3;
+                } else if (Character.isHighSurrogate(c) && i + 1 < s.length()
+                        && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    n += 4;
+                    i++;
+                } else {
+                    n += 1;   // '?'
+                }
+            }
+            return n;
+        }
+
+        private void ascii(int b) throws IOException {
+            if (pos == bytes.length) {
+                flush();
+            }
+            bytes[pos++] = (byte) b;
+        }
+
+        private void raw(byte[] b) throws IOException {
+            room(b.length);
+            System.arraycopy(b, 0, bytes, pos, b.length);
+            pos += b.length;
+        }
+
+        private void putInt(int v) throws IOException {
+            room(4);
+            bytes[pos++] = (byte) (v >>> 24);
+            bytes[pos++] = (byte) (v >>> 16);
+            bytes[pos++] = (byte) (v >>> 8);
+            bytes[pos++] = (byte) v;
+        }
+
+        /** Flushes unless n more bytes fit (n is at most the buffer size) */
+        private void room(int n) throws IOException {
+            if (bytes.length - pos < n) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            if (compressed != null) {
+                compressed.write(bytes, 0, pos);
+            } else {
+                buf.limit(pos).position(0);
+                while (buf.hasRemaining()) {
+                    channel.write(buf);
+                }
+                buf.clear();
+            }
+            encoded += pos;
+            pos = 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (format == Format.BINARY) {
+                    ascii(0);
+                }
+                flush();
+                if (compressed != null) {
+                    compressed.close();   // finishes gzip and closes the channel
+                }
+            } finally {
+                if (channel.isOpen()) {
+                    channel.close();
+                }
+            }
+            result.rows      += rows;
+            result.bytes     += encoded;
+            result.fileBytes += Files.size(file);
+        }
+    }
+
+    // ==============================================================
+    //   RESULT
+    // ==============================================================
+
+    /** Totals for one export run */
+    public static final class Result {
+        private long rows;
+        private long bytes;       // encoded bytes, before compression
+        private long fileBytes;   // bytes on disk, after compression
+        private long nanos;
+
+        public long getRows()      { return rows;              }
+        public long getBytes()     { return bytes;             }
+        public long getFileBytes() { return fileBytes;         }
+        public long getMillis()    { return nanos / 1_000_000; }
+
+        /** Throughput in MB of encoded (uncompressed) output per second */
+        public double getMegabytesPerSecond() {
+            return nanos == 0 ? 0.0 : (bytes / 1e6) / (nanos / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Export[%d rows, %.1f MB (%.1f MB on disk) in %d ms, %.1f MB/s]",
+                    rows, bytes / 1e6, fileBytes / 1e6, getMillis(), getMegabytesPerSecond());
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package service;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * ============================================================
+ *  CLASS   : ChangeEvent
+ *  PACKAGE : service
+ *  PURPOSE : One entity-level change published by a ChangeFeed,
+ *            e.g. "book B003 became unavailable" or "loan of B003
+ *            to M001 opened".
+ *
+ *  Immutable. Values are copied when the change happens, so a
+ *  consumer sees the state at that moment even if the Book or
+ *  Member has changed again since.
+ * ============================================================
+ */
+public final class ChangeEvent {
+
+    public enum Type {
+        BOOK_ADDED,             // values: title, author, genre, isbn
+        BOOK_EDITED,            // field, oldValue, values: {field → new value}
+        AVAILABILITY_CHANGED,   // values: available ("true"/"false")
+        MEMBER_REGISTERED,      // values: name, email, phone
+        LIBRARIAN_ADDED,        // values: name, email, phone, staffId, department
+        PERSON_EDITED,          // personId, field, oldValue, values: {field → new value, role}
+        LOAN_OPENED,            // bookId + personId
+        LOAN_CLOSED             // bookId + personId
+    }
+
+    private final long                seq;
+    private final long                timeMillis;
+    private final Type                type;
+    private final String              bookId;     // null for person events
+    private final String              personId;   // null for book-only events
+    private final String              field;      // BOOK_EDITED only
+    private final String              oldValue;   // BOOK_EDITED only
+    private final Map<String, String> values;
+
+    ChangeEvent(long seq, long timeMillis, Type type, String bookId, String personId,
+                String field, String oldValue, String... keyValues) {
+        this.seq        = seq;
+        this.timeMillis = timeMillis;
+        this.type       = type;
+        this.bookId     = bookId;
+        this.personId   = personId;
+        this.field      = field;
+        this.oldValue   = oldValue;
+
+        Map<String, String> map = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < keyValues.length; i += 2) {
+            map.put(keyValues[i], keyValues[i + 1]);
+        }
+        this.values = Collections.unmodifiableMap(map);
+    }
+
+    // ── Getters ────────────────────────────────────────────────────
+    public long                getSeq()        { return seq;        }
+    public long                getTimeMillis() { return timeMillis; }
+    public Type                getType()       { return type;       }
+    public String              getBookId()     { return bookId;     }
+    public String              getPersonId()   { return personId;   }
+    public String              getField()      { return field;      }
+    public String              getOldValue()   { return oldValue;   }
+    public Map<String, String> getValues()     { return values;     }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append('#').append(seq).append(' ').append(type);
+        if (bookId   != null) sb.append(" book=").append(bookId);
+        if (personId != null) sb.append(" person=").append(personId);
+        if (field    != null) sb.append(' ').append(field).append(": \"").append(oldValue).append("\" →");
+        if (!values.isEmpty()) sb.append(' ').append(values);
+        return sb.toString();
+    }
+}
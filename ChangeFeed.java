@@ -0,0 +1,417 @@
+package service;
+
+import model.Book;
+import model.Librarian;
+import model.Member;
+import model.Person;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ============================================================
+ *  CLASS   : ChangeFeed
+ *  PACKAGE : service
+ *  PURPOSE : Ordered feed of entity-level changes (CDC) for
+ *            downstream systems — the OPAC search cache, the
+ *            notification sender, analytics — so they process only
+ *            the delta instead of diffing getBooks().
+ *
+ *  HOW IT WORKS:
+ *    - Registered as a MutationListener; every change becomes one
+ *      or more ChangeEvents with a monotonically increasing
+ *      sequence number (a borrow is AVAILABILITY_CHANGED followed
+ *      by LOAN_OPENED).
+ *    - Events live in a bounded ring buffer of `capacity` slots.
+ *      A subscriber can start (or resume after a restart) from any
+ *      sequence number still in the ring.
+ *    - poll() hands out events in batches and blocks until at
+ *      least one is available or the timeout passes.
+ *    - Listener callbacks run under the service lock, so they only
+ *      number the event and hand it to a bounded staging queue
+ *      (STAGING_CAPACITY). A dispatcher thread drains that queue in
+ *      batches into the ring.
+ *    - Back-pressure: a slot is only reused once every subscriber
+ *      has read it. When the ring is full the dispatcher waits for
+ *      the slowest subscriber — up to maxWaitMillis — and only
+ *      then detaches whoever still needs the oldest slot. While it
+ *      waits, the staging queue absorbs new events; only if that
+ *      fills up too does a publisher (and so the service) wait,
+ *      and never longer than the dispatcher's own wait.
+ *    - A detached subscriber resubscribes from getNextSeq() if
+ *      still in the ring, or reloads in full; size the ring for the
+ *      longest pause a consumer is expected to take, and
+ *      maxWaitMillis for the longest hiccup to ride out.
+ *
+ *  Publishing happens under the service lock; subscribers may
+ *  poll from any thread.
+ * ============================================================
+ */
+public class ChangeFeed implements MutationListener, AutoCloseable {
+
+    public static final int  DEFAULT_CAPACITY        = 65_536;
+    public static final long DEFAULT_MAX_WAIT_MILLIS = 5_000;
+
+    /** Events numbered but not yet in the ring before publishers wait */
+    public static final int  STAGING_CAPACITY        = 4_096;
+
+    private static final int DISPATCH_BATCH = 256;   // events moved per hold of the feed lock
+
+    private final LibraryService  service;
+    private final ChangeEvent[]   ring;
+    private final long            maxWaitMillis;
+
+    // ── Staging (numbered under the service lock) ──────────────────
+    private final BlockingQueue<ChangeEvent> staging = new ArrayBlockingQueue<>(STAGING_CAPACITY);
+    private final AtomicLong                 stagedSeq = new AtomicLong();
+    private final Thread                     dispatcher;
+
+    // ── Feed State (guarded by this) ───────────────────────────────
+    private long                     headSeq;   // last sequence number in the ring
+    private final List<Subscription> subscriptions;
+    private long                     detachedCount;
+    private boolean                  dispatcherWaiting;   // ring full: pollers must wake it
+    private boolean                  closed;
+
+    public ChangeFeed(LibraryService service) {
+        this(service, DEFAULT_CAPACITY, DEFAULT_MAX_WAIT_MILLIS);
+    }
+
+    public ChangeFeed(LibraryService service, int capacity) {
+        this(service, capacity, DEFAULT_MAX_WAIT_MILLIS);
+    }
+
+    /**
+     * @param capacity      events kept for subscribers to read or resume from
+     * @param maxWaitMillis how long a full ring waits for the slowest
+     *                      subscriber before detaching it (0 = never wait)
+     */
+    public ChangeFeed(LibraryService service, int capacity, long maxWaitMillis) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1");
+        }
+        if (maxWaitMillis < 0) {
+            throw new IllegalArgumentException("maxWaitMillis must not be negative");
+        }
+        this.service        = service;
+        this.ring           = new ChangeEvent[capacity];
+        this.maxWaitMillis  = maxWaitMillis;
+        this.subscriptions  = new ArrayList<>();
+        this.dispatcher     = new Thread(this::dispatch, "change-feed-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+        service.addMutationListener(this);
+    }
+
+    /** Stops listening and detaches every subscriber; staged events are dropped */
+    @Override
+    public void close() {
+        service.removeMutationListener(this);
+        synchronized (this) {
+            closed = true;
+            for (Subscription s : new ArrayList<>(subscriptions)) {
+                detach(s);
+            }
+            notifyAll();
+        }
+        dispatcher.interrupt();
+        staging.clear();   // frees a publisher blocked on a full queue
+    }
+
+    // ==============================================================
+    //   SUBSCRIBING
+    // ==============================================================
+
+    /** Subscribes to changes made from now on */
+    public synchronized Subscription subscribe() {
+        return register(stagedSeq.get() + 1);
+    }
+
+    /**
+     * Resumes from a sequence number, typically the last one the
+     * consumer processed plus one.
+     *
+     * @throws IllegalArgumentException if that event has already left
+     *         the ring (the consumer must reload in full) or has not
+     *         happened yet
+     */
+    public synchronized Subscription subscribe(long fromSeq) {
+        if (fromSeq < getOldestSeq()) {
+            throw new IllegalArgumentException("Sequence " + fromSeq
+                    + " is no longer retained (oldest is " + getOldestSeq() + ")");
+        }
+        if (fromSeq > stagedSeq.get() + 1) {
+            throw new IllegalArgumentException("Sequence " + fromSeq
+                    + " is ahead of the feed (head is " + stagedSeq.get() + ")");
+        }
+        return register(fromSeq);
+    }
+
+    private Subscription register(long fromSeq) {
+        Subscription s = new Subscription(fromSeq);
+        subscriptions.add(s);
+        return s;
+    }
+
+    // ── Status ─────────────────────────────────────────────────────
+    public synchronized long getHeadSeq()         { return headSeq;              }
+    public synchronized int  getSubscriberCount() { return subscriptions.size(); }
+    public synchronized long getDetachedCount()   { return detachedCount;        }
+
+    /** Events numbered but not yet in the ring (waiting on a slow subscriber) */
+    public int getStagedCount() {
+        return staging.size();
+    }
+
+    /** Oldest sequence number a new subscription can start from */
+    public synchronized long getOldestSeq() {
+        return Math.max(1, headSeq - ring.length + 1);
+    }
+
+    // ==============================================================
+    //   MUTATION LISTENER (called under the service lock)
+    // ==============================================================
+
+    @Override
+    public void bookAdded(Book b) {
+        publish(ChangeEvent.Type.BOOK_ADDED, b.getBookId(), null, null, null,
+                "title", b.getTitle(), "author", b.getAuthor(),
+                "genre", b.getGenre(), "isbn", b.getIsbn());
+    }
+
+    @Override
+    public void memberRegistered(Member m) {
+        publish(ChangeEvent.Type.MEMBER_REGISTERED, null, m.getPersonId(), null, null,
+                "name", m.getName(), "email", m.getEmail(), "phone", m.getPhone());
+    }
+
+    @Override
+    public void librarianAdded(Librarian l) {
+        publish(ChangeEvent.Type.LIBRARIAN_ADDED, null, l.getPersonId(), null, null,
+                "name", l.getName(), "email", l.getEmail(), "phone", l.getPhone(),
+                "staffId", l.getStaffId(), "department", l.getDepartment());
+    }
+
+    @Override
+    public void bookBorrowed(Member m, Book b) {
+        publish(ChangeEvent.Type.AVAILABILITY_CHANGED, b.getBookId(), null, null, null,
+                "available", "false");
+        publish(ChangeEvent.Type.LOAN_OPENED, b.getBookId(), m.getPersonId(), null, null);
+    }
+
+    @Override
+    public void bookReturned(Member m, Book b) {
+        publish(ChangeEvent.Type.AVAILABILITY_CHANGED, b.getBookId(), null, null, null,
+                "available", "true");
+        publish(ChangeEvent.Type.LOAN_CLOSED, b.getBookId(), m.getPersonId(), null, null);
+    }
+
+    @Override
+    public void bookEdited(Book b, String field, String oldValue) {
+        String value;
+        switch (field) {
+            case "title":  value = b.getTitle();  break;
+            case "author": value = b.getAuthor(); break;
+            case "genre":  value = b.getGenre();  break;
+            default:       value = b.getIsbn();   break;
+        }
+        publish(ChangeEvent.Type.BOOK_EDITED, b.getBookId(), null, field, oldValue, field, value);
+    }
+
+    @Override
+    public void personEdited(Person p, String field, String oldValue) {
+        publish(ChangeEvent.Type.PERSON_EDITED, null, p.getPersonId(), field, oldValue,
+                field, personField(p, field), "role", p.getRole());
+    }
+
+    private static String personField(Person p, String field) {
+        switch (field) {
+            case "name":       return p.getName();
+            case "email":      return p.getEmail();
+            case "department": return ((Librarian) p).getDepartment();
+            default:           return p.getPhone();
+        }
+    }
+
+    // ==============================================================
+    //   STAGING AND DISPATCH
+    // ==============================================================
+
+    /**
+     * Numbers the event and stages it. Callers hold the service lock,
+     * which keeps numbering and queue order the same. Waits only when
+     * the staging queue is full.
+     */
+    private void publish(ChangeEvent.Type type, String bookId, String personId,
+                         String field, String oldValue, String... values) {
+        ChangeEvent event = new ChangeEvent(stagedSeq.incrementAndGet(), System.currentTimeMillis(),
+                type, bookId, personId, field, oldValue, values);
+        boolean interrupted = false;
+        while (true) {
+            try {
+                staging.put(event);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;   // the change has happened: it must still be published
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Dispatcher thread: moves staged events into the ring, a batch at a time */
+    private void dispatch() {
+        List<ChangeEvent> batch = new ArrayList<>(DISPATCH_BATCH);
+        try {
+            while (true) {
+                batch.add(staging.take());
+                staging.drainTo(batch, DISPATCH_BATCH - 1);
+                synchronized (this) {
+                    for (ChangeEvent event : batch) {
+                        if (closed) {
+                            return;
+                        }
+                        freeSlot(event.getSeq());
+                        ring[slot(event.getSeq())] = event;
+                        headSeq = event.getSeq();
+                    }
+                    notifyAll();   // wake pollers
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            // closed
+        }
+    }
+
+    /**
+     * Makes seq's slot free: waits up to maxWaitMillis for every
+     * subscriber to read the event it holds now, then detaches those
+     * that still have not. Called by the dispatcher with this locked.
+     */
+    private void freeSlot(long seq) throws InterruptedException {
+        long overwritten = seq - ring.length;   // event that the slot holds now
+        if (overwritten < 1) {
+            return;
+        }
+        long deadline = System.currentTimeMillis() + maxWaitMillis;
+        while (!closed && slowest() <= overwritten) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                break;
+            }
+            dispatcherWaiting = true;
+            notifyAll();   // pollers have not yet heard of this batch's earlier events
+            try {
+                wait(remaining);
+            } finally {
+                dispatcherWaiting = false;
+            }
+        }
+        for (Iterator<Subscription> it = subscriptions.iterator(); it.hasNext(); ) {
+            Subscription s = it.next();
+            if (s.nextSeq <= overwritten) {
+                it.remove();
+                s.detached = true;
+                detachedCount++;
+            }
+        }
+    }
+
+    /** Smallest nextSeq of any subscriber, or Long.MAX_VALUE */
+    private long slowest() {
+        long min = Long.MAX_VALUE;
+        for (Subscription s : subscriptions) {
+            min = Math.min(min, s.nextSeq);
+        }
+        return min;
+    }
+
+    private void detach(Subscription s) {
+        if (subscriptions.remove(s)) {
+            s.detached = true;
+            detachedCount++;
+        }
+    }
+
+    private int slot(long seq) {
+        return (int) (seq % ring.length);
+    }
+
+    // ==============================================================
+    //   SUBSCRIPTION
+    // ==============================================================
+
+    /** A consumer's cursor into the feed */
+    public final class Subscription implements AutoCloseable {
+
+        private long    nextSeq;    // guarded by the feed
+        private boolean detached;
+
+        private Subscription(long nextSeq) {
+            this.nextSeq = nextSeq;
+        }
+
+        /**
+         * Returns up to maxEvents events in sequence order, waiting up
+         * to timeoutMillis for the first one. Returns an empty list on
+         * timeout.
+         *
+         * @throws IllegalStateException if the feed detached this
+         *         subscription for falling too far behind
+         */
+        public List<ChangeEvent> poll(int maxEvents, long timeoutMillis) throws InterruptedException {
+            synchronized (ChangeFeed.this) {
+                long deadline = System.currentTimeMillis() + timeoutMillis;
+                while (!detached && nextSeq > headSeq) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        return new ArrayList<>();
+                    }
+                    ChangeFeed.this.wait(remaining);
+                }
+                if (detached) {
+                    throw new IllegalStateException("Subscription detached at sequence " + nextSeq
+                            + "; resubscribe from there or reload in full");
+                }
+                int n = (int) Math.min(maxEvents, headSeq - nextSeq + 1);
+                List<ChangeEvent> batch = new ArrayList<>(n);
+                for (int i = 0; i < n; i++) {
+                    batch.add(ring[slot(nextSeq + i)]);
+                }
+                nextSeq += n;
+                if (dispatcherWaiting) {
+                    ChangeFeed.this.notifyAll();   // a slot may be free now
+                }
+                return batch;
+            }
+        }
+
+        /** Sequence number of the next event this subscription will receive */
+        public long getNextSeq() {
+            synchronized (ChangeFeed.this) {
+                return nextSeq;
+            }
+        }
+
+        public boolean isDetached() {
+            synchronized (ChangeFeed.this) {
+                return detached;
+            }
+        }
+
+        @Override
+        public void close() {
+            synchronized (ChangeFeed.this) {
+                subscriptions.remove(this);
+                detached = true;
+                ChangeFeed.this.notifyAll();   // also frees a dispatcher waiting on it
+            }
+        }
+    }
+}
@@ -0,0 +1,437 @@
+package service;
+
+import model.Book;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * ============================================================
+ *  CLASS   : CoBorrowIndex
+ *  PACKAGE : service
+ *  PURPOSE : "Members who borrowed this also borrowed" — item-item
+ *            co-occurrence counts over loans, for recommendations on
+ *            the OPAC and at checkout.
+ *
+ *  HOW IT WORKS:
+ *    - Every book ID gets a dense int ordinal. Each member keeps a
+ *      short ring of the ordinals they borrowed last (HISTORY).
+ *    - When a member borrows book B, B's count is bumped against
+ *      every book in their recent history and vice versa.
+ *    - Counts live in one small open-addressing int→int table per
+ *      book, a single int[] of (ordinal, count) pairs (no boxing). When a table fills up it is pruned to its
+ *      KEEP strongest neighbours, so memory per book is bounded no
+ *      matter how many loans are recorded. Pruning is lossy: a
+ *      pair that keeps being dropped never builds up a count.
+ *    - recommend() reads one table of at most PRUNE_AT entries, so
+ *      its cost does not depend on catalogue or loan volume.
+ *      recommendIds() does the same with IDs, for a catalogue that
+ *      must not have its books held here (tiered storage).
+ *    - rebuild() recomputes the counts from historical loans on all
+ *      cores: books are split into partitions by ordinal and each
+ *      worker fills only its own partition's tables, so there is no
+ *      locking and no merge step.
+ *
+ *  Not thread-safe on its own; LibraryService only calls it while
+ *  holding its lock.
+ * ============================================================
+ */
+public class CoBorrowIndex {
+
+    /** Upper bound on recommendations returned per call */
+    public static final int MAX_RECOMMENDATIONS = 10;
+
+    /** Recent borrows per member that a new borrow is paired with */
+    public static final int HISTORY = 8;
+
+    /** Neighbours kept per book after pruning */
+    public static final int KEEP = 16;
+
+    // ── Per-book table sizing ──────────────────────────────────────
+    private static final int CAPACITY = 64;                 // slots, power of two
+    private static final int PRUNE_AT = CAPACITY * 3 / 4;   // load factor 0.75
+    private static final int INITIAL  = 4;
+
+    // ── Index State ────────────────────────────────────────────────
+    // A book's counts are one int[] of (ordinal + 1, count) pairs,
+    // 0 marking an empty slot — one array per book, read in one go.
+    private final Map<String, Integer> ordinals;     // lower-case book ID → ordinal
+    private Book[]                     books;        // ordinal → catalogue book, if known
+    private String[]                   ids;          // ordinal → lower-case book ID
+    private int[][]                    tables;       // ordinal → counts, null until paired
+    private int[]                      tableSizes;   // ordinal → live pairs in its table
+    private int                        size;         // ordinals handed out
+    private final Map<String, int[]>   histories;    // lower-case member ID → recent ordinals
+
+    // ── Metrics ────────────────────────────────────────────────────
+    private long pairsRecorded;
+    private long prunes;
+
+    public CoBorrowIndex() {
+        this(16);
+    }
+
+    private CoBorrowIndex(int expectedTitles) {
+        int cap = Math.max(16, expectedTitles);
+        this.ordinals   = new HashMap<>(cap * 4 / 3 + 1);
+        this.books      = new Book[cap];
+        this.ids        = new String[cap];
+        this.tables     = new int[cap][];
+        this.tableSizes = new int[cap];
+        this.histories  = new HashMap<>();
+    }
+
+    // ==============================================================
+    //   MAINTENANCE
+    // ==============================================================
+
+    /** Called on every borrow — pairs the book with the member's recent borrows */
+    public void recordBorrow(String memberId, Book book) {
+        int ord = ordinal(book.getBookId());
+        books[ord] = book;
+        pair(memberId, ord);
+    }
+
+    /** Like recordBorrow(String, Book), without linking the book object */
+    public void recordBorrow(String memberId, String bookId) {
+        pair(memberId, ordinal(bookId));
+    }
+
+    private void pair(String memberId, int ord) {
+        String key = memberId.toLowerCase();
+        int[] history = histories.get(key);
+        if (history == null) {
+            history = new int[HISTORY + 1];   // [0] = borrows written, then the ring
+            histories.put(key, history);
+        }
+        int written = Math.min(history[0], HISTORY);
+        for (int i = 1; i <= written; i++) {
+            int other = history[i];
+            if (other != ord) {
+                increment(ord, other);
+                increment(other, ord);
+                pairsRecorded++;
+            }
+        }
+        history[1 + history[0] % HISTORY] = ord;
+        history[0]++;
+    }
+
+    /**
+     * Links an ID to its catalogue book, so that recommend() can hand
+     * out books for IDs that were only seen by rebuild().
+     */
+    public void bind(Book book) {
+        Integer ord = ordinals.get(book.getBookId().toLowerCase());
+        if (ord != null) {
+            books[ord] = book;
+        }
+    }
+
+    // ==============================================================
+    //   QUERY
+    // ==============================================================
+
+    /**
+     * Books most often borrowed by the same members as this one,
+     * strongest first. Books not (or no longer) in the catalogue
+     * are skipped.
+     *
+     * @param bookId the book being looked at / checked out
+     * @param limit  maximum number of books, at most MAX_RECOMMENDATIONS
+     */
+    public List<Book> recommend(String bookId, int limit) {
+        int[] picked = rank(bookId, limit, true);
+        List<Book> result = new ArrayList<>(picked.length);
+        for (int ord : picked) {
+            result.add(books[ord]);
+        }
+        return result;
+    }
+
+    /**
+     * Lower-case IDs of the books recommend() would return, whether
+     * or not they were linked; the caller skips IDs it no longer has.
+     */
+    public List<String> recommendIds(String bookId, int limit) {
+        int[] picked = rank(bookId, limit, false);
+        List<String> result = new ArrayList<>(picked.length);
+        for (int ord : picked) {
+            result.add(ids[ord]);
+        }
+        return result;
+    }
+
+    /** Ordinals of the strongest neighbours, strongest first */
+    private int[] rank(String bookId, int limit, boolean linkedOnly) {
+        Integer ord = ordinals.get(bookId.toLowerCase());
+        limit = Math.min(limit, MAX_RECOMMENDATIONS);
+        if (ord == null || tables[ord] == null || limit <= 0) {
+            return new int[0];
+        }
+        int[] table = tables[ord];
+
+        // Copy out the live entries, then a partial selection sort:
+        // the table holds at most PRUNE_AT entries.
+        int[] keys   = new int[tableSizes[ord]];
+        int[] counts = new int[tableSizes[ord]];
+        int live = 0;
+        for (int i = 0; i < table.length; i += 2) {
+            if (table[i] != 0 && (!linkedOnly || books[table[i] - 1] != null)) {
+                keys[live]   = table[i] - 1;
+                counts[live] = table[i + 1];
+                live++;
+            }
+        }
+        int n = Math.min(limit, live);
+        for (int picked = 0; picked < n; picked++) {
+            int best = picked;
+            for (int i = picked + 1; i < live; i++) {
+                if (counts[i] > counts[best] || (counts[i] == counts[best] && keys[i] < keys[best])) {
+                    best = i;
+                }
+            }
+            swap(keys, picked, best);
+            swap(counts, picked, best);
+        }
+        return Arrays.copyOf(keys, n);
+    }
+
+    // ── Metrics Getters ────────────────────────────────────────────
+    public int  getTitleCount()    { return size;             }
+    public int  getMemberCount()   { return histories.size(); }
+    public long getPairsRecorded() { return pairsRecorded;    }
+    public long getPrunes()        { return prunes;           }
+
+    /** Rough heap footprint of the count tables and histories, in bytes */
+    public long estimateBytes() {
+        long bytes = (long) books.length * 16;   // books, ids, tables, tableSizes
+        for (int i = 0; i < size; i++) {
+            if (tables[i] != null) {
+                bytes += 16 + 4L * tables[i].length;
+            }
+        }
+        bytes += (long) histories.size() * (16 + 4 * (HISTORY + 1) + 48);   // array + map entry
+        bytes += (long) size * 48;                                          // ordinal map entry
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return "CoBorrowIndex[" + size + " titles, " + histories.size() + " members, "
+                + pairsRecorded + " pairs, " + prunes + " prunes, ~"
+                + estimateBytes() / 1024 + " KB]";
+    }
+
+    // ==============================================================
+    //   BATCH REBUILD
+    // ==============================================================
+
+    /**
+     * Builds a fresh index from historical loans, on all cores.
+     * loan[i] is memberIds[i] borrowing bookIds[i]; the arrays must
+     * be in the order the loans happened. The result has the same
+     * counts recordBorrow() would have built from the same loans,
+     * except where pruning kept different ties.
+     *
+     * Books are not linked — call bind() for each catalogue book.
+     */
+    public static CoBorrowIndex rebuild(String[] memberIds, String[] bookIds) {
+        if (memberIds.length != bookIds.length) {
+            throw new IllegalArgumentException("memberIds and bookIds differ in length");
+        }
+        // ── Pass 1 (single thread): ordinals and per-member sequences
+        CoBorrowIndex index = new CoBorrowIndex(bookIds.length / 64);
+        Map<String, int[]> sequences = new HashMap<>();   // member → [length, ordinals...]
+        for (int i = 0; i < bookIds.length; i++) {
+            int ord = index.ordinal(bookIds[i]);
+            String key = memberIds[i].toLowerCase();
+            int[] seq = sequences.get(key);
+            if (seq == null) {
+                seq = new int[5];
+                sequences.put(key, seq);
+            } else if (seq[0] + 1 == seq.length) {
+                seq = Arrays.copyOf(seq, seq.length * 2);
+                sequences.put(key, seq);
+            }
+            seq[++seq[0]] = ord;
+        }
+
+        // ── Pass 2 (all cores): each partition owns ordinals ≡ p (mod partitions).
+        // Every worker walks all pairs but only writes its own tables;
+        // the walk is sequential reads, the table updates are the cost.
+        int[][] all = sequences.values().toArray(new int[0][]);
+        int partitions = Runtime.getRuntime().availableProcessors();
+        long[] pairs = new long[partitions];
+        long[] prunes = new long[partitions];
+        IntStream.range(0, partitions).parallel().forEach(p -> {
+            for (int[] seq : all) {
+                int length = seq[0];
+                for (int i = 2; i <= length; i++) {
+                    int ord = seq[i];
+                    for (int j = Math.max(1, i - HISTORY); j < i; j++) {
+                        int other = seq[j];
+                        if (other == ord) {
+                            continue;
+                        }
+                        if (ord % partitions == p) {
+                            prunes[p] += index.add(ord, other);
+                            pairs[p]++;
+                        }
+                        if (other % partitions == p) {
+                            prunes[p] += index.add(other, ord);
+                        }
+                    }
+                }
+            }
+        });
+
+        // ── Carry each member's last HISTORY borrows over for recordBorrow()
+        for (Map.Entry<String, int[]> e : sequences.entrySet()) {
+            int[] seq = e.getValue();
+            int length = seq[0];
+            int[] history = new int[HISTORY + 1];
+            for (int i = Math.max(1, length - HISTORY + 1); i <= length; i++) {
+                history[1 + history[0] % HISTORY] = seq[i];
+                history[0]++;
+            }
+            index.histories.put(e.getKey(), history);
+        }
+        for (int p = 0; p < partitions; p++) {
+            index.pairsRecorded += pairs[p];
+            index.prunes        += prunes[p];
+        }
+        return index;
+    }
+
+    // ==============================================================
+    //   PRIVATE HELPERS
+    // ==============================================================
+
+    /** Ordinal for a book ID, assigning the next one on first sight */
+    private int ordinal(String bookId) {
+        String key = bookId.toLowerCase();
+        Integer ord = ordinals.get(key);
+        if (ord != null) {
+            return ord;
+        }
+        if (size == books.length) {
+            int cap = books.length * 2;
+            books      = Arrays.copyOf(books, cap);
+            ids        = Arrays.copyOf(ids, cap);
+            tables     = Arrays.copyOf(tables, cap);
+            tableSizes = Arrays.copyOf(tableSizes, cap);
+        }
+        ordinals.put(key, size);
+        ids[size] = key;
+        return size++;
+    }
+
+    private void increment(int ord, int other) {
+        prunes += add(ord, other);
+    }
+
+    /**
+     * Bumps count(ord, other) in ord's table, growing it up to
+     * CAPACITY slots and pruning it after that. Touches nothing but
+     * ord's own table, so rebuild() workers can share the index.
+     *
+     * @return 1 if the table had to be pruned, else 0
+     */
+    private int add(int ord, int other) {
+        int[] table = tables[ord];
+        if (table == null) {
+            table = new int[2 * INITIAL];
+            tables[ord] = table;
+        }
+        int key  = other + 1;
+        int slot = find(table, key);
+        if (table[slot] == key) {
+            table[slot + 1]++;
+            return 0;
+        }
+        int pruned = 0;
+        if ((tableSizes[ord] + 1) * 4 > table.length / 2 * 3) {
+            if (table.length / 2 < CAPACITY) {
+                table = rehash(ord, table, table.length * 2, 0);
+            } else {
+                table = rehash(ord, table, table.length, keepThreshold(table, tableSizes[ord]));
+                pruned = 1;
+            }
+            slot = find(table, key);
+        }
+        table[slot]     = key;
+        table[slot + 1] = 1;
+        tableSizes[ord]++;
+        return pruned;
+    }
+
+    /**
+     * Smallest count that survives pruning: the KEEP-th highest.
+     * Entries below it are dropped; ties at it are kept only while
+     * there is room.
+     */
+    private static int keepThreshold(int[] table, int live) {
+        int[] sorted = new int[live];
+        int n = 0;
+        for (int i = 0; i < table.length; i += 2) {
+            if (table[i] != 0) {
+                sorted[n++] = table[i + 1];
+            }
+        }
+        Arrays.sort(sorted);
+        return sorted[n - KEEP];
+    }
+
+    /** Copies the entries with count >= minCount into a new table of the given length */
+    private int[] rehash(int ord, int[] old, int length, int minCount) {
+        int above = 0;
+        if (minCount > 0) {
+            for (int i = 0; i < old.length; i += 2) {
+                if (old[i] != 0 && old[i + 1] > minCount) {
+                    above++;
+                }
+            }
+        }
+        int[] table = new int[length];
+        int live = 0;
+        int ties = 0;
+        for (int i = 0; i < old.length; i += 2) {
+            int key = old[i];
+            int count = old[i + 1];
+            if (key == 0 || count < minCount) {
+                continue;
+            }
+            if (minCount > 0 && count == minCount && above + ties++ >= KEEP) {
+                continue;
+            }
+            int slot = find(table, key);
+            table[slot]     = key;
+            table[slot + 1] = count;
+            live++;
+        }
+        tables[ord]     = table;
+        tableSizes[ord] = live;
+        return table;
+    }
+
+    /** Linear probe for key: its slot, or the empty slot where it belongs */
+    private static int find(int[] table, int key) {
+        int mask = table.length / 2 - 1;
+        int slot = (key * 0x9E3779B9) >>> 16 & mask;
+        while (table[2 * slot] != 0 && table[2 * slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return 2 * slot;
+    }
+
+    private static void swap(int[] a, int i, int j) {
+        int t = a[i];
+        a[i] = a[j];
+        a[j] = t;
+    }
+}
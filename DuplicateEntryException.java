@@ -5,21 +5,30 @@ package exception;
  *  EXCEPTION : DuplicateEntryException
  *  PACKAGE   : exception
  *  PURPOSE   : Thrown when a duplicate ID is detected
- *              (used for both Books and Members).
+ *              (used for both Books and Members), or when a
+ *              member's email is already registered.
  *  TYPE      : Checked Exception (extends Exception)
  * ============================================================
  */
 public class DuplicateEntryException extends Exception {
 
-    private final String id;
+    private final String id;         // the duplicate value (an ID unless field says otherwise)
     private final String entityType; // e.g. "Book" or "Member"
+    private final String field;      // e.g. "ID" or "email"
 
     public DuplicateEntryException(String entityType, String id) {
-        super(entityType + " with ID \"" + id + "\" already exists in the system.");
+        this(entityType, "ID", id);
+    }
+
+    /** For a unique field other than the ID, e.g. a member's email */
+    public DuplicateEntryException(String entityType, String field, String value) {
+        super(entityType + " with " + field + " \"" + value + "\" already exists in the system.");
         this.entityType = entityType;
-        this.id         = id;
+        this.field      = field;
+        this.id         = value;
     }
 
     public String getId()         { return id;         }
     public String getEntityType() { return entityType; }
+    public String getField()      { return field;      }
 }
@@ -0,0 +1,459 @@
+package service;
+
+import model.Book;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * ============================================================
+ *  CLASS   : FuzzyIndex
+ *  PACKAGE : service
+ *  PURPOSE : Typo-tolerant word index over book titles and
+ *            authors, so that "Fitzgerld" still finds
+ *            "F. Scott Fitzgerald".
+ *
+ *  HOW IT WORKS:
+ *    - Every title/author word is a "token" with a posting set
+ *      of the books that contain it.
+ *    - Each token is split into trigrams ("$fi", "fit", ...).
+ *      A query word only needs to be compared against tokens
+ *      that share enough trigrams with it (candidate step).
+ *    - Short words share too few trigrams for that bound to mean
+ *      anything (a 6-letter word with 2 typos may share none), so
+ *      they use a partition index instead: each token is cut into
+ *      k + 1 segments for every k up to MAX_EDITS. k edits leave
+ *      at least one segment intact, so it occurs in the query
+ *      within k positions of where it sits in the token. Probing
+ *      those few substrings finds every match, never a scan.
+ *    - Candidates are confirmed with a Levenshtein distance that
+ *      gives up as soon as it exceeds the allowed edits.
+ *    - The index is updated per book, so addBook() and the Book
+ *      setters keep it current without rebuilding.
+ * ============================================================
+ */
+public class FuzzyIndex {
+
+    /** Most typos tolerated per word, whatever the caller asks for */
+    public static final int MAX_EDITS = 2;
+
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    // ── Index Structures ───────────────────────────────────────────
+    private final Map<String, Set<Book>>    postings;       // token   → books containing it
+    private final Map<String, Set<String>>  gramIndex;      // trigram → tokens containing it
+    private final Map<String, Set<String>>  segmentIndex;   // "k:length:i:segment" → tokens
+    private final Map<Book, Set<String>>    indexedTokens;  // book    → tokens it was indexed under
+
+    public FuzzyIndex() {
+        this.postings       = new HashMap<>();
+        this.gramIndex      = new HashMap<>();
+        this.segmentIndex   = new HashMap<>();
+        this.indexedTokens  = new IdentityHashMap<>();
+    }
+
+    // ==============================================================
+    //   MAINTENANCE
+    // ==============================================================
+
+    /** Indexes the title and author words of a book */
+    public void add(Book book) {
+        Set<String> tokens = tokenize(book.getTitle() + " " + book.getAuthor());
+        indexedTokens.put(book, tokens);
+        for (String token : tokens) {
+            Set<Book> books = postings.get(token);
+            if (books == null) {
+                books = new LinkedHashSet<>();
+                postings.put(token, books);
+                registerToken(token);
+            }
+            books.add(book);
+        }
+    }
+
+    /** Removes a book using the tokens it was last indexed under */
+    public void remove(Book book) {
+        Set<String> tokens = indexedTokens.remove(book);
+        if (tokens == null) {
+            return;
+        }
+        for (String token : tokens) {
+            Set<Book> books = postings.get(token);
+            if (books == null) {
+                continue;
+            }
+            books.remove(book);
+            if (books.isEmpty()) {
+                postings.remove(token);
+                unregisterToken(token);
+            }
+        }
+    }
+
+    /**
+     * Merges in an index built over other books, keeping this index's
+     * books first in each posting. Lets LibraryBootstrap build chunks
+     * of the catalogue in parallel; the two must not share books.
+     */
+    public void addAll(FuzzyIndex other) {
+        indexedTokens.putAll(other.indexedTokens);
+        for (Map.Entry<String, Set<Book>> e : other.postings.entrySet()) {
+            Set<Book> books = postings.get(e.getKey());
+            if (books == null) {
+                postings.put(e.getKey(), e.getValue());
+                registerToken(e.getKey());
+            } else {
+                books.addAll(e.getValue());
+            }
+        }
+    }
+
+    /** Re-indexes a book after its title or author changed */
+    public void reindex(Book book) {
+        remove(book);
+        add(book);
+    }
+
+    // ==============================================================
+    //   SEARCH
+    // ==============================================================
+
+    /**
+     * Finds books whose title/author words match every word of the
+     * query within the allowed number of edits. Short words are
+     * matched more strictly (see {@link #allowedEdits}).
+     *
+     * @param query    free text typed by the patron
+     * @param maxEdits maximum edit distance per word
+     * @return matching books, closest matches first
+     */
+    public List<Book> search(String query, int maxEdits) {
+        return books(searchHits(query, maxEdits));
+    }
+
+    /** Same as search(), keeping each book's summed edit distance */
+    List<Hit> searchHits(String query, int maxEdits) {
+        Set<String> queryTokens = tokenize(query);
+        if (queryTokens.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        Map<Book, Integer> scores = null;   // book → summed edit distance
+        for (String q : queryTokens) {
+            Map<Book, Integer> best = matchToken(q, allowedEdits(q, maxEdits));
+            if (scores == null) {
+                scores = best;
+            } else {
+                // Intersect: every query word must be matched by the book
+                Map<Book, Integer> merged = new IdentityHashMap<>();
+                for (Map.Entry<Book, Integer> e : scores.entrySet()) {
+                    Integer d = best.get(e.getKey());
+                    if (d != null) {
+                        merged.put(e.getKey(), e.getValue() + d);
+                    }
+                }
+                scores = merged;
+            }
+            if (scores.isEmpty()) {
+                break;
+            }
+        }
+
+        return ranked(scores);
+    }
+
+    /**
+     * Same matching and order as search(), but by reading every book
+     * instead of an index — for a catalogue too large to index in
+     * memory (tiered storage), where only a scan fits.
+     */
+    public static List<Book> scan(Iterable<Book> books, String query, int maxEdits) {
+        return books(scanHits(books, query, maxEdits));
+    }
+
+    /** Same as scan(), keeping each book's summed edit distance */
+    static List<Hit> scanHits(Iterable<Book> books, String query, int maxEdits) {
+        Set<String> queryTokens = tokenize(query);
+        if (queryTokens.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<Book, Integer> scores = new IdentityHashMap<>();
+        for (Book b : books) {
+            Set<String> tokens = tokenize(b.getTitle() + " " + b.getAuthor());
+            int total = 0;
+            for (String q : queryTokens) {
+                int k    = allowedEdits(q, maxEdits);
+                int best = k + 1;
+                for (String t : tokens) {
+                    best = Math.min(best, boundedDistance(q, t, k));
+                }
+                if (best > k) {
+                    total = -1;
+                    break;
+                }
+                total += best;
+            }
+            if (total >= 0) {
+                scores.put(b, total);
+            }
+        }
+        return ranked(scores);
+    }
+
+    /** Hits by summed edit distance, then title */
+    private static List<Hit> ranked(Map<Book, Integer> scores) {
+        List<Hit> results = new ArrayList<>(scores.size());
+        for (Map.Entry<Book, Integer> e : scores.entrySet()) {
+            results.add(new Hit(e.getKey(), e.getValue()));
+        }
+        results.sort(Hit.CLOSEST_FIRST);
+        return results;
+    }
+
+    /** The books of the given hits, in the same order */
+    static List<Book> books(List<Hit> hits) {
+        List<Book> results = new ArrayList<>(hits.size());
+        for (Hit h : hits) {
+            results.add(h.book);
+        }
+        return results;
+    }
+
+    /** Best edit distance per book for a single query word */
+    private Map<Book, Integer> matchToken(String q, int k) {
+        Map<Book, Integer> best = new IdentityHashMap<>();
+        for (String token : candidates(q, k)) {
+            int d = boundedDistance(q, token, k);
+            if (d > k) {
+                continue;
+            }
+            for (Book b : postings.get(token)) {
+                Integer prev = best.get(b);
+                if (prev == null || d < prev) {
+                    best.put(b, d);
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Candidate tokens for a query word. A single edit destroys at
+     * most three trigrams, so a token within k edits shares at least
+     * (grams - 3k) trigrams with the query. When that bound is not
+     * positive the partition index is probed instead.
+     */
+    private Set<String> candidates(String q, int k) {
+        Set<String> result = new HashSet<>();
+        if (k == 0) {
+            if (postings.containsKey(q)) {
+                result.add(q);
+            }
+            return result;
+        }
+
+        List<String> grams = trigrams(q);
+        int minShared = grams.size() - 3 * k;
+        if (minShared <= 0) {
+            return segmentCandidates(q, k);
+        }
+
+        Map<String, Integer> shared = new HashMap<>();
+        for (String gram : grams) {
+            Set<String> tokens = gramIndex.get(gram);
+            if (tokens == null) {
+                continue;
+            }
+            for (String t : tokens) {
+                if (Math.abs(t.length() - q.length()) <= k) {
+                    shared.merge(t, 1, Integer::sum);
+                }
+            }
+        }
+        for (Map.Entry<String, Integer> e : shared.entrySet()) {
+            if (e.getValue() >= minShared) {
+                result.add(e.getKey());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Tokens of every length within k of the query that have one of
+     * their k + 1 segments in the query, shifted by at most k.
+     */
+    private Set<String> segmentCandidates(String q, int k) {
+        Set<String> result = new HashSet<>();
+        for (int len = Math.max(k + 1, q.length() - k); len <= q.length() + k; len++) {
+            int[] starts = segmentStarts(len, k);
+            for (int i = 0; i <= k; i++) {
+                int segLen = starts[i + 1] - starts[i];
+                int from   = Math.max(0, starts[i] - k);
+                int to     = Math.min(q.length() - segLen, starts[i] + k);
+                for (int pos = from; pos <= to; pos++) {
+                    Set<String> tokens = segmentIndex.get(segmentKey(k, len, i, q.substring(pos, pos + segLen)));
+                    if (tokens != null) {
+                        result.addAll(tokens);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    // ==============================================================
+    //   PRIVATE HELPERS
+    // ==============================================================
+
+    /**
+     * Words of up to 2 letters must match exactly, up to 5 letters
+     * allow one edit, longer ones up to MAX_EDITS.
+     */
+    private static int allowedEdits(String token, int maxEdits) {
+        if (token.length() <= 2) return 0;
+        if (token.length() <= 5) return Math.max(0, Math.min(1, maxEdits));
+        return Math.max(0, Math.min(MAX_EDITS, maxEdits));
+    }
+
+    private void registerToken(String token) {
+        for (String gram : trigrams(token)) {
+            gramIndex.computeIfAbsent(gram, g -> new HashSet<>()).add(token);
+        }
+        for (int k = 1; k <= MAX_EDITS && token.length() > k; k++) {
+            for (String key : segmentKeys(token, k)) {
+                segmentIndex.computeIfAbsent(key, x -> new HashSet<>()).add(token);
+            }
+        }
+    }
+
+    private void unregisterToken(String token) {
+        for (String gram : trigrams(token)) {
+            Set<String> tokens = gramIndex.get(gram);
+            if (tokens != null) {
+                tokens.remove(token);
+                if (tokens.isEmpty()) {
+                    gramIndex.remove(gram);
+                }
+            }
+        }
+        for (int k = 1; k <= MAX_EDITS && token.length() > k; k++) {
+            for (String key : segmentKeys(token, k)) {
+                Set<String> tokens = segmentIndex.get(key);
+                if (tokens != null) {
+                    tokens.remove(token);
+                    if (tokens.isEmpty()) {
+                        segmentIndex.remove(key);
+                    }
+                }
+            }
+        }
+    }
+
+    /** Index keys of the k + 1 segments of a token */
+    private static List<String> segmentKeys(String token, int k) {
+        int[] starts = segmentStarts(token.length(), k);
+        List<String> keys = new ArrayList<>(k + 1);
+        for (int i = 0; i <= k; i++) {
+            keys.add(segmentKey(k, token.length(), i, token.substring(starts[i], starts[i + 1])));
+        }
+        return keys;
+    }
+
+    /** Start of each of k + 1 near-equal segments of a word of this length, plus the end */
+    private static int[] segmentStarts(int length, int k) {
+        int[] starts = new int[k + 2];
+        int   parts  = k + 1;
+        for (int i = 0; i <= parts; i++) {
+            starts[i] = i * (length / parts) + Math.max(0, i - (parts - length % parts));
+        }
+        return starts;
+    }
+
+    private static String segmentKey(int k, int length, int segment, String text) {
+        return k + ":" + length + ":" + segment + ":" + text;
+    }
+
+    /** Lower-cases the text and splits it on anything that is not a letter or digit */
+    static Set<String> tokenize(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        if (text == null) {
+            return tokens;
+        }
+        for (String part : NON_WORD.split(text.toLowerCase())) {
+            if (!part.isEmpty()) {
+                tokens.add(part);
+            }
+        }
+        return tokens;
+    }
+
+    /** Trigrams of the token padded with '$' so word edges count too */
+    private static List<String> trigrams(String token) {
+        String padded = "$" + token + "$";
+        List<String> grams = new ArrayList<>(padded.length() - 2);
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            grams.add(padded.substring(i, i + 3));
+        }
+        return grams;
+    }
+
+    /**
+     * Levenshtein distance that stops once every cell of a row
+     * exceeds k. Returns k + 1 when the distance is larger than k.
+     */
+    static int boundedDistance(String a, String b, int k) {
+        if (Math.abs(a.length() - b.length()) > k) {
+            return k + 1;
+        }
+        int[] prev = new int[b.length() + 1];
+        int[] curr = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            prev[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            curr[0] = i;
+            int rowMin = curr[0];
+            char ca = a.charAt(i - 1);
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = (ca == b.charAt(j - 1)) ? 0 : 1;
+                curr[j] = Math.min(Math.min(curr[j - 1] + 1, prev[j] + 1), prev[j - 1] + cost);
+                rowMin = Math.min(rowMin, curr[j]);
+            }
+            if (rowMin > k) {
+                return k + 1;
+            }
+            int[] swap = prev; prev = curr; curr = swap;
+        }
+        return Math.min(prev[b.length()], k + 1);
+    }
+
+    // ── Hit ────────────────────────────────────────────────────────
+
+    /**
+     * A matching book with its summed edit distance, so results from
+     * several indexes (shards) can be merged in search() order.
+     */
+    static final class Hit {
+        /** Summed edit distance, then title — the order search() returns */
+        static final Comparator<Hit> CLOSEST_FIRST = (a, b) -> {
+            int cmp = Integer.compare(a.distance, b.distance);
+            return cmp != 0 ? cmp : a.book.getTitle().compareToIgnoreCase(b.book.getTitle());
+        };
+
+        final Book book;
+        final int  distance;
+
+        Hit(Book book, int distance) {
+            this.book     = book;
+            this.distance = distance;
+        }
+    }
+}
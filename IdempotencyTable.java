@@ -0,0 +1,194 @@
+package service;
+
+import exception.*;
+import model.Member;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+
+/**
+ * ============================================================
+ *  CLASS   : IdempotencyTable
+ *  PACKAGE : service
+ *  PURPOSE : Remembers the outcome of recent circulation requests
+ *            by idempotency key, so that a kiosk retrying after a
+ *            timeout gets the original answer instead of running
+ *            the borrow/return a second time.
+ *
+ *  HOW IT WORKS:
+ *    - Each key maps to the request (operation, member, book), the
+ *      confirmation line it printed and the exception it threw, if
+ *      any. The exception is kept as its type and the ID or name
+ *      its message is built from, and rebuilt on replay; holding
+ *      the object would keep its stack trace, many times the size
+ *      of the rest of the entry.
+ *    - A queue keeps entries in insertion order. Because every
+ *      entry lives for the same ttlMillis, the head is always the
+ *      next to expire, so expiry is a peek per call and O(1) per
+ *      dropped entry.
+ *    - Memory is bounded: beyond maxEntries the oldest entries are
+ *      dropped early (a retry that late runs the operation again).
+ *    - Reusing a key for a different request is refused rather
+ *      than answered with someone else's outcome.
+ *
+ *  Not thread-safe on its own; LibraryService only calls it while
+ *  holding its lock.
+ * ============================================================
+ */
+public class IdempotencyTable {
+
+    public static final int  DEFAULT_MAX_ENTRIES = 200_000;
+    public static final long DEFAULT_TTL_MILLIS  = 15 * 60 * 1000L;
+
+    private final int                      maxEntries;
+    private final long                     ttlMillis;
+    private final HashMap<String, Outcome> entries;
+    private final ArrayDeque<Outcome>      expiryOrder;   // oldest first
+
+    // ── Metrics ────────────────────────────────────────────────────
+    private long replays;
+    private long evictions;
+
+    public IdempotencyTable() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_TTL_MILLIS);
+    }
+
+    public IdempotencyTable(int maxEntries, long ttlMillis) {
+        if (maxEntries < 1 || ttlMillis < 1) {
+            throw new IllegalArgumentException("maxEntries and ttlMillis must be positive");
+        }
+        this.maxEntries  = maxEntries;
+        this.ttlMillis   = ttlMillis;
+        this.entries     = new HashMap<>();
+        this.expiryOrder = new ArrayDeque<>();
+    }
+
+    /**
+     * Returns the stored outcome for the key, or null if the request
+     * has not been seen (or has expired).
+     *
+     * @throws IllegalArgumentException if the key was used for a
+     *         different request
+     */
+    public Outcome lookup(String key, String operation, String memberId, String bookId) {
+        expire(System.currentTimeMillis());
+        Outcome o = entries.get(key);
+        if (o == null) {
+            return null;
+        }
+        if (!o.matches(operation, memberId, bookId)) {
+            throw new IllegalArgumentException("Idempotency key \"" + key
+                    + "\" was already used for a different request");
+        }
+        replays++;
+        return o;
+    }
+
+    /** Forgets every key (a replica loading a snapshot); metrics are kept */
+    public void clear() {
+        entries.clear();
+        expiryOrder.clear();
+    }
+
+    /** Stores and returns the outcome of a request that has just run */
+    public Outcome record(String key, String operation, String memberId, String bookId,
+                          String message, Exception failure) {
+        long now = System.currentTimeMillis();
+        Outcome o = new Outcome(key, operation, memberId, bookId, message, failure, now + ttlMillis);
+        entries.put(key, o);
+        expiryOrder.addLast(o);
+        expire(now);
+        return o;
+    }
+
+    // ── Metrics Getters ────────────────────────────────────────────
+    public int  getSize()      { return entries.size(); }
+    public long getReplays()   { return replays;        }
+    public long getEvictions() { return evictions;      }
+
+    @Override
+    public String toString() {
+        return "IdempotencyTable[" + entries.size() + " keys, replays=" + replays
+                + ", evicted early=" + evictions + "]";
+    }
+
+    /** Drops expired entries, then the oldest ones beyond maxEntries */
+    private void expire(long now) {
+        Outcome oldest;
+        while ((oldest = expiryOrder.peekFirst()) != null) {
+            boolean expired = oldest.expiresAt <= now;
+            if (!expired && entries.size() <= maxEntries) {
+                return;
+            }
+            expiryOrder.pollFirst();
+            // A key recorded twice leaves its older Outcome in the queue
+            if (entries.get(oldest.key) == oldest) {
+                entries.remove(oldest.key);
+                if (!expired) {
+                    evictions++;
+                }
+            }
+        }
+    }
+
+    /** What a request did the first time it ran */
+    public static final class Outcome {
+        private final String    key;
+        private final String    operation;
+        private final String    memberId;
+        private final String    bookId;
+        private final String    message;        // confirmation line, may be null
+        private final Class<?>  failureType;    // null when it succeeded
+        private final String    failureDetail;  // ID or member name in the failure's message
+        private final long      expiresAt;
+
+        private Outcome(String key, String operation, String memberId, String bookId,
+                        String message, Exception failure, long expiresAt) {
+            this.key           = key;
+            this.operation     = operation;
+            this.memberId      = memberId;
+            this.bookId        = bookId;
+            this.message       = message;
+            this.failureType   = (failure == null) ? null : failure.getClass();
+            this.failureDetail = (failure == null) ? null : detailOf(failure);
+            this.expiresAt     = expiresAt;
+        }
+
+        public String getMessage() { return message; }
+
+        /** A new exception equal to the one the request threw, or null */
+        public Exception getFailure() {
+            if (failureType == null) {
+                return null;
+            }
+            if (failureType == MemberNotFoundException.class) {
+                return new MemberNotFoundException(failureDetail);
+            }
+            if (failureType == BookNotFoundException.class) {
+                return new BookNotFoundException(failureDetail);
+            }
+            if (failureType == BookNotAvailableException.class) {
+                return new BookNotAvailableException(failureDetail);
+            }
+            if (failureType == BorrowLimitExceededException.class) {
+                return new BorrowLimitExceededException(failureDetail, Member.getMaxBorrowLimit());
+            }
+            return new IllegalStateException(failureDetail);
+        }
+
+        private static String detailOf(Exception e) {
+            if (e instanceof MemberNotFoundException)      return ((MemberNotFoundException) e).getMemberId();
+            if (e instanceof BookNotFoundException)        return ((BookNotFoundException) e).getBookId();
+            if (e instanceof BookNotAvailableException)    return ((BookNotAvailableException) e).getBookId();
+            if (e instanceof BorrowLimitExceededException) return ((BorrowLimitExceededException) e).getMemberName();
+            return e.getMessage();
+        }
+
+        /** IDs compare like the service's lookups (ignoring case) */
+        private boolean matches(String operation, String memberId, String bookId) {
+            return this.operation.equals(operation)
+                    && this.memberId.equalsIgnoreCase(memberId)
+                    && this.bookId.equalsIgnoreCase(bookId);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package exception;
+
+/**
+ * ============================================================
+ *  EXCEPTION : InvalidIsbnException
+ *  PACKAGE   : exception
+ *  PURPOSE   : Thrown when an ISBN typed at the desk or read by
+ *              a barcode scanner is malformed or fails its
+ *              check digit.
+ *  TYPE      : Checked Exception (extends Exception)
+ * ============================================================
+ */
+public class InvalidIsbnException extends Exception {
+
+    private final String isbn;
+
+    public InvalidIsbnException(String isbn) {
+        super("\"" + isbn + "\" is not a valid ISBN-10 or ISBN-13.");
+        this.isbn = isbn;
+    }
+
+    /** @return the text that failed to parse as an ISBN */
+    public String getIsbn() { return isbn; }
+}
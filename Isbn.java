@@ -0,0 +1,150 @@
+package model;
+
+import exception.InvalidIsbnException;
+
+/**
+ * ============================================================
+ *  CLASS   : Isbn
+ *  PACKAGE : model
+ *  PURPOSE : Parsing, check-digit validation and formatting of
+ *            ISBNs. An ISBN is kept as a packed long holding its
+ *            13 digits (ISBN-10s are converted to the 978 form),
+ *            so it can be compared and hashed without Strings.
+ *
+ *  EXAMPLES:
+ *    parse("978-0132350884")  → 9780132350884L
+ *    parse("0-13-235088-2")   → 9780132350884L  (ISBN-10)
+ *    format(9780132350884L)   → "978-0132350884"
+ * ============================================================
+ */
+public final class Isbn {
+
+    /** Packed value used when a book has no ISBN */
+    public static final long NONE = 0L;
+
+    private Isbn() { }   // static utility class
+
+    /**
+     * Parses an ISBN-10 or ISBN-13, ignoring hyphens and spaces.
+     *
+     * @return the packed ISBN-13
+     * @throws InvalidIsbnException if the text is malformed or the
+     *                              check digit does not match
+     */
+    public static long parse(String text) throws InvalidIsbnException {
+        long value = parseOrNone(text);
+        if (value == NONE) {
+            throw new InvalidIsbnException(text);
+        }
+        return value;
+    }
+
+    /**
+     * Variant used by the Book constructors and setters: blank text
+     * and "N/A" mean "no ISBN".
+     *
+     * @throws InvalidIsbnException if a non-blank value is not a valid ISBN
+     */
+    public static long valueOf(String text) throws InvalidIsbnException {
+        if (text == null || text.trim().isEmpty() || text.trim().equalsIgnoreCase("N/A")) {
+            return NONE;
+        }
+        return parse(text);
+    }
+
+    /** @return true if the text is a well-formed ISBN with a correct check digit */
+    public static boolean isValid(String text) {
+        return parseOrNone(text) != NONE;
+    }
+
+    /** Formats a packed ISBN as "978-0132350884", or "N/A" for {@link #NONE} */
+    public static String format(long isbn) {
+        if (isbn == NONE) {
+            return "N/A";
+        }
+        String digits = Long.toString(isbn);
+        return digits.substring(0, 3) + "-" + digits.substring(3);
+    }
+
+    /**
+     * Returns the packed ISBN-13, or {@link #NONE} if the text is not
+     * a valid ISBN (including blank text and "N/A"). For lookups where
+     * "not an ISBN" is an answer, not an error.
+     */
+    public static long parseOrNone(String text) {
+        if (text == null) {
+            return NONE;
+        }
+        int[] digits = new int[13];
+        int count = 0;
+        boolean checkX = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '-' || c == ' ') {
+                continue;
+            }
+            if (count == 13 || checkX) {
+                return NONE;   // too long, or something after the 'X'
+            }
+            if (c >= '0' && c <= '9') {
+                digits[count++] = c - '0';
+            } else if ((c == 'X' || c == 'x') && count == 9) {
+                digits[count++] = 10;   // ISBN-10 check digit only
+                checkX = true;
+            } else {
+                return NONE;
+            }
+        }
+
+        if (count == 10) {
+            return fromIsbn10(digits);
+        }
+        if (count == 13 && isbn13CheckOk(digits)
+                && digits[0] == 9 && digits[1] == 7 && (digits[2] == 8 || digits[2] == 9)) {
+            return pack(digits, 13);
+        }
+        return NONE;
+    }
+
+    // ── Private Helpers ────────────────────────────────────────────
+
+    /** Validates an ISBN-10 (mod 11) and converts it to its 978 ISBN-13 */
+    private static long fromIsbn10(int[] d) {
+        int sum = 0;
+        for (int i = 0; i < 10; i++) {
+            if (d[i] == 10 && i != 9) {
+                return NONE;
+            }
+            sum += d[i] * (10 - i);
+        }
+        if (sum % 11 != 0) {
+            return NONE;
+        }
+        int[] d13 = new int[13];
+        d13[0] = 9; d13[1] = 7; d13[2] = 8;
+        System.arraycopy(d, 0, d13, 3, 9);
+        d13[12] = isbn13CheckDigit(d13);
+        return pack(d13, 13);
+    }
+
+    private static boolean isbn13CheckOk(int[] d) {
+        return isbn13CheckDigit(d) == d[12];
+    }
+
+    /** Check digit from the first 12 digits, weights 1,3,1,3,... */
+    private static int isbn13CheckDigit(int[] d) {
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            sum += d[i] * ((i % 2 == 0) ? 1 : 3);
+        }
+        return (10 - sum % 10) % 10;
+    }
+
+    private static long pack(int[] d, int n) {
+        long v = 0;
+        for (int i = 0; i < n; i++) {
+            v = v * 10 + d[i];
+        }
+        return v;
+    }
+}
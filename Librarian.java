@@ -9,7 +9,7 @@ package model;
  *
  *  OOP CONCEPTS DEMONSTRATED:
  *    - Inheritance      : extends Person
- *    - Method Overriding: getRole() and displayInfo() overridden
+ *    - Method Overriding: getRole() and formatDetails() overridden
  *    - Encapsulation    : staffId and department are private
  *    - Constructors     : calls super() to initialize parent fields
  * ============================================================
@@ -35,17 +35,29 @@ public class Librarian extends Person {
         return "Librarian";
     }
 
-    // ── Method Overriding: extends parent's displayInfo() ──────────
+    // ── Method Overriding: extends parent's formatDetails() ────────
     @Override
-    public void displayInfo() {
-        super.displayInfo();                    // ← parent fields first
-        System.out.println("  │  Staff ID  : " + staffId);
-        System.out.println("  │  Department: " + department);
-        System.out.println("  └─────────────────────────────────────");
+    public String formatDetails() {
+        String nl = System.lineSeparator();
+        return super.formatDetails()            // ← parent fields first
+             + "  │  Staff ID  : " + staffId    + nl
+             + "  │  Department: " + department + nl
+             + "  └─────────────────────────────────────" + nl;
     }
 
     // ── Getters & Setters (Encapsulation) ─────────────────────────
     public String getStaffId()          { return staffId;    }
     public String getDepartment()       { return department; }
-    public void setDepartment(String d) { this.department = d; }
+
+    /** @throws IllegalArgumentException if the listener refuses the change */
+    public void setDepartment(String department) {
+        String old = this.department;
+        this.department = department;
+        try {
+            fireChanged("department", old);
+        } catch (IllegalArgumentException e) {
+            this.department = old;
+            throw e;
+        }
+    }
 }
@@ -0,0 +1,461 @@
+package service;
+
+import exception.*;
+import model.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
+
+/**
+ * ============================================================
+ *  CLASS   : LibraryBootstrap
+ *  PACKAGE : service
+ *  PURPOSE : Startup pipeline for a LibraryService holding a large
+ *            catalogue: loads the entities, builds every index in
+ *            parallel, optionally warms up the JIT, and says when
+ *            the service is ready for traffic.
+ *
+ *  HOW IT WORKS:
+ *    - LOADING   : the books, members and librarians are copied
+ *                  into the lists the service will own.
+ *    - INDEXING  : one fork/join pool builds, side by side,
+ *                    · the book and member ID indexes, split into
+ *                      chunks that fill one concurrent map;
+ *                    · the fuzzy search index, one index per worker,
+ *                      merged pairwise as they finish;
+ *                    · the autocomplete suffix array, one sort per
+ *                      first character (SuggestionIndex.bulkLoad());
+ *                    · the member directory, one task per field
+ *                      (MemberDirectory.bulkLoad());
+ *                    · the ISBN index, as one task (it is cheap).
+ *                  Nothing is locked while this runs; the finished
+ *                  indexes are then installed in one step and
+ *                  listeners are told about every entity.
+ *    - WARMING   : (optional) borrow/return/search/suggest are run
+ *                  many times against a throw-away scratch service,
+ *                  so the JIT has compiled those paths before the
+ *                  first patron arrives. Real data is not touched.
+ *    - READY     : front ends poll isReady() or block in
+ *                  awaitReady() before routing traffic.
+ *
+ *  The target service must be empty. One bootstrap runs once.
+ * ============================================================
+ */
+public class LibraryBootstrap {
+
+    /** Where the pipeline is; FAILED is final, like READY */
+    public enum State { NEW, LOADING, INDEXING, WARMING, READY, FAILED }
+
+    /** Entities per fork/join leaf task */
+    private static final int CHUNK = 8_192;
+
+    // ── Warm-up Workload ───────────────────────────────────────────
+    public  static final int DEFAULT_WARM_UP_ROUNDS = 200;
+    private static final int WARM_BOOKS   = 500;
+    private static final int WARM_MEMBERS = 100;
+
+    private final LibraryService service;
+    private final int            parallelism;
+    private final int            warmUpRounds;    // 0 = no warm-up
+
+    private volatile State state = State.NEW;
+    private volatile Throwable failure;
+
+    public LibraryBootstrap(LibraryService service) {
+        this(service, Runtime.getRuntime().availableProcessors(), DEFAULT_WARM_UP_ROUNDS);
+    }
+
+    /**
+     * @param parallelism  fork/join worker threads for index building
+     * @param warmUpRounds rounds of the warm-up workload, 0 to skip it
+     */
+    public LibraryBootstrap(LibraryService service, int parallelism, int warmUpRounds) {
+        if (parallelism < 1 || warmUpRounds < 0) {
+            throw new IllegalArgumentException("parallelism must be positive, warmUpRounds not negative");
+        }
+        this.service      = service;
+        this.parallelism  = parallelism;
+        this.warmUpRounds = warmUpRounds;
+    }
+
+    // ==============================================================
+    //   PIPELINE
+    // ==============================================================
+
+    /**
+     * Runs the whole pipeline on the calling thread.
+     *
+     * @return timings of each phase
+     * @throws DuplicateEntryException if two books or two members share an ID
+     * @throws IllegalStateException   if the service is not empty or
+     *                                 this bootstrap already ran
+     */
+    public Report start(List<Book> books, List<Member> members, List<Librarian> librarians)
+            throws DuplicateEntryException {
+        synchronized (this) {
+            if (state != State.NEW) {
+                throw new IllegalStateException("Bootstrap already started (" + state + ")");
+            }
+            setState(State.LOADING);
+        }
+        try {
+            Report report = new Report(parallelism);
+            long t0 = System.nanoTime();
+            Built built = new Built(new ArrayList<>(books), new ArrayList<>(members),
+                    new ArrayList<>(librarians));
+            report.loadMillis = millisSince(t0);
+
+            setState(State.INDEXING);
+            long t1 = System.nanoTime();
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                pool.invoke(new BuildAll(built, report));
+            } finally {
+                pool.shutdown();
+            }
+            if (built.duplicate != null) {
+                throw built.duplicate;
+            }
+            report.indexMillis = millisSince(t1);
+
+            long t2 = System.nanoTime();
+            service.install(built);
+            report.installMillis = millisSince(t2);
+
+            if (warmUpRounds > 0) {
+                setState(State.WARMING);
+                long t3 = System.nanoTime();
+                warmUp(warmUpRounds);
+                report.warmUpMillis = millisSince(t3);
+            }
+            report.books   = built.books.size();
+            report.members = built.members.size();
+            setState(State.READY);
+            return report;
+        } catch (DuplicateEntryException | RuntimeException | Error e) {
+            failure = e;
+            setState(State.FAILED);
+            throw e;
+        }
+    }
+
+    /**
+     * Runs the pipeline on its own daemon thread. The future fails
+     * with the same exception start() would have thrown.
+     */
+    public CompletableFuture<Report> startAsync(List<Book> books, List<Member> members,
+                                                List<Librarian> librarians) {
+        CompletableFuture<Report> future = new CompletableFuture<>();
+        Thread t = new Thread(() -> {
+            try {
+                future.complete(start(books, members, librarians));
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        }, "library-bootstrap");
+        t.setDaemon(true);
+        t.start();
+        return future;
+    }
+
+    // ==============================================================
+    //   READINESS
+    // ==============================================================
+
+    public State     getState()   { return state;                }
+    public boolean   isReady()    { return state == State.READY; }
+    public Throwable getFailure() { return failure;              }
+
+    /**
+     * Blocks until the service is ready, the pipeline fails or the
+     * timeout passes.
+     *
+     * @return true if the service is ready
+     */
+    public synchronized boolean awaitReady(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (state != State.READY && state != State.FAILED) {
+            long left = deadline - System.currentTimeMillis();
+            if (left <= 0) {
+                return false;
+            }
+            wait(left);
+        }
+        return state == State.READY;
+    }
+
+    private synchronized void setState(State next) {
+        state = next;
+        notifyAll();
+    }
+
+    // ==============================================================
+    //   INDEX BUILDING (fork/join)
+    // ==============================================================
+
+    /** Everything the pipeline hands to LibraryService.install() */
+    static final class Built {
+        final List<Book>               books;
+        final List<Member>             members;
+        final List<Librarian>          librarians;
+        Map<String, Book>              booksById;
+        Map<String, Member>            membersById;
+        MemberDirectory                directory;
+        FuzzyIndex                     fuzzyIndex;
+        SuggestionIndex                suggestionIndex;
+        Map<Long, List<Book>>          isbnIndex;
+        volatile DuplicateEntryException duplicate;
+
+        Built(List<Book> books, List<Member> members, List<Librarian> librarians) {
+            this.books      = books;
+            this.members    = members;
+            this.librarians = librarians;
+        }
+    }
+
+    /** Forks one task per index and waits for all of them */
+    private static final class BuildAll extends RecursiveAction {
+        private final Built  built;
+        private final Report report;
+
+        BuildAll(Built built, Report report) {
+            this.built  = built;
+            this.report = report;
+        }
+
+        @Override
+        protected void compute() {
+            invokeAll(
+                timed(() -> built.booksById = buildIdIndex(built, built.books, "Book",
+                        Book::getBookId), millis -> report.bookIdMillis = millis),
+                timed(() -> built.membersById = buildIdIndex(built, built.members, "Member",
+                        Member::getPersonId), millis -> report.memberIdMillis = millis),
+                timed(() -> built.fuzzyIndex = new FuzzyChunk(built.books, 0, built.books.size(),
+                        fuzzyLeafSize(built.books.size(), getPool().getParallelism())).invoke(),
+                        millis -> report.fuzzyMillis = millis),
+                timed(() -> built.suggestionIndex = SuggestionIndex.bulkLoad(built.books),
+                        millis -> report.suggestMillis = millis),
+                timed(() -> built.isbnIndex = buildIsbnIndex(built.books),
+                        millis -> report.isbnMillis = millis),
+                timed(() -> built.directory = buildDirectory(built),
+                        millis -> report.directoryMillis = millis));
+        }
+    }
+
+    /** Wraps one index build so its wall time lands in the report */
+    private static RecursiveAction timed(Runnable build, LongConsumer sink) {
+        return new RecursiveAction() {
+            @Override
+            protected void compute() {
+                long t0 = System.nanoTime();
+                build.run();
+                sink.accept(millisSince(t0));
+            }
+        };
+    }
+
+    /** lower-case ID → entity, filled by CHUNK-sized leaves in parallel */
+    private static <T> Map<String, T> buildIdIndex(Built built, List<T> items, String type,
+                                                  Function<T, String> id) {
+        ConcurrentHashMap<String, T> index = new ConcurrentHashMap<>(items.size() * 4 / 3 + 1);
+        AtomicReference<String> duplicate = new AtomicReference<>();
+        new IdChunk<>(items, 0, items.size(), id, index, duplicate).invoke();
+        if (duplicate.get() != null) {
+            built.duplicate = new DuplicateEntryException(type, duplicate.get());
+        }
+        return index;
+    }
+
+    private static final class IdChunk<T> extends RecursiveAction {
+        private final List<T>                      items;
+        private final int                          from;
+        private final int                          to;
+        private final Function<T, String>          id;
+        private final ConcurrentHashMap<String, T> index;
+        private final AtomicReference<String>      duplicate;
+
+        IdChunk(List<T> items, int from, int to, Function<T, String> id,
+                ConcurrentHashMap<String, T> index, AtomicReference<String> duplicate) {
+            this.items     = items;
+            this.from      = from;
+            this.to        = to;
+            this.id        = id;
+            this.index     = index;
+            this.duplicate = duplicate;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > CHUNK) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new IdChunk<>(items, from, mid, id, index, duplicate),
+                          new IdChunk<>(items, mid, to, id, index, duplicate));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                T item = items.get(i);
+                String key = id.apply(item);
+                if (index.putIfAbsent(key.toLowerCase(), item) != null) {
+                    duplicate.compareAndSet(null, key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Every merge copies the right half's tokens again, so fuzzy
+     * leaves are one per worker rather than CHUNK-sized.
+     */
+    private static int fuzzyLeafSize(int books, int parallelism) {
+        return Math.max(CHUNK, (books + parallelism - 1) / parallelism);
+    }
+
+    /** Fuzzy index over books[from, to): leaves index, parents merge left ← right */
+    private static final class FuzzyChunk extends RecursiveTask<FuzzyIndex> {
+        private final List<Book> books;
+        private final int        from;
+        private final int        to;
+        private final int        leafSize;
+
+        FuzzyChunk(List<Book> books, int from, int to, int leafSize) {
+            this.books    = books;
+            this.from     = from;
+            this.to       = to;
+            this.leafSize = leafSize;
+        }
+
+        @Override
+        protected FuzzyIndex compute() {
+            if (to - from > leafSize) {
+                int mid = (from + to) >>> 1;
+                FuzzyChunk right = new FuzzyChunk(books, mid, to, leafSize);
+                right.fork();
+                FuzzyIndex left = new FuzzyChunk(books, from, mid, leafSize).compute();
+                left.addAll(right.join());   // keeps catalogue order in postings
+                return left;
+            }
+            FuzzyIndex index = new FuzzyIndex();
+            for (int i = from; i < to; i++) {
+                index.add(books.get(i));
+            }
+            return index;
+        }
+    }
+
+    private static MemberDirectory buildDirectory(Built built) {
+        try {
+            return MemberDirectory.bulkLoad(built.members, built.librarians);
+        } catch (DuplicateEntryException e) {
+            built.duplicate = e;
+            return null;
+        }
+    }
+
+    private static Map<Long, List<Book>> buildIsbnIndex(List<Book> books) {
+        Map<Long, List<Book>> index = new HashMap<>();
+        for (Book b : books) {
+            long isbn = b.getIsbn13();
+            if (isbn != Isbn.NONE) {
+                index.computeIfAbsent(isbn, k -> new ArrayList<>(1)).add(b);
+            }
+        }
+        return index;
+    }
+
+    // ==============================================================
+    //   JIT WARM-UP
+    // ==============================================================
+
+    /**
+     * Exercises the hot paths on a scratch service with synthetic
+     * books and members, so compiled code is ready for the real one.
+     */
+    private static void warmUp(int rounds) {
+        LibraryService scratch = new LibraryService();
+        scratch.setEcho(false);
+        String[] words = { "Clean", "Code", "Java", "Patterns", "History", "Garden", "Ocean", "Night" };
+        try {
+            for (int i = 0; i < WARM_BOOKS; i++) {
+                scratch.addBook(new Book("WB" + i, words[i % words.length] + " " + words[(i / 8) % words.length]
+                        + " " + i, "Author " + (i % 37), "Warm-up"));
+            }
+            for (int i = 0; i < WARM_MEMBERS; i++) {
+                scratch.registerMember(new Member("WM" + i, "Member " + i, "wm" + i + "@warm.up", "000"));
+            }
+            for (int r = 0; r < rounds; r++) {
+                for (int i = 0; i < WARM_BOOKS; i++) {
+                    String member = "WM" + ((i + r) % WARM_MEMBERS);
+                    String book   = "WB" + i;
+                    scratch.borrowBook(member, book);
+                    scratch.returnBook(member, book);
+                }
+                String word = words[r % words.length];
+                scratch.searchBook(word);
+                scratch.searchBook(word, "Author " + (r % 37));
+                scratch.searchBook(word.substring(1) + "x", 1);
+                scratch.suggest(word.substring(0, 2), 5);
+                scratch.recommend("WB" + (r % WARM_BOOKS), 5);
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("Warm-up failed: " + e.getMessage(), e);
+        }
+    }
+
+    private static long millisSince(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    // ==============================================================
+    //   REPORT
+    // ==============================================================
+
+    /** Wall time of each phase and of each index build, in ms */
+    public static final class Report {
+        private final int parallelism;
+        private int  books;
+        private int  members;
+        private long loadMillis;
+        private long indexMillis;
+        private long installMillis;
+        private long warmUpMillis;
+        private volatile long bookIdMillis;
+        private volatile long memberIdMillis;
+        private volatile long fuzzyMillis;
+        private volatile long suggestMillis;
+        private volatile long isbnMillis;
+        private volatile long directoryMillis;
+
+        private Report(int parallelism) {
+            this.parallelism = parallelism;
+        }
+
+        public int  getBooks()         { return books;         }
+        public int  getMembers()       { return members;       }
+        public long getIndexMillis()   { return indexMillis;   }
+        public long getWarmUpMillis()  { return warmUpMillis;  }
+
+        public long getTotalMillis() {
+            return loadMillis + indexMillis + installMillis + warmUpMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "Bootstrap[" + books + " books, " + members + " members, " + parallelism
+                    + " threads: load " + loadMillis + " ms, index " + indexMillis
+                    + " ms (ids " + bookIdMillis + "/" + memberIdMillis + ", fuzzy " + fuzzyMillis
+                    + ", suggest " + suggestMillis + ", isbn " + isbnMillis
+                    + ", directory " + directoryMillis + "), install "
+                    + installMillis + " ms, warm-up " + warmUpMillis + " ms]";
+        }
+    }
+}
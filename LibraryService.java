@@ -3,9 +3,16 @@ package service;
 import exception.*;
 import model.*;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.WritableByteChannel;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * ============================================================
@@ -17,10 +24,28 @@ import java.util.List;
  *  OOP CONCEPTS DEMONSTRATED:
  *    - Encapsulation      : All lists are private
  *    - Method Overloading : addBook() has 3 versions
- *                           searchBook() has 2 versions
+ *                           searchBook() has 3 versions
+ *                           borrowBook()/returnBook() have keyed versions
  *    - Exception Handling : Throws and documents all checked exceptions
  *    - Polymorphism       : displayAllPersons() uses Person references
  *                           to call overridden methods at runtime
+ *
+ *  THREAD SAFETY:
+ *    Every public instance method locks the service, so one
+ *    instance can be shared between threads. The lists returned by
+ *    getBooks()/getMembers() are live views; hold the service lock
+ *    (synchronized (service) {...}) while iterating them if other
+ *    threads may be changing the service.
+ *
+ *  TIERED MODE (opt-in, LibraryService(TieredBookStore)):
+ *    Books live in the store, which keeps only the working set and
+ *    every book on loan as objects. The service then holds no Book
+ *    references of its own: the catalogue is a list of IDs, the
+ *    ISBN and recommendation indexes are keyed by ID, and the fuzzy
+ *    index is not kept (fuzzy search scans). Looking a book up by
+ *    ID promotes it; listings and scans read cold books as copies
+ *    without promoting them, and an edit made through such a copy
+ *    is written back to the store.
  * ============================================================
  */
 public class LibraryService {
@@ -30,11 +55,91 @@ public class LibraryService {
     private final List<Member>    members;
     private final List<Librarian> librarians;
 
-    // ── Constructor ────────────────────────────────────────────────
+    // ── ID Indexes (lower-case ID → entity) ────────────────────────
+    private Map<String, Book>     booksById;
+    private Map<String, Member>   membersById;
+    private MemberDirectory       directory;         // name/email/phone → members and staff
+    private ConcurrentMap<String, Member> emailClaims; // shared by all shards, or null
+
+    // ── Search Indexes (kept current by addBook and Book setters) ──
+    private FuzzyIndex            fuzzyIndex;
+    private SuggestionIndex       suggestionIndex;
+    private Map<Long, List<Book>> isbnIndex;         // packed ISBN → copies
+    private CoBorrowIndex         coBorrowIndex;     // "also borrowed", fed by lendBook()
+
+    // ── Rendered rows/cards, re-rendered when an entity's version changes
+    private final RenderCache     renderCache;
+
+    // ── Outcomes of recent keyed borrow/return requests ───────────
+    private final IdempotencyTable idempotency;
+
+    // ── Observers and Console Echo ─────────────────────────────────
+    private final List<MutationListener> listeners;
+    private boolean echo;                            // print "✔ ..." confirmations
+
+    // ── Tiered Mode (store == null: every book stays in memory) ────
+    private final TieredBookStore     store;
+    private Map<Long, List<String>>   isbnIds;       // packed ISBN → lower-case copy IDs
+
+    // ── Constructors ───────────────────────────────────────────────
     public LibraryService() {
-        this.books      = new ArrayList<>();
+        this(null);
+    }
+
+    /**
+     * Tiered mode (see the class comment): the store holds the books.
+     * The store must be empty and used only through this service.
+     *
+     * @param store where books are kept, or null to keep them all in memory
+     */
+    public LibraryService(TieredBookStore store) {
+        this.store      = store;
+        this.books      = (store == null) ? new ArrayList<>() : new TieredBooks();
         this.members    = new ArrayList<>();
         this.librarians = new ArrayList<>();
+        this.booksById   = new HashMap<>();
+        this.membersById = new HashMap<>();
+        this.directory   = new MemberDirectory();
+        this.fuzzyIndex      = new FuzzyIndex();
+        this.suggestionIndex = new SuggestionIndex();
+        this.isbnIndex       = new HashMap<>();
+        this.coBorrowIndex   = new CoBorrowIndex();
+        this.renderCache     = new RenderCache();
+        this.idempotency     = new IdempotencyTable();
+        this.isbnIds         = new HashMap<>();
+        this.listeners  = new ArrayList<>();
+        this.echo       = true;
+    }
+
+    // ==============================================================
+    //   CONFIGURATION
+    // ==============================================================
+
+    /**
+     * Turns the "✔ ..." confirmation lines printed by add/register/
+     * borrow/return on or off. Listings are always printed.
+     * Replicas and scripted runs switch echo off.
+     */
+    public synchronized void setEcho(boolean echo) {
+        this.echo = echo;
+    }
+
+    /** Registers an observer told about every successful change */
+    public synchronized void addMutationListener(MutationListener listener) {
+        listeners.add(listener);
+    }
+
+    public synchronized void removeMutationListener(MutationListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Makes member emails unique across every service sharing the
+     * map (the shards of a ShardedLibraryService), not just this one.
+     * Set before any member is registered.
+     */
+    synchronized void shareEmailClaims(ConcurrentMap<String, Member> claims) {
+        this.emailClaims = claims;
     }
 
     // ==============================================================
@@ -48,22 +153,31 @@ public class LibraryService {
      *
      * @throws DuplicateEntryException if bookId already exists
      */
-    public void addBook(Book book) throws DuplicateEntryException {
+    public synchronized void addBook(Book book) throws DuplicateEntryException {
         // Guard: prevent duplicate book IDs
-        for (Book b : books) {
-            if (b.getBookId().equalsIgnoreCase(book.getBookId())) {
-                throw new DuplicateEntryException("Book", book.getBookId());
-            }
+        String key = book.getBookId().toLowerCase();
+        if (store != null ? store.contains(key) : booksById.containsKey(key)) {
+            throw new DuplicateEntryException("Book", book.getBookId());
         }
         books.add(book);
-        System.out.println("  ✔ Book added: \"" + book.getTitle() + "\" [ID: " + book.getBookId() + "]");
+        if (store == null) {
+            booksById.put(key, book);
+            fuzzyIndex.add(book);
+        }
+        suggestionIndex.add(book);
+        indexIsbn(book, book.getIsbn13());
+        book.setChangeListener(this::onBookChanged);
+        for (MutationListener l : listeners) {
+            l.bookAdded(book);
+        }
+        echo("  ✔ Book added: \"" + book.getTitle() + "\" [ID: " + book.getBookId() + "]");
     }
 
     /**
      * addBook – OVERLOAD 2  (Method Overloading)
      * Creates a Book without an ISBN, then calls Overload 1.
      */
-    public void addBook(String bookId, String title,
+    public synchronized void addBook(String bookId, String title,
                         String author, String genre)
             throws DuplicateEntryException {
         // Delegates to Overload 1 using the 4-arg Book constructor
@@ -73,36 +187,67 @@ public class LibraryService {
     /**
      * addBook – OVERLOAD 3  (Method Overloading)
      * Creates a Book with all details including ISBN, then calls Overload 1.
+     * The ISBN may be an ISBN-10 or ISBN-13, with or without hyphens;
+     * blank text and "N/A" mean "no ISBN", as in the Book constructor.
+     *
+     * @throws InvalidIsbnException if the ISBN is malformed or its check digit is wrong
      */
-    public void addBook(String bookId, String title,
+    public synchronized void addBook(String bookId, String title,
                         String author, String genre, String isbn)
-            throws DuplicateEntryException {
-        // Delegates to Overload 1 using the 5-arg Book constructor
-        addBook(new Book(bookId, title, author, genre, isbn));
+            throws DuplicateEntryException, InvalidIsbnException {
+        // Delegates to Overload 1 using the packed-ISBN Book constructor
+        addBook(new Book(bookId, title, author, genre, Isbn.valueOf(isbn)));
     }
 
     /** Prints all books in a formatted table */
-    public void viewAllBooks() {
+    public synchronized void viewAllBooks() {
         if (books.isEmpty()) {
             System.out.println("  [!] No books in the catalogue yet.");
             return;
         }
         printBookTableHeader();
         for (Book book : books) {
-            System.out.println(book.toString());  // calls Book's overridden toString()
+            System.out.println(renderBookRow(book));  // cached Book.toString()
         }
         printBookTableFooter();
         System.out.println("  Total: " + books.size() + " book(s)");
     }
 
+    /**
+     * Writes the same table as viewAllBooks() to a channel (file,
+     * socket, ...) in large blocks, e.g. for the nightly stock-check
+     * report. Text is UTF-8; the channel is not closed.
+     */
+    public synchronized void exportBookTable(WritableByteChannel channel) throws IOException {
+        TableRenderer out = new TableRenderer(channel);
+        out.writeBookHeader();
+        for (Book book : books) {
+            out.writeBookRow(book);
+        }
+        out.writeBookFooter();
+        out.writeLine("  Total: " + books.size() + " book(s)");
+        out.flush();
+    }
+
     /**
      * searchBook – OVERLOAD 1  (Method Overloading)
      * Searches by a single keyword across title, author, and genre.
+     * If the keyword is a valid ISBN, returns the copies with that ISBN.
      *
      * @param keyword search term
      * @return list of matching books
      */
-    public List<Book> searchBook(String keyword) {
+    public synchronized List<Book> searchBook(String keyword) {
+        // A scanned/typed ISBN is answered straight from the ISBN index
+        long isbn = Isbn.parseOrNone(keyword);
+        if (isbn != Isbn.NONE && store != null) {
+            return tieredCopies(isbn);
+        }
+        if (isbn != Isbn.NONE) {
+            List<Book> copies = isbnIndex.get(isbn);
+            return (copies == null) ? new ArrayList<>() : new ArrayList<>(copies);
+        }
+
         List<Book> results = new ArrayList<>();
         String kw = keyword.toLowerCase().trim();
         for (Book b : books) {
@@ -123,7 +268,7 @@ public class LibraryService {
      * @param author partial author name to match
      * @return list of matching books
      */
-    public List<Book> searchBook(String title, String author) {
+    public synchronized List<Book> searchBook(String title, String author) {
         List<Book> results = new ArrayList<>();
         for (Book b : books) {
             boolean titleMatch  = b.getTitle().toLowerCase().contains(title.toLowerCase().trim());
@@ -135,6 +280,93 @@ public class LibraryService {
         return results;
     }
 
+    /**
+     * searchBook – OVERLOAD 3  (Method Overloading)
+     * Typo-tolerant search over title and author words, e.g.
+     * "Fitzgerld" finds "F. Scott Fitzgerald". Uses the fuzzy index
+     * instead of scanning every book (except in tiered mode).
+     *
+     * @param keyword  search term, possibly misspelt
+     * @param maxEdits maximum typos allowed per word
+     * @return list of matching books, closest matches first
+     */
+    public synchronized List<Book> searchBook(String keyword, int maxEdits) {
+        if (store != null) {
+            return FuzzyIndex.scan(books, keyword, maxEdits);
+        }
+        return fuzzyIndex.search(keyword, maxEdits);
+    }
+
+    /** searchBook(keyword, maxEdits) with each hit's edit distance, for merging shard results */
+    synchronized List<FuzzyIndex.Hit> searchBookHits(String keyword, int maxEdits) {
+        if (store != null) {
+            return FuzzyIndex.scanHits(books, keyword, maxEdits);
+        }
+        return fuzzyIndex.searchHits(keyword, maxEdits);
+    }
+
+    /**
+     * Autocomplete for the search box: titles and authors that start
+     * with (or have a word starting with) the typed prefix, most
+     * borrowed first. At most {@link SuggestionIndex#MAX_SUGGESTIONS}.
+     *
+     * @param prefix text typed so far
+     * @param limit  maximum number of suggestions
+     * @return suggested titles/authors
+     */
+    public synchronized List<String> suggest(String prefix, int limit) {
+        return suggestionIndex.suggest(prefix, limit);
+    }
+
+    /**
+     * "Members who borrowed this also borrowed": the books most often
+     * borrowed by the same members as the given one, strongest first.
+     * At most {@link CoBorrowIndex#MAX_RECOMMENDATIONS}.
+     *
+     * @param bookId book being viewed or checked out
+     * @param limit  maximum number of books
+     * @return recommended books (empty if the book has no history)
+     */
+    public synchronized List<Book> recommend(String bookId, int limit) {
+        if (store == null) {
+            return coBorrowIndex.recommend(bookId, limit);
+        }
+        List<Book> result = new ArrayList<>();
+        for (String id : coBorrowIndex.recommendIds(bookId, limit)) {
+            Book b = wire(store.peek(id));
+            if (b != null) {
+                result.add(b);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Replaces the recommendation counts with ones rebuilt from
+     * historical loans (e.g. the warehouse's loan log), using all
+     * cores. The rebuild runs without the service lock; only the
+     * swap at the end holds it. Loans recorded meanwhile are lost.
+     *
+     * @param memberIds borrower of each loan, oldest loan first
+     * @param bookIds   book of each loan, same order
+     */
+    public void rebuildRecommendations(String[] memberIds, String[] bookIds) {
+        CoBorrowIndex rebuilt = CoBorrowIndex.rebuild(memberIds, bookIds);
+        synchronized (this) {
+            if (store == null) {
+                for (Book b : books) {
+                    rebuilt.bind(b);
+                }
+            }
+            coBorrowIndex = rebuilt;
+        }
+    }
+
+    /** Size and footprint of the recommendation index */
+    public synchronized String getRecommendationStats() {
+        return coBorrowIndex.toString();
+    }
+
     // ==============================================================
     //   MEMBER OPERATIONS
     // ==============================================================
@@ -142,43 +374,80 @@ public class LibraryService {
     /**
      * Registers a new member.
      *
-     * @throws DuplicateEntryException if memberId already exists
+     * @throws DuplicateEntryException if memberId or the email is
+     *                                 already registered
      */
-    public void registerMember(Member member) throws DuplicateEntryException {
-        for (Member m : members) {
-            if (m.getPersonId().equalsIgnoreCase(member.getPersonId())) {
-                throw new DuplicateEntryException("Member", member.getPersonId());
-            }
+    public synchronized void registerMember(Member member) throws DuplicateEntryException {
+        String key = member.getPersonId().toLowerCase();
+        if (membersById.containsKey(key)) {
+            throw new DuplicateEntryException("Member", member.getPersonId());
+        }
+        directory.checkUnique(member);
+        if (!claimEmail(member)) {
+            throw new DuplicateEntryException("Member", "email", member.getEmail());
         }
         members.add(member);
-        System.out.println("  ✔ Member registered: \"" + member.getName()
+        membersById.put(key, member);
+        directory.add(member);
+        member.setChangeListener(this::onPersonChanged);
+        for (MutationListener l : listeners) {
+            l.memberRegistered(member);
+        }
+        echo("  ✔ Member registered: \"" + member.getName()
                 + "\" [ID: " + member.getPersonId() + "]");
     }
 
     /** Adds a librarian to the staff list */
-    public void addLibrarian(Librarian librarian) {
+    public synchronized void addLibrarian(Librarian librarian) {
         librarians.add(librarian);
-        System.out.println("  ✔ Librarian added: \"" + librarian.getName() + "\"");
+        directory.add(librarian);
+        librarian.setChangeListener(this::onPersonChanged);
+        for (MutationListener l : listeners) {
+            l.librarianAdded(librarian);
+        }
+        echo("  ✔ Librarian added: \"" + librarian.getName() + "\"");
+    }
+
+    /**
+     * Desk lookup: members and librarians whose name, email or phone
+     * starts with the query (e.g. "ali", "bob@", "555-01"), best
+     * matches first. At most {@link MemberDirectory#MAX_RESULTS}.
+     *
+     * @param query name, email or phone prefix
+     * @param limit maximum number of people
+     * @return matching members/librarians
+     */
+    public synchronized List<Person> findPersons(String query, int limit) {
+        return directory.search(query, limit);
     }
 
     /** Prints all registered members */
-    public void viewAllMembers() {
+    public synchronized void viewAllMembers() {
         if (members.isEmpty()) {
             System.out.println("  [!] No members registered yet.");
             return;
         }
         printMemberTableHeader();
         for (Member m : members) {
-            System.out.printf("| %-8s | %-22s | %-28s | %-7s |%n",
-                    m.getPersonId(),
-                    m.getName(),
-                    m.getEmail(),
-                    m.getBorrowedCount() + "/" + Member.getMaxBorrowLimit());
+            System.out.println(renderCache.get(RenderCache.MEMBER_ROW, m, m.getVersion(),
+                    () -> formatMemberRow(m)));
         }
         printMemberTableFooter();
         System.out.println("  Total: " + members.size() + " member(s)");
     }
 
+    /** Writes the same table as viewAllMembers() to a channel (UTF-8, left open) */
+    public synchronized void exportMemberTable(WritableByteChannel channel) throws IOException {
+        TableRenderer out = new TableRenderer(channel);
+        out.writeMemberHeader();
+        for (Member m : members) {
+            out.writeMemberRow(m);
+        }
+        out.writeMemberFooter();
+        out.writeLine("  Total: " + members.size() + " member(s)");
+        out.flush();
+    }
+
     // ==============================================================
     //   BORROW / RETURN OPERATIONS
     // ==============================================================
@@ -191,7 +460,7 @@ public class LibraryService {
      * @throws BookNotAvailableException      if book is already borrowed
      * @throws BorrowLimitExceededException   if member holds max books
      */
-    public void borrowBook(String memberId, String bookId)
+    public synchronized void borrowBook(String memberId, String bookId)
             throws MemberNotFoundException,
                    BookNotFoundException,
                    BookNotAvailableException,
@@ -203,32 +472,105 @@ public class LibraryService {
         // Step 2: Look up book (throws if not found)
         Book book = findBookById(bookId);
 
-        // Step 3: Check book availability (throws if borrowed)
-        if (!book.isAvailable()) {
-            throw new BookNotAvailableException(bookId);
-        }
-
-        // Step 4: Check member's borrow limit (throws if exceeded)
-        if (!member.canBorrow()) {
-            throw new BorrowLimitExceededException(
-                    member.getName(), Member.getMaxBorrowLimit());
-        }
+        // Steps 3–4: Check availability and borrow limit (throws if not allowed)
+        checkBorrowable(member, book);
 
         // Step 5: Perform borrow — update both book and member
-        book.markBorrowed(memberId);
-        member.borrowBook(bookId);
+        lendBook(book, member, bookId);
 
-        System.out.println("  ✔ \"" + book.getTitle()
-                + "\" successfully borrowed by " + member.getName());
+        echo(borrowedMessage(book, member));
+    }
+
+    /**
+     * borrowBook – idempotent version for kiosks that retry.
+     * The first call with a request key runs the borrow; a repeat
+     * with the same key (within the table's TTL) prints the same
+     * confirmation or throws the same exception without borrowing
+     * again.
+     *
+     * @throws IllegalArgumentException if the key was already used
+     *         for a different member/book
+     */
+    public synchronized void borrowBook(String memberId, String bookId, String requestKey)
+            throws MemberNotFoundException,
+                   BookNotFoundException,
+                   BookNotAvailableException,
+                   BorrowLimitExceededException {
+
+        IdempotencyTable.Outcome prior = idempotency.lookup(requestKey, "borrow", memberId, bookId);
+        if (prior == null) {
+            String    message = null;
+            Exception failure = null;
+            try {
+                Member member = findMemberById(memberId);
+                Book   book   = findBookById(bookId);
+                checkBorrowable(member, book);
+                lendBook(book, member, bookId);
+                message = borrowedMessage(book, member);
+            } catch (MemberNotFoundException | BookNotFoundException
+                     | BookNotAvailableException | BorrowLimitExceededException e) {
+                failure = e;
+            }
+            prior = idempotency.record(requestKey, "borrow", memberId, bookId, message, failure);
+        }
+
+        Exception failure = prior.getFailure();
+        if (failure instanceof MemberNotFoundException)      throw (MemberNotFoundException) failure;
+        if (failure instanceof BookNotFoundException)        throw (BookNotFoundException) failure;
+        if (failure instanceof BookNotAvailableException)    throw (BookNotAvailableException) failure;
+        if (failure instanceof BorrowLimitExceededException) throw (BorrowLimitExceededException) failure;
+        echo(prior.getMessage());
     }
 
     /**
      * Returns a borrowed book from a member.
      *
+     * @return false if the member did not borrow the book (a
+     *         "did not borrow" line is printed and nothing changes)
      * @throws MemberNotFoundException if memberId not found
      * @throws BookNotFoundException   if bookId not found
      */
-    public void returnBook(String memberId, String bookId)
+    public synchronized boolean returnBook(String memberId, String bookId)
+            throws MemberNotFoundException, BookNotFoundException {
+        String message = applyReturn(memberId, bookId);
+        echo(message);
+        return !isWarning(message);
+    }
+
+    /**
+     * returnBook – idempotent version for kiosks that retry.
+     * A repeat with the same request key prints the original
+     * "successfully returned" line instead of "did not borrow".
+     *
+     * @return false if the member did not borrow the book, also when
+     *         repeating such a request
+     * @throws IllegalArgumentException if the key was already used
+     *         for a different member/book
+     */
+    public synchronized boolean returnBook(String memberId, String bookId, String requestKey)
+            throws MemberNotFoundException, BookNotFoundException {
+
+        IdempotencyTable.Outcome prior = idempotency.lookup(requestKey, "return", memberId, bookId);
+        if (prior == null) {
+            String    message = null;
+            Exception failure = null;
+            try {
+                message = applyReturn(memberId, bookId);
+            } catch (MemberNotFoundException | BookNotFoundException e) {
+                failure = e;
+            }
+            prior = idempotency.record(requestKey, "return", memberId, bookId, message, failure);
+        }
+
+        Exception failure = prior.getFailure();
+        if (failure instanceof MemberNotFoundException) throw (MemberNotFoundException) failure;
+        if (failure instanceof BookNotFoundException)   throw (BookNotFoundException) failure;
+        echo(prior.getMessage());
+        return !isWarning(prior.getMessage());
+    }
+
+    /** Performs a return and gives back the line to print */
+    private String applyReturn(String memberId, String bookId)
             throws MemberNotFoundException, BookNotFoundException {
 
         Member member = findMemberById(memberId);
@@ -236,17 +578,95 @@ public class LibraryService {
 
         // Guard: make sure this member actually borrowed this book
         if (!member.hasBorrowed(bookId)) {
-            System.out.println("  [!] Member \"" + member.getName()
-                    + "\" did not borrow book ID \"" + bookId + "\".");
-            return;
+            return "  [!] Member \"" + member.getName()
+                    + "\" did not borrow book ID \"" + bookId + "\".";
         }
 
         // Update both sides
-        book.markReturned();
-        member.returnBook(bookId);
+        takeBackBook(book, member, bookId);
+
+        return "  ✔ \"" + book.getTitle()
+                + "\" successfully returned by " + member.getName();
+    }
+
+    /** True for a "[!]" line, i.e. the return changed nothing */
+    private static boolean isWarning(String message) {
+        return message.startsWith("  [!]");
+    }
+
+    private static String borrowedMessage(Book book, Member member) {
+        return "  ✔ \"" + book.getTitle()
+                + "\" successfully borrowed by " + member.getName();
+    }
+
+    /**
+     * Returns every copy catalogued under an ISBN (O(1) index lookup).
+     *
+     * @throws InvalidIsbnException if the ISBN is malformed
+     */
+    public synchronized List<Book> findBooksByIsbn(String isbn) throws InvalidIsbnException {
+        if (store != null) {
+            return Collections.unmodifiableList(tieredCopies(Isbn.parse(isbn)));
+        }
+        List<Book> copies = isbnIndex.get(Isbn.parse(isbn));
+        return (copies == null)
+                ? Collections.emptyList()
+                : Collections.unmodifiableList(copies);
+    }
+
+    /**
+     * Borrows a book from a scanned ISBN: the first copy on the shelf
+     * is lent to the member.
+     *
+     * @throws BookNotFoundException     if no copy has this ISBN
+     * @throws BookNotAvailableException if every copy is borrowed
+     * @see #borrowBook(String, String)
+     */
+    public synchronized void borrowBookByIsbn(String memberId, String isbn)
+            throws MemberNotFoundException,
+                   BookNotFoundException,
+                   BookNotAvailableException,
+                   BorrowLimitExceededException,
+                   InvalidIsbnException {
+
+        List<Book> copies = findBooksByIsbn(isbn);
+        if (copies.isEmpty()) {
+            throw new BookNotFoundException(isbn);
+        }
+        for (Book copy : copies) {
+            if (copy.isAvailable()) {
+                borrowBook(memberId, copy.getBookId());
+                return;
+            }
+        }
+        throw new BookNotAvailableException(isbn);
+    }
+
+    /**
+     * Returns a book from a scanned ISBN: the copy held by this member
+     * is checked back in.
+     *
+     * @return false if the member holds no copy with this ISBN
+     * @throws BookNotFoundException if no copy has this ISBN
+     * @see #returnBook(String, String)
+     */
+    public synchronized boolean returnBookByIsbn(String memberId, String isbn)
+            throws MemberNotFoundException,
+                   BookNotFoundException,
+                   InvalidIsbnException {
 
-        System.out.println("  ✔ \"" + book.getTitle()
-                + "\" successfully returned by " + member.getName());
+        List<Book> copies = findBooksByIsbn(isbn);
+        if (copies.isEmpty()) {
+            throw new BookNotFoundException(isbn);
+        }
+        Book held = copies.get(0);   // reports "did not borrow" if none is held
+        for (Book copy : copies) {
+            if (memberId.equalsIgnoreCase(copy.getBorrowedByMemberId())) {
+                held = copy;
+                break;
+            }
+        }
+        return returnBook(memberId, held.getBookId());
     }
 
     /**
@@ -254,7 +674,7 @@ public class LibraryService {
      *
      * @throws MemberNotFoundException if memberId not found
      */
-    public void showBorrowedBooks(String memberId)
+    public synchronized void showBorrowedBooks(String memberId)
             throws MemberNotFoundException {
 
         Member member = findMemberById(memberId);
@@ -272,7 +692,7 @@ public class LibraryService {
         for (String bid : borrowedIds) {
             try {
                 Book book = findBookById(bid);
-                System.out.println(book.toString());
+                System.out.println(renderBookRow(book));
             } catch (BookNotFoundException e) {
                 System.out.println("  [!] Orphaned borrow record for book ID: " + bid);
             }
@@ -280,6 +700,37 @@ public class LibraryService {
         printBookTableFooter();
     }
 
+    // ==============================================================
+    //   CACHED RENDERING
+    // ==============================================================
+
+    /** Table row for a book (same text as Book.toString()), cached per version */
+    public synchronized String renderBookRow(Book book) {
+        return renderCache.get(RenderCache.BOOK_ROW, book.getBookId(), book.getVersion(), book::toString);
+    }
+
+    /** Detail card for a book (as printed by Book.displayInfo()), cached per version */
+    public synchronized String renderBookDetails(Book book) {
+        return renderCache.get(RenderCache.BOOK_DETAILS, book.getBookId(), book.getVersion(),
+                book::formatDetails);
+    }
+
+    /** Detail card for a member or librarian, cached per version */
+    public synchronized String renderDetails(Person person) {
+        return renderCache.get(RenderCache.PERSON_DETAILS, person, person.getVersion(),
+                person::formatDetails);
+    }
+
+    /** Hit/miss/eviction counters of the rendered-view cache */
+    public synchronized String getRenderCacheStats() {
+        return renderCache.toString();
+    }
+
+    /** Size and replay count of the keyed borrow/return table */
+    public synchronized String getIdempotencyStats() {
+        return idempotency.toString();
+    }
+
     // ==============================================================
     //   POLYMORPHISM DEMONSTRATION
     // ==============================================================
@@ -288,21 +739,21 @@ public class LibraryService {
      * Demonstrates RUNTIME POLYMORPHISM.
      *
      * A Person reference is used to point at both Member and Librarian
-     * objects. When displayInfo() is called, Java's dynamic dispatch
+     * objects. When formatDetails() is called, Java's dynamic dispatch
      * invokes the correct overridden version at runtime — not the
      * abstract one in Person.
      */
-    public void displayAllPersons() {
+    public synchronized void displayAllPersons() {
         System.out.println("\n  ── Members ──────────────────────────");
         // Person reference → Member object (Runtime Polymorphism)
         for (Person p : members) {
-            p.displayInfo();  // calls Member.displayInfo() at runtime
+            System.out.print(renderDetails(p));  // Member.formatDetails() at runtime
         }
 
         System.out.println("\n  ── Librarians ───────────────────────");
         // Person reference → Librarian object (Runtime Polymorphism)
         for (Person p : librarians) {
-            p.displayInfo();  // calls Librarian.displayInfo() at runtime
+            System.out.print(renderDetails(p));  // Librarian.formatDetails() at runtime
         }
 
         if (members.isEmpty() && librarians.isEmpty()) {
@@ -311,54 +762,426 @@ public class LibraryService {
     }
 
     // ==============================================================
-    //   PRIVATE HELPER METHODS
+    //   PACKAGE-PRIVATE STEPS (shared with ShardedLibraryService)
     // ==============================================================
 
-    /** Finds a Member by ID or throws MemberNotFoundException */
-    private Member findMemberById(String memberId) throws MemberNotFoundException {
+    /**
+     * Checks that the book is on the shelf and the member is below
+     * their borrow limit, without changing anything.
+     *
+     * @throws BookNotAvailableException    if book is already borrowed
+     * @throws BorrowLimitExceededException if member holds max books
+     */
+    static void checkBorrowable(Member member, Book book)
+            throws BookNotAvailableException, BorrowLimitExceededException {
+        if (!book.isAvailable()) {
+            throw new BookNotAvailableException(book.getBookId());
+        }
+        if (!member.canBorrow()) {
+            throw new BorrowLimitExceededException(
+                    member.getName(), Member.getMaxBorrowLimit());
+        }
+    }
+
+    /**
+     * Applies a checked borrow to both sides, updates this service's
+     * indexes and notifies listeners. The book must belong to this
+     * service; the member may be homed on another shard.
+     */
+    void lendBook(Book book, Member member, String bookId) {
+        book.markBorrowed(member.getPersonId());
+        member.borrowBook(bookId);
+        suggestionIndex.recordBorrow(book);
+        if (store != null) {
+            coBorrowIndex.recordBorrow(member.getPersonId(), book.getBookId());
+        } else {
+            coBorrowIndex.recordBorrow(member.getPersonId(), book);
+        }
+        for (MutationListener l : listeners) {
+            l.bookBorrowed(member, book);
+        }
+    }
+
+    /** Applies a return to both sides and notifies listeners */
+    void takeBackBook(Book book, Member member, String bookId) {
+        book.markReturned();
+        member.returnBook(bookId);
+        for (MutationListener l : listeners) {
+            l.bookReturned(member, book);
+        }
+    }
+
+    /** Tells listeners about a loan another shard applied to one of this service's members */
+    void notifyBorrowed(Member member, Book book) {
+        for (MutationListener l : listeners) {
+            l.bookBorrowed(member, book);
+        }
+    }
+
+    /** Tells listeners about a return another shard applied to one of this service's members */
+    void notifyReturned(Member member, Book book) {
+        for (MutationListener l : listeners) {
+            l.bookReturned(member, book);
+        }
+    }
+
+    /** Prints a confirmation line unless echo is switched off */
+    void echo(String line) {
+        if (echo) {
+            System.out.println(line);
+        }
+    }
+
+    /**
+     * Drops all books, members and librarians and starts with empty
+     * indexes. Also forgets recent idempotency keys and gives back
+     * the members' email claims. Used by replicas before loading a
+     * snapshot; listeners and the echo setting are kept.
+     */
+    synchronized void reset() {
+        for (Member m : members) {
+            releaseEmail(m, m.getEmail());   // emailClaims may be shared with other services
+        }
+        books.clear();
+        members.clear();
+        librarians.clear();
+        booksById       = new HashMap<>();
+        membersById     = new HashMap<>();
+        directory       = new MemberDirectory();
+        fuzzyIndex      = new FuzzyIndex();
+        suggestionIndex = new SuggestionIndex();
+        isbnIndex       = new HashMap<>();
+        isbnIds         = new HashMap<>();
+        coBorrowIndex   = new CoBorrowIndex();
+        renderCache.clear();
+        idempotency.clear();
+    }
+
+    /**
+     * Takes over the entities and indexes LibraryBootstrap built off
+     * the lock, then tells listeners about every entity in load order.
+     * Nothing is echoed.
+     *
+     * @throws IllegalStateException if the service already holds data
+     */
+    synchronized void install(LibraryBootstrap.Built built) {
+        if (!books.isEmpty() || !members.isEmpty() || !librarians.isEmpty()) {
+            throw new IllegalStateException("LibraryBootstrap needs an empty LibraryService");
+        }
+        books.addAll(built.books);
+        members.addAll(built.members);
+        librarians.addAll(built.librarians);
+        membersById     = built.membersById;
+        directory       = built.directory;
+        suggestionIndex = built.suggestionIndex;
+        if (store == null) {
+            booksById   = built.booksById;
+            fuzzyIndex  = built.fuzzyIndex;
+            isbnIndex   = built.isbnIndex;
+        } else {
+            for (Book b : built.books) {
+                indexIsbn(b, b.getIsbn13());
+            }
+        }
+        for (Book b : built.books) {
+            b.setChangeListener(this::onBookChanged);
+        }
         for (Member m : members) {
-            if (m.getPersonId().equalsIgnoreCase(memberId)) {
-                return m;
+            m.setChangeListener(this::onPersonChanged);
+        }
+        for (Librarian lib : librarians) {
+            lib.setChangeListener(this::onPersonChanged);
+        }
+        for (MutationListener l : listeners) {
+            for (Book b : built.books) {
+                l.bookAdded(b);
+            }
+            for (Member m : members) {
+                l.memberRegistered(m);
+            }
+            for (Librarian lib : librarians) {
+                l.librarianAdded(lib);
             }
         }
-        throw new MemberNotFoundException(memberId);
     }
 
-    /** Finds a Book by ID or throws BookNotFoundException */
-    private Book findBookById(String bookId) throws BookNotFoundException {
-        for (Book b : books) {
-            if (b.getBookId().equalsIgnoreCase(bookId)) {
-                return b;
+    // ==============================================================
+    //   LOOKUP HELPERS (package-private for ShardedLibraryService)
+    // ==============================================================
+
+    /** Finds a Member by ID or throws MemberNotFoundException */
+    Member findMemberById(String memberId) throws MemberNotFoundException {
+        Member m = membersById.get(memberId.toLowerCase());
+        if (m == null) {
+            throw new MemberNotFoundException(memberId);
+        }
+        return m;
+    }
+
+    /** Finds a Book by ID or throws BookNotFoundException; promotes it in tiered mode */
+    Book findBookById(String bookId) throws BookNotFoundException {
+        Book b = (store != null) ? promote(bookId) : booksById.get(bookId.toLowerCase());
+        if (b == null) {
+            throw new BookNotFoundException(bookId);
+        }
+        return b;
+    }
+
+    /**
+     * The book as it stands now, or null; promotes nothing. In tiered
+     * mode a cold book is a throwaway copy, so read it, don't keep it.
+     */
+    Book peekBook(String bookId) {
+        return (store != null) ? store.peek(bookId) : booksById.get(bookId.toLowerCase());
+    }
+
+    /** Keeps the search indexes in step with edits made through Book setters */
+    private synchronized void onBookChanged(Book book, String field, String oldValue) {
+        if (store != null) {
+            keepEdit(book);
+        }
+        if (field.equals("title") || field.equals("author")) {
+            if (store == null) {
+                fuzzyIndex.reindex(book);
+            }
+            suggestionIndex.replace(book, oldValue,
+                    field.equals("title") ? book.getTitle() : book.getAuthor());
+        } else if (field.equals("isbn")) {
+            unindexIsbn(book, Isbn.parseOrNone(oldValue));
+            indexIsbn(book, book.getIsbn13());
+        }
+        for (MutationListener l : listeners) {
+            l.bookEdited(book, field, oldValue);
+        }
+    }
+
+    /** Keeps the member directory in step with Person setters; may refuse an email */
+    private synchronized void onPersonChanged(Person person, String field, String oldValue) {
+        Member member = (field.equals("email") && person instanceof Member) ? (Member) person : null;
+        boolean claimed = false;
+        if (member != null) {
+            if (!claimEmail(member)) {
+                DuplicateEntryException e = new DuplicateEntryException("Member", "email", member.getEmail());
+                throw new IllegalArgumentException(e.getMessage(), e);
+            }
+            claimed = !sameEmail(oldValue, member.getEmail());
+        }
+        try {
+            directory.update(person, field, oldValue);
+        } catch (IllegalArgumentException e) {
+            if (claimed) {
+                releaseEmail(member, member.getEmail());   // the setter restores the old one
+            }
+            throw e;
+        }
+        if (claimed) {
+            releaseEmail(member, oldValue);
+        }
+        for (MutationListener l : listeners) {
+            l.personEdited(person, field, oldValue);
+        }
+    }
+
+    /** Claims the member's email in the shared map; false if another member holds it */
+    private boolean claimEmail(Member member) {
+        String email = MemberDirectory.normalizeEmail(member.getEmail());
+        if (emailClaims == null || email.isEmpty()) {
+            return true;
+        }
+        Member owner = emailClaims.putIfAbsent(email, member);
+        return owner == null || owner == member;
+    }
+
+    private void releaseEmail(Member member, String email) {
+        String norm = MemberDirectory.normalizeEmail(email);
+        if (emailClaims != null && !norm.isEmpty()) {
+            emailClaims.remove(norm, member);
+        }
+    }
+
+    private static boolean sameEmail(String a, String b) {
+        return MemberDirectory.normalizeEmail(a).equals(MemberDirectory.normalizeEmail(b));
+    }
+
+    private void indexIsbn(Book book, long isbn) {
+        if (isbn != Isbn.NONE && store != null) {
+            isbnIds.computeIfAbsent(isbn, k -> new ArrayList<>(1)).add(book.getBookId().toLowerCase());
+        } else if (isbn != Isbn.NONE) {
+            isbnIndex.computeIfAbsent(isbn, k -> new ArrayList<>(1)).add(book);
+        }
+    }
+
+    private void unindexIsbn(Book book, long isbn) {
+        if (store != null) {
+            List<String> ids = isbnIds.get(isbn);
+            if (ids != null) {
+                ids.remove(book.getBookId().toLowerCase());
+                if (ids.isEmpty()) {
+                    isbnIds.remove(isbn);
+                }
+            }
+            return;
+        }
+        List<Book> copies = isbnIndex.get(isbn);
+        if (copies != null) {
+            copies.remove(book);
+            if (copies.isEmpty()) {
+                isbnIndex.remove(isbn);
+            }
+        }
+    }
+
+    // ==============================================================
+    //   TIERED MODE HELPERS
+    // ==============================================================
+
+    /** Copies catalogued under a packed ISBN, promoted (they are about to be used) */
+    private List<Book> tieredCopies(long isbn) {
+        List<String> ids = isbnIds.get(isbn);
+        List<Book> copies = new ArrayList<>(ids == null ? 0 : ids.size());
+        if (ids != null) {
+            for (String id : ids) {
+                copies.add(promote(id));
+            }
+        }
+        return copies;
+    }
+
+    /** The stored book, moved to the hot tier, or null */
+    private Book promote(String bookId) {
+        try {
+            return wire(store.get(bookId));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Routes edits of a book that came out of the store back to this service */
+    private Book wire(Book book) {
+        if (book != null) {
+            book.setChangeListener(this::onBookChanged);
+        }
+        return book;
+    }
+
+    /**
+     * Stores an edited book. If it is a copy read from a cold record
+     * while the stored book is a different object, that object's loan
+     * state is carried over first, so the edit cannot undo a loan.
+     */
+    private void keepEdit(Book book) {
+        Book current = store.peek(book.getBookId());
+        if (current != null && current != book) {
+            book.restoreLoanState(current.isAvailable(), current.getBorrowedByMemberId(),
+                    current.getCirculationCount());
+            book.restoreVersion(current.getVersion() + 1);   // views cached for current are stale
+        }
+        try {
+            store.put(book);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * The catalogue in tiered mode: book IDs in catalogue order over
+     * the store. get() peeks, so walking the list promotes nothing.
+     */
+    private final class TieredBooks extends AbstractList<Book> {
+        private final List<String> ids = new ArrayList<>();
+
+        @Override
+        public Book get(int index) {
+            return wire(store.peek(ids.get(index)));
+        }
+
+        @Override
+        public int size() {
+            return ids.size();
+        }
+
+        @Override
+        public boolean add(Book book) {
+            try {
+                store.put(book);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            ids.add(book.getBookId());
+            return true;
+        }
+
+        @Override
+        public void clear() {
+            ids.clear();
+            try {
+                store.clear();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
         }
-        throw new BookNotFoundException(bookId);
     }
 
     // ── Table Formatting Helpers ───────────────────────────────────
+    // Fixed text, so the headers are plain strings rather than printf
+
+    static final String BOOK_TABLE_BORDER =
+            "  +----------+----------------------------------+--------------------+---------------+-----------+";
+    static final String BOOK_TABLE_HEADER =
+            "  | Book ID  | Title                            | Author             | Genre         | Status    |";
+    static final String MEMBER_TABLE_BORDER =
+            "  +----------+------------------------+------------------------------+---------+";
+    static final String MEMBER_TABLE_HEADER =
+            "  | ID       | Name                   | Email                        | Books   |";
 
     public static void printBookTableHeader() {
-        System.out.println("  +----------+----------------------------------+--------------------+---------------+-----------+");
-        System.out.printf("  | %-8s | %-32s | %-18s | %-13s | %-9s |%n",
-                "Book ID", "Title", "Author", "Genre", "Status");
-        System.out.println("  +----------+----------------------------------+--------------------+---------------+-----------+");
+        System.out.println(BOOK_TABLE_BORDER);
+        System.out.println(BOOK_TABLE_HEADER);
+        System.out.println(BOOK_TABLE_BORDER);
     }
 
     public static void printBookTableFooter() {
-        System.out.println("  +----------+----------------------------------+--------------------+---------------+-----------+");
+        System.out.println(BOOK_TABLE_BORDER);
     }
 
     private static void printMemberTableHeader() {
-        System.out.println("  +----------+------------------------+------------------------------+---------+");
-        System.out.printf("  | %-8s | %-22s | %-28s | %-7s |%n",
-                "ID", "Name", "Email", "Books");
-        System.out.println("  +----------+------------------------+------------------------------+---------+");
+        System.out.println(MEMBER_TABLE_BORDER);
+        System.out.println(MEMBER_TABLE_HEADER);
+        System.out.println(MEMBER_TABLE_BORDER);
     }
 
     private static void printMemberTableFooter() {
-        System.out.println("  +----------+------------------------+------------------------------+---------+");
+        System.out.println(MEMBER_TABLE_BORDER);
+    }
+
+    /** Same text as String.format("| %-8s | %-22s | %-28s | %-7s |", ...) */
+    private static String formatMemberRow(Member m) {
+        StringBuilder sb = new StringBuilder(80);
+        sb.append("| ");
+        appendPadded(sb, m.getPersonId(), 8);
+        sb.append(" | ");
+        appendPadded(sb, m.getName(), 22);
+        sb.append(" | ");
+        appendPadded(sb, m.getEmail(), 28);
+        sb.append(" | ");
+        int start = sb.length();
+        sb.append(m.getBorrowedCount()).append('/').append(Member.getMaxBorrowLimit());
+        for (int i = sb.length() - start; i < 7; i++) {
+            sb.append(' ');
+        }
+        return sb.append(" |").toString();
+    }
+
+    /** "%-Ns": left-aligned and padded, longer text is kept whole */
+    private static void appendPadded(StringBuilder sb, String s, int width) {
+        sb.append(s);
+        for (int i = (s == null ? 4 : s.length()); i < width; i++) {
+            sb.append(' ');
+        }
     }
 
     // ── Read-only Getters ──────────────────────────────────────────
-    public List<Book>   getBooks()      { return Collections.unmodifiableList(books);      }
-    public List<Member> getMembers()    { return Collections.unmodifiableList(members);    }
+    public List<Book>      getBooks()      { return Collections.unmodifiableList(books);      }
+    public List<Member>    getMembers()    { return Collections.unmodifiableList(members);    }
+    public List<Librarian> getLibrarians() { return Collections.unmodifiableList(librarians); }
 }
@@ -3,7 +3,19 @@ package main;
 import exception.*;
 import model.*;
 import service.LibraryService;
-
+import service.ReplicationFollower;
+import service.ReplicationLeader;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.InputMismatchException;
 import java.util.List;
 import java.util.Scanner;
@@ -19,6 +31,16 @@ import java.util.Scanner;
  *    - Objects            : LibraryService, Book, Member, Librarian
  *    - Exception Handling : try-catch blocks for all service calls
  *    - Polymorphism       : demonstrated via Option 9 in menu
+ *
+ *  COMMAND-LINE OPTIONS:
+ *    --leader <port>         also stream all changes to followers
+ *    --follower <host:port>  run a read-only replica of a leader
+ *    --script <file|-> [log] replay a command file (or stdin) with no
+ *                            menu and write results to log (or stdout);
+ *                            see ScriptRunner for the format
+ *    --simulate <ops/s> <s>  load test a synthetic library at ops/s,
+ *                            <s> seconds per phase (WorkloadSimulator)
+ *    --bench <name> [size]   run one micro-benchmark (see Benchmarks)
  * ============================================================
  */
 public class Main {
@@ -27,19 +49,60 @@ public class Main {
     private static final LibraryService libraryService = new LibraryService();
     private static final Scanner        scanner        = new Scanner(System.in);
 
+    // ── Typos tolerated per word by fuzzy search ───────────────────
+    private static final int FUZZY_MAX_EDITS = 2;
+
+    // ── Suggestions shown for an autocomplete prefix ───────────────
+    private static final int SUGGESTION_LIMIT = 5;
+
+    // ── Read/write buffer for --script mode ────────────────────────
+    private static final int SCRIPT_BUFFER = 1 << 16;
+
+    // ── Replication role (at most one is set) ──────────────────────
+    private static ReplicationLeader   leader;
+    private static ReplicationFollower follower;   // non-null = read-only replica
+
     // ==============================================================
     //   ENTRY POINT
     // ==============================================================
     public static void main(String[] args) {
 
+        // Headless: no banner, menu or sample data
+        if ((args.length == 2 || args.length == 3) && args[0].equals("--script")) {
+            System.exit(runScript(args[1], args.length == 3 ? args[2] : null));
+        }
+        if (args.length == 3 && args[0].equals("--simulate")) {
+            System.exit(runSimulation(args[1], args[2]));
+        }
+        if ((args.length == 2 || args.length == 3) && args[0].equals("--bench")) {
+            System.exit(Benchmarks.run(args[1], args.length == 3 ? Integer.parseInt(args[2]) : 0));
+        }
+
         printBanner();
-        loadSampleData();   // pre-populate with demo data
+
+        if (args.length == 2 && args[0].equals("--follower")) {
+            startFollower(args[1]);     // state comes from the leader
+        } else {
+            loadSampleData();           // pre-populate with demo data
+            if (args.length == 2 && args[0].equals("--leader")) {
+                startLeader(args[1]);
+            }
+        }
 
         boolean running = true;
         while (running) {
+            if (follower != null) {
+                follower.printStatus();
+            }
             printMenu();
             int choice = readInt("  Enter your choice: ");
 
+            // A replica only serves reads; changes must go to the leader
+            if (follower != null && isWriteChoice(choice)) {
+                System.out.println("  [!] Read-only replica — make changes on the leader.");
+                continue;
+            }
+
             switch (choice) {
                 case 1:  handleAddBook();            break;
                 case 2:  handleViewBooks();           break;
@@ -50,6 +113,7 @@ public class Main {
                 case 7:  handleShowBorrowedBooks();   break;
                 case 8:  handleViewMembers();         break;
                 case 9:  handleDisplayAllPersons();   break;
+                case 10: handleFindMember();          break;
                 case 0:
                     System.out.println("\n  ╔══════════════════════════════════════════╗");
                     System.out.println("  ║  Thank you for using the Library System! ║");
@@ -57,10 +121,12 @@ public class Main {
                     running = false;
                     break;
                 default:
-                    System.out.println("  [!] Invalid choice. Please select 0–9.");
+                    System.out.println("  [!] Invalid choice. Please select 0–10.");
             }
         }
 
+        if (leader != null)   leader.close();
+        if (follower != null) follower.close();
         scanner.close();
     }
 
@@ -92,6 +158,8 @@ public class Main {
         } catch (DuplicateEntryException e) {
             // Exception Handling: user-friendly message for duplicates
             System.out.println("  [✘] Error: " + e.getMessage());
+        } catch (InvalidIsbnException e) {
+            System.out.println("  [✘] ISBN Error: " + e.getMessage());
         }
     }
 
@@ -131,10 +199,16 @@ public class Main {
     private static void handleBorrowBook() {
         printSectionHeader("BORROW BOOK");
         System.out.print("  Enter Member ID   : "); String memberId = scanner.nextLine().trim();
-        System.out.print("  Enter Book ID     : "); String bookId   = scanner.nextLine().trim();
+        System.out.print("  Enter Book ID/ISBN: "); String bookId   = scanner.nextLine().trim();
 
         try {
-            libraryService.borrowBook(memberId, bookId);
+            // A scanned ISBN lends the first copy on the shelf
+            if (Isbn.isValid(bookId)) {
+                libraryService.borrowBookByIsbn(memberId, bookId);
+            } else {
+                libraryService.borrowBook(memberId, bookId);
+                printRecommendations(bookId);
+            }
 
         } catch (MemberNotFoundException e) {
             // Specific catch for member not found
@@ -151,6 +225,22 @@ public class Main {
         } catch (BorrowLimitExceededException e) {
             // Member is at their borrowing limit
             System.out.println("  [✘] Limit Reached: " + e.getMessage());
+
+        } catch (InvalidIsbnException e) {
+            System.out.println("  [✘] ISBN Error   : " + e.getMessage());
+        }
+    }
+
+    /** "Also borrowed" list shown at checkout; silent when there is no history */
+    private static void printRecommendations(String bookId) {
+        List<Book> also = libraryService.recommend(bookId, 3);
+        if (also.isEmpty()) {
+            return;
+        }
+        System.out.println("  Members who borrowed this also borrowed:");
+        for (Book b : also) {
+            System.out.println("    - \"" + b.getTitle() + "\" by " + b.getAuthor()
+                    + " [ID: " + b.getBookId() + "]");
         }
     }
 
@@ -160,16 +250,23 @@ public class Main {
     private static void handleReturnBook() {
         printSectionHeader("RETURN BOOK");
         System.out.print("  Enter Member ID   : "); String memberId = scanner.nextLine().trim();
-        System.out.print("  Enter Book ID     : "); String bookId   = scanner.nextLine().trim();
+        System.out.print("  Enter Book ID/ISBN: "); String bookId   = scanner.nextLine().trim();
 
         try {
-            libraryService.returnBook(memberId, bookId);
+            if (Isbn.isValid(bookId)) {
+                libraryService.returnBookByIsbn(memberId, bookId);
+            } else {
+                libraryService.returnBook(memberId, bookId);
+            }
 
         } catch (MemberNotFoundException e) {
             System.out.println("  [✘] Member Error: " + e.getMessage());
 
         } catch (BookNotFoundException e) {
             System.out.println("  [✘] Book Error  : " + e.getMessage());
+
+        } catch (InvalidIsbnException e) {
+            System.out.println("  [✘] ISBN Error  : " + e.getMessage());
         }
     }
 
@@ -180,10 +277,17 @@ public class Main {
     private static void handleSearchBook() {
         printSectionHeader("SEARCH BOOK");
         System.out.println("  Search by:");
-        System.out.println("    1. Keyword (title / author / genre)");
+        System.out.println("    1. Keyword (title / author / genre) or ISBN");
         System.out.println("    2. Title AND Author (combined)");
+        System.out.println("    3. Fuzzy keyword (tolerates typos)");
+        System.out.println("    4. Suggestions for a prefix (autocomplete)");
         int mode = readInt("  Select mode: ");
 
+        if (mode == 4) {
+            handleSuggest();
+            return;
+        }
+
         List<Book> results;
 
         if (mode == 2) {
@@ -191,6 +295,10 @@ public class Main {
             System.out.print("  Enter Title keyword : "); String t = scanner.nextLine().trim();
             System.out.print("  Enter Author keyword: "); String a = scanner.nextLine().trim();
             results = libraryService.searchBook(t, a);
+        } else if (mode == 3) {
+            // Calls searchBook OVERLOAD 3 — typo-tolerant
+            System.out.print("  Enter keyword: "); String kw = scanner.nextLine().trim();
+            results = libraryService.searchBook(kw, FUZZY_MAX_EDITS);
         } else {
             // Calls searchBook OVERLOAD 1 — single keyword
             System.out.print("  Enter keyword: "); String kw = scanner.nextLine().trim();
@@ -203,12 +311,25 @@ public class Main {
             System.out.println("  Found " + results.size() + " result(s):");
             LibraryService.printBookTableHeader();
             for (Book b : results) {
-                System.out.println(b.toString());
+                System.out.println(libraryService.renderBookRow(b));
             }
             LibraryService.printBookTableFooter();
         }
     }
 
+    /** Prints autocomplete suggestions for a typed prefix (search mode 4) */
+    private static void handleSuggest() {
+        System.out.print("  Enter prefix: "); String prefix = scanner.nextLine().trim();
+        List<String> suggestions = libraryService.suggest(prefix, SUGGESTION_LIMIT);
+        if (suggestions.isEmpty()) {
+            System.out.println("  [!] No suggestions for \"" + prefix + "\".");
+            return;
+        }
+        for (String s : suggestions) {
+            System.out.println("    → " + s);
+        }
+    }
+
     /**
      * HANDLER 7 — Show borrowed books for a member
      */
@@ -245,6 +366,106 @@ public class Main {
         libraryService.displayAllPersons();
     }
 
+    /**
+     * HANDLER 10 — Find members/librarians by name, email or phone prefix
+     */
+    private static void handleFindMember() {
+        printSectionHeader("FIND MEMBER");
+        System.out.print("  Name, email or phone: "); String query = scanner.nextLine().trim();
+
+        List<Person> found = libraryService.findPersons(query, 10);
+        if (found.isEmpty()) {
+            System.out.println("  [!] No member or librarian matches \"" + query + "\".");
+            return;
+        }
+        for (Person p : found) {
+            System.out.println("  " + p + "  " + p.getEmail() + "  " + p.getPhone());
+        }
+        System.out.println("  Found: " + found.size() + " person(s)");
+    }
+
+    // ==============================================================
+    //   REPLICATION
+    // ==============================================================
+
+    /** Streams every change to followers connecting on the given port */
+    private static void startLeader(String port) {
+        try {
+            leader = new ReplicationLeader(libraryService, Integer.parseInt(port));
+            leader.start();
+            System.out.println("  ✔ Replication leader listening on port " + leader.getPort());
+        } catch (IOException | NumberFormatException e) {
+            System.out.println("  [✘] Could not start replication leader: " + e.getMessage());
+        }
+    }
+
+    /** Turns this process into a read-only replica of host:port */
+    private static void startFollower(String hostPort) {
+        int colon = hostPort.lastIndexOf(':');
+        String host = (colon > 0) ? hostPort.substring(0, colon) : "localhost";
+        int    port = Integer.parseInt(hostPort.substring(colon + 1));
+        follower = new ReplicationFollower(libraryService, host, port);
+        follower.start();
+        System.out.println("  ✔ Running as read-only replica of " + host + ":" + port);
+    }
+
+    /**
+     * Replays a command script against an empty library.
+     *
+     * @param script  file to read, or "-" for stdin
+     * @param logFile result log, or null for stdout
+     * @return exit status: 0 all OK, 1 some commands failed, 2 I/O error
+     */
+    private static int runScript(String script, String logFile) {
+        long start = System.nanoTime();
+        ScriptRunner runner;
+        try (InputStream  in  = script.equals("-") ? System.in : new FileInputStream(script);
+             OutputStream out = (logFile == null) ? System.out : new FileOutputStream(logFile)) {
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(in, StandardCharsets.UTF_8), SCRIPT_BUFFER);
+            BufferedWriter writer = new BufferedWriter(
+                    new OutputStreamWriter(out, StandardCharsets.UTF_8), SCRIPT_BUFFER);
+            runner = new ScriptRunner(libraryService, writer);
+            runner.run(reader);
+        } catch (IOException e) {
+            System.err.println("  [✘] Script failed: " + e.getMessage());
+            return 2;
+        }
+        long millis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        System.err.println("  ✔ " + runner.getCommands() + " command(s), " + runner.getFailures()
+                + " failed, " + millis + " ms (" + runner.getCommands() * 1000 / millis + " commands/s)");
+        return runner.getFailures() == 0 ? 0 : 1;
+    }
+
+    /**
+     * Runs WorkloadSimulator's default scenario against an empty library
+     * and prints a latency table per phase.
+     *
+     * @return exit status: 0 done, 2 bad arguments or failed set-up
+     */
+    private static int runSimulation(String rate, String seconds) {
+        try {
+            WorkloadSimulator sim = new WorkloadSimulator(libraryService);
+            System.out.println("  ✔ " + sim.populate());
+            for (WorkloadSimulator.Report r : sim.run(WorkloadSimulator.defaultScenario(
+                    Double.parseDouble(rate), Integer.parseInt(seconds)))) {
+                r.print();
+            }
+            return 0;
+        } catch (DuplicateEntryException | IllegalArgumentException e) {
+            System.err.println("  [✘] Simulation failed: " + e.getMessage());
+            return 2;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 2;
+        }
+    }
+
+    /** Menu options that would change the library state */
+    private static boolean isWriteChoice(int choice) {
+        return choice == 1 || choice == 3 || choice == 4 || choice == 5;
+    }
+
     // ==============================================================
     //   UI HELPERS
     // ==============================================================
@@ -271,6 +492,7 @@ public class Main {
         System.out.println("  ║  7. Show Borrowed Books (by Member)          ║");
         System.out.println("  ║  8. View All Members                         ║");
         System.out.println("  ║  9. View All Persons  [Polymorphism Demo]    ║");
+        System.out.println("  ║ 10. Find Member (name, email or phone)       ║");
         System.out.println("  ║  0. Exit                                     ║");
         System.out.println("  ╚══════════════════════════════════════════════╝");
     }
@@ -326,7 +548,7 @@ public class Main {
             libraryService.addBook("B007", "Effective Java",
                     "Joshua Bloch", "Programming", "978-0134685991");
 
-        } catch (DuplicateEntryException e) {
+        } catch (DuplicateEntryException | InvalidIsbnException e) {
             System.out.println("  [!] Sample data warning: " + e.getMessage());
         }
 
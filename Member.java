@@ -13,7 +13,7 @@ import java.util.List;
  *
  *  OOP CONCEPTS DEMONSTRATED:
  *    - Inheritance      : extends Person
- *    - Method Overriding: getRole() and displayInfo() overridden
+ *    - Method Overriding: getRole() and formatDetails() overridden
  *    - Encapsulation    : borrowedBookIds is private; returned as copy
  *    - Constructors     : calls super() to initialize parent fields
  * ============================================================
@@ -41,15 +41,15 @@ public class Member extends Person {
         return "Member";
     }
 
-    // ── Method Overriding: extends parent's displayInfo() ──────────
-    // Calls super.displayInfo() first, then adds Member-specific data
+    // ── Method Overriding: extends parent's formatDetails() ────────
+    // Calls super.formatDetails() first, then adds Member-specific data
     @Override
-    public void displayInfo() {
-        super.displayInfo();                    // ← parent fields first
-        System.out.println("  │  Currently Borrowed : " +
-                borrowedBookIds.size() + " / " + MAX_BORROW_LIMIT);
-        System.out.println("  │  Total Ever Borrowed: " + totalBooksBorrowed);
-        System.out.println("  └─────────────────────────────────────");
+    public String formatDetails() {
+        String nl = System.lineSeparator();
+        return super.formatDetails()            // ← parent fields first
+             + "  │  Currently Borrowed : " + borrowedBookIds.size() + " / " + MAX_BORROW_LIMIT + nl
+             + "  │  Total Ever Borrowed: " + totalBooksBorrowed + nl
+             + "  └─────────────────────────────────────" + nl;
     }
 
     // ── Business Logic Methods ─────────────────────────────────────
@@ -63,11 +63,13 @@ public class Member extends Person {
     public void borrowBook(String bookId) {
         borrowedBookIds.add(bookId);
         totalBooksBorrowed++;                   // increment historical counter
+        touch();
     }
 
     /** Removes a book ID when it is returned */
     public void returnBook(String bookId) {
         borrowedBookIds.remove(bookId);
+        touch();
     }
 
     /** Checks if this member has already borrowed a specific book */
@@ -75,6 +77,17 @@ public class Member extends Person {
         return borrowedBookIds.contains(bookId);
     }
 
+    /**
+     * Restores loan state copied from another instance of the system
+     * (e.g. a replication snapshot). Not used by normal circulation.
+     */
+    public void restoreLoanState(List<String> borrowedBookIds, int totalBooksBorrowed) {
+        this.borrowedBookIds.clear();
+        this.borrowedBookIds.addAll(borrowedBookIds);
+        this.totalBooksBorrowed = totalBooksBorrowed;
+        touch();
+    }
+
     // ── Getters (Encapsulation) ────────────────────────────────────
     /** Returns an unmodifiable copy to protect internal list */
     public List<String> getBorrowedBookIds() {
@@ -0,0 +1,301 @@
+package service;
+
+import exception.DuplicateEntryException;
+import model.*;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinTask;
+import java.util.regex.Pattern;
+
+/**
+ * ============================================================
+ *  CLASS   : MemberDirectory
+ *  PACKAGE : service
+ *  PURPOSE : Desk lookup of members and librarians by name, email
+ *            or phone, and the email uniqueness check run when a
+ *            member registers.
+ *
+ *  HOW IT WORKS:
+ *    - Each field is normalised (lower case, accents and repeated
+ *      spaces removed; phone numbers reduced to their digits) and
+ *      kept in a sorted map, so a prefix is one range of keys.
+ *    - Keys end in "\0<personId>\0<role>", which keeps people with
+ *      the same name apart and sorts an exact match before longer
+ *      names ("ann" before "anna").
+ *    - Names are also indexed from every later word, so "john"
+ *      finds "Alice Johnson" — ranked after names that start with
+ *      the query.
+ *    - A search walks at most `limit` keys past its start point,
+ *      so its cost is O(log n + limit) however many people match.
+ *    - Member emails also sit in a hash map: the uniqueness check
+ *      at registration and in setEmail() is one lookup.
+ *    - Person setters report edits, and the old keys are swapped
+ *      for new ones.
+ *
+ *  Not thread-safe on its own; LibraryService only calls it while
+ *  holding its lock.
+ * ============================================================
+ */
+public class MemberDirectory {
+
+    /** Upper bound on results returned per search */
+    public static final int MAX_RESULTS = 50;
+
+    private static final char    SEP          = '\0';
+    private static final Pattern WHITESPACE   = Pattern.compile("\\s+");
+    private static final Pattern MARKS        = Pattern.compile("\\p{M}+");
+    private static final Pattern NON_DIGIT    = Pattern.compile("\\D+");
+    private static final Pattern PHONE_LIKE   = Pattern.compile("[\\d\\s()+.\\-]+");
+    private static final int     PHONE_DIGITS = 3;   // fewer digits is not a phone search
+
+    // ── Index State (normalised text + SEP + id + SEP + role → person)
+    private final TreeMap<String, Person> names;
+    private final TreeMap<String, Person> nameWords;      // from the 2nd word on
+    private final TreeMap<String, Person> emails;
+    private final TreeMap<String, Person> phones;
+    private final Map<String, Member>     memberEmails;   // normalised email → member
+
+    public MemberDirectory() {
+        this.names        = new TreeMap<>();
+        this.nameWords    = new TreeMap<>();
+        this.emails       = new TreeMap<>();
+        this.phones       = new TreeMap<>();
+        this.memberEmails = new HashMap<>();
+    }
+
+    // ==============================================================
+    //   MAINTENANCE
+    // ==============================================================
+
+    /**
+     * Checks that a new member's email is not registered yet, without
+     * changing anything. Blank emails are not checked.
+     *
+     * @throws DuplicateEntryException if another member has the email
+     */
+    public void checkUnique(Member member) throws DuplicateEntryException {
+        String email = normalizeEmail(member.getEmail());
+        Member owner = memberEmails.get(email);
+        if (!email.isEmpty() && owner != null && owner != member) {
+            throw new DuplicateEntryException("Member", "email", member.getEmail());
+        }
+    }
+
+    /** Indexes a member or librarian under all three fields */
+    public void add(Person p) {
+        indexName(p, p.getName(), true);
+        indexEmail(p, p.getEmail(), true);
+        indexPhone(p, p.getPhone(), true);
+    }
+
+    /**
+     * Moves a person from the keys for the old value of a field to the
+     * keys for the current one. Called from Person setters.
+     *
+     * @throws IllegalArgumentException if a member's new email belongs
+     *         to another member (nothing has been changed then)
+     */
+    public void update(Person p, String field, String oldValue) {
+        switch (field) {
+            case "name":
+                indexName(p, oldValue, false);
+                indexName(p, p.getName(), true);
+                break;
+            case "email":
+                if (p instanceof Member) {
+                    try {
+                        checkUnique((Member) p);
+                    } catch (DuplicateEntryException e) {
+                        throw new IllegalArgumentException(e.getMessage(), e);
+                    }
+                }
+                indexEmail(p, oldValue, false);
+                indexEmail(p, p.getEmail(), true);
+                break;
+            case "phone":
+                indexPhone(p, oldValue, false);
+                indexPhone(p, p.getPhone(), true);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Builds the directory for many people at once, each index as its
+     * own fork/join task. Called from inside a ForkJoinPool (see
+     * LibraryBootstrap) the indexes are filled in parallel.
+     *
+     * @throws DuplicateEntryException if two members share an email
+     */
+    public static MemberDirectory bulkLoad(List<Member> members, List<Librarian> librarians)
+            throws DuplicateEntryException {
+        MemberDirectory d = new MemberDirectory();
+        List<Person> people = new ArrayList<>(members.size() + librarians.size());
+        people.addAll(members);
+        people.addAll(librarians);
+        DuplicateEntryException[] duplicate = new DuplicateEntryException[1];
+
+        ForkJoinTask.invokeAll(
+            ForkJoinTask.adapt(() -> people.forEach(p -> d.indexFullName(p, p.getName(), true))),
+            ForkJoinTask.adapt(() -> people.forEach(p -> d.indexNameWords(p, p.getName(), true))),
+            ForkJoinTask.adapt(() -> people.forEach(p -> put(d.emails, normalizeEmail(p.getEmail()), p, true))),
+            ForkJoinTask.adapt(() -> people.forEach(p -> d.indexPhone(p, p.getPhone(), true))),
+            ForkJoinTask.adapt(() -> {
+                for (Member m : members) {
+                    String email = normalizeEmail(m.getEmail());
+                    if (!email.isEmpty() && d.memberEmails.putIfAbsent(email, m) != null) {
+                        duplicate[0] = new DuplicateEntryException("Member", "email", m.getEmail());
+                        return;
+                    }
+                }
+            }));
+        if (duplicate[0] != null) {
+            throw duplicate[0];
+        }
+        return d;
+    }
+
+    // ==============================================================
+    //   SEARCH
+    // ==============================================================
+
+    /**
+     * Finds people whose name, email or phone starts with the query.
+     * A query of phone characters with at least PHONE_DIGITS digits
+     * searches phones; one containing '@' searches emails; anything
+     * else searches names (whole name first, then later words) and
+     * then emails.
+     *
+     * @param query text typed at the desk
+     * @param limit maximum results, at most MAX_RESULTS
+     * @return matching members/librarians, best first, no repeats
+     */
+    public List<Person> search(String query, int limit) {
+        limit = Math.min(limit, MAX_RESULTS);
+        Set<Person> found = new LinkedHashSet<>();
+        if (query == null || limit <= 0) {
+            return new ArrayList<>();
+        }
+        String trimmed = query.trim();
+        String digits  = NON_DIGIT.matcher(trimmed).replaceAll("");
+        if (PHONE_LIKE.matcher(trimmed).matches() && digits.length() >= PHONE_DIGITS) {
+            collect(phones, digits, found, limit);
+        } else if (trimmed.indexOf('@') >= 0) {
+            collect(emails, normalizeEmail(trimmed), found, limit);
+        } else {
+            String name = normalizeName(trimmed);
+            collect(names, name, found, limit);
+            collect(nameWords, name, found, limit);
+            collect(emails, normalizeEmail(trimmed), found, limit);
+        }
+        return new ArrayList<>(found);
+    }
+
+    /** The member registered with this email, or null (one hash lookup) */
+    public Member findMemberByEmail(String email) {
+        return memberEmails.get(normalizeEmail(email));
+    }
+
+    // ── Metrics Getters ────────────────────────────────────────────
+    public int getSize() { return names.size(); }
+
+    @Override
+    public String toString() {
+        return "MemberDirectory[" + names.size() + " people, " + memberEmails.size()
+                + " member emails]";
+    }
+
+    // ==============================================================
+    //   PRIVATE HELPERS
+    // ==============================================================
+
+    /** Adds the people under keys starting with prefix, in key order, up to the limit */
+    private static void collect(TreeMap<String, Person> index, String prefix,
+                                Set<Person> found, int limit) {
+        if (prefix.isEmpty()) {
+            return;
+        }
+        for (Person p : index.subMap(prefix, true, prefix + '\uffff', false).values()) {
+            if (found.size() >= limit) {
+                return;
+            }
+            found.add(p);
+        }
+    }
+
+    private void indexName(Person p, String name, boolean add) {
+        indexFullName(p, name, add);
+        indexNameWords(p, name, add);
+    }
+
+    private void indexFullName(Person p, String name, boolean add) {
+        String norm = normalizeName(name);
+        if (!norm.isEmpty()) {
+            put(names, norm, p, add);
+        }
+    }
+
+    private void indexNameWords(Person p, String name, boolean add) {
+        String norm = normalizeName(name);
+        for (int i = 1; i < norm.length(); i++) {
+            if (norm.charAt(i - 1) == ' ') {
+                put(nameWords, norm.substring(i), p, add);
+            }
+        }
+    }
+
+    private void indexEmail(Person p, String email, boolean add) {
+        String norm = normalizeEmail(email);
+        if (norm.isEmpty()) {
+            return;
+        }
+        put(emails, norm, p, add);
+        if (p instanceof Member) {
+            if (add) {
+                memberEmails.put(norm, (Member) p);
+            } else if (memberEmails.get(norm) == p) {
+                memberEmails.remove(norm);
+            }
+        }
+    }
+
+    private void indexPhone(Person p, String phone, boolean add) {
+        String digits = (phone == null) ? "" : NON_DIGIT.matcher(phone).replaceAll("");
+        if (!digits.isEmpty()) {
+            put(phones, digits, p, add);
+        }
+    }
+
+    private static void put(TreeMap<String, Person> index, String text, Person p, boolean add) {
+        if (text.isEmpty()) {
+            return;
+        }
+        String key = text + SEP + p.getPersonId() + SEP + p.getRole();
+        if (add) {
+            index.put(key, p);
+        } else {
+            index.remove(key);
+        }
+    }
+
+    /** Lower case, accents stripped, runs of whitespace collapsed */
+    static String normalizeName(String text) {
+        if (text == null) {
+            return "";
+        }
+        String plain = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        return WHITESPACE.matcher(plain.toLowerCase().trim()).replaceAll(" ");
+    }
+
+    static String normalizeEmail(String email) {
+        return (email == null) ? "" : email.trim().toLowerCase();
+    }
+}
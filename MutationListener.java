@@ -0,0 +1,38 @@
+package service;
+
+import model.Book;
+import model.Librarian;
+import model.Member;
+import model.Person;
+
+/**
+ * ============================================================
+ *  INTERFACE : MutationListener
+ *  PACKAGE   : service
+ *  PURPOSE   : Observer told about every successful change made
+ *              through a LibraryService, in the order the changes
+ *              were applied. Used for replication and change feeds.
+ *
+ *  Callbacks run on the thread that made the change while the
+ *  service lock is held, so they must be quick and must not call
+ *  back into the service.
+ * ============================================================
+ */
+public interface MutationListener {
+
+    void bookAdded(Book book);
+
+    void memberRegistered(Member member);
+
+    void librarianAdded(Librarian librarian);
+
+    void bookBorrowed(Member member, Book book);
+
+    void bookReturned(Member member, Book book);
+
+    /** A Book setter changed a field; the new value is on the book */
+    void bookEdited(Book book, String field, String oldValue);
+
+    /** A Person setter (name, email, phone, department) changed a member or librarian */
+    void personEdited(Person person, String field, String oldValue);
+}
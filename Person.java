@@ -9,7 +9,7 @@ package model;
  *  OOP CONCEPTS DEMONSTRATED:
  *    - Encapsulation  : All fields are private with getters/setters
  *    - Abstraction    : Abstract class with abstract method getRole()
- *    - Polymorphism   : getRole() and displayInfo() are overridden
+ *    - Polymorphism   : getRole() and formatDetails() are overridden
  *                       by subclasses (Member, Librarian)
  *    - Constructors   : Parameterized constructor
  * ============================================================
@@ -21,6 +21,8 @@ public abstract class Person {
     private String name;
     private String email;
     private String phone;
+    private int    version;     // bumped on every change; keys rendered views
+    private PersonChangeListener changeListener;   // notified by setters, may be null
 
     // ── Parameterized Constructor ──
     public Person(String personId, String name, String email, String phone) {
@@ -35,14 +37,26 @@ public abstract class Person {
     public abstract String getRole();
 
     // ── Concrete Method (can be overridden) ────────────────────────
-    // Subclasses call super.displayInfo() then add their own fields
+    // Builds the detail card; subclasses call super.formatDetails()
+    // then append their own fields
+    public String formatDetails() {
+        String nl = System.lineSeparator();
+        return "  ┌─────────────────────────────────────" + nl
+             + "  │  Role   : " + getRole() + nl            // Polymorphic call
+             + "  │  ID     : " + personId  + nl
+             + "  │  Name   : " + name      + nl
+             + "  │  Email  : " + email     + nl
+             + "  │  Phone  : " + phone     + nl;
+    }
+
+    /** Prints the detail card — the overridden formatDetails() decides its content */
     public void displayInfo() {
-        System.out.println("  ┌─────────────────────────────────────");
-        System.out.println("  │  Role   : " + getRole());          // Polymorphic call
-        System.out.println("  │  ID     : " + personId);
-        System.out.println("  │  Name   : " + name);
-        System.out.println("  │  Email  : " + email);
-        System.out.println("  │  Phone  : " + phone);
+        System.out.print(formatDetails());
+    }
+
+    /** Marks this person as changed so cached views are re-rendered */
+    protected void touch() {
+        version++;
     }
 
     // ── Getters (Encapsulation – read access) ──────────────────────
@@ -50,11 +64,60 @@ public abstract class Person {
     public String getName()     { return name;     }
     public String getEmail()    { return email;    }
     public String getPhone()    { return phone;    }
+    public int    getVersion()  { return version;  }
 
     // ── Setters (Encapsulation – controlled write access) ──────────
-    public void setName(String name)   { this.name  = name;  }
-    public void setEmail(String email) { this.email = email; }
-    public void setPhone(String phone) { this.phone = phone; }
+    // Each setter notifies the change listener so the member directory
+    // follows edits; a refused change is rolled back.
+
+    /** @throws IllegalArgumentException if the listener refuses the change */
+    public void setName(String name) {
+        String old = this.name;
+        this.name = name;
+        try {
+            fireChanged("name", old);
+        } catch (IllegalArgumentException e) {
+            this.name = old;
+            throw e;
+        }
+    }
+
+    /** @throws IllegalArgumentException if another member already uses the email */
+    public void setEmail(String email) {
+        String old = this.email;
+        this.email = email;
+        try {
+            fireChanged("email", old);
+        } catch (IllegalArgumentException e) {
+            this.email = old;
+            throw e;
+        }
+    }
+
+    /** @throws IllegalArgumentException if the listener refuses the change */
+    public void setPhone(String phone) {
+        String old = this.phone;
+        this.phone = phone;
+        try {
+            fireChanged("phone", old);
+        } catch (IllegalArgumentException e) {
+            this.phone = old;
+            throw e;
+        }
+    }
+
+    /** Registers the (single) listener told about edits to this person */
+    public void setChangeListener(PersonChangeListener listener) {
+        this.changeListener = listener;
+    }
+
+    /** Bumps the version and tells the listener; subclasses call it from their setters */
+    protected void fireChanged(String field, String oldValue) {
+        touch();
+        if (changeListener != null) {
+            changeListener.personChanged(this, field, oldValue);
+        }
+    }
 
     // ── toString() Overridden ──────────────────────────────────────
     @Override
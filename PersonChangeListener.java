@@ -0,0 +1,25 @@
+package model;
+
+/**
+ * ============================================================
+ *  INTERFACE : PersonChangeListener
+ *  PACKAGE   : model
+ *  PURPOSE   : Callback fired by Person setters so that the member
+ *              directory kept by the service layer stays current
+ *              when a name, email or phone is edited in place.
+ * ============================================================
+ */
+public interface PersonChangeListener {
+
+    /**
+     * Called after a field of the person has been changed. Throwing
+     * IllegalArgumentException refuses the change: the setter puts
+     * the old value back and rethrows.
+     *
+     * @param person   the member or librarian that was edited
+     * @param field    name of the changed field: "name", "email", "phone"
+     *                 or (librarians only) "department"
+     * @param oldValue value of the field before the change
+     */
+    void personChanged(Person person, String field, String oldValue);
+}
@@ -0,0 +1,160 @@
+package service;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * ============================================================
+ *  CLASS   : RenderCache
+ *  PACKAGE : service
+ *  PURPOSE : Bounded cache of rendered text (table rows, detail
+ *            cards) so repeated listings reuse the string instead
+ *            of formatting it again.
+ *
+ *  HOW IT WORKS:
+ *    - An entry is keyed by (view kind, entity key) and stores the
+ *      entity's version at render time. A book's key is its ID, not
+ *      the object: in tiered mode the same book comes back as a new
+ *      copy after eviction, and its version travels with it in the
+ *      stored record. A person's key is the object itself (people
+ *      are never copied, and librarian IDs need not be unique).
+ *    - Book, Member and Librarian bump their version in every
+ *      setter and in borrow/return, so a changed entity is simply
+ *      re-rendered.
+ *    - Entries are evicted least-recently-used once the total
+ *      cached characters exceed maxChars.
+ *    - Hits, misses (including stale versions) and evictions are
+ *      counted for monitoring.
+ *
+ *  Not thread-safe on its own; LibraryService only calls it while
+ *  holding its lock.
+ * ============================================================
+ */
+public class RenderCache {
+
+    /** Default budget: about 8 MB of UTF-16 text */
+    public static final long DEFAULT_MAX_CHARS = 4_000_000L;
+
+    // ── View Kinds ─────────────────────────────────────────────────
+    public static final int BOOK_ROW       = 0;
+    public static final int BOOK_DETAILS   = 1;
+    public static final int MEMBER_ROW     = 2;
+    public static final int PERSON_DETAILS = 3;
+
+    private final long                      maxChars;
+    private final LinkedHashMap<Key, Entry> entries;   // access order = LRU
+    private long cachedChars;
+
+    // ── Metrics ────────────────────────────────────────────────────
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public RenderCache() {
+        this(DEFAULT_MAX_CHARS);
+    }
+
+    public RenderCache(long maxChars) {
+        this.maxChars = maxChars;
+        this.entries  = new LinkedHashMap<>(1024, 0.75f, true);
+    }
+
+    /**
+     * Returns the cached text for the entity's current version, or
+     * renders, caches and returns it.
+     *
+     * @param kind    one of the view kind constants
+     * @param entity  what is being rendered: a book's ID or a Person (compared with equals())
+     * @param version the entity's current version
+     * @param render  produces the text on a miss
+     */
+    public String get(int kind, Object entity, int version, Supplier<String> render) {
+        Key key = new Key(kind, entity);
+        Entry e = entries.get(key);
+        if (e != null && e.version == version) {
+            hits++;
+            return e.text;
+        }
+
+        misses++;
+        String text = render.get();
+        Entry replaced = entries.put(key, new Entry(version, text));
+        if (replaced != null) {
+            cachedChars -= replaced.text.length();
+        }
+        cachedChars += text.length();
+        evictIfOverBudget();
+        return text;
+    }
+
+    /** Drops every entry (metrics are kept) */
+    public void clear() {
+        entries.clear();
+        cachedChars = 0;
+    }
+
+    // ── Metrics Getters ────────────────────────────────────────────
+    public long getHits()        { return hits;           }
+    public long getMisses()      { return misses;         }
+    public long getEvictions()   { return evictions;      }
+    public long getCachedChars() { return cachedChars;    }
+    public int  getSize()        { return entries.size(); }
+
+    /** Hit ratio in [0, 1]; 0 before the first lookup */
+    public double getHitRatio() {
+        long total = hits + misses;
+        return (total == 0) ? 0.0 : (double) hits / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RenderCache[%d entries, %d chars, hits=%d, misses=%d, evictions=%d, hit ratio=%.1f%%]",
+                entries.size(), cachedChars, hits, misses, evictions, getHitRatio() * 100);
+    }
+
+    // ── Private Helpers ────────────────────────────────────────────
+
+    private void evictIfOverBudget() {
+        Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+        while (cachedChars > maxChars && it.hasNext()) {
+            cachedChars -= it.next().getValue().text.length();
+            it.remove();
+            evictions++;
+        }
+    }
+
+    /** (kind, entity key) pair; entity keys are compared with equals() */
+    private static final class Key {
+        final int    kind;
+        final Object entity;
+
+        Key(int kind, Object entity) {
+            this.kind   = kind;
+            this.entity = entity;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return kind == k.kind && entity.equals(k.entity);
+        }
+
+        @Override
+        public int hashCode() {
+            return entity.hashCode() * 31 + kind;
+        }
+    }
+
+    private static final class Entry {
+        final int    version;
+        final String text;
+
+        Entry(int version, String text) {
+            this.version = version;
+            this.text    = text;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import static service.ReplicationProtocol.*;
+
+/**
+ * ============================================================
+ *  CLASS   : ReplicationFollower
+ *  PACKAGE : service
+ *  PURPOSE : Keeps a read-only replica LibraryService in step
+ *            with a ReplicationLeader, so that searches, listings
+ *            and showBorrowedBooks() can be served without
+ *            touching the desk instance.
+ *
+ *  HOW IT WORKS:
+ *    - Connects and sends the leader epoch and last sequence
+ *      number applied. The leader answers with the missed
+ *      entries, or — if it restarted since (new epoch) or the
+ *      entries are gone — with a snapshot followed by entries.
+ *    - A snapshot is decoded before the replica lock is taken,
+ *      then swapped in; the replica is marked NO_STATE until it
+ *      has fully loaded, so a failure means a fresh snapshot.
+ *    - Each batch is applied while holding the replica's lock,
+ *      so readers never see half a batch.
+ *    - On disconnect it retries every RETRY_MILLIS; if the
+ *      replica ever fails to apply an entry it asks for a fresh
+ *      snapshot on the next connection.
+ *
+ *  The replica must only be read: changes made to it directly
+ *  are not sent back to the leader and are lost on the next
+ *  snapshot.
+ * ============================================================
+ */
+public class ReplicationFollower implements AutoCloseable {
+
+    private static final int RETRY_MILLIS = 1000;
+
+    private final LibraryService replica;
+    private final String         host;
+    private final int            port;
+
+    // ── Replication Progress (read by status reporting) ────────────
+    private volatile long    epochId         = NO_EPOCH; // leader epoch appliedSeq belongs to
+    private volatile long    epochRestart;
+    private volatile long    appliedSeq      = NO_STATE;
+    private volatile long    leaderHeadSeq   = NO_STATE;
+    private volatile long    lastEntryMillis;    // leader clock of last applied entry
+    private volatile long    entriesApplied;
+    private volatile boolean connected;
+    private volatile boolean running;
+    private volatile Socket  socket;
+
+    public ReplicationFollower(LibraryService replica, String host, int port) {
+        this.replica = replica;
+        this.host    = host;
+        this.port    = port;
+        replica.setEcho(false);
+    }
+
+    /** Starts the background replication thread */
+    public void start() {
+        running = true;
+        Thread t = new Thread(this::run, "replication-follower");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        Socket s = socket;
+        if (s != null) {
+            try { s.close(); } catch (IOException ignored) { }
+        }
+    }
+
+    // ── Status ─────────────────────────────────────────────────────
+    public LibraryService getReplica()        { return replica;        }
+    public boolean        isConnected()       { return connected;      }
+    public long           getAppliedSeq()     { return appliedSeq;     }
+    public long           getEntriesApplied() { return entriesApplied; }
+
+    /** Entries the leader has logged that this replica has not applied yet */
+    public long getLagEntries() {
+        return Math.max(0, leaderHeadSeq - appliedSeq);
+    }
+
+    /** Age of the newest applied entry when behind, 0 when caught up */
+    public long getLagMillis() {
+        if (getLagEntries() == 0 || lastEntryMillis == 0) {
+            return 0;
+        }
+        return Math.max(0, System.currentTimeMillis() - lastEntryMillis);
+    }
+
+    public void printStatus() {
+        System.out.println("  Replica: " + (connected ? "connected to " : "waiting for ")
+                + host + ":" + port + " | applied seq " + appliedSeq
+                + " | lag " + getLagEntries() + " entries / " + getLagMillis() + " ms");
+    }
+
+    // ==============================================================
+    //   REPLICATION LOOP
+    // ==============================================================
+
+    private void run() {
+        while (running) {
+            try (Socket s = new Socket(host, port)) {
+                socket = s;
+                s.setTcpNoDelay(true);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+                DataInputStream  in  = new DataInputStream(
+                        new BufferedInputStream(s.getInputStream(), 64 * 1024));
+                out.writeLong(epochId);
+                out.writeLong(epochRestart);
+                out.writeLong(appliedSeq);
+                out.flush();
+                connected = true;
+                readFrames(in);
+            } catch (IOException e) {
+                // leader not reachable or connection dropped — retry below
+            } catch (IllegalStateException e) {
+                System.out.println("  [!] Replica out of step, requesting snapshot: " + e.getMessage());
+                appliedSeq = NO_STATE;
+            } finally {
+                connected = false;
+                socket = null;
+            }
+            sleepBeforeRetry();
+        }
+    }
+
+    private void readFrames(DataInputStream in) throws IOException {
+        List<Entry> batch = new ArrayList<>();
+        while (running) {
+            byte frame = in.readByte();
+            switch (frame) {
+                case FRAME_SNAPSHOT: {
+                    Received snapshot = ReplicationProtocol.readSnapshot(in);
+                    synchronized (replica) {
+                        appliedSeq = NO_STATE;   // stays so if loading fails part-way
+                        ReplicationProtocol.load(snapshot, replica);
+                        epochId       = snapshot.epochId;
+                        epochRestart  = snapshot.epochRestart;
+                        appliedSeq    = snapshot.seq;
+                        leaderHeadSeq = snapshot.seq;
+                    }
+                    break;
+                }
+                case FRAME_BATCH: {
+                    batch.clear();
+                    for (int n = in.readInt(); n > 0; n--) {
+                        batch.add(ReplicationProtocol.readEntry(in));
+                    }
+                    applyBatch(batch);
+                    break;
+                }
+                case FRAME_HEARTBEAT: {
+                    leaderHeadSeq = in.readLong();
+                    in.readLong();   // leader clock (lag uses entry times)
+                    break;
+                }
+                default:
+                    throw new IOException("Unknown replication frame " + frame);
+            }
+        }
+    }
+
+    private void applyBatch(List<Entry> batch) {
+        synchronized (replica) {
+            for (Entry e : batch) {
+                if (e.seq <= appliedSeq) {
+                    continue;   // already applied (overlap after reconnect)
+                }
+                ReplicationProtocol.apply(e, replica);
+                appliedSeq      = e.seq;
+                lastEntryMillis = e.timeMillis;
+                entriesApplied++;
+            }
+        }
+        leaderHeadSeq = Math.max(leaderHeadSeq, appliedSeq);
+    }
+
+    private void sleepBeforeRetry() {
+        if (!running) {
+            return;
+        }
+        try {
+            Thread.sleep(RETRY_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+}
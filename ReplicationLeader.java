@@ -0,0 +1,309 @@
+package service;
+
+import model.Book;
+import model.Librarian;
+import model.Member;
+import model.Person;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static service.ReplicationProtocol.*;
+
+/**
+ * ============================================================
+ *  CLASS   : ReplicationLeader
+ *  PACKAGE : service
+ *  PURPOSE : Streams every change made to a LibraryService to
+ *            read-only followers over TCP (see ReplicationFollower).
+ *
+ *  HOW IT WORKS:
+ *    - Registered as a MutationListener, so each add/register/
+ *      borrow/return/edit becomes a numbered log entry in the
+ *      order it was applied.
+ *    - Each leader has an epoch: a random ID for this process
+ *      plus a count of leaders started in it. Sequence numbers
+ *      restart at 1 with every leader, so a follower whose epoch
+ *      differs always gets a snapshot, however its seq compares.
+ *    - The last LOG_RETENTION entries are kept. A reconnecting
+ *      follower that is still inside that window is sent only the
+ *      entries it missed; otherwise it gets a full snapshot first.
+ *    - Each follower has its own bounded queue and sender thread
+ *      that writes entries in batches of up to MAX_BATCH.
+ *    - Back-pressure: a follower whose queue fills up is
+ *      disconnected rather than slowing the desk down; it
+ *      reconnects and catches up from the log or a snapshot.
+ *    - When idle, a heartbeat carries the head sequence number so
+ *      followers can report their lag.
+ * ============================================================
+ */
+public class ReplicationLeader implements MutationListener, AutoCloseable {
+
+    // ── Tuning ─────────────────────────────────────────────────────
+    public  static final int LOG_RETENTION    = 100_000;   // entries kept for catch-up
+    private static final int FOLLOWER_QUEUE   = 10_000;    // entries buffered per follower
+    private static final int MAX_BATCH        = 512;       // entries per network write
+    private static final int HEARTBEAT_MILLIS = 500;
+
+    // ── Epoch (a follower from another epoch gets a snapshot) ──────
+    private static final long       PROCESS_ID = randomEpochId();
+    private static final AtomicLong RESTARTS   = new AtomicLong();
+
+    private final LibraryService service;
+    private final ServerSocket   server;
+    private final long           epochId;
+    private final long           epochRestart;
+
+    // ── Log State (guarded by the service lock) ────────────────────
+    private final ArrayDeque<Entry> log;
+    private volatile long headSeq;
+
+    private final List<FollowerLink> followers;
+    private volatile boolean running;
+
+    /** Binds the listening socket on localhost; call start() to begin */
+    public ReplicationLeader(LibraryService service, int port) throws IOException {
+        this.service   = service;
+        this.server    = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        this.log       = new ArrayDeque<>();
+        this.followers = new CopyOnWriteArrayList<>();
+        this.epochId      = PROCESS_ID;
+        this.epochRestart = RESTARTS.incrementAndGet();
+    }
+
+    /** Starts logging changes and accepting followers */
+    public void start() {
+        running = true;
+        service.addMutationListener(this);
+        Thread acceptor = new Thread(this::acceptLoop, "replication-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int  getPort()          { return server.getLocalPort(); }
+    public long getHeadSeq()       { return headSeq;               }
+    public int  getFollowerCount() { return followers.size();      }
+
+    @Override
+    public void close() {
+        running = false;
+        service.removeMutationListener(this);
+        try {
+            server.close();
+        } catch (IOException ignored) {
+            // shutting down anyway
+        }
+        for (FollowerLink f : followers) {
+            f.close();
+        }
+    }
+
+    // ==============================================================
+    //   MUTATION LISTENER (called under the service lock)
+    // ==============================================================
+
+    @Override
+    public void bookAdded(Book b) {
+        append(OP_ADD_BOOK, b.getBookId(), b.getTitle(), b.getAuthor(), b.getGenre(), b.getIsbn());
+    }
+
+    @Override
+    public void memberRegistered(Member m) {
+        append(OP_REGISTER, m.getPersonId(), m.getName(), m.getEmail(), m.getPhone());
+    }
+
+    @Override
+    public void librarianAdded(Librarian l) {
+        append(OP_LIBRARIAN, l.getPersonId(), l.getName(), l.getEmail(), l.getPhone(),
+                l.getStaffId(), l.getDepartment());
+    }
+
+    @Override
+    public void bookBorrowed(Member m, Book b) {
+        append(OP_BORROW, m.getPersonId(), b.getBookId());
+    }
+
+    @Override
+    public void bookReturned(Member m, Book b) {
+        append(OP_RETURN, m.getPersonId(), b.getBookId());
+    }
+
+    @Override
+    public void bookEdited(Book b, String field, String oldValue) {
+        String value;
+        switch (field) {
+            case "title":  value = b.getTitle();  break;
+            case "author": value = b.getAuthor(); break;
+            case "genre":  value = b.getGenre();  break;
+            default:       value = b.getIsbn();   break;
+        }
+        append(OP_EDIT_BOOK, b.getBookId(), field, value);
+    }
+
+    @Override
+    public void personEdited(Person p, String field, String oldValue) {
+        String value;
+        switch (field) {
+            case "name":       value = p.getName();  break;
+            case "email":      value = p.getEmail(); break;
+            case "department": value = ((Librarian) p).getDepartment(); break;
+            default:           value = p.getPhone(); break;
+        }
+        append(OP_EDIT_PERSON, p.getRole(), p.getPersonId(), field, value);
+    }
+
+    private void append(byte op, String... args) {
+        Entry e = new Entry(headSeq + 1, System.currentTimeMillis(), op, args);
+        headSeq = e.seq;
+        log.addLast(e);
+        if (log.size() > LOG_RETENTION) {
+            log.removeFirst();
+        }
+        for (FollowerLink f : followers) {
+            if (!f.queue.offer(e)) {
+                f.close();   // too far behind — it will reconnect and catch up
+            }
+        }
+    }
+
+    // ==============================================================
+    //   FOLLOWER CONNECTIONS
+    // ==============================================================
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = server.accept();
+                Thread t = new Thread(() -> serve(socket), "replication-sender");
+                t.setDaemon(true);
+                t.start();
+            } catch (IOException e) {
+                if (running) {
+                    System.out.println("  [!] Replication accept failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /** Handshake, catch-up, then stream live entries until the follower goes away */
+    private void serve(Socket socket) {
+        FollowerLink link = null;
+        try {
+            socket.setTcpNoDelay(true);
+            DataInputStream  in  = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(socket.getOutputStream(), 64 * 1024));
+            long followerEpoch   = in.readLong();
+            long followerRestart = in.readLong();
+            long followerSeq     = in.readLong();
+            boolean sameEpoch    = followerEpoch == epochId && followerRestart == epochRestart;
+
+            // Decide between log replay and snapshot atomically with new changes.
+            // A snapshot is only copied under the lock; it is encoded below.
+            Snapshot    snapshot = null;
+            List<Entry> backlog  = new ArrayList<>();
+            link = new FollowerLink(socket);
+            synchronized (service) {
+                long oldest = log.isEmpty() ? headSeq + 1 : log.peekFirst().seq;
+                if (!sameEpoch || followerSeq == NO_STATE
+                        || followerSeq > headSeq || followerSeq < oldest - 1) {
+                    snapshot = ReplicationProtocol.capture(headSeq, service);
+                } else {
+                    for (Entry e : log) {
+                        if (e.seq > followerSeq) {
+                            backlog.add(e);
+                        }
+                    }
+                }
+                followers.add(link);
+            }
+
+            if (snapshot != null) {
+                out.writeByte(FRAME_SNAPSHOT);
+                ReplicationProtocol.writeSnapshot(out, epochId, epochRestart, snapshot);
+            }
+            for (int i = 0; i < backlog.size(); i += MAX_BATCH) {
+                writeBatch(out, backlog.subList(i, Math.min(backlog.size(), i + MAX_BATCH)));
+            }
+            out.flush();
+
+            List<Entry> batch = new ArrayList<>(MAX_BATCH);
+            while (running && !link.closed) {
+                Entry first = link.queue.poll(HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    out.writeByte(FRAME_HEARTBEAT);
+                    out.writeLong(headSeq);
+                    out.writeLong(System.currentTimeMillis());
+                } else {
+                    batch.clear();
+                    batch.add(first);
+                    link.queue.drainTo(batch, MAX_BATCH - 1);
+                    writeBatch(out, batch);
+                }
+                out.flush();
+            }
+        } catch (IOException | InterruptedException e) {
+            // follower disconnected; it will reconnect and catch up
+        } finally {
+            if (link != null) {
+                followers.remove(link);
+                link.close();
+            } else {
+                try { socket.close(); } catch (IOException ignored) { }
+            }
+        }
+    }
+
+    /** Random, never NO_EPOCH */
+    private static long randomEpochId() {
+        long id;
+        do {
+            id = new SecureRandom().nextLong();
+        } while (id == NO_EPOCH);
+        return id;
+    }
+
+    private static void writeBatch(DataOutputStream out, List<Entry> batch) throws IOException {
+        out.writeByte(FRAME_BATCH);
+        out.writeInt(batch.size());
+        for (Entry e : batch) {
+            ReplicationProtocol.writeEntry(out, e);
+        }
+    }
+
+    /** A connected follower with its bounded outgoing queue */
+    private static final class FollowerLink {
+        final Socket                socket;
+        final BlockingQueue<Entry>  queue;
+        volatile boolean            closed;
+
+        FollowerLink(Socket socket) {
+            this.socket = socket;
+            this.queue  = new ArrayBlockingQueue<>(FOLLOWER_QUEUE);
+        }
+
+        void close() {
+            closed = true;
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // already gone
+            }
+        }
+    }
+}
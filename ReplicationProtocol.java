@@ -0,0 +1,368 @@
+package service;
+
+import exception.*;
+import model.*;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ============================================================
+ *  CLASS   : ReplicationProtocol
+ *  PACKAGE : service
+ *  PURPOSE : Wire format shared by ReplicationLeader and
+ *            ReplicationFollower, plus the code that applies a
+ *            received change to a replica LibraryService.
+ *
+ *  HANDSHAKE (follower → leader): the leader epoch its state
+ *  came from (id, restart) and the last sequence number it
+ *  applied, as three longs. Sequence numbers only mean something
+ *  within one epoch, so a different epoch always gets a snapshot.
+ *
+ *  FRAMES (leader → follower):
+ *    'S' snapshot  : epoch id, epoch restart, seq, books,
+ *                    members, librarians
+ *    'B' batch     : count, then that many entries
+ *    'H' heartbeat : leader head seq, leader clock (ms)
+ *
+ *  ENTRY: seq, leader clock (ms), op code, argument strings
+ * ============================================================
+ */
+final class ReplicationProtocol {
+
+    // ── Frame Types ────────────────────────────────────────────────
+    static final byte FRAME_SNAPSHOT  = 'S';
+    static final byte FRAME_BATCH     = 'B';
+    static final byte FRAME_HEARTBEAT = 'H';
+
+    // ── Entry Op Codes ─────────────────────────────────────────────
+    static final byte OP_ADD_BOOK   = 1;   // id, title, author, genre, isbn
+    static final byte OP_REGISTER   = 2;   // id, name, email, phone
+    static final byte OP_LIBRARIAN  = 3;   // id, name, email, phone, staffId, department
+    static final byte OP_BORROW     = 4;   // memberId, bookId
+    static final byte OP_RETURN     = 5;   // memberId, bookId
+    static final byte OP_EDIT_BOOK  = 6;   // bookId, field, new value
+    static final byte OP_EDIT_PERSON = 7;  // role, personId, field, new value
+
+    /** Sequence number a follower sends when it has nothing yet */
+    static final long NO_STATE = -1L;
+
+    /** Epoch a follower sends when it has nothing yet; no leader uses it */
+    static final long NO_EPOCH = 0L;
+
+    private ReplicationProtocol() { }
+
+    /** One ordered change in the leader's mutation log */
+    static final class Entry {
+        final long     seq;
+        final long     timeMillis;
+        final byte     op;
+        final String[] args;
+
+        Entry(long seq, long timeMillis, byte op, String[] args) {
+            this.seq        = seq;
+            this.timeMillis = timeMillis;
+            this.op         = op;
+            this.args       = args;
+        }
+    }
+
+    // ==============================================================
+    //   ENTRIES
+    // ==============================================================
+
+    static void writeEntry(DataOutputStream out, Entry e) throws IOException {
+        out.writeLong(e.seq);
+        out.writeLong(e.timeMillis);
+        out.writeByte(e.op);
+        out.writeByte(e.args.length);
+        for (String a : e.args) {
+            out.writeUTF(a == null ? "" : a);
+        }
+    }
+
+    static Entry readEntry(DataInputStream in) throws IOException {
+        long seq  = in.readLong();
+        long time = in.readLong();
+        byte op   = in.readByte();
+        String[] args = new String[in.readByte()];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = in.readUTF();
+        }
+        return new Entry(seq, time, op, args);
+    }
+
+    /**
+     * Applies one entry to a replica.
+     *
+     * @throws IllegalStateException if the replica has diverged from the
+     *                               leader and can no longer apply the change
+     */
+    static void apply(Entry e, LibraryService replica) {
+        String[] a = e.args;
+        try {
+            switch (e.op) {
+                case OP_ADD_BOOK:
+                    replica.addBook(new Book(a[0], a[1], a[2], a[3], a[4]));
+                    break;
+                case OP_REGISTER:
+                    replica.registerMember(new Member(a[0], a[1], a[2], a[3]));
+                    break;
+                case OP_LIBRARIAN:
+                    replica.addLibrarian(new Librarian(a[0], a[1], a[2], a[3], a[4], a[5]));
+                    break;
+                case OP_BORROW:
+                    replica.borrowBook(a[0], a[1]);
+                    break;
+                case OP_RETURN:
+                    replica.returnBook(a[0], a[1]);
+                    break;
+                case OP_EDIT_BOOK:
+                    applyEdit(replica.findBookById(a[0]), a[1], a[2]);
+                    break;
+                case OP_EDIT_PERSON:
+                    applyPersonEdit(findPerson(replica, a[0], a[1]), a[2], a[3]);
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown op code " + e.op);
+            }
+        } catch (DuplicateEntryException | MemberNotFoundException | BookNotFoundException
+                 | BookNotAvailableException | BorrowLimitExceededException
+                 | InvalidIsbnException | IllegalArgumentException ex) {
+            throw new IllegalStateException("Replica diverged at seq " + e.seq
+                    + ": " + ex.getMessage(), ex);
+        }
+    }
+
+    private static void applyEdit(Book book, String field, String value)
+            throws InvalidIsbnException {
+        switch (field) {
+            case "title":  book.setTitle(value);  break;
+            case "author": book.setAuthor(value); break;
+            case "genre":  book.setGenre(value);  break;
+            case "isbn":   book.setIsbn(value);   break;
+            default: throw new IllegalStateException("Unknown book field " + field);
+        }
+    }
+
+    /** The replica's member or librarian with this ID */
+    private static Person findPerson(LibraryService replica, String role, String personId)
+            throws MemberNotFoundException {
+        if (role.equals("Member")) {
+            return replica.findMemberById(personId);
+        }
+        for (Librarian l : replica.getLibrarians()) {
+            if (l.getPersonId().equalsIgnoreCase(personId)) {
+                return l;
+            }
+        }
+        throw new IllegalStateException("Unknown librarian " + personId);
+    }
+
+    /** @throws IllegalArgumentException if the replica refuses the new email */
+    private static void applyPersonEdit(Person person, String field, String value) {
+        switch (field) {
+            case "name":       person.setName(value);  break;
+            case "email":      person.setEmail(value); break;
+            case "phone":      person.setPhone(value); break;
+            case "department": ((Librarian) person).setDepartment(value); break;
+            default: throw new IllegalStateException("Unknown person field " + field);
+        }
+    }
+
+    // ==============================================================
+    //   SNAPSHOTS
+    // ==============================================================
+
+    /**
+     * Copies the field values of every entity. The caller must hold
+     * the service lock; the copy holds only references to immutable
+     * strings and primitives, so it is cheap next to encoding, which
+     * {@link #writeSnapshot} then does with the lock released.
+     */
+    static Snapshot capture(long seq, LibraryService service) {
+        return new Snapshot(seq, service.getBooks(), service.getMembers(), service.getLibrarians());
+    }
+
+    /** Writes a captured state in the 'S' frame format */
+    static void writeSnapshot(DataOutputStream out, long epochId, long epochRestart, Snapshot s)
+            throws IOException {
+        out.writeLong(epochId);
+        out.writeLong(epochRestart);
+        out.writeLong(s.seq);
+
+        int bookCount = s.isbns.length;
+        out.writeInt(bookCount);
+        for (int i = 0; i < bookCount; i++) {
+            for (int f = 0; f < 4; f++) {
+                writeText(out, s.bookText[i * 4 + f]);
+            }
+            out.writeLong(s.isbns[i]);
+            out.writeBoolean(s.borrowers[i] == null);
+            writeText(out, s.borrowers[i]);
+            out.writeInt(s.circulation[i]);
+        }
+
+        int memberCount = s.memberTotals.length;
+        out.writeInt(memberCount);
+        for (int i = 0; i < memberCount; i++) {
+            for (int f = 0; f < 4; f++) {
+                writeText(out, s.memberText[i * 4 + f]);
+            }
+            out.writeInt(s.memberTotals[i]);
+            out.writeInt(s.memberLoans[i].length);
+            for (String id : s.memberLoans[i]) {
+                writeText(out, id);
+            }
+        }
+
+        int librarianCount = s.librarianText.length / 6;
+        out.writeInt(librarianCount);
+        for (String text : s.librarianText) {
+            writeText(out, text);
+        }
+    }
+
+    /** writeUTF for a field that may be unset (null is sent as ""), as writeEntry does */
+    private static void writeText(DataOutputStream out, String text) throws IOException {
+        out.writeUTF(text == null ? "" : text);
+    }
+
+    /**
+     * Reads an 'S' frame into new entities without touching any
+     * service, so a dropped connection mid-snapshot leaves the
+     * replica as it was; {@link #load} then swaps them in.
+     */
+    static Received readSnapshot(DataInputStream in) throws IOException {
+        Received r = new Received(in.readLong(), in.readLong(), in.readLong());
+
+        int bookCount = in.readInt();
+        for (int i = 0; i < bookCount; i++) {
+            Book b = new Book(in.readUTF(), in.readUTF(), in.readUTF(), in.readUTF(),
+                    in.readLong());
+            boolean available = in.readBoolean();
+            String  borrower  = in.readUTF();
+            b.restoreLoanState(available, borrower, in.readInt());
+            r.books.add(b);
+        }
+
+        int memberCount = in.readInt();
+        for (int i = 0; i < memberCount; i++) {
+            Member m = new Member(in.readUTF(), in.readUTF(), in.readUTF(), in.readUTF());
+            int total = in.readInt();
+            List<String> ids = new ArrayList<>();
+            for (int n = in.readInt(); n > 0; n--) {
+                ids.add(in.readUTF());
+            }
+            m.restoreLoanState(ids, total);
+            r.members.add(m);
+        }
+
+        int librarianCount = in.readInt();
+        for (int i = 0; i < librarianCount; i++) {
+            r.librarians.add(new Librarian(in.readUTF(), in.readUTF(), in.readUTF(),
+                    in.readUTF(), in.readUTF(), in.readUTF()));
+        }
+        return r;
+    }
+
+    /**
+     * Replaces the replica's state with a fully received snapshot.
+     * The caller must hold the replica lock.
+     *
+     * @throws IllegalStateException if the snapshot holds duplicate IDs
+     */
+    static void load(Received r, LibraryService replica) {
+        replica.reset();
+        try {
+            for (Book b : r.books) {
+                replica.addBook(b);
+            }
+            for (Member m : r.members) {
+                replica.registerMember(m);
+            }
+            for (Librarian l : r.librarians) {
+                replica.addLibrarian(l);
+            }
+        } catch (DuplicateEntryException e) {
+            throw new IllegalStateException("Corrupt snapshot: " + e.getMessage(), e);
+        }
+    }
+
+    /** Entities decoded from an 'S' frame, not yet in any service */
+    static final class Received {
+        final long            epochId;
+        final long            epochRestart;
+        final long            seq;
+        final List<Book>      books      = new ArrayList<>();
+        final List<Member>    members    = new ArrayList<>();
+        final List<Librarian> librarians = new ArrayList<>();
+
+        private Received(long epochId, long epochRestart, long seq) {
+            this.epochId      = epochId;
+            this.epochRestart = epochRestart;
+            this.seq          = seq;
+        }
+    }
+
+    // ── Captured State ─────────────────────────────────────────────
+
+    /** Entity field values at one sequence number, flattened into arrays */
+    static final class Snapshot {
+        final long       seq;
+        final String[]   bookText;       // id, title, author, genre per book
+        final long[]     isbns;
+        final String[]   borrowers;      // null = on the shelf
+        final int[]      circulation;
+        final String[]   memberText;     // id, name, email, phone per member
+        final int[]      memberTotals;
+        final String[][] memberLoans;
+        final String[]   librarianText;  // id, name, email, phone, staffId, department
+
+        private Snapshot(long seq, List<Book> books, List<Member> members, List<Librarian> librarians) {
+            this.seq         = seq;
+            this.bookText    = new String[books.size() * 4];
+            this.isbns       = new long[books.size()];
+            this.borrowers   = new String[books.size()];
+            this.circulation = new int[books.size()];
+            for (int i = 0; i < books.size(); i++) {
+                Book b = books.get(i);
+                bookText[i * 4]     = b.getBookId();
+                bookText[i * 4 + 1] = b.getTitle();
+                bookText[i * 4 + 2] = b.getAuthor();
+                bookText[i * 4 + 3] = b.getGenre();
+                isbns[i]       = b.getIsbn13();
+                borrowers[i]   = b.isAvailable() ? null : b.getBorrowedByMemberId();
+                circulation[i] = b.getCirculationCount();
+            }
+
+            this.memberText   = new String[members.size() * 4];
+            this.memberTotals = new int[members.size()];
+            this.memberLoans  = new String[members.size()][];
+            for (int i = 0; i < members.size(); i++) {
+                Member m = members.get(i);
+                copyPerson(m, memberText, i * 4);
+                memberTotals[i] = m.getTotalBooksBorrowed();
+                memberLoans[i]  = m.getBorrowedBookIds().toArray(new String[0]);
+            }
+
+            this.librarianText = new String[librarians.size() * 6];
+            for (int i = 0; i < librarians.size(); i++) {
+                Librarian l = librarians.get(i);
+                copyPerson(l, librarianText, i * 6);
+                librarianText[i * 6 + 4] = l.getStaffId();
+                librarianText[i * 6 + 5] = l.getDepartment();
+            }
+        }
+
+        private static void copyPerson(Person p, String[] into, int at) {
+            into[at]     = p.getPersonId();
+            into[at + 1] = p.getName();
+            into[at + 2] = p.getEmail();
+            into[at + 3] = p.getPhone();
+        }
+    }
+}
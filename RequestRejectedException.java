@@ -0,0 +1,34 @@
+package exception;
+
+/**
+ * ============================================================
+ *  EXCEPTION : RequestRejectedException
+ *  PACKAGE   : exception
+ *  PURPOSE   : Thrown by admission control when a request is not
+ *              run, either because the client or member is over
+ *              its rate limit or because the service is too busy
+ *              to answer within the operation's latency budget.
+ *  TYPE      : Checked Exception (extends Exception)
+ * ============================================================
+ */
+public class RequestRejectedException extends Exception {
+
+    public static final String RATE_LIMITED = "rate limit exceeded";
+    public static final String OVERLOADED   = "service busy";
+
+    private final String clientId;
+    private final String reason;
+    private final long   retryAfterMillis;
+
+    public RequestRejectedException(String clientId, String reason, long retryAfterMillis) {
+        super("Request from \"" + clientId + "\" rejected: " + reason
+                + ". Please retry in " + retryAfterMillis + " ms.");
+        this.clientId         = clientId;
+        this.reason           = reason;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    public String getClientId()         { return clientId;         }
+    public String getReason()           { return reason;           }
+    public long   getRetryAfterMillis() { return retryAfterMillis; }
+}
@@ -0,0 +1,253 @@
+package main;
+
+import exception.*;
+import model.*;
+import service.CatalogueExporter;
+import service.LibraryService;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ============================================================
+ *  CLASS   : ScriptRunner
+ *  PACKAGE : main
+ *  PURPOSE : Headless batch mode: replays a file of commands against
+ *            a LibraryService and writes one result line per
+ *            command. Used to script the system, replay a day's
+ *            transactions or reproduce an incident.
+ *
+ *  INPUT (one command per line, fields separated by '|'):
+ *    add-book|<id>|<title>|<author>|<genre>[|<isbn>]
+ *    register|<id>|<name>|<email>|<phone>
+ *    librarian|<id>|<name>|<email>|<phone>|<staffId>|<department>
+ *    borrow|<memberId>|<bookId or ISBN>[|<requestKey>]
+ *    return|<memberId>|<bookId or ISBN>[|<requestKey>]
+ *    search|<keyword>
+ *    search-title-author|<title>|<author>
+ *    fuzzy|<keyword>|<maxEdits>
+ *    suggest|<prefix>[|<limit>]
+ *    find-member|<name, email or phone>[|<limit>]
+ *    recommend|<bookId>[|<limit>]
+ *    export|<directory>|<csv|jsonl|binary>[|gzip]
+ *  Blank lines and lines starting with '#' are skipped.
+ *
+ *  OUTPUT (one line per command, tab-separated):
+ *    <line number>  OK|ERR  <command>  <detail>
+ *  detail is empty for changes, "<count> <id,id,...>" for lookups
+ *  (at most MAX_LISTED IDs), "<rows> rows <bytes> bytes" for an
+ *  export and "<Exception>: <message>" for ERR.
+ *
+ *  HOW IT STAYS FAST:
+ *    - Input and log both go through large buffers; the log is
+ *      flushed once at the end, never per line.
+ *    - Lines are split by hand on '|' (no regex), and the service's
+ *      "✔ ..." echo is switched off, so nothing is rendered.
+ * ============================================================
+ */
+public class ScriptRunner {
+
+    /** IDs written per lookup result */
+    public static final int MAX_LISTED = 10;
+
+    private static final int DEFAULT_LIMIT = 10;
+
+    private final LibraryService service;
+    private final Writer         log;
+
+    // ── Counters ───────────────────────────────────────────────────
+    private long commands;
+    private long failures;
+
+    public ScriptRunner(LibraryService service, Writer log) {
+        this.service = service;
+        this.log     = log;
+    }
+
+    /**
+     * Runs every command in the stream, then flushes the log.
+     * A failing command is logged as ERR and the replay goes on.
+     *
+     * @throws IOException if reading the script or writing the log fails
+     */
+    public void run(BufferedReader in) throws IOException {
+        service.setEcho(false);
+        List<String> fields = new ArrayList<>(8);
+        String line;
+        long lineNo = 0;
+        while ((line = in.readLine()) != null) {
+            lineNo++;
+            if (line.isEmpty() || line.charAt(0) == '#') {
+                continue;
+            }
+            split(line, fields);
+            commands++;
+            String detail;
+            boolean ok;
+            try {
+                detail = execute(fields);
+                ok     = true;
+            } catch (Exception e) {
+                detail = e.getClass().getSimpleName() + ": " + e.getMessage();
+                ok     = false;
+                failures++;
+            }
+            writeResult(lineNo, ok, fields.get(0), detail);
+        }
+        log.flush();
+    }
+
+    // ── Counter Getters ────────────────────────────────────────────
+    public long getCommands() { return commands; }
+    public long getFailures() { return failures; }
+
+    // ==============================================================
+    //   COMMANDS
+    // ==============================================================
+
+    /** Runs one command; returns the detail column for an OK line */
+    private String execute(List<String> f) throws Exception {
+        String cmd = f.get(0);
+        switch (cmd) {
+            case "add-book":
+                need(f, 5, 6);
+                if (f.size() == 6) {
+                    service.addBook(f.get(1), f.get(2), f.get(3), f.get(4), f.get(5));
+                } else {
+                    service.addBook(f.get(1), f.get(2), f.get(3), f.get(4));
+                }
+                return "";
+            case "register":
+                need(f, 5, 5);
+                service.registerMember(new Member(f.get(1), f.get(2), f.get(3), f.get(4)));
+                return "";
+            case "librarian":
+                need(f, 7, 7);
+                service.addLibrarian(new Librarian(f.get(1), f.get(2), f.get(3), f.get(4),
+                        f.get(5), f.get(6)));
+                return "";
+            case "borrow":
+                need(f, 3, 4);
+                if (f.size() == 4) {
+                    service.borrowBook(f.get(1), f.get(2), f.get(3));
+                } else if (Isbn.isValid(f.get(2))) {
+                    service.borrowBookByIsbn(f.get(1), f.get(2));
+                } else {
+                    service.borrowBook(f.get(1), f.get(2));
+                }
+                return "";
+            case "return": {
+                need(f, 3, 4);
+                boolean returned;
+                if (f.size() == 4) {
+                    returned = service.returnBook(f.get(1), f.get(2), f.get(3));
+                } else if (Isbn.isValid(f.get(2))) {
+                    returned = service.returnBookByIsbn(f.get(1), f.get(2));
+                } else {
+                    returned = service.returnBook(f.get(1), f.get(2));
+                }
+                if (!returned) {
+                    throw new IllegalStateException("Member \"" + f.get(1)
+                            + "\" did not borrow \"" + f.get(2) + "\"");
+                }
+                return "";
+            }
+            case "search":
+                need(f, 2, 2);
+                return listBooks(service.searchBook(f.get(1)));
+            case "search-title-author":
+                need(f, 3, 3);
+                return listBooks(service.searchBook(f.get(1), f.get(2)));
+            case "fuzzy":
+                need(f, 3, 3);
+                return listBooks(service.searchBook(f.get(1), Integer.parseInt(f.get(2))));
+            case "suggest": {
+                need(f, 2, 3);
+                List<String> found = service.suggest(f.get(1), limit(f));
+                return found.size() + " " + String.join(",", found);
+            }
+            case "find-member": {
+                need(f, 2, 3);
+                StringBuilder sb = new StringBuilder();
+                List<Person> found = service.findPersons(f.get(1), limit(f));
+                sb.append(found.size()).append(' ');
+                for (int i = 0; i < found.size() && i < MAX_LISTED; i++) {
+                    sb.append(i == 0 ? "" : ",").append(found.get(i).getPersonId());
+                }
+                return sb.toString();
+            }
+            case "recommend":
+                need(f, 2, 3);
+                return listBooks(service.recommend(f.get(1), limit(f)));
+            case "export": {
+                need(f, 3, 4);
+                if (f.size() == 4 && !f.get(3).equals("gzip")) {
+                    throw new IllegalArgumentException("Expected \"gzip\", got \"" + f.get(3) + "\"");
+                }
+                CatalogueExporter.Format format = CatalogueExporter.Format.valueOf(f.get(2).toUpperCase());
+                CatalogueExporter.Result result = new CatalogueExporter(service, format, f.size() == 4)
+                        .export(Paths.get(f.get(1)));
+                return result.getRows() + " rows " + result.getBytes() + " bytes";
+            }
+            default:
+                throw new IllegalArgumentException("Unknown command \"" + cmd + "\"");
+        }
+    }
+
+    private static void need(List<String> f, int min, int max) {
+        if (f.size() < min || f.size() > max) {
+            throw new IllegalArgumentException(f.get(0) + " takes "
+                    + (min == max ? String.valueOf(min - 1) : (min - 1) + "-" + (max - 1))
+                    + " field(s), got " + (f.size() - 1));
+        }
+    }
+
+    private static int limit(List<String> f) {
+        return f.size() > 2 ? Integer.parseInt(f.get(2)) : DEFAULT_LIMIT;
+    }
+
+    /** "<count> <id,id,...>" with at most MAX_LISTED IDs */
+    private static String listBooks(List<Book> books) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(books.size()).append(' ');
+        for (int i = 0; i < books.size() && i < MAX_LISTED; i++) {
+            sb.append(i == 0 ? "" : ",").append(books.get(i).getBookId());
+        }
+        return sb.toString();
+    }
+
+    // ==============================================================
+    //   PARSING AND OUTPUT
+    // ==============================================================
+
+    /** Splits on '|' keeping empty fields; each field is trimmed */
+    private static void split(String line, List<String> out) {
+        out.clear();
+        int start = 0;
+        for (int i = 0; i <= line.length(); i++) {
+            if (i == line.length() || line.charAt(i) == '|') {
+                out.add(line.substring(start, i).trim());
+                start = i + 1;
+            }
+        }
+    }
+
+    private void writeResult(long lineNo, boolean ok, String cmd, String detail) throws IOException {
+        log.write(Long.toString(lineNo));
+        log.write('\t');
+        log.write(ok ? "OK" : "ERR");
+        log.write('\t');
+        log.write(cmd);
+        log.write('\t');
+        // Keep one result per line even if a message has tabs or newlines
+        if (detail.indexOf('\t') >= 0 || detail.indexOf('\n') >= 0 || detail.indexOf('\r') >= 0) {
+            detail = detail.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+        }
+        log.write(detail);
+        log.write('\n');
+    }
+}
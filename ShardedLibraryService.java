@@ -0,0 +1,357 @@
+package service;
+
+import exception.*;
+import model.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * ============================================================
+ *  CLASS   : ShardedLibraryService
+ *  PACKAGE : service
+ *  PURPOSE : Spreads the catalogue and the member list across
+ *            several LibraryService shards (e.g. one per branch)
+ *            so that writes on different shards do not contend
+ *            and no single shard has to hold everything.
+ *
+ *  HOW IT WORKS:
+ *    - A book lives on shard  hash(bookId)   % shardCount.
+ *    - A member is homed on   hash(memberId) % shardCount.
+ *    - Every shard is guarded by its own lock (the shard object).
+ *    - A cross-shard borrow/return (member on shard A, book on
+ *      shard B) locks both shards in ascending shard order — so
+ *      two opposite transfers can never deadlock — then checks
+ *      both sides before changing either. Nothing is changed if
+ *      any check fails. Listeners on both shards are told about
+ *      the loan, since each holds one side of it.
+ *    - Member emails are unique across all shards: the shards
+ *      share one concurrent email → member map, claimed when a
+ *      member registers or changes email.
+ *    - Searches run on all shards in parallel and are merged in
+ *      shard order; fuzzy searches return each hit's edit
+ *      distance and are k-way merged closest first, the same
+ *      order a single LibraryService gives.
+ *
+ *  Safe to call from many threads. Call close() when done to
+ *  stop the search thread pool.
+ * ============================================================
+ */
+public class ShardedLibraryService implements AutoCloseable {
+
+    private final LibraryService[] shards;
+    private final ExecutorService  searchPool;   // fans searches out to shards
+
+    public ShardedLibraryService(int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("shardCount must be at least 1");
+        }
+        this.shards = new LibraryService[shardCount];
+        ConcurrentMap<String, Member> emailClaims = new ConcurrentHashMap<>();
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new LibraryService();
+            shards[i].shareEmailClaims(emailClaims);
+        }
+        this.searchPool = Executors.newFixedThreadPool(shardCount, r -> {
+            Thread t = new Thread(r, "shard-search");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // ==============================================================
+    //   ROUTING
+    // ==============================================================
+
+    /** Index of the shard that owns a book */
+    public int shardForBook(String bookId) {
+        return Math.floorMod(bookId.toLowerCase().hashCode(), shards.length);
+    }
+
+    /** Index of the shard a member is homed on */
+    public int shardForMember(String memberId) {
+        return Math.floorMod(memberId.toLowerCase().hashCode(), shards.length);
+    }
+
+    public int getShardCount() { return shards.length; }
+
+    // ==============================================================
+    //   CONFIGURATION
+    // ==============================================================
+
+    /** @see LibraryService#setEcho(boolean) */
+    public void setEcho(boolean echo) {
+        for (LibraryService shard : shards) {
+            shard.setEcho(echo);
+        }
+    }
+
+    /**
+     * Registers an observer of one shard. It hears about that shard's
+     * books and members, including cross-shard loans where only the
+     * member or only the book is on this shard.
+     */
+    public void addMutationListener(int shard, MutationListener listener) {
+        shards[shard].addMutationListener(listener);
+    }
+
+    // ==============================================================
+    //   SINGLE-SHARD OPERATIONS
+    // ==============================================================
+
+    /** @throws DuplicateEntryException if bookId already exists */
+    public void addBook(Book book) throws DuplicateEntryException {
+        LibraryService shard = shards[shardForBook(book.getBookId())];
+        synchronized (shard) {
+            shard.addBook(book);
+        }
+    }
+
+    /**
+     * @throws DuplicateEntryException if memberId already exists, or
+     *                                 the email is used on any shard
+     */
+    public void registerMember(Member member) throws DuplicateEntryException {
+        LibraryService shard = shards[shardForMember(member.getPersonId())];
+        synchronized (shard) {
+            shard.registerMember(member);
+        }
+    }
+
+    /** Librarians are homed like members, by their person ID */
+    public void addLibrarian(Librarian librarian) {
+        LibraryService shard = shards[shardForMember(librarian.getPersonId())];
+        synchronized (shard) {
+            shard.addLibrarian(librarian);
+        }
+    }
+
+    // ==============================================================
+    //   BORROW / RETURN (possibly cross-shard)
+    // ==============================================================
+
+    /**
+     * Borrows a book for a member, even when the member and the book
+     * live on different shards.
+     *
+     * @throws MemberNotFoundException        if memberId not found
+     * @throws BookNotFoundException          if bookId not found
+     * @throws BookNotAvailableException      if book is already borrowed
+     * @throws BorrowLimitExceededException   if member holds max books
+     */
+    public void borrowBook(String memberId, String bookId)
+            throws MemberNotFoundException,
+                   BookNotFoundException,
+                   BookNotAvailableException,
+                   BorrowLimitExceededException {
+
+        int memberShard = shardForMember(memberId);
+        int bookShard   = shardForBook(bookId);
+        LibraryService home  = shards[memberShard];
+        LibraryService owner = shards[bookShard];
+
+        if (home == owner) {
+            synchronized (home) {
+                home.borrowBook(memberId, bookId);
+            }
+            return;
+        }
+
+        LibraryService first  = shards[Math.min(memberShard, bookShard)];
+        LibraryService second = shards[Math.max(memberShard, bookShard)];
+        synchronized (first) {
+            synchronized (second) {
+                // Phase 1: look up and check both sides (throws, changes nothing)
+                Member member = home.findMemberById(memberId);
+                Book   book   = owner.findBookById(bookId);
+                LibraryService.checkBorrowable(member, book);
+
+                // Phase 2: both checks passed while both locks are held — apply
+                owner.lendBook(book, member, bookId);
+                home.notifyBorrowed(member, book);
+
+                owner.echo("  ✔ \"" + book.getTitle()
+                        + "\" successfully borrowed by " + member.getName());
+            }
+        }
+    }
+
+    /**
+     * Returns a borrowed book, even when the member and the book live
+     * on different shards.
+     *
+     * @throws MemberNotFoundException if memberId not found
+     * @throws BookNotFoundException   if bookId not found
+     */
+    public void returnBook(String memberId, String bookId)
+            throws MemberNotFoundException, BookNotFoundException {
+
+        int memberShard = shardForMember(memberId);
+        int bookShard   = shardForBook(bookId);
+        LibraryService home  = shards[memberShard];
+        LibraryService owner = shards[bookShard];
+
+        if (home == owner) {
+            synchronized (home) {
+                home.returnBook(memberId, bookId);
+            }
+            return;
+        }
+
+        LibraryService first  = shards[Math.min(memberShard, bookShard)];
+        LibraryService second = shards[Math.max(memberShard, bookShard)];
+        synchronized (first) {
+            synchronized (second) {
+                Member member = home.findMemberById(memberId);
+                Book   book   = owner.findBookById(bookId);
+
+                if (!member.hasBorrowed(bookId)) {
+                    owner.echo("  [!] Member \"" + member.getName()
+                            + "\" did not borrow book ID \"" + bookId + "\".");
+                    return;
+                }
+
+                owner.takeBackBook(book, member, bookId);
+                home.notifyReturned(member, book);
+
+                owner.echo("  ✔ \"" + book.getTitle()
+                        + "\" successfully returned by " + member.getName());
+            }
+        }
+    }
+
+    /**
+     * Books currently borrowed by a member, looked up on whichever
+     * shards own them.
+     *
+     * @throws MemberNotFoundException if memberId not found
+     */
+    public List<Book> getBorrowedBooks(String memberId) throws MemberNotFoundException {
+        LibraryService home = shards[shardForMember(memberId)];
+        List<String> ids;
+        synchronized (home) {
+            ids = new ArrayList<>(home.findMemberById(memberId).getBorrowedBookIds());
+        }
+
+        List<Book> result = new ArrayList<>();
+        for (String bid : ids) {
+            LibraryService owner = shards[shardForBook(bid)];
+            synchronized (owner) {
+                try {
+                    result.add(owner.findBookById(bid));
+                } catch (BookNotFoundException e) {
+                    // returned and removed concurrently — skip
+                }
+            }
+        }
+        return result;
+    }
+
+    // ==============================================================
+    //   PARALLEL SEARCH (fan out, then merge)
+    // ==============================================================
+
+    /** @see LibraryService#searchBook(String) */
+    public List<Book> searchBook(String keyword) {
+        return fanOut(shard -> shard.searchBook(keyword));
+    }
+
+    /** @see LibraryService#searchBook(String, String) */
+    public List<Book> searchBook(String title, String author) {
+        return fanOut(shard -> shard.searchBook(title, author));
+    }
+
+    /** @see LibraryService#searchBook(String, int) */
+    public List<Book> searchBook(String keyword, int maxEdits) {
+        return FuzzyIndex.books(mergeClosest(fanOutEach(shard -> shard.searchBookHits(keyword, maxEdits))));
+    }
+
+    /** Snapshot of every book across all shards */
+    public List<Book> getBooks() {
+        return fanOut(shard -> new ArrayList<>(shard.getBooks()));
+    }
+
+    /** Snapshot of every member across all shards */
+    public List<Member> getMembers() {
+        return fanOut(shard -> new ArrayList<>(shard.getMembers()));
+    }
+
+    /** Stops the search thread pool */
+    @Override
+    public void close() {
+        searchPool.shutdown();
+    }
+
+    // ── Private Helpers ────────────────────────────────────────────
+
+    /** Runs the query on every shard (under its lock) in parallel and concatenates the results */
+    private <T> List<T> fanOut(Function<LibraryService, List<T>> query) {
+        List<T> merged = new ArrayList<>();
+        for (List<T> part : fanOutEach(query)) {
+            merged.addAll(part);
+        }
+        return merged;
+    }
+
+    /** Runs the query on every shard (under its lock) in parallel; one result list per shard */
+    private <T> List<List<T>> fanOutEach(Function<LibraryService, List<T>> query) {
+        List<Future<List<T>>> futures = new ArrayList<>(shards.length);
+        for (LibraryService shard : shards) {
+            futures.add(searchPool.submit(() -> {
+                synchronized (shard) {
+                    return query.apply(shard);
+                }
+            }));
+        }
+
+        List<List<T>> parts = new ArrayList<>(shards.length);
+        for (Future<List<T>> f : futures) {
+            try {
+                parts.add(f.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Search interrupted", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Shard search failed", e.getCause());
+            }
+        }
+        return parts;
+    }
+
+    /**
+     * K-way merge of per-shard fuzzy hits, each already sorted closest
+     * first, so the combined list keeps that order across shards.
+     */
+    private static List<FuzzyIndex.Hit> mergeClosest(List<List<FuzzyIndex.Hit>> parts) {
+        // Each queue entry is {shard, position}; ordered by the hit it points at
+        PriorityQueue<int[]> heads = new PriorityQueue<>(Math.max(1, parts.size()),
+                (a, b) -> FuzzyIndex.Hit.CLOSEST_FIRST.compare(
+                        parts.get(a[0]).get(a[1]), parts.get(b[0]).get(b[1])));
+        int total = 0;
+        for (int s = 0; s < parts.size(); s++) {
+            total += parts.get(s).size();
+            if (!parts.get(s).isEmpty()) {
+                heads.add(new int[] { s, 0 });
+            }
+        }
+
+        List<FuzzyIndex.Hit> merged = new ArrayList<>(total);
+        while (!heads.isEmpty()) {
+            int[] head = heads.poll();
+            List<FuzzyIndex.Hit> part = parts.get(head[0]);
+            merged.add(part.get(head[1]));
+            if (++head[1] < part.size()) {
+                heads.add(head);
+            }
+        }
+        return merged;
+    }
+}
@@ -0,0 +1,356 @@
+package service;
+
+import model.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * ============================================================
+ *  CLASS   : SingleWriterLibraryService
+ *  PACKAGE : service
+ *  PURPOSE : Alternative execution mode in which one writer thread
+ *            owns the LibraryService and applies every command in
+ *            turn, so busy circulation never contends on a lock.
+ *
+ *  HOW IT WORKS (LMAX-style ring buffer):
+ *    - Commands are written into a pre-allocated ring of Slots.
+ *      A producer claims the next sequence number with one atomic
+ *      increment, fills the slot and publishes it.
+ *    - The writer thread takes slots strictly in sequence order,
+ *      runs the command on the owned service and completes the
+ *      command's CompletableFuture with the result or exception.
+ *    - A producer that finds the ring full spins briefly and then
+ *      parks until the writer frees a slot; an idle writer parks
+ *      until a producer wakes it.
+ *    - Reads run as commands too and return copies (snapshots) of
+ *      the books, so callers never touch objects the writer is
+ *      changing.
+ *    - Futures complete on the writer thread; use the *Async
+ *      variants of thenApply() etc. for anything slow.
+ *    - close() refuses new commands first, then queues a stop
+ *      command. A producer that claimed a sequence after the stop
+ *      (it raced with close()) gets an IllegalStateException,
+ *      either thrown or as its future's failure; no future is
+ *      left pending.
+ *
+ *  The wrapped service must only be used through this class once
+ *  start() has been called. Call close() to stop the writer.
+ * ============================================================
+ */
+public class SingleWriterLibraryService implements AutoCloseable {
+
+    public static final int DEFAULT_RING_SIZE = 16_384;
+
+    /** Busy-wait rounds before parking; spinning only helps with a spare core */
+    private static final int SPIN_LIMIT = Runtime.getRuntime().availableProcessors() > 1 ? 200 : 0;
+
+    // ── Command Codes ──────────────────────────────────────────────
+    private static final byte OP_ADD_BOOK  = 1;
+    private static final byte OP_REGISTER  = 2;
+    private static final byte OP_LIBRARIAN = 3;
+    private static final byte OP_BORROW    = 4;
+    private static final byte OP_RETURN    = 5;
+    private static final byte OP_QUERY     = 6;
+    private static final byte OP_STOP      = 7;
+
+    private final LibraryService service;
+    private final Slot[]         ring;
+    private final int            mask;
+
+    // ── Sequences ──────────────────────────────────────────────────
+    private final AtomicLong    claimed  = new AtomicLong(-1);   // last sequence handed to a producer
+    private volatile long       consumed = -1;                   // last sequence the writer finished
+
+    private final Thread        writer;
+    private volatile boolean    writerParked;
+    private volatile boolean    closed;
+    private volatile long       stopSeq  = Long.MAX_VALUE;      // sequence of the stop command, once run
+
+    public SingleWriterLibraryService(LibraryService service) {
+        this(service, DEFAULT_RING_SIZE);
+    }
+
+    /** @param ringSize number of slots, rounded up to a power of two */
+    public SingleWriterLibraryService(LibraryService service, int ringSize) {
+        int size = Math.max(2, Integer.highestOneBit(ringSize));
+        if (size < ringSize) {
+            size <<= 1;
+        }
+        this.service = service;
+        this.ring    = new Slot[size];
+        this.mask    = size - 1;
+        for (int i = 0; i < size; i++) {
+            ring[i] = new Slot(i - size);   // "published" for the previous lap
+        }
+        this.writer = new Thread(this::writeLoop, "library-writer");
+        this.writer.setDaemon(true);
+    }
+
+    public void start() {
+        writer.start();
+    }
+
+    /** Stops the writer after every command submitted so far has run */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;   // refuse new commands before queueing the stop
+        if (writer.isAlive()) {
+            CompletableFuture<Object> stopped = enqueue(OP_STOP, null, null, null, null);
+            stopped.join();
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // ==============================================================
+    //   COMMANDS
+    // ==============================================================
+
+    /** Completes with null, or exceptionally with DuplicateEntryException */
+    public CompletableFuture<Void> addBook(Book book) {
+        return cast(publish(OP_ADD_BOOK, null, null, book, null));
+    }
+
+    /** Completes with null, or exceptionally with DuplicateEntryException */
+    public CompletableFuture<Void> registerMember(Member member) {
+        return cast(publish(OP_REGISTER, null, null, member, null));
+    }
+
+    public CompletableFuture<Void> addLibrarian(Librarian librarian) {
+        return cast(publish(OP_LIBRARIAN, null, null, librarian, null));
+    }
+
+    /**
+     * Completes with null, or exceptionally with BookNotFoundException,
+     * MemberNotFoundException, BookNotAvailableException or
+     * BorrowLimitExceededException.
+     */
+    public CompletableFuture<Void> borrowBook(String memberId, String bookId) {
+        return cast(publish(OP_BORROW, memberId, bookId, null, null));
+    }
+
+    /** Completes with null, or exceptionally as LibraryService.returnBook() throws */
+    public CompletableFuture<Void> returnBook(String memberId, String bookId) {
+        return cast(publish(OP_RETURN, memberId, bookId, null, null));
+    }
+
+    // ==============================================================
+    //   READS (run on the writer, return snapshots)
+    // ==============================================================
+
+    public CompletableFuture<List<Book>> searchBook(String keyword) {
+        return query(s -> snapshot(s.searchBook(keyword)));
+    }
+
+    public CompletableFuture<List<Book>> searchBook(String title, String author) {
+        return query(s -> snapshot(s.searchBook(title, author)));
+    }
+
+    public CompletableFuture<List<Book>> searchBook(String keyword, int maxEdits) {
+        return query(s -> snapshot(s.searchBook(keyword, maxEdits)));
+    }
+
+    /** Copies of every book, in catalogue order */
+    public CompletableFuture<List<Book>> getBooks() {
+        return query(s -> snapshot(s.getBooks()));
+    }
+
+    /**
+     * Runs any read on the writer thread. The function must not keep
+     * or return live Book/Member objects — copy what it needs.
+     */
+    public <T> CompletableFuture<T> query(Function<LibraryService, T> read) {
+        return cast(publish(OP_QUERY, null, null, null, read));
+    }
+
+    /** Detached copy of a book (same ID, text, ISBN and loan state) */
+    static Book copyOf(Book b) {
+        Book copy = new Book(b.getBookId(), b.getTitle(), b.getAuthor(), b.getGenre(), b.getIsbn13());
+        copy.restoreLoanState(b.isAvailable(), b.getBorrowedByMemberId(), b.getCirculationCount());
+        return copy;
+    }
+
+    private static List<Book> snapshot(List<Book> books) {
+        List<Book> copies = new ArrayList<>(books.size());
+        for (Book b : books) {
+            copies.add(copyOf(b));
+        }
+        return copies;
+    }
+
+    // ── Status ─────────────────────────────────────────────────────
+    public int  getRingSize() { return ring.length;                    }
+    public long getBacklog()  { return claimed.get() - consumed;       }
+
+    // ==============================================================
+    //   RING BUFFER
+    // ==============================================================
+
+    /** Claims a slot, fills it and makes it visible to the writer */
+    private CompletableFuture<Object> publish(byte op, String a, String b, Object payload,
+                                              Function<LibraryService, ?> read) {
+        if (closed) {
+            throw closedException();
+        }
+        return enqueue(op, a, b, payload, read);
+    }
+
+    private CompletableFuture<Object> enqueue(byte op, String a, String b, Object payload,
+                                              Function<LibraryService, ?> read) {
+        long seq = claimed.incrementAndGet();
+        waitForFreeSlot(seq);
+
+        Slot slot = ring[(int) (seq & mask)];
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        slot.op      = op;
+        slot.a       = a;
+        slot.b       = b;
+        slot.payload = payload;
+        slot.read    = read;
+        slot.future  = future;
+        slot.published = seq;   // volatile write: releases the fields above
+
+        if (seq > stopSeq) {
+            // Raced with close(): the writer has stopped and may not have seen this slot
+            future.completeExceptionally(closedException());
+        } else if (writerParked) {
+            LockSupport.unpark(writer);
+        }
+        return future;
+    }
+
+    /**
+     * A slot may be refilled once the writer has finished the command
+     * a lap earlier. Gives up once the writer has stopped, since the
+     * slot would never be freed.
+     */
+    private void waitForFreeSlot(long seq) {
+        long wrap = seq - ring.length;
+        int spins = 0;
+        while (wrap > consumed) {
+            if (seq > stopSeq) {
+                throw closedException();
+            }
+            if (++spins < SPIN_LIMIT) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(1_000);
+            }
+        }
+    }
+
+    private void writeLoop() {
+        long next = 0;
+        while (true) {
+            Slot slot = ring[(int) (next & mask)];
+            awaitPublished(slot, next);
+
+            CompletableFuture<Object> future = slot.future;
+            boolean stop = slot.op == OP_STOP;
+            try {
+                future.complete(stop ? null : execute(slot));
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            } catch (Error e) {
+                future.completeExceptionally(e);
+                throw e;
+            } finally {
+                slot.clear();
+                consumed = next;   // volatile write: frees the slot
+            }
+            if (stop) {
+                failAfterStop(next);
+                return;
+            }
+            next++;
+        }
+    }
+
+    /**
+     * Fails every command published after the stop. A producer that
+     * publishes after this scan sees stopSeq and fails its own future;
+     * completing twice is harmless.
+     */
+    private void failAfterStop(long stop) {
+        stopSeq = stop;   // volatile write before reading the slots below
+        for (long seq = stop + 1; seq <= claimed.get() && seq <= stop + ring.length; seq++) {
+            Slot slot = ring[(int) (seq & mask)];
+            if (slot.published == seq) {
+                CompletableFuture<Object> future = slot.future;
+                if (future != null) {
+                    future.completeExceptionally(closedException());
+                }
+            }
+        }
+    }
+
+    private static IllegalStateException closedException() {
+        return new IllegalStateException("SingleWriterLibraryService is closed");
+    }
+
+    private void awaitPublished(Slot slot, long seq) {
+        int spins = 0;
+        while (slot.published != seq) {
+            if (++spins < SPIN_LIMIT) {
+                Thread.onSpinWait();
+                continue;
+            }
+            writerParked = true;
+            if (slot.published != seq) {   // re-check: a producer may have just published
+                LockSupport.park(this);
+            }
+            writerParked = false;
+        }
+    }
+
+    private Object execute(Slot slot) throws Exception {
+        switch (slot.op) {
+            case OP_ADD_BOOK:  service.addBook((Book) slot.payload);             return null;
+            case OP_REGISTER:  service.registerMember((Member) slot.payload);    return null;
+            case OP_LIBRARIAN: service.addLibrarian((Librarian) slot.payload);  return null;
+            case OP_BORROW:    service.borrowBook(slot.a, slot.b);               return null;
+            case OP_RETURN:    service.returnBook(slot.a, slot.b);               return null;
+            case OP_QUERY:     return slot.read.apply(service);
+            default:
+                throw new IllegalStateException("Unknown command " + slot.op);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> CompletableFuture<T> cast(CompletableFuture<Object> future) {
+        return (CompletableFuture<T>) (CompletableFuture<?>) future;
+    }
+
+    /** One pre-allocated command cell, reused every lap of the ring */
+    private static final class Slot {
+        volatile long               published;
+        byte                        op;
+        String                      a;
+        String                      b;
+        Object                      payload;
+        Function<LibraryService, ?> read;
+        CompletableFuture<Object>   future;
+
+        Slot(long published) {
+            this.published = published;
+        }
+
+        void clear() {
+            a = b = null;
+            payload = null;
+            read    = null;
+            future  = null;
+        }
+    }
+}
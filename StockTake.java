@@ -0,0 +1,263 @@
+package service;
+
+import model.Book;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ============================================================
+ *  CLASS   : StockTake
+ *  PACKAGE : service
+ *  PURPOSE : Annual inventory: records the barcodes (book IDs)
+ *            scanned off the shelves and reconciles them against the
+ *            catalogue — what is missing, what was scanned but is
+ *            not in the catalogue, and what is on the shelf while
+ *            the system says it is borrowed.
+ *
+ *  HOW IT WORKS:
+ *    - When the stock-take starts, every catalogued copy gets a
+ *      dense ordinal (its position in the append-only book list).
+ *      Only the IDs are kept, copied CHUNK at a time under the
+ *      service lock, and an open-addressing table from ID to
+ *      ordinal is built with the lock released. Books added later
+ *      are not counted.
+ *    - A scan is one case-insensitive table lookup and one bit set
+ *      in a shared AtomicLongArray, so any number of handheld
+ *      streams can scan at once without locking. Barcodes that are
+ *      not in the table go to the "unknown" set.
+ *    - reconcile() looks each ID up in the service and reads the
+ *      copy's current availability (again CHUNK at a time under the
+ *      lock) into an "expected on shelf" bitset, then works 64
+ *      copies per step:
+ *          missing              = onShelf  & ~scanned
+ *          onShelfButBorrowed   = scanned  & ~onShelf
+ *    - Availability is read at reconcile time, so loans made during
+ *      the stock-take count — even in tiered mode, where the Book
+ *      object seen at the start may since have been evicted and
+ *      the loan made on a fresh one. A copy scanned and then borrowed before
+ *      reconcile() is reported as on shelf but borrowed; scan such
+ *      items again or reconcile after closing the desk.
+ *
+ *  scan() and scanStream() are safe to call from many threads.
+ * ============================================================
+ */
+public class StockTake {
+
+    /** Books copied per hold of the service lock */
+    public static final int CHUNK = 65_536;
+
+    private final LibraryService service;
+    private final String[]       ids;        // by ordinal
+    private final int[]          table;      // ordinal + 1, 0 = empty slot
+    private final int            mask;
+
+    // ── Scan State ─────────────────────────────────────────────────
+    private final AtomicLongArray scanned;
+    private final Set<String>     unknown = ConcurrentHashMap.newKeySet();
+    private final LongAdder       scans   = new LongAdder();
+    private final LongAdder       repeats = new LongAdder();
+
+    /** Starts a stock-take of every book currently in the catalogue */
+    public StockTake(LibraryService service) {
+        this.service = service;
+        int count;
+        synchronized (service) {
+            count = service.getBooks().size();
+        }
+        this.ids = new String[count];
+        for (int from = 0; from < count; from += CHUNK) {
+            synchronized (service) {
+                List<Book> books = service.getBooks();
+                for (int i = from; i < Math.min(count, from + CHUNK); i++) {
+                    ids[i] = books.get(i).getBookId();
+                }
+            }
+        }
+        int size = Integer.highestOneBit(Math.max(2, count * 2 - 1)) << 1;
+        this.table   = new int[size];
+        this.mask    = size - 1;
+        this.scanned = new AtomicLongArray((count + 63) >>> 6);
+        for (int i = 0; i < count; i++) {
+            int slot = hash(ids[i]) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = i + 1;
+        }
+    }
+
+    // ==============================================================
+    //   SCANNING
+    // ==============================================================
+
+    /**
+     * Records one scanned barcode. Scanning the same copy twice is
+     * harmless.
+     *
+     * @return true if the barcode is a catalogued copy
+     */
+    public boolean scan(String barcode) {
+        scans.increment();
+        int ordinal = ordinalOf(barcode);
+        if (ordinal < 0) {
+            unknown.add(barcode);
+            return false;
+        }
+        int  word = ordinal >>> 6;
+        long bit  = 1L << ordinal;
+        long old  = scanned.get(word);
+        while ((old & bit) == 0) {
+            if (scanned.compareAndSet(word, old, old | bit)) {
+                return true;
+            }
+            old = scanned.get(word);
+        }
+        repeats.increment();
+        return true;
+    }
+
+    /**
+     * Records every barcode of one handheld upload, one per line.
+     * Run one call per handheld, each on its own thread.
+     *
+     * @return number of barcodes read
+     */
+    public long scanStream(BufferedReader in) throws IOException {
+        long n = 0;
+        String line;
+        while ((line = in.readLine()) != null) {
+            String barcode = line.trim();
+            if (!barcode.isEmpty()) {
+                scan(barcode);
+                n++;
+            }
+        }
+        return n;
+    }
+
+    // ── Metrics Getters ────────────────────────────────────────────
+    public int  getItemCount() { return ids.length;    }
+    public long getScans()     { return scans.sum();   }
+    public long getRepeats()   { return repeats.sum(); }
+
+    // ==============================================================
+    //   RECONCILIATION
+    // ==============================================================
+
+    /** Compares the scans with the catalogue's current availability */
+    public Result reconcile() {
+        int    words   = scanned.length();
+        long[] onShelf = new long[words];
+        for (int from = 0; from < ids.length; from += CHUNK) {
+            synchronized (service) {
+                for (int i = from; i < Math.min(ids.length, from + CHUNK); i++) {
+                    Book book = service.peekBook(ids[i]);
+                    if (book != null && book.isAvailable()) {
+                        onShelf[i >>> 6] |= 1L << i;
+                    }
+                }
+            }
+        }
+        long[] missing  = new long[words];
+        long[] borrowed = new long[words];
+        for (int w = 0; w < words; w++) {
+            long seen = scanned.get(w);
+            missing[w]  = onShelf[w] & ~seen;
+            borrowed[w] = seen & ~onShelf[w];
+        }
+        return new Result(ids, missing, borrowed, new ArrayList<>(unknown));
+    }
+
+    // ==============================================================
+    //   PRIVATE HELPERS
+    // ==============================================================
+
+    /** Ordinal of a catalogued ID (any case), or -1 */
+    private int ordinalOf(String id) {
+        int slot = hash(id) & mask;
+        int entry;
+        while ((entry = table[slot]) != 0) {
+            String candidate = ids[entry - 1];
+            if (candidate.length() == id.length() && candidate.equalsIgnoreCase(id)) {
+                return entry - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /** Case-insensitive string hash, spread so linear probing stays short */
+    private static int hash(String s) {
+        int h = 0;
+        for (int i = 0; i < s.length(); i++) {
+            h = 31 * h + Character.toLowerCase(s.charAt(i));
+        }
+        return h * 0x9E3779B9 ^ (h >>> 16);
+    }
+
+    // ==============================================================
+    //   RESULT
+    // ==============================================================
+
+    /** Outcome of a stock-take; the ID lists are built on request */
+    public static final class Result {
+        private final String[]     ids;
+        private final long[]       missing;
+        private final long[]       onShelfButBorrowed;
+        private final List<String> unknown;
+
+        private Result(String[] ids, long[] missing, long[] onShelfButBorrowed, List<String> unknown) {
+            this.ids                = ids;
+            this.missing            = missing;
+            this.onShelfButBorrowed = onShelfButBorrowed;
+            this.unknown            = unknown;
+        }
+
+        /** IDs of copies that should be on the shelf but were not scanned */
+        public List<String> getMissing()            { return idsOf(missing);            }
+
+        /** IDs of copies scanned on the shelf while recorded as borrowed */
+        public List<String> getOnShelfButBorrowed() { return idsOf(onShelfButBorrowed); }
+
+        /** Scanned barcodes that match no catalogued copy */
+        public List<String> getUnknown()            { return unknown;                   }
+
+        public long getMissingCount()            { return count(missing);            }
+        public long getOnShelfButBorrowedCount() { return count(onShelfButBorrowed); }
+        public int  getUnknownCount()            { return unknown.size();            }
+
+        @Override
+        public String toString() {
+            return "StockTake[" + ids.length + " copies: " + getMissingCount() + " missing, "
+                    + getOnShelfButBorrowedCount() + " on shelf but borrowed, "
+                    + getUnknownCount() + " unknown barcodes]";
+        }
+
+        private List<String> idsOf(long[] bits) {
+            List<String> out = new ArrayList<>((int) Math.min(Integer.MAX_VALUE, count(bits)));
+            for (int w = 0; w < bits.length; w++) {
+                long word = bits[w];
+                while (word != 0) {
+                    out.add(ids[(w << 6) + Long.numberOfTrailingZeros(word)]);
+                    word &= word - 1;
+                }
+            }
+            return out;
+        }
+
+        private static long count(long[] bits) {
+            long n = 0;
+            for (long word : bits) {
+                n += Long.bitCount(word);
+            }
+            return n;
+        }
+    }
+}
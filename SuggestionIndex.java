@@ -0,0 +1,830 @@
+package service;
+
+import model.Book;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * ============================================================
+ *  CLASS   : SuggestionIndex
+ *  PACKAGE : service
+ *  PURPOSE : Autocomplete for the OPAC search box. Returns the
+ *            most borrowed titles/authors starting with what the
+ *            patron has typed so far.
+ *
+ *  HOW IT WORKS:
+ *    - Every title and author is an entry with a term id; its
+ *      text sits in one array, its weight, book count and rank
+ *      side by side in another. The text is the catalogue's own
+ *      String, so the index holds no copy of it.
+ *    - An entry has one key per word start (the first is the full
+ *      text), so "gats" finds "The Great Gatsby". A key is just
+ *      (term id, offset into the text); all keys are kept in one
+ *      sorted array — a suffix array over word starts — compared
+ *      as lower-cased text with whitespace runs read as one space.
+ *      The keys matching a prefix are one contiguous range.
+ *    - The best entries of a range are found on demand: the key
+ *      array is cut into blocks of BLOCK keys and a segment tree
+ *      holds the best entry priority (weight, then alphabetical
+ *      rank) in each block and block span. Spans are visited best
+ *      first and skipped once they cannot beat the top list, so a
+ *      lookup reads a few blocks however wide the range is.
+ *    - Keys of new entries go to a small sorted delta, scanned in
+ *      full by lookups, and are merged into the main array once
+ *      DELTA_LIMIT of them have piled up. A removed entry's keys
+ *      stay (skipped) until that merge, which drops them.
+ *    - An entry's weight is the circulation count of the books
+ *      carrying it; borrowBook() and the Book setters update the
+ *      weights and the block maxima over the entry's keys.
+ * ============================================================
+ */
+public class SuggestionIndex {
+
+    /** Upper bound on suggestions returned per call */
+    public static final int MAX_SUGGESTIONS = 10;
+
+    private static final int BLOCK       = 8;       // keys per segment-tree leaf
+    private static final int DELTA_LIMIT = 4_096;   // new keys held before a merge
+
+    // ── Entries (indexed by term id) ───────────────────────────────
+    private String[] texts;     // trimmed text as catalogued; null = free id
+    private long[]   stats;     // per term, side by side so a lookup reads one cache line:
+                                //   [2t]     summed circulation of the books carrying it
+                                //   [2t + 1] alphabetical rank in the main array (-1 = in
+                                //            the delta) << 32 | number of books carrying it
+    private int      termCount; // ids handed out so far
+    private int[]    freeIds;   // ids of removed entries, reused after a merge
+    private int      freeCount;
+    private int      removed;   // entries removed since the last merge
+
+    // ── Main Keys: sorted, with block maxima ───────────────────────
+    private int[]  keyTerm;
+    private char[] keyFrom;     // offset of the word start in the text
+    private long[] blockMax;    // segment tree of priority(), leaves from leafBase on
+    private int    leafBase;
+    private long[] blockHead;   // first four normalised chars of each block's first key
+
+    // ── Delta Keys: added since the last merge, sorted ─────────────
+    private int[]  deltaTerm;
+    private char[] deltaFrom;
+    private int    deltaSize;
+
+    public SuggestionIndex() {
+        this.texts     = new String[16];
+        this.stats     = new long[32];
+        this.freeIds   = new int[0];
+        this.keyTerm   = new int[0];
+        this.keyFrom   = new char[0];
+        this.deltaTerm = new int[64];
+        this.deltaFrom = new char[64];
+        buildTree();
+    }
+
+    // ==============================================================
+    //   MAINTENANCE
+    // ==============================================================
+
+    /** Adds the title and author of a newly catalogued book */
+    public void add(Book book) {
+        addText(book.getTitle(),  book.getCirculationCount());
+        addText(book.getAuthor(), book.getCirculationCount());
+    }
+
+    /** Moves a book's weight from its old title/author text to the new one */
+    public void replace(Book book, String oldText, String newText) {
+        removeText(oldText, book.getCirculationCount());
+        addText(newText, book.getCirculationCount());
+    }
+
+    /** Called on every borrow — bumps the weight of the book's title and author */
+    public void recordBorrow(Book book) {
+        adjustWeight(book.getTitle(),  1);
+        adjustWeight(book.getAuthor(), 1);
+    }
+
+    /**
+     * Builds the index for a whole catalogue at once. Every entry is
+     * weighed first, then the keys under each first character are
+     * sorted as their own fork/join task. Called from inside a
+     * ForkJoinPool (see LibraryBootstrap) they are sorted in parallel.
+     */
+    public static SuggestionIndex bulkLoad(List<Book> books) {
+        SuggestionIndex index = new SuggestionIndex();
+        Map<String, Integer> ids = new HashMap<>();   // normalised text → term id, build only
+        for (Book b : books) {
+            index.weigh(ids, b.getTitle(),  b.getCirculationCount());
+            index.weigh(ids, b.getAuthor(), b.getCirculationCount());
+        }
+        index.trimTerms();
+
+        // Keys packed as (term << 16 | offset), bucketed by first character
+        int[] bucketStart = new int[Character.MAX_VALUE + 2];
+        int   keyCount    = 0;
+        for (int t = 0; t < index.termCount; t++) {
+            for (int start : keysOf(index.texts[t])) {
+                bucketStart[charAt(index.texts[t], start) + 1]++;
+                keyCount++;
+            }
+        }
+        for (int c = 1; c < bucketStart.length; c++) {
+            bucketStart[c] += bucketStart[c - 1];
+        }
+        long[] keys = new long[keyCount];
+        int[]  fill = bucketStart.clone();
+        for (int t = 0; t < index.termCount; t++) {
+            for (int start : keysOf(index.texts[t])) {
+                keys[fill[charAt(index.texts[t], start)]++] = (long) t << 16 | start;
+            }
+        }
+
+        List<ForkJoinTask<?>> sorts = new ArrayList<>();
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            int lo = bucketStart[c], hi = bucketStart[c + 1];
+            if (hi - lo > 1) {
+                sorts.add(ForkJoinTask.adapt(() -> index.sortKeys(keys, lo, hi)));
+            }
+        }
+        ForkJoinTask.invokeAll(sorts);
+
+        index.keyTerm = new int[keyCount];
+        index.keyFrom = new char[keyCount];
+        for (int i = 0; i < keyCount; i++) {
+            index.keyTerm[i] = (int) (keys[i] >>> 16);
+            index.keyFrom[i] = (char) keys[i];
+        }
+        index.rankTerms();
+        index.buildTree();
+        return index;
+    }
+
+    /** Adds a book's weight to an entry without creating keys (bulkLoad only) */
+    private void weigh(Map<String, Integer> ids, String text, long weight) {
+        String norm = normalize(text);
+        if (norm.isEmpty()) {
+            return;
+        }
+        Integer t = ids.get(norm);
+        if (t == null) {
+            t = newTerm(text.trim());
+            ids.put(norm, t);
+        }
+        stats[2 * t + 1]++;
+        stats[2 * t] += weight;
+    }
+
+    // ==============================================================
+    //   LOOKUP
+    // ==============================================================
+
+    /**
+     * Returns up to {@code limit} completions of the prefix, most
+     * borrowed first, then alphabetical. At most MAX_SUGGESTIONS.
+     */
+    public List<String> suggest(String prefix, int limit) {
+        List<String> results = new ArrayList<>();
+        String key = normalize(prefix);
+        if (key.isEmpty() || limit <= 0) {
+            return results;
+        }
+
+        Top top = new Top(Math.min(limit, MAX_SUGGESTIONS));
+        collect(mainBound(key, false), mainBound(key, true), top);
+        int dlo = bound(deltaTerm, deltaFrom, 0, deltaSize, key, false);
+        for (int p = dlo, dhi = bound(deltaTerm, deltaFrom, dlo, deltaSize, key, true); p < dhi; p++) {
+            top.offer(deltaTerm[p]);
+        }
+
+        for (int i = 0; i < top.size; i++) {
+            results.add(texts[top.ids[i]]);
+        }
+        return results;
+    }
+
+    /**
+     * Offers the entries of main keys [lo, hi) to the top list. The
+     * ragged ends are scanned first; whole blocks are then visited
+     * through the segment tree, best span first.
+     */
+    private void collect(int lo, int hi, Top top) {
+        if (lo >= hi) {
+            return;
+        }
+        int firstBlock = lo / BLOCK;
+        int lastBlock  = (hi - 1) / BLOCK;
+        if (firstBlock == lastBlock) {
+            scan(lo, hi, top);
+            return;
+        }
+        scan(lo, (firstBlock + 1) * BLOCK, top);
+        scan(lastBlock * BLOCK, hi, top);
+
+        // Tree nodes exactly covering blocks firstBlock+1 .. lastBlock-1, visited
+        // best first until nothing left can make the list
+        Spans spans = new Spans();
+        for (int l = leafBase + firstBlock + 1, r = leafBase + lastBlock; l < r; l >>= 1, r >>= 1) {
+            if ((l & 1) == 1) spans.push(l, blockMax[l++]);
+            if ((r & 1) == 1) spans.push(--r, blockMax[r]);
+        }
+        while (spans.size > 0 && top.couldTake(spans.best[0])) {
+            int node = spans.pop();
+            if (node >= leafBase) {
+                int from = (node - leafBase) * BLOCK;
+                scan(from, Math.min(from + BLOCK, keyTerm.length), top);
+            } else {
+                spans.push(2 * node,     blockMax[2 * node]);
+                spans.push(2 * node + 1, blockMax[2 * node + 1]);
+            }
+        }
+    }
+
+    private void scan(int from, int to, Top top) {
+        for (int p = from; p < to; p++) {
+            top.offer(keyTerm[p]);
+        }
+    }
+
+    // ==============================================================
+    //   TERM BOOK-KEEPING
+    // ==============================================================
+
+    private void addText(String text, long weight) {
+        String norm = normalize(text);
+        if (norm.isEmpty()) {
+            return;
+        }
+        int t = find(norm);
+        if (t < 0) {
+            t = newTerm(text.trim());
+            stats[2 * t + 1]++;
+            stats[2 * t] = weight;
+            for (int start : keysOf(texts[t])) {
+                insertDelta(t, start);
+            }
+            if (deltaSize >= DELTA_LIMIT) {
+                merge();
+            }
+        } else {
+            stats[2 * t + 1]++;
+            stats[2 * t] += weight;
+            refreshBlocks(t, weight >= 0);
+        }
+    }
+
+    private void removeText(String text, long weight) {
+        int t = find(normalize(text));
+        if (t < 0) {
+            return;
+        }
+        stats[2 * t + 1]--;
+        stats[2 * t] -= weight;
+        if (refs(t) == 0) {
+            removed++;
+        }
+        refreshBlocks(t, refs(t) > 0 && weight <= 0);
+    }
+
+    private void adjustWeight(String text, long delta) {
+        int t = find(normalize(text));
+        if (t >= 0) {
+            stats[2 * t] += delta;
+            refreshBlocks(t, delta >= 0);
+        }
+    }
+
+    /** The live entry whose full text normalises to norm, or -1 */
+    private int find(String norm) {
+        if (norm.isEmpty()) {
+            return -1;
+        }
+        // Equal suffixes sort full keys first, so only those need a look
+        for (int p = mainBound(norm, false);
+             p < keyTerm.length && keyFrom[p] == 0 && compare(texts[keyTerm[p]], 0, norm, true) == 0; p++) {
+            if (refs(keyTerm[p]) > 0) {
+                return keyTerm[p];
+            }
+        }
+        for (int p = bound(deltaTerm, deltaFrom, 0, deltaSize, norm, false);
+             p < deltaSize && deltaFrom[p] == 0 && compare(texts[deltaTerm[p]], 0, norm, true) == 0; p++) {
+            if (refs(deltaTerm[p]) > 0) {
+                return deltaTerm[p];
+            }
+        }
+        return -1;
+    }
+
+    private int newTerm(String text) {
+        int t;
+        if (freeCount > 0) {
+            t = freeIds[--freeCount];
+        } else {
+            if (termCount == texts.length) {
+                int capacity = termCount + (termCount >> 1) + 1;
+                texts   = Arrays.copyOf(texts,   capacity);
+                stats   = Arrays.copyOf(stats,   capacity * 2);
+            }
+            t = termCount++;
+        }
+        texts[t]   = text;
+        stats[2 * t]     = 0;
+        stats[2 * t + 1] = -1L << 32;   // no rank, no books
+        return t;
+    }
+
+    private void trimTerms() {
+        texts   = Arrays.copyOf(texts,   termCount);
+        stats   = Arrays.copyOf(stats,   termCount * 2);
+    }
+
+    private long weight(int t) { return stats[2 * t];                     }
+    private int  refs(int t)   { return (int) stats[2 * t + 1];           }
+    private int  rank(int t)   { return (int) (stats[2 * t + 1] >> 32);   }
+
+    /**
+     * Weight, then alphabetical rank, packed so that the better entry
+     * has the larger value. Weights past Integer.MAX_VALUE tie.
+     */
+    private long priority(int t) {
+        long w = Math.max(0, Math.min(weight(t), Integer.MAX_VALUE));
+        return (w << 32) | (~rank(t) & 0xFFFFFFFFL);
+    }
+
+    // ==============================================================
+    //   KEY ARRAYS AND BLOCK MAXIMA
+    // ==============================================================
+
+    /**
+     * Updates the block maxima over a term's main keys after its
+     * weight changed. A gain only raises maxima; a loss (or removal)
+     * rescans the affected blocks. Delta keys have no maxima.
+     */
+    private void refreshBlocks(int t, boolean gainedWeight) {
+        if (rank(t) < 0) {
+            return;   // all its keys are still in the delta
+        }
+        for (int start : keysOf(texts[t])) {
+            int p = lowerBound(t, start);
+            int node = leafBase + p / BLOCK;
+            if (gainedWeight) {
+                long best = priority(t);
+                while (node >= 1 && blockMax[node] < best) {
+                    blockMax[node] = best;
+                    node >>= 1;
+                }
+            } else {
+                blockMax[node] = scanMax(p / BLOCK);
+                for (node >>= 1; node >= 1; node >>= 1) {
+                    blockMax[node] = Math.max(blockMax[2 * node], blockMax[2 * node + 1]);
+                }
+            }
+        }
+    }
+
+    /** Position of the first main key not before (t, from) — where it is or would go */
+    private int lowerBound(int t, int from) {
+        int lo = 0, hi = keyTerm.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compareKeys(keyTerm[mid], keyFrom[mid], t, from) < 0) lo = mid + 1;
+            else                                                      hi = mid;
+        }
+        return lo;
+    }
+
+    private void insertDelta(int t, int from) {
+        int lo = 0, hi = deltaSize;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compareKeys(deltaTerm[mid], deltaFrom[mid], t, from) < 0) lo = mid + 1;
+            else                                                          hi = mid;
+        }
+        if (deltaSize == deltaTerm.length) {
+            deltaTerm = Arrays.copyOf(deltaTerm, deltaSize * 2);
+            deltaFrom = Arrays.copyOf(deltaFrom, deltaSize * 2);
+        }
+        System.arraycopy(deltaTerm, lo, deltaTerm, lo + 1, deltaSize - lo);
+        System.arraycopy(deltaFrom, lo, deltaFrom, lo + 1, deltaSize - lo);
+        deltaTerm[lo] = t;
+        deltaFrom[lo] = (char) from;
+        deltaSize++;
+    }
+
+    /**
+     * Merges the delta into the main array, dropping the keys of
+     * removed entries and freeing their ids, then re-ranks the
+     * entries and rebuilds the block maxima. Each delta key's place
+     * is found by binary search, so the main keys are only copied.
+     */
+    private void merge() {
+        int[] at = new int[deltaSize];
+        for (int j = 0; j < deltaSize; j++) {
+            at[j] = lowerBound(deltaTerm[j], deltaFrom[j]);
+        }
+
+        int[]  terms = new int[keyTerm.length + deltaSize];
+        char[] froms = new char[terms.length];
+        int n = 0, i = 0;
+        for (int j = 0; j <= deltaSize; j++) {
+            int end = (j < deltaSize) ? at[j] : keyTerm.length;
+            if (removed == 0) {
+                System.arraycopy(keyTerm, i, terms, n, end - i);
+                System.arraycopy(keyFrom, i, froms, n, end - i);
+                n += end - i;
+            } else {
+                for (int p = i; p < end; p++) {
+                    if (refs(keyTerm[p]) > 0) {
+                        terms[n]   = keyTerm[p];
+                        froms[n++] = keyFrom[p];
+                    }
+                }
+            }
+            i = end;
+            if (j < deltaSize && refs(deltaTerm[j]) > 0) {
+                terms[n]   = deltaTerm[j];
+                froms[n++] = deltaFrom[j];
+            }
+        }
+        keyTerm   = (n == terms.length) ? terms : Arrays.copyOf(terms, n);
+        keyFrom   = (n == froms.length) ? froms : Arrays.copyOf(froms, n);
+        deltaSize = 0;
+
+        if (removed > 0) {
+            for (int t = 0; t < termCount; t++) {
+                if (texts[t] != null && refs(t) == 0) {
+                    texts[t] = null;
+                    if (freeCount == freeIds.length) {
+                        freeIds = Arrays.copyOf(freeIds, freeCount * 2 + 8);
+                    }
+                    freeIds[freeCount++] = t;
+                }
+            }
+            removed = 0;
+        }
+        rankTerms();
+        buildTree();
+    }
+
+    /** Numbers the entries in main-array (alphabetical) order of their full keys */
+    private void rankTerms() {
+        int rank = 0;
+        for (int p = 0; p < keyTerm.length; p++) {
+            if (keyFrom[p] == 0) {
+                int t = keyTerm[p];
+                stats[2 * t + 1] = (long) rank++ << 32 | refs(t);
+            }
+        }
+    }
+
+    private void buildTree() {
+        int blocks = (keyTerm.length + BLOCK - 1) / BLOCK;
+        blockHead = new long[blocks];
+        for (int b = 0; b < blocks; b++) {
+            blockHead[b] = head(texts[keyTerm[b * BLOCK]], keyFrom[b * BLOCK]);
+        }
+        // Bottom-up layout: node n covers 2n and 2n+1, leaves from leafBase.
+        // Any range query only ever meets nodes over whole blocks, so the
+        // leaf count need not be a power of two.
+        leafBase = Math.max(blocks, 1);
+        blockMax = new long[2 * leafBase];
+        Arrays.fill(blockMax, Long.MIN_VALUE);
+        for (int b = 0; b < blocks; b++) {
+            blockMax[leafBase + b] = scanMax(b);
+        }
+        for (int node = leafBase - 1; node >= 1; node--) {
+            blockMax[node] = Math.max(blockMax[2 * node], blockMax[2 * node + 1]);
+        }
+    }
+
+    /** Best live entry priority among the keys of one block */
+    private long scanMax(int block) {
+        long max = Long.MIN_VALUE;
+        for (int p = block * BLOCK, end = Math.min(p + BLOCK, keyTerm.length); p < end; p++) {
+            if (refs(keyTerm[p]) > 0) {
+                max = Math.max(max, priority(keyTerm[p]));
+            }
+        }
+        return max;
+    }
+
+    /** Sorts packed keys [lo, hi) in key order (bulkLoad) */
+    private void sortKeys(long[] keys, int lo, int hi) {
+        long[] dst = Arrays.copyOfRange(keys, lo, hi);
+        mergeSort(dst.clone(), dst, 0, dst.length);
+        System.arraycopy(dst, 0, keys, lo, dst.length);
+    }
+
+    /** Top-down merge sort; src and dst start out equal */
+    private void mergeSort(long[] src, long[] dst, int lo, int hi) {
+        if (hi - lo < 8) {
+            for (int i = lo + 1; i < hi; i++) {
+                for (int j = i; j > lo && compareKeys(dst[j - 1], dst[j]) > 0; j--) {
+                    long swap = dst[j]; dst[j] = dst[j - 1]; dst[j - 1] = swap;
+                }
+            }
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        mergeSort(dst, src, lo, mid);
+        mergeSort(dst, src, mid, hi);
+        for (int i = lo, p = lo, q = mid; i < hi; i++) {
+            dst[i] = (q >= hi || (p < mid && compareKeys(src[p], src[q]) <= 0)) ? src[p++] : src[q++];
+        }
+    }
+
+    // ==============================================================
+    //   PRIVATE HELPERS
+    // ==============================================================
+
+    /**
+     * Key order: normalised suffix text, then full keys before word
+     * keys (so find() stops early), then term id.
+     */
+    private int compareKeys(int ta, int fa, int tb, int fb) {
+        int cmp = compareText(texts[ta], fa, texts[tb], fb);
+        if (cmp != 0) {
+            return cmp;
+        }
+        if ((fa == 0) != (fb == 0)) {
+            return (fa == 0) ? -1 : 1;
+        }
+        return Integer.compare(ta, tb);
+    }
+
+    private int compareKeys(long a, long b) {
+        return compareKeys((int) (a >>> 16), (char) a, (int) (b >>> 16), (char) b);
+    }
+
+    /**
+     * bound() over the main array: blocks are first narrowed down by
+     * their head characters, which sit in one array, so only a few
+     * keys' texts have to be read.
+     */
+    private int mainBound(String key, boolean after) {
+        int lo = 0, hi = blockHead.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compareHead(blockHead[mid], key);
+            if (cmp == Integer.MIN_VALUE) {
+                cmp = compare(texts[keyTerm[mid * BLOCK]], keyFrom[mid * BLOCK], key, false);
+            }
+            if (cmp < 0 || (after && cmp == 0)) lo = mid + 1;
+            else                                hi = mid;
+        }
+        // Block lo is the first whose first key is past the bound
+        int from = Math.max(0, (lo - 1) * BLOCK + 1);
+        return bound(keyTerm, keyFrom, from, Math.min(lo * BLOCK, keyTerm.length), key, after);
+    }
+
+    /** The first four normalised chars of a key, 16 bits each; 0 after the end */
+    private static long head(String text, int from) {
+        long head = 0;
+        int i = from;
+        for (int k = 0; k < 4; k++) {
+            int c = charAt(text, i);
+            head <<= 16;
+            if (c >= 0) {
+                head |= c;
+                i = next(text, i);
+            } else {
+                i = text.length();
+            }
+        }
+        return head;
+    }
+
+    /**
+     * compare(key, whole = false) from a head alone, or MIN_VALUE when
+     * the head cannot tell (the key is longer than the head, or the
+     * head ends early).
+     */
+    private static int compareHead(long head, String key) {
+        int n = Math.min(4, key.length());
+        for (int k = 0; k < n; k++) {
+            int c = (int) (head >>> (48 - 16 * k)) & 0xFFFF;
+            if (c == 0) {
+                return Integer.MIN_VALUE;
+            }
+            if (c != key.charAt(k)) {
+                return c - key.charAt(k);
+            }
+        }
+        return (key.length() <= 4) ? 0 : Integer.MIN_VALUE;
+    }
+
+    /**
+     * First position in [from, to) of a sorted key array whose suffix
+     * does not sort before the prefix (after = false) or does not
+     * start with or sort before it (after = true).
+     */
+    private int bound(int[] terms, char[] froms, int from, int to, String key, boolean after) {
+        int lo = from, hi = to;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compare(texts[terms[mid]], froms[mid], key, false);
+            if (cmp < 0 || (after && cmp == 0)) lo = mid + 1;
+            else                                hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Compares the normalised suffix of text at from with a normalised
+     * key: 0 if the suffix starts with the key (or, whole = true,
+     * equals it), otherwise the sign of their order.
+     */
+    private static int compare(String text, int from, String key, boolean whole) {
+        int i = from;
+        for (int k = 0; k < key.length(); k++) {
+            int c = charAt(text, i);
+            if (c != key.charAt(k)) {
+                return c - key.charAt(k);   // the end (-1) sorts first
+            }
+            i = next(text, i);
+        }
+        return (whole && charAt(text, i) >= 0) ? 1 : 0;
+    }
+
+    private static int compareText(String a, int i, String b, int j) {
+        while (true) {
+            // Same raw letter: equal whatever the case, no lower-casing needed
+            if (i < a.length() && j < b.length() && a.charAt(i) == b.charAt(j) && !isSpace(a.charAt(i))) {
+                i++;
+                j++;
+                continue;
+            }
+            int ca = charAt(a, i);
+            int cb = charAt(b, j);
+            if (ca != cb || ca < 0) {
+                return ca - cb;
+            }
+            i = next(a, i);
+            j = next(b, j);
+        }
+    }
+
+    /** Normalised character at i: lower-case, ' ' for a whitespace run, -1 at the end */
+    private static int charAt(String s, int i) {
+        if (i >= s.length()) {
+            return -1;
+        }
+        char c = s.charAt(i);
+        if (c < 128) {
+            if (c >= 'A' && c <= 'Z') return c + ('a' - 'A');
+            if (c > ' ')              return c;
+        }
+        if (!isSpace(c)) {
+            return Character.toLowerCase(c);
+        }
+        return (skipSpace(s, i) < s.length()) ? ' ' : -1;
+    }
+
+    private static int next(String s, int i) {
+        return isSpace(s.charAt(i)) ? skipSpace(s, i) : i + 1;
+    }
+
+    private static int skipSpace(String s, int i) {
+        while (i < s.length() && isSpace(s.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /** The characters {@code \s} matches */
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /** Start offsets of the keys: 0 for the full text, then every later word start */
+    private static int[] keysOf(String text) {
+        int limit = Math.min(text.length(), Character.MAX_VALUE + 1);   // offsets are chars
+        int count = 1;
+        for (int i = 1; i < limit; i++) {
+            if (isSpace(text.charAt(i - 1)) && !isSpace(text.charAt(i))) {
+                count++;
+            }
+        }
+        int[] starts = new int[count];
+        for (int i = 1, k = 1; k < count; i++) {
+            if (isSpace(text.charAt(i - 1)) && !isSpace(text.charAt(i))) {
+                starts[k++] = i;
+            }
+        }
+        return starts;
+    }
+
+    /** Lower-cased, trimmed, whitespace runs as one space — the form keys compare in */
+    private static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(text.length());
+        for (int i = skipSpace(text, 0); i < text.length(); i = next(text, i)) {
+            int c = charAt(text, i);
+            if (c < 0) {
+                break;
+            }
+            sb.append((char) c);
+        }
+        return sb.toString();
+    }
+
+    // ── Span Heap ──────────────────────────────────────────────────
+
+    /** Max-heap of segment-tree nodes by their best priority, kept next to the node */
+    private static final class Spans {
+        int[]  nodes = new int[64];
+        long[] best  = new long[64];
+        int    size;
+
+        void push(int node, long priority) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+                best  = Arrays.copyOf(best,  size * 2);
+            }
+            int i = size++;
+            while (i > 0 && best[(i - 1) >>> 1] < priority) {
+                nodes[i] = nodes[(i - 1) >>> 1];
+                best[i]  = best[(i - 1) >>> 1];
+                i = (i - 1) >>> 1;
+            }
+            nodes[i] = node;
+            best[i]  = priority;
+        }
+
+        int pop() {
+            int  top      = nodes[0];
+            int  node     = nodes[--size];
+            long priority = best[size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) break;
+                if (child + 1 < size && best[child + 1] > best[child]) child++;
+                if (best[child] <= priority) break;
+                nodes[i] = nodes[child];
+                best[i]  = best[child];
+                i = child;
+            }
+            nodes[i] = node;
+            best[i]  = priority;
+            return top;
+        }
+    }
+
+    // ── Top List ───────────────────────────────────────────────────
+
+    /** The best distinct live entries seen so far: heaviest first, then alphabetical */
+    private final class Top {
+        final int[] ids;
+        int size;
+
+        Top(int capacity) {
+            this.ids = new int[capacity];
+        }
+
+        /** False once the list is full and a block of this best priority cannot beat its last entry */
+        boolean couldTake(long best) {
+            if (size < ids.length) {
+                return true;
+            }
+            int last = ids[size - 1];
+            return (rank(last) >= 0) ? best > priority(last)
+                                      : (best >>> 32) >= (priority(last) >>> 32);   // rank unknown
+        }
+
+        void offer(int t) {
+            if (refs(t) == 0 || (size == ids.length && weight(t) < weight(ids[size - 1]))) {
+                return;
+            }
+            for (int i = 0; i < size; i++) {
+                if (ids[i] == t) {
+                    return;   // the same entry can match through two keys
+                }
+            }
+            if (size == ids.length && !before(t, ids[size - 1])) {
+                return;
+            }
+            int at = (size == ids.length) ? size - 1 : size++;
+            while (at > 0 && before(t, ids[at - 1])) {
+                ids[at] = ids[at - 1];
+                at--;
+            }
+            ids[at] = t;
+        }
+
+        /** Heavier first; equal weights in the alphabetical (normalised) order keys use */
+        private boolean before(int a, int b) {
+            if (weight(a) != weight(b)) {
+                return weight(a) > weight(b);
+            }
+            if (rank(a) >= 0 && rank(b) >= 0) {
+                return rank(a) < rank(b);
+            }
+            return compareText(texts[a], 0, texts[b], 0) < 0;
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package service;
+
+import model.Book;
+import model.Member;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * ============================================================
+ *  CLASS   : TableRenderer
+ *  PACKAGE : service
+ *  PURPOSE : Writes the book and member tables straight to a
+ *            channel (file, socket, stdout) for large text exports
+ *            such as the nightly stock-check report.
+ *
+ *  HOW IT WORKS:
+ *    - Each row is padded/truncated into one reusable char[]
+ *      line buffer — no format strings, no boxing, no String per
+ *      row.
+ *    - The line is UTF-8 encoded by hand into a reusable ByteBuffer
+ *      which is written to the channel only when full (large
+ *      blocks).
+ *    - The text is identical to viewAllBooks()/viewAllMembers():
+ *      "%-Ns" padding (never truncates) for plain columns and
+ *      the ".." truncation used by Book.toString().
+ *
+ *  Not thread-safe: one renderer per export. Call flush() at the
+ *  end; the channel itself is left open.
+ * ============================================================
+ */
+public class TableRenderer {
+
+    public static final int DEFAULT_BUFFER_BYTES = 256 * 1024;
+
+    private static final char[] NEWLINE = System.lineSeparator().toCharArray();
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer          out;
+    private char[]                    line;       // current row, grows if needed
+    private int                       length;     // chars used in line
+
+    public TableRenderer(WritableByteChannel channel) {
+        this(channel, DEFAULT_BUFFER_BYTES);
+    }
+
+    public TableRenderer(WritableByteChannel channel, int bufferBytes) {
+        this.channel  = channel;
+        this.out      = ByteBuffer.allocate(bufferBytes);
+        this.line     = new char[256];
+    }
+
+    // ==============================================================
+    //   TABLES
+    // ==============================================================
+
+    public void writeBookHeader() throws IOException {
+        writeLine(LibraryService.BOOK_TABLE_BORDER);
+        writeLine(LibraryService.BOOK_TABLE_HEADER);
+        writeLine(LibraryService.BOOK_TABLE_BORDER);
+    }
+
+    /** Same text as Book.toString() */
+    public void writeBookRow(Book b) throws IOException {
+        text("  | ");  pad(b.getBookId(), 8);
+        text(" | ");   truncPad(b.getTitle(),  32);
+        text(" | ");   truncPad(b.getAuthor(), 18);
+        text(" | ");   truncPad(b.getGenre(),  13);
+        text(" | ");   pad(b.isAvailable() ? "Available" : "Borrowed", 9);
+        text(" |");
+        endLine();
+    }
+
+    public void writeBookFooter() throws IOException {
+        writeLine(LibraryService.BOOK_TABLE_BORDER);
+    }
+
+    public void writeMemberHeader() throws IOException {
+        writeLine(LibraryService.MEMBER_TABLE_BORDER);
+        writeLine(LibraryService.MEMBER_TABLE_HEADER);
+        writeLine(LibraryService.MEMBER_TABLE_BORDER);
+    }
+
+    /** Same text as the rows of viewAllMembers() */
+    public void writeMemberRow(Member m) throws IOException {
+        text("| ");  pad(m.getPersonId(), 8);
+        text(" | "); pad(m.getName(),     22);
+        text(" | "); pad(m.getEmail(),    28);
+        text(" | ");
+        int start = length;
+        number(m.getBorrowedCount());
+        text("/");
+        number(Member.getMaxBorrowLimit());
+        spaces(7 - (length - start));
+        text(" |");
+        endLine();
+    }
+
+    public void writeMemberFooter() throws IOException {
+        writeLine(LibraryService.MEMBER_TABLE_BORDER);
+    }
+
+    /** Writes a literal line, e.g. a border or a "Total:" line */
+    public void writeLine(String s) throws IOException {
+        text(s);
+        endLine();
+    }
+
+    /** Encodes any buffered text and writes it to the channel */
+    public void flush() throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+
+    // ==============================================================
+    //   CELL PRIMITIVES
+    // ==============================================================
+
+    /** Like "%-Ns": left-aligned, padded with spaces, never truncated */
+    private void pad(String s, int width) {
+        if (s == null) s = "null";
+        text(s);
+        spaces(width - s.length());
+    }
+
+    /** Book.toString() column: longer text is cut to width-2 chars plus ".." */
+    private void truncPad(String s, int width) {
+        if (s.length() > width) {
+            ensure(width);
+            s.getChars(0, width - 2, line, length);
+            length += width - 2;
+            line[length++] = '.';
+            line[length++] = '.';
+        } else {
+            pad(s, width);
+        }
+    }
+
+    private void text(String s) {
+        int n = s.length();
+        ensure(n);
+        s.getChars(0, n, line, length);
+        length += n;
+    }
+
+    private void spaces(int n) {
+        if (n <= 0) return;
+        ensure(n);
+        Arrays.fill(line, length, length + n, ' ');
+        length += n;
+    }
+
+    /** Appends a non-negative int without creating a String */
+    private void number(int v) {
+        if (v < 0) {
+            text(Integer.toString(v));
+            return;
+        }
+        int digits = 1;
+        for (int x = v; x >= 10; x /= 10) digits++;
+        ensure(digits);
+        for (int i = length + digits - 1; i >= length; i--) {
+            line[i] = (char) ('0' + v % 10);
+            v /= 10;
+        }
+        length += digits;
+    }
+
+    private void ensure(int extra) {
+        if (length + extra + NEWLINE.length > line.length) {
+            char[] bigger = new char[Math.max(line.length * 2, length + extra + NEWLINE.length)];
+            System.arraycopy(line, 0, bigger, 0, length);
+            line = bigger;
+        }
+    }
+
+    /**
+     * Terminates the row and UTF-8 encodes it straight into the byte
+     * buffer's array. Unpaired surrogates are written as '?', like
+     * the JDK encoder's replacement.
+     */
+    private void endLine() throws IOException {
+        for (char c : NEWLINE) {
+            line[length++] = c;
+        }
+        if (out.remaining() < length * 3) {   // 3 bytes per char at most
+            flush();
+        }
+        byte[] bytes = out.array();
+        int    pos   = out.position();
+        if (out.remaining() < length * 3) {
+            encodeChecked(bytes, pos);        // row longer than the whole buffer
+            length = 0;
+            return;
+        }
+        int i = 0;
+        while (i < length) {
+            // ASCII run: one store per char, no bounds bookkeeping
+            char c;
+            while (i < length && (c = line[i]) < 0x80) {
+                bytes[pos++] = (byte) c;
+                i++;
+            }
+            if (i < length) {
+                pos = encodeChar(bytes, pos, i);
+                i += Character.isHighSurrogate(line[i]) && i + 1 < length
+                        && Character.isLowSurrogate(line[i + 1]) ? 2 : 1;
+            }
+        }
+        out.position(pos);
+        length = 0;
+    }
+
+    /** Slow path for a row that does not fit the buffer: flushes as it goes */
+    private void encodeChecked(byte[] bytes, int pos) throws IOException {
+        int limit = out.limit() - 4;   // room for the longest sequence
+        for (int i = 0; i < length; ) {
+            if (pos > limit) {
+                out.position(pos);
+                flush();
+                pos = out.position();
+            }
+            pos = encodeChar(bytes, pos, i);
+            i += Character.isHighSurrogate(line[i]) && i + 1 < length
+                    && Character.isLowSurrogate(line[i + 1]) ? 2 : 1;
+        }
+        out.position(pos);
+    }
+
+    /** Encodes line[i] (and its low surrogate, if paired) at pos; returns the new pos */
+    private int encodeChar(byte[] bytes, int pos, int i) {
+        char c = line[i];
+        if (c < 0x80) {
+            bytes[pos++] = (byte) c;
+        } else if (c < 0x800) {
+            bytes[pos++] = (byte) (0xC0 | (c >> 6));
+            bytes[pos++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isSurrogate(c)) {
+            if (Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(line[i + 1])) {
+                int cp = Character.toCodePoint(c, line[i + 1]);
+                bytes[pos++] = (byte) (0xF0 | (cp >> 18));
+                bytes[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                bytes[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                bytes[pos++] = (byte) (0x80 | (cp & 0x3F));
+            } else {
+                bytes[pos++] = '?';
+            }
+        } else {
+            bytes[pos++] = (byte) (0xE0 | (c >> 12));
+            bytes[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            bytes[pos++] = (byte) (0x80 | (c & 0x3F));
+        }
+        return pos;
+    }
+}
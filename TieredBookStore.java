@@ -0,0 +1,553 @@
+package service;
+
+import model.Book;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.function.Consumer;
+
+/**
+ * ============================================================
+ *  CLASS   : TieredBookStore
+ *  PACKAGE : service
+ *  PURPOSE : Book storage whose heap use follows the working set, not
+ *            the size of the holdings: recently used books and every
+ *            book on loan stay as Book objects, the rest are demoted
+ *            to compact records in memory-mapped segment files and
+ *            promoted back when asked for.
+ *
+ *  HOW IT WORKS:
+ *    - Hot tier: at most hotCapacity Book objects (more only if
+ *      that many are on loan — a borrowed book is never demoted).
+ *    - Cold tier: append-only segment files of SEGMENT_BYTES, each
+ *      mapped into memory once. A record holds ID, title, author,
+ *      genre, ISBN, circulation count and version (~64 bytes for
+ *      a typical book; the version keeps cached views of a book
+ *      valid across eviction). The only heap cost per cold book is a slot in an
+ *      open-addressing table (4-byte ID hash + 8-byte packed
+ *      segment/offset, table at most half full).
+ *    - Eviction: every get/put counts the ID in a Count-Min
+ *      frequency sketch (4 rows, counters halved every 10 x width
+ *      hits so old popularity fades). When the hot tier is full a
+ *      few hot books are sampled and the least frequent one that is
+ *      not on loan is demoted.
+ *    - A demoted book that was not changed since it was last read
+ *      from its record is simply dropped from the heap; otherwise a
+ *      new record is appended and the old one becomes dead space.
+ *    - forEach() and peek() read cold records without promoting
+ *      them, so a listing or search scan does not flush the working
+ *      set. forEach() skips the stale record of a hot book by its
+ *      location, before decoding anything.
+ *    - LibraryService uses a store as its catalogue when built with
+ *      LibraryService(TieredBookStore).
+ *    - The segments are a spill area, not a database: close()
+ *      deletes them.
+ *
+ *  Safe to call from many threads (one call at a time).
+ * ============================================================
+ */
+public class TieredBookStore implements AutoCloseable {
+
+    public static final int DEFAULT_HOT_CAPACITY = 10_000;
+    public static final int SEGMENT_BYTES        = 64 * 1024 * 1024;
+
+    private static final int  SAMPLE      = 8;       // hot books looked at per eviction
+    private static final int  HEADER      = 20;      // record length, ISBN, circulation count, version
+    private static final int  OFFSET_BITS = 40;
+    private static final long OFFSET_MASK = (1L << OFFSET_BITS) - 1;
+
+    private final Path             dir;
+    private final int              hotCapacity;
+    private final int              segmentBytes;
+    private final FrequencySketch  sketch;
+    private final SplittableRandom random = new SplittableRandom(7);
+
+    // ── Hot Tier ───────────────────────────────────────────────────
+    private final Map<String, HotEntry> hot      = new HashMap<>();   // lower-case ID
+    private final List<HotEntry>        hotSlots = new ArrayList<>(); // for random sampling
+
+    // ── Cold Tier ──────────────────────────────────────────────────
+    private final List<Segment> segments = new ArrayList<>();
+    private int[]  coldHashes = new int[1024];
+    private long[] coldLocs   = new long[1024];   // location + 1, 0 = empty slot
+    private int    coldCount;
+
+    // ── Metrics ────────────────────────────────────────────────────
+    private long books;
+    private long hits;
+    private long misses;
+    private long promoteNanos;
+    private long maxPromoteNanos;
+    private long demotions;
+    private long coldWrites;
+    private long deadBytes;
+
+    public TieredBookStore(Path dir) throws IOException {
+        this(dir, DEFAULT_HOT_CAPACITY, SEGMENT_BYTES);
+    }
+
+    /**
+     * @param dir          directory for the segment files (created if missing)
+     * @param hotCapacity  Book objects kept in memory
+     * @param segmentBytes size of each segment file
+     */
+    public TieredBookStore(Path dir, int hotCapacity, int segmentBytes) throws IOException {
+        if (hotCapacity < 1 || segmentBytes < 1024) {
+            throw new IllegalArgumentException("hotCapacity must be positive, segments at least 1 KB");
+        }
+        this.dir          = Files.createDirectories(dir);
+        this.hotCapacity  = hotCapacity;
+        this.segmentBytes = segmentBytes;
+        this.sketch       = new FrequencySketch(hotCapacity);
+    }
+
+    // ==============================================================
+    //   ACCESS
+    // ==============================================================
+
+    /**
+     * Adds a book, or replaces the stored copy with the same ID. The
+     * book enters the hot tier, which may demote another.
+     */
+    public synchronized void put(Book book) throws IOException {
+        String key = book.getBookId().toLowerCase();
+        int    hash = spread(key.hashCode());
+        sketch.increment(hash);
+        HotEntry e = hot.get(key);
+        if (e != null) {
+            e.book          = book;
+            e.loadedVersion = -1;                 // differs from its record now
+            return;
+        }
+        int slot = coldSlot(key, hash);
+        if (coldLocs[slot] == 0) {
+            books++;
+        }
+        admit(new HotEntry(key, hash, book, coldLocs[slot] - 1, -1));
+    }
+
+    /**
+     * Returns the book, promoting it to the hot tier if it was cold.
+     *
+     * @return the book, or null if the ID is unknown
+     */
+    public synchronized Book get(String bookId) throws IOException {
+        long   start = System.nanoTime();
+        String key   = bookId.toLowerCase();
+        int    hash  = spread(key.hashCode());
+        sketch.increment(hash);
+        HotEntry e = hot.get(key);
+        if (e != null) {
+            hits++;
+            return e.book;
+        }
+        long loc = coldLocs[coldSlot(key, hash)] - 1;
+        if (loc < 0) {
+            return null;
+        }
+        misses++;
+        Book book = decode(loc);
+        admit(new HotEntry(key, hash, book, loc, book.getVersion()));
+        long took = System.nanoTime() - start;
+        promoteNanos   += took;
+        maxPromoteNanos = Math.max(maxPromoteNanos, took);
+        return book;
+    }
+
+    /**
+     * Returns the book without promoting it or counting the access:
+     * the hot object, or a throwaway copy decoded from its record.
+     *
+     * @return the book, or null if the ID is unknown
+     */
+    public synchronized Book peek(String bookId) {
+        String key = bookId.toLowerCase();
+        HotEntry e = hot.get(key);
+        if (e != null) {
+            return e.book;
+        }
+        long loc = coldLocs[coldSlot(key, spread(key.hashCode()))] - 1;
+        return (loc < 0) ? null : decode(loc);
+    }
+
+    /** True if a book with this ID is stored, hot or cold; decodes nothing */
+    public synchronized boolean contains(String bookId) {
+        String key = bookId.toLowerCase();
+        return hot.containsKey(key) || coldLocs[coldSlot(key, spread(key.hashCode()))] != 0;
+    }
+
+    /**
+     * Visits every book once — hot ones as they are, cold ones decoded
+     * into throwaway copies (changes to those are not kept). Nothing
+     * is promoted.
+     */
+    public synchronized void forEach(Consumer<Book> action) {
+        long[] shadowed = new long[hotSlots.size()];   // records of hot books, now stale
+        int n = 0;
+        for (HotEntry e : hotSlots) {
+            action.accept(e.book);
+            if (e.cold >= 0) {
+                shadowed[n++] = e.cold;
+            }
+        }
+        Arrays.sort(shadowed, 0, n);
+        for (int i = 0; i < coldLocs.length; i++) {
+            long loc = coldLocs[i] - 1;
+            if (loc >= 0 && Arrays.binarySearch(shadowed, 0, n, loc) < 0) {
+                action.accept(decode(loc));
+            }
+        }
+    }
+
+    // ── Metrics Getters ────────────────────────────────────────────
+    public synchronized long getSize()            { return books;           }
+    public synchronized int  getHotSize()         { return hot.size();      }
+    public synchronized long getHits()            { return hits;            }
+    public synchronized long getMisses()          { return misses;          }
+    public synchronized long getDemotions()       { return demotions;       }
+    public synchronized long getColdWrites()      { return coldWrites;      }
+    public synchronized long getDeadBytes()       { return deadBytes;       }
+    public synchronized long getMaxPromoteNanos() { return maxPromoteNanos; }
+
+    /** Share of get() calls for known books answered from the hot tier */
+    public synchronized double getHitRatio() {
+        long n = hits + misses;
+        return (n == 0) ? 0 : (double) hits / n;
+    }
+
+    /** Mean time of a get() that had to promote a cold book */
+    public synchronized long getAveragePromoteNanos() {
+        return (misses == 0) ? 0 : promoteNanos / misses;
+    }
+
+    /** Bytes written to segment files, dead records included */
+    public synchronized long getColdBytes() {
+        long n = 0;
+        for (Segment s : segments) {
+            n += s.used;
+        }
+        return n;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("TieredBookStore[%d books, %d hot, hit ratio %.1f%%, promote avg %d us"
+                + " / max %d us, %d demotions, %d cold writes, %d KB on disk (%d KB dead)]",
+                books, hot.size(), getHitRatio() * 100, getAveragePromoteNanos() / 1000,
+                maxPromoteNanos / 1000, demotions, coldWrites, getColdBytes() / 1024, deadBytes / 1024);
+    }
+
+    /** Drops every book and deletes the segment files; metrics are kept */
+    public synchronized void clear() throws IOException {
+        hot.clear();
+        hotSlots.clear();
+        coldHashes = new int[1024];
+        coldLocs   = new long[1024];
+        coldCount  = 0;
+        books      = 0;
+        deadBytes  = 0;
+        deleteSegments();
+    }
+
+    /** Closes and deletes the segment files; the store cannot be used afterwards */
+    @Override
+    public synchronized void close() throws IOException {
+        deleteSegments();
+    }
+
+    private void deleteSegments() throws IOException {
+        for (Segment s : segments) {
+            s.channel.close();
+            try {
+                Files.deleteIfExists(s.path);
+            } catch (IOException e) {
+                // still mapped on some platforms; the OS removes it later
+            }
+        }
+        segments.clear();
+    }
+
+    // ==============================================================
+    //   TIERING
+    // ==============================================================
+
+    /** Adds an entry to the hot tier, demoting others while it is over capacity */
+    private void admit(HotEntry entry) throws IOException {
+        entry.slot = hotSlots.size();
+        hotSlots.add(entry);
+        hot.put(entry.key, entry);
+        while (hot.size() > hotCapacity) {
+            HotEntry victim = pickVictim(entry);
+            if (victim == null) {
+                return;           // everything sampled is on loan; stay over capacity
+            }
+            demote(victim);
+        }
+    }
+
+    /** Least frequent of a few sampled hot books that may leave, or null */
+    private HotEntry pickVictim(HotEntry keep) {
+        HotEntry best = null;
+        int bestFreq = Integer.MAX_VALUE;
+        for (int tries = 0; tries < SAMPLE * 4 && (best == null || tries < SAMPLE); tries++) {
+            HotEntry e = hotSlots.get(random.nextInt(hotSlots.size()));
+            if (e == keep || !e.book.isAvailable()) {
+                continue;
+            }
+            int freq = sketch.estimate(e.hash);
+            if (freq < bestFreq) {
+                best     = e;
+                bestFreq = freq;
+            }
+        }
+        return best;
+    }
+
+    private void demote(HotEntry e) throws IOException {
+        if (e.cold < 0 || e.loadedVersion != e.book.getVersion()) {
+            int slot = coldSlot(e.key, e.hash);
+            if (coldLocs[slot] != 0) {
+                deadBytes += recordLength(coldLocs[slot] - 1);
+            } else {
+                coldCount++;
+            }
+            coldHashes[slot] = e.hash;
+            coldLocs[slot]   = write(e.book) + 1;
+            coldWrites++;
+            if (coldCount * 2 > coldLocs.length) {
+                growColdTable();
+            }
+        }
+        HotEntry last = hotSlots.remove(hotSlots.size() - 1);
+        if (last != e) {
+            hotSlots.set(e.slot, last);
+            last.slot = e.slot;
+        }
+        hot.remove(e.key);
+        demotions++;
+    }
+
+    // ==============================================================
+    //   COLD TABLE (open addressing: ID hash + location)
+    // ==============================================================
+
+    /** Slot holding the ID, or the empty slot where it would go */
+    private int coldSlot(String key, int hash) {
+        int mask = coldLocs.length - 1;
+        int slot = hash & mask;
+        while (coldLocs[slot] != 0) {
+            if (coldHashes[slot] == hash && idMatches(coldLocs[slot] - 1, key)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void growColdTable() {
+        int[]  oldHashes = coldHashes;
+        long[] oldLocs   = coldLocs;
+        coldHashes = new int[oldLocs.length * 2];
+        coldLocs   = new long[oldLocs.length * 2];
+        int mask = coldLocs.length - 1;
+        for (int i = 0; i < oldLocs.length; i++) {
+            if (oldLocs[i] != 0) {
+                int slot = oldHashes[i] & mask;
+                while (coldLocs[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                coldHashes[slot] = oldHashes[i];
+                coldLocs[slot]   = oldLocs[i];
+            }
+        }
+    }
+
+    // ==============================================================
+    //   RECORDS
+    //   [int length][long isbn][int circulation] then id, title,
+    //   author, genre each as [int n][n bytes UTF-8]
+    // ==============================================================
+
+    /** Appends a record for the book and returns its packed location */
+    private long write(Book b) throws IOException {
+        byte[][] fields = {
+            utf8(b.getBookId()), utf8(b.getTitle()), utf8(b.getAuthor()), utf8(b.getGenre())
+        };
+        int length = HEADER;
+        for (byte[] f : fields) {
+            length += 4 + f.length;
+        }
+        if (length > segmentBytes) {
+            throw new IOException("Record for " + b.getBookId() + " is larger than a segment");
+        }
+        Segment seg = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (seg == null || seg.used + length > segmentBytes) {
+            seg = openSegment();
+        }
+        MappedByteBuffer buf = seg.buffer;
+        int pos = seg.used;
+        buf.putInt(pos, length);
+        buf.putLong(pos + 4, b.getIsbn13());
+        buf.putInt(pos + 12, b.getCirculationCount());
+        buf.putInt(pos + 16, b.getVersion());
+        int p = pos + HEADER;
+        for (byte[] f : fields) {
+            buf.putInt(p, f.length);
+            buf.put(p + 4, f);
+            p += 4 + f.length;
+        }
+        seg.used += length;
+        return ((long) (segments.size() - 1) << OFFSET_BITS) | pos;
+    }
+
+    private Book decode(long loc) {
+        MappedByteBuffer buf = segments.get((int) (loc >>> OFFSET_BITS)).buffer;
+        int pos = (int) (loc & OFFSET_MASK);
+        long isbn        = buf.getLong(pos + 4);
+        int  circulation = buf.getInt(pos + 12);
+        int  version     = buf.getInt(pos + 16);
+        String[] fields  = new String[4];
+        int p = pos + HEADER;
+        for (int i = 0; i < fields.length; i++) {
+            int n = buf.getInt(p);
+            byte[] bytes = new byte[n];
+            buf.get(p + 4, bytes);
+            fields[i] = new String(bytes, StandardCharsets.UTF_8);
+            p += 4 + n;
+        }
+        Book b = new Book(fields[0], fields[1], fields[2], fields[3], isbn);
+        if (circulation > 0) {
+            b.restoreLoanState(true, null, circulation);
+        }
+        b.restoreVersion(version);
+        return b;
+    }
+
+    /** Compares the record's ID with a lower-case key without building a Book */
+    private boolean idMatches(long loc, String key) {
+        MappedByteBuffer buf = segments.get((int) (loc >>> OFFSET_BITS)).buffer;
+        int pos = (int) (loc & OFFSET_MASK);
+        byte[] bytes = new byte[buf.getInt(pos + HEADER)];
+        buf.get(pos + HEADER + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8).equalsIgnoreCase(key);
+    }
+
+    private int recordLength(long loc) {
+        return segments.get((int) (loc >>> OFFSET_BITS)).buffer.getInt((int) (loc & OFFSET_MASK));
+    }
+
+    private Segment openSegment() throws IOException {
+        Path path = dir.resolve("books-" + segments.size() + ".seg");
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        Segment s = new Segment(path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes));
+        segments.add(s);
+        return s;
+    }
+
+    private static byte[] utf8(String s) {
+        return (s == null ? "" : s).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int spread(int h) {
+        return (h * 0x9E3779B9) ^ (h >>> 16);
+    }
+
+    // ==============================================================
+    //   HELPER TYPES
+    // ==============================================================
+
+    private static final class HotEntry {
+        private final String key;
+        private final int    hash;
+        private Book         book;
+        private final long   cold;            // record location, -1 if none
+        private int          loadedVersion;   // book version when read from it, -1 = dirty
+        private int          slot;
+
+        HotEntry(String key, int hash, Book book, long cold, int loadedVersion) {
+            this.key           = key;
+            this.hash          = hash;
+            this.book          = book;
+            this.cold          = cold;
+            this.loadedVersion = loadedVersion;
+        }
+    }
+
+    private static final class Segment {
+        private final Path             path;
+        private final FileChannel      channel;
+        private final MappedByteBuffer buffer;
+        private int                    used;
+
+        Segment(Path path, FileChannel channel, MappedByteBuffer buffer) {
+            this.path    = path;
+            this.channel = channel;
+            this.buffer  = buffer;
+        }
+    }
+
+    /**
+     * Count-Min sketch of access counts: 4 rows of saturating counters,
+     * estimate = smallest of the 4. All counters are halved every
+     * 10 x width increments so the sketch follows recent popularity.
+     */
+    private static final class FrequencySketch {
+        private static final int ROWS = 4;
+        private static final int MAX  = 15;
+        private static final int[] SEEDS = { 0x97CB3127, 0xB492B66F, 0x9AE16A3B, 0xC3A5C85C };
+
+        private final int[] counters;
+        private final int   mask;
+        private final int   resetAt;
+        private int         additions;
+
+        FrequencySketch(int expectedItems) {
+            int width = Integer.highestOneBit(Math.max(16, expectedItems - 1)) << 1;
+            this.counters = new int[ROWS * width];
+            this.mask     = width - 1;
+            this.resetAt  = 10 * width;
+        }
+
+        void increment(int hash) {
+            boolean added = false;
+            for (int r = 0; r < ROWS; r++) {
+                int i = index(hash, r);
+                if (counters[i] < MAX) {
+                    counters[i]++;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= resetAt) {
+                for (int i = 0; i < counters.length; i++) {
+                    counters[i] >>>= 1;
+                }
+                additions /= 2;
+            }
+        }
+
+        int estimate(int hash) {
+            int min = MAX;
+            for (int r = 0; r < ROWS; r++) {
+                min = Math.min(min, counters[index(hash, r)]);
+            }
+            return min;
+        }
+
+        private int index(int hash, int row) {
+            int h = (hash ^ SEEDS[row]) * SEEDS[(row + 1) % ROWS];
+            return row * (mask + 1) + ((h ^ (h >>> 15)) & mask);
+        }
+    }
+}
@@ -0,0 +1,521 @@
+package main;
+
+import exception.*;
+import model.*;
+import service.LibraryBootstrap;
+import service.LibraryService;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * ============================================================
+ *  CLASS   : WorkloadSimulator
+ *  PACKAGE : main
+ *  PURPOSE : Load test for capacity planning. Fills a LibraryService
+ *            with a synthetic catalogue, drives it in-process with a
+ *            realistic mix of requests and reports throughput and
+ *            latency percentiles per operation.
+ *
+ *  HOW IT WORKS:
+ *    - Popularity is Zipfian: book rank r is picked with weight
+ *      1 / r^s, so a few bestsellers take most borrows and searches
+ *      (s = 1 by default; higher means hotter hot spots).
+ *    - A run is a list of Phases, each with its own arrival rate
+ *      and mix of borrow/return/search/fuzzy/suggest/register, e.g.
+ *      a steady weekday, a Monday-morning return spike and an
+ *      OPAC search rush.
+ *    - Arrivals are open-loop: request i is due at a Poisson
+ *      schedule time whether or not earlier ones have finished.
+ *      A pool of simulated clients takes the next due slot, waits
+ *      for it and runs the request.
+ *    - Latency is measured from the due time, not from when a
+ *      client got round to sending it. When the service stalls the
+ *      requests queued behind the stall count their wait, instead
+ *      of silently not being sent (coordinated omission). Service
+ *      time (send → done) is reported next to it for comparison.
+ *    - Latencies go into log-linear histograms (64 sub-buckets per
+ *      power of two, under 2% error) that clients update without
+ *      locking.
+ * ============================================================
+ */
+public class WorkloadSimulator {
+
+    /** The request types a phase can mix */
+    public enum Op { BORROW, RETURN, SEARCH, FUZZY_SEARCH, SUGGEST, REGISTER }
+
+    // ── Defaults ───────────────────────────────────────────────────
+    public static final int    DEFAULT_BOOKS         = 20_000;
+    public static final int    DEFAULT_MEMBERS       = 5_000;
+    public static final double DEFAULT_ZIPF_EXPONENT = 1.0;
+    public static final int    DEFAULT_CLIENTS       = 16;
+
+    /** Synthetic vocabulary for titles and authors */
+    private static final String[] SYLLABLES = {
+        "ka", "lo", "mir", "an", "tes", "ru", "vel", "do", "shi", "mon",
+        "ar", "ith", "el", "ba", "quo", "ne", "sa", "tor", "li", "gen"
+    };
+    private static final int WORDS    = 4_000;
+    private static final int AUTHORS  = 5_000;
+    private static final String[] GENRES = {
+        "Fiction", "Science", "History", "Technology", "Mathematics", "Poetry", "Travel"
+    };
+
+    private static final long START_DELAY_NANOS = 20_000_000L;   // let clients start first
+
+    private final LibraryService service;
+    private final int            books;
+    private final int            members;
+    private final int            clients;
+    private final long           seed;
+    private final double[]       popularity;   // cumulative Zipf weights, by rank
+    private final String[]       words;
+    private final String[]       titles;
+
+    // ── Run State ──────────────────────────────────────────────────
+    private final Queue<String[]> loans      = new ConcurrentLinkedQueue<>();   // {member, book}
+    private final AtomicLong      registered = new AtomicLong();
+
+    public WorkloadSimulator(LibraryService service) {
+        this(service, DEFAULT_BOOKS, DEFAULT_MEMBERS, DEFAULT_ZIPF_EXPONENT, DEFAULT_CLIENTS, 42L);
+    }
+
+    /**
+     * @param books        size of the synthetic catalogue
+     * @param members      members registered before the run
+     * @param zipfExponent skew of title popularity (0 = uniform)
+     * @param clients      simulated clients issuing requests
+     * @param seed         makes catalogue and request stream repeatable
+     */
+    public WorkloadSimulator(LibraryService service, int books, int members,
+                             double zipfExponent, int clients, long seed) {
+        if (books < 1 || members < 1 || clients < 1 || zipfExponent < 0) {
+            throw new IllegalArgumentException("books, members and clients must be positive,"
+                    + " zipfExponent not negative");
+        }
+        this.service    = service;
+        this.books      = books;
+        this.members    = members;
+        this.clients    = clients;
+        this.seed       = seed;
+        this.popularity = zipfCdf(books, zipfExponent);
+        this.words      = new String[WORDS];
+        this.titles     = new String[books];
+    }
+
+    // ==============================================================
+    //   CATALOGUE
+    // ==============================================================
+
+    /**
+     * Loads the synthetic books and members into the (empty) service
+     * through LibraryBootstrap and switches console echo off.
+     *
+     * @throws IllegalStateException if the service is not empty
+     */
+    public LibraryBootstrap.Report populate() throws DuplicateEntryException {
+        SplittableRandom rnd = new SplittableRandom(seed);
+        for (int i = 0; i < WORDS; i++) {
+            words[i] = word(rnd, i);
+        }
+        String[] authors = new String[AUTHORS];
+        for (int i = 0; i < AUTHORS; i++) {
+            authors[i] = capitalize(word(rnd, i)) + " " + capitalize(words[rnd.nextInt(WORDS)]);
+        }
+        List<Book> bookList = new ArrayList<>(books);
+        for (int i = 0; i < books; i++) {
+            int n = 2 + rnd.nextInt(3);
+            StringBuilder title = new StringBuilder();
+            for (int w = 0; w < n; w++) {
+                title.append(w == 0 ? "" : " ").append(capitalize(words[rnd.nextInt(WORDS)]));
+            }
+            titles[i] = title.toString();
+            bookList.add(new Book(bookId(i), titles[i], authors[rnd.nextInt(AUTHORS)],
+                    GENRES[rnd.nextInt(GENRES.length)]));
+        }
+        List<Member> memberList = new ArrayList<>(members);
+        for (int i = 0; i < members; i++) {
+            memberList.add(new Member(memberId(i), capitalize(words[rnd.nextInt(WORDS)]) + " "
+                    + capitalize(words[rnd.nextInt(WORDS)]), "m" + i + "@sim.example",
+                    "555" + (1_000_000 + i)));
+        }
+        service.setEcho(false);
+        return new LibraryBootstrap(service).start(bookList, memberList, new ArrayList<>());
+    }
+
+    // ==============================================================
+    //   RUN
+    // ==============================================================
+
+    /** Runs the phases one after the other; populate() must have run */
+    public List<Report> run(List<Phase> phases) throws InterruptedException {
+        List<Report> reports = new ArrayList<>();
+        for (Phase p : phases) {
+            reports.add(run(p));
+        }
+        return reports;
+    }
+
+    /**
+     * Runs one phase: offers requests at the phase's rate for its
+     * duration, then waits for the ones still queued to finish.
+     */
+    public Report run(Phase phase) throws InterruptedException {
+        Report report    = new Report(phase, clients);
+        long   start     = System.nanoTime() + START_DELAY_NANOS;
+        long   end       = start + phase.seconds * 1_000_000_000L;
+        double meanGap   = 1e9 / phase.ratePerSec;
+        AtomicLong nextDue = new AtomicLong(start);
+        AtomicLong lastDone = new AtomicLong(start);
+
+        Thread[] threads = new Thread[clients];
+        for (int c = 0; c < clients; c++) {
+            SplittableRandom rnd = new SplittableRandom(seed * 31 + phase.name.hashCode() * 17L + c);
+            threads[c] = new Thread(() -> {
+                while (true) {
+                    long gap = (long) (-Math.log(1.0 - rnd.nextDouble()) * meanGap);
+                    long due = nextDue.getAndAdd(Math.max(1, gap));
+                    if (due >= end) {
+                        return;
+                    }
+                    waitUntil(due);
+                    Op op = phase.pick(rnd.nextDouble());
+                    String[] loan = null;
+                    if (op == Op.RETURN && (loan = loans.poll()) == null) {
+                        op = Op.BORROW;              // nothing out yet — borrow instead
+                    }
+                    long sent = System.nanoTime();
+                    boolean ok = execute(op, loan, rnd);
+                    long done = System.nanoTime();
+                    report.record(op, done - due, done - sent, ok);
+                    lastDone.accumulateAndGet(done, Math::max);
+                }
+            }, "sim-client-" + c);
+            threads[c].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        report.elapsedNanos = Math.max(end, lastDone.get()) - start;
+        return report;
+    }
+
+    /** Three phases: steady weekday, Monday return spike at 2x, OPAC search rush */
+    public static List<Phase> defaultScenario(double ratePerSec, int secondsPerPhase) {
+        List<Phase> phases = new ArrayList<>();
+        phases.add(new Phase("weekday",        secondsPerPhase, ratePerSec,     20, 20, 40,  5, 10, 5));
+        phases.add(new Phase("monday-returns", secondsPerPhase, ratePerSec * 2, 10, 60, 20,  2,  5, 3));
+        phases.add(new Phase("opac-search",    secondsPerPhase, ratePerSec,      5,  5, 55, 15, 20, 0));
+        return phases;
+    }
+
+    // ==============================================================
+    //   REQUESTS
+    // ==============================================================
+
+    /** Runs one request; false if the service refused it */
+    private boolean execute(Op op, String[] loan, SplittableRandom rnd) {
+        try {
+            switch (op) {
+                case BORROW: {
+                    String m = memberId(rnd.nextInt(members));
+                    String b = bookId(popularBook(rnd));
+                    service.borrowBook(m, b);
+                    loans.add(new String[] { m, b });
+                    break;
+                }
+                case RETURN:
+                    service.returnBook(loan[0], loan[1]);
+                    break;
+                case SEARCH:
+                    service.searchBook(titleWord(rnd));
+                    break;
+                case FUZZY_SEARCH:
+                    service.searchBook(typo(titleWord(rnd), rnd), 1);
+                    break;
+                case SUGGEST: {
+                    String t = titles[popularBook(rnd)];
+                    service.suggest(t.substring(0, Math.min(t.length(), 2 + rnd.nextInt(5))), 5);
+                    break;
+                }
+                case REGISTER: {
+                    long n = registered.incrementAndGet();
+                    service.registerMember(new Member("SIM" + n, "Walk-in " + n,
+                            "walkin" + n + "@sim.example", "556" + (1_000_000 + n)));
+                    break;
+                }
+                default:
+                    break;
+            }
+            return true;
+        } catch (Exception e) {
+            return false;   // book out, limit reached, ... — still a served request
+        }
+    }
+
+    /** A book index drawn from the Zipf popularity distribution */
+    private int popularBook(SplittableRandom rnd) {
+        double u = rnd.nextDouble() * popularity[books - 1];
+        int lo = 0, hi = books - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (popularity[mid] < u) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** One word of a popular title, as a patron would type it */
+    private String titleWord(SplittableRandom rnd) {
+        String t = titles[popularBook(rnd)];
+        int space = t.indexOf(' ');
+        return (space > 0 && rnd.nextBoolean()) ? t.substring(space + 1) : t.substring(0, Math.max(space, 1));
+    }
+
+    private static String typo(String word, SplittableRandom rnd) {
+        if (word.length() < 4) {
+            return word;
+        }
+        int i = 1 + rnd.nextInt(word.length() - 2);
+        return word.substring(0, i) + word.charAt(i + 1) + word.charAt(i) + word.substring(i + 2);
+    }
+
+    private static void waitUntil(long due) {
+        long wait;
+        while ((wait = due - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(wait);
+        }
+    }
+
+    // ==============================================================
+    //   PRIVATE HELPERS
+    // ==============================================================
+
+    private static double[] zipfCdf(int n, double s) {
+        double[] cdf = new double[n];
+        double sum = 0;
+        for (int r = 0; r < n; r++) {
+            sum += 1.0 / Math.pow(r + 1, s);
+            cdf[r] = sum;
+        }
+        return cdf;
+    }
+
+    private static String word(SplittableRandom rnd, int i) {
+        StringBuilder sb = new StringBuilder();
+        int n = 2 + rnd.nextInt(2);
+        for (int k = 0; k < n; k++) {
+            sb.append(SYLLABLES[rnd.nextInt(SYLLABLES.length)]);
+        }
+        return sb.append(SYLLABLES[i % SYLLABLES.length]).toString();
+    }
+
+    private static String capitalize(String s) {
+        return Character.toUpperCase(s.charAt(0)) + s.substring(1);
+    }
+
+    private static String bookId(int i)   { return "SB" + i; }
+    private static String memberId(int i) { return "SM" + i; }
+
+    // ==============================================================
+    //   PHASE
+    // ==============================================================
+
+    /** A stretch of traffic with one arrival rate and request mix */
+    public static final class Phase {
+        private final String name;
+        private final int    seconds;
+        private final double ratePerSec;
+        private final double[] cumulative = new double[Op.values().length];
+
+        /** Mix weights are relative, e.g. 20/20/40/5/10/5 */
+        public Phase(String name, int seconds, double ratePerSec,
+                     int borrow, int ret, int search, int fuzzySearch, int suggest, int register) {
+            int[] weights = { borrow, ret, search, fuzzySearch, suggest, register };
+            double total = 0;
+            for (int w : weights) {
+                if (w < 0) {
+                    throw new IllegalArgumentException("Mix weights must not be negative");
+                }
+                total += w;
+            }
+            if (seconds < 1 || ratePerSec <= 0 || total == 0) {
+                throw new IllegalArgumentException("Phase needs a duration, a rate and a mix");
+            }
+            this.name       = name;
+            this.seconds    = seconds;
+            this.ratePerSec = ratePerSec;
+            double sum = 0;
+            for (int i = 0; i < weights.length; i++) {
+                sum += weights[i] / total;
+                cumulative[i] = sum;
+            }
+        }
+
+        private Op pick(double u) {
+            for (int i = 0; i < cumulative.length - 1; i++) {
+                if (u < cumulative[i]) {
+                    return Op.values()[i];
+                }
+            }
+            return Op.values()[cumulative.length - 1];
+        }
+
+        public String getName()       { return name;       }
+        public int    getSeconds()    { return seconds;    }
+        public double getRatePerSec() { return ratePerSec; }
+    }
+
+    // ==============================================================
+    //   REPORT
+    // ==============================================================
+
+    /** Counts and latency histograms of one phase, per operation */
+    public static final class Report {
+        private final Phase phase;
+        private final int   clients;
+        private final Map<Op, Histogram> response = new EnumMap<>(Op.class);
+        private final Map<Op, Histogram> service  = new EnumMap<>(Op.class);
+        private final Map<Op, LongAdder> failed   = new EnumMap<>(Op.class);
+        private long elapsedNanos;
+
+        private Report(Phase phase, int clients) {
+            this.phase   = phase;
+            this.clients = clients;
+            for (Op op : Op.values()) {
+                response.put(op, new Histogram());
+                service.put(op, new Histogram());
+                failed.put(op, new LongAdder());
+            }
+        }
+
+        private void record(Op op, long responseNanos, long serviceNanos, boolean ok) {
+            response.get(op).record(responseNanos);
+            service.get(op).record(serviceNanos);
+            if (!ok) {
+                failed.get(op).increment();
+            }
+        }
+
+        public long getCount(Op op)  { return response.get(op).count(); }
+        public long getFailed(Op op) { return failed.get(op).sum();     }
+
+        /** Coordinated-omission-corrected latency (from due time), in ns */
+        public long getResponsePercentile(Op op, double percentile) {
+            return response.get(op).percentile(percentile);
+        }
+
+        /** Latency from send to completion, in ns */
+        public long getServicePercentile(Op op, double percentile) {
+            return service.get(op).percentile(percentile);
+        }
+
+        public long getTotal() {
+            long n = 0;
+            for (Op op : Op.values()) {
+                n += getCount(op);
+            }
+            return n;
+        }
+
+        public double getThroughput() {
+            return getTotal() * 1e9 / Math.max(1, elapsedNanos);
+        }
+
+        /** Prints the per-operation table */
+        public void print() {
+            System.out.printf("%n  Phase \"%s\": %.0f ops/s offered, %.0f ops/s done, %d s, %d clients%n",
+                    phase.name, phase.ratePerSec, getThroughput(), phase.seconds, clients);
+            System.out.println("  ┌──────────────┬─────────┬────────┬─────────┬──────────┬──────────┬──────────┬──────────┬─────────────┐");
+            System.out.println("  │ Operation    │   Count │ Failed │   ops/s │  p50 µs  │  p99 µs  │ p99.9 µs │  max µs  │ svc p99 µs  │");
+            System.out.println("  ├──────────────┼─────────┼────────┼─────────┼──────────┼──────────┼──────────┼──────────┼─────────────┤");
+            for (Op op : Op.values()) {
+                long n = getCount(op);
+                if (n == 0) {
+                    continue;
+                }
+                System.out.printf("  │ %-12s │ %7d │ %6d │ %7.0f │ %8s │ %8s │ %8s │ %8s │ %11s │%n",
+                        op, n, getFailed(op), n * 1e9 / Math.max(1, elapsedNanos),
+                        micros(getResponsePercentile(op, 50)), micros(getResponsePercentile(op, 99)),
+                        micros(getResponsePercentile(op, 99.9)), micros(getResponsePercentile(op, 100)),
+                        micros(getServicePercentile(op, 99)));
+            }
+            System.out.println("  └──────────────┴─────────┴────────┴─────────┴──────────┴──────────┴──────────┴──────────┴─────────────┘");
+        }
+
+        private static String micros(long nanos) {
+            return String.valueOf(Math.round(nanos / 1000.0));
+        }
+    }
+
+    /**
+     * Log-linear latency histogram: values below 128 ns are exact,
+     * above that each power of two is split into 64 buckets.
+     */
+    private static final class Histogram {
+        private static final int SUB     = 64;
+        private static final int BUCKETS = 58 * SUB;
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final LongAdder       total  = new LongAdder();
+        private final AtomicLong      max    = new AtomicLong();
+
+        void record(long nanos) {
+            long v = Math.max(0, nanos);
+            counts.incrementAndGet(index(v));
+            total.increment();
+            max.accumulateAndGet(v, Math::max);
+        }
+
+        long count() { return total.sum(); }
+
+        /** Smallest bucket value covering the given percentile (100 = max) */
+        long percentile(double p) {
+            long n = count();
+            if (n == 0) {
+                return 0;
+            }
+            if (p >= 100) {
+                return max.get();
+            }
+            long rank = Math.max(1, (long) Math.ceil(p / 100 * n));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts.get(i);
+                if (seen >= rank) {
+                    return Math.min(upperBound(i), max.get());
+                }
+            }
+            return max.get();
+        }
+
+        private static int index(long v) {
+            if (v < 2 * SUB) {
+                return (int) v;
+            }
+            int shift = 63 - Long.numberOfLeadingZeros(v) - 6;
+            return shift * SUB + (int) (v >>> shift);
+        }
+
+        private static long upperBound(int index) {
+            if (index < 2 * SUB) {
+                return index;
+            }
+            int shift = index / SUB - 1;
+            long top  = index - (long) shift * SUB;
+            return ((top + 1) << shift) - 1;
+        }
+    }
+}
@@ -18,12 +18,42 @@ javac -d out \
   src/model/Book.java \
   src/model/Member.java \
   src/model/Librarian.java \
+  src/model/BookChangeListener.java \
+  src/model/Isbn.java \
+  src/model/PersonChangeListener.java \
   src/exception/BookNotFoundException.java \
   src/exception/BookNotAvailableException.java \
   src/exception/MemberNotFoundException.java \
   src/exception/DuplicateEntryException.java \
   src/exception/BorrowLimitExceededException.java \
+  src/exception/InvalidIsbnException.java \
+  src/exception/RequestRejectedException.java \
+  src/service/FuzzyIndex.java \
+  src/service/SuggestionIndex.java \
+  src/service/ShardedLibraryService.java \
+  src/service/MutationListener.java \
+  src/service/ReplicationProtocol.java \
+  src/service/ReplicationLeader.java \
+  src/service/ReplicationFollower.java \
+  src/service/RenderCache.java \
+  src/service/TableRenderer.java \
+  src/service/CatalogueExporter.java \
+  src/service/ChangeEvent.java \
+  src/service/ChangeFeed.java \
+  src/service/SingleWriterLibraryService.java \
+  src/service/AsyncLibraryService.java \
+  src/service/IdempotencyTable.java \
+  src/service/AdmissionController.java \
+  src/service/CoBorrowIndex.java \
+  src/service/LibraryBootstrap.java \
+  src/service/MemberDirectory.java \
+  src/service/StockTake.java \
+  src/service/AvailabilityHistory.java \
+  src/service/TieredBookStore.java \
   src/service/LibraryService.java \
+  src/main/ScriptRunner.java \
+  src/main/WorkloadSimulator.java \
+  src/main/Benchmarks.java \
   src/main/Main.java
 
 # Check if compilation succeeded